@@ -89,6 +89,101 @@ create index idx_conversation
 create index idx_created_at
     on t_conversation_summary (created_at);
 
+create table t_doc
+(
+    id            bigint auto_increment comment '文档ID'
+        primary key,
+    file_id       varchar(64)                           not null comment '文件唯一标识',
+    user_id       bigint                                not null comment '上传用户ID，0表示角色公共语料',
+    role_id       bigint                                not null comment '所属角色ID',
+    file_url      text                                  null comment 'MinIO对象路径',
+    file_name     varchar(255)                          null comment '原始文件名',
+    file_size     bigint                                null comment '文件大小，单位字节',
+    content_hash  char(64)                              null comment '文件内容SHA-256，用于重复上传检测',
+    status        varchar(20) default 'READY'           not null comment '解析状态：PENDING=待处理，PROCESSING=处理中，READY=可检索，FAILED=失败，DELETED=已删除待清理',
+    progress      int         default 0                 null comment '处理进度：0-100',
+    segment_count int         default 0                 null comment '向量片段数',
+    retry_count   int         default 0                 null comment '已重试次数',
+    stage_timings varchar(500)                          null comment '各阶段耗时，如 load=12ms,parse=300ms',
+    error_msg     varchar(500)                          null comment '失败原因',
+    dedup_hash    char(64) as (if(status in ('FAILED', 'DELETED'), null, content_hash)) stored comment '参与去重的内容哈希，失败与已删除的文档为NULL',
+    create_time   timestamp   default CURRENT_TIMESTAMP null comment '创建时间',
+    update_time   timestamp   default CURRENT_TIMESTAMP null on update CURRENT_TIMESTAMP comment '更新时间',
+    constraint uk_file_id
+        unique (file_id)
+)
+    comment '用户文档表';
+
+create index idx_user_role
+    on t_doc (user_id, role_id);
+
+create index idx_status_update
+    on t_doc (status, update_time);
+
+-- 同一用户、同一角色下有效文档的内容唯一，并发重复上传由唯一键拦截
+create unique index uk_user_role_dedup_hash
+    on t_doc (user_id, role_id, dedup_hash);
+
+create table t_doc_object
+(
+    content_hash char(64)                            not null comment '内容SHA-256'
+        primary key,
+    object_key   varchar(128)                        not null comment 'MinIO对象路径：cas/{content_hash}',
+    file_size    bigint                              null comment '文件大小，单位字节',
+    ref_count    int       default 0                 not null comment '引用该对象的文档数，为0时删除对象',
+    create_time  timestamp default CURRENT_TIMESTAMP null comment '创建时间',
+    update_time  timestamp default CURRENT_TIMESTAMP null on update CURRENT_TIMESTAMP comment '更新时间'
+)
+    comment '文档对象引用计数表';
+
+create table t_doc_object_delete
+(
+    id          bigint auto_increment comment '记录ID'
+        primary key,
+    object_key  varchar(128)                        not null comment '待删除的MinIO对象路径',
+    create_time timestamp default CURRENT_TIMESTAMP null comment '登记时间',
+    constraint uk_object_key
+        unique (object_key)
+)
+    comment '待删除文档对象表：释放引用时在同一事务中登记，提交后删除对象，失败由定时任务重试';
+
+create table t_embedding_migration
+(
+    migration_id varchar(64)                         not null comment '迁移任务ID'
+        primary key,
+    source_table varchar(64)                         not null comment '原向量表',
+    target_table varchar(64)                         not null comment '影子表',
+    provider     varchar(16)                         not null comment '新向量模型提供方：remote/local',
+    model_name   varchar(64)                         not null comment '新向量模型',
+    dimension    int                                 not null comment '新模型维度',
+    phase        varchar(16)                         not null comment '阶段：BACKFILL/READY/CUTOVER/DONE/FAILED',
+    last_doc_id  bigint    default 0                 not null comment '回填检查点：已处理的最大文档ID',
+    total_docs   bigint    default 0                 not null comment '启动时待回填的文档数',
+    docs         bigint    default 0                 not null comment '已回填的文档数',
+    segments     bigint    default 0                 not null comment '已写入影子表的片段数',
+    failed_docs  bigint    default 0                 not null comment '超过重做次数被跳过的文档数',
+    error        varchar(500)                        null comment '失败原因',
+    started_at   bigint                              null comment '开始时间戳（毫秒）',
+    updated_at   bigint                              null comment '最近一次检查点时间戳（毫秒）',
+    cutover_at   bigint                              null comment '检索切换时间戳（毫秒）'
+)
+    comment '向量迁移任务：阶段与回填检查点，各实例据此决定是否双写与检索哪张表';
+
+create table t_embedding_migration_doc
+(
+    id           bigint auto_increment comment '记录ID'
+        primary key,
+    migration_id varchar(64)                         not null comment '迁移任务ID',
+    file_id      varchar(64)                         not null comment '文档fileId',
+    attempts     int       default 0                 not null comment '已重做次数，达到上限后跳过',
+    error        varchar(500)                        null comment '最近一次失败原因',
+    create_time  timestamp default CURRENT_TIMESTAMP null comment '登记时间',
+    update_time  timestamp default CURRENT_TIMESTAMP null on update CURRENT_TIMESTAMP comment '更新时间',
+    constraint uk_migration_file
+        unique (migration_id, file_id)
+)
+    comment '向量迁移待重做文档：影子表写入或回填失败的文档，由回填收尾与定时任务重做，超过次数的跳过（死信）';
+
 create table t_intimacy_factors
 (
     id              bigint auto_increment
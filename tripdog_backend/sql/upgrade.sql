@@ -0,0 +1,146 @@
+-- TripDog 增量升级脚本
+-- 新环境直接执行 init.sql，不需要本脚本；已有环境（init.sql 中尚无 t_doc 时建立的库）执行本脚本。
+-- 脚本可重复执行：列、索引按 information_schema 判断是否已存在，表使用 if not exists，已升级过的部分自动跳过。
+
+USE `trip_dog`;
+
+drop procedure if exists tripdog_add_column;
+drop procedure if exists tripdog_add_index;
+drop procedure if exists tripdog_drop_index;
+
+delimiter $$
+
+create procedure tripdog_add_column(in p_table varchar(64), in p_column varchar(64), in p_definition text)
+begin
+    if not exists (select 1 from information_schema.columns
+                   where table_schema = database() and table_name = p_table and column_name = p_column) then
+        set @ddl = concat('alter table ', p_table, ' add column ', p_column, ' ', p_definition);
+        prepare stmt from @ddl;
+        execute stmt;
+        deallocate prepare stmt;
+    end if;
+end$$
+
+create procedure tripdog_add_index(in p_table varchar(64), in p_index varchar(64), in p_definition text)
+begin
+    if not exists (select 1 from information_schema.statistics
+                   where table_schema = database() and table_name = p_table and index_name = p_index) then
+        set @ddl = concat('create ', p_definition);
+        prepare stmt from @ddl;
+        execute stmt;
+        deallocate prepare stmt;
+    end if;
+end$$
+
+create procedure tripdog_drop_index(in p_table varchar(64), in p_index varchar(64))
+begin
+    if exists (select 1 from information_schema.statistics
+               where table_schema = database() and table_name = p_table and index_name = p_index) then
+        set @ddl = concat('drop index ', p_index, ' on ', p_table);
+        prepare stmt from @ddl;
+        execute stmt;
+        deallocate prepare stmt;
+    end if;
+end$$
+
+delimiter ;
+
+-- 文档异步解析：状态、进度与各阶段耗时
+call tripdog_add_column('t_doc', 'status',
+    'varchar(20) default ''READY'' not null comment ''解析状态：PENDING=待处理，PROCESSING=处理中，READY=可检索，FAILED=失败，DELETED=已删除待清理''');
+call tripdog_add_column('t_doc', 'progress', 'int default 0 null comment ''处理进度：0-100''');
+call tripdog_add_column('t_doc', 'segment_count', 'int default 0 null comment ''向量片段数''');
+call tripdog_add_column('t_doc', 'retry_count', 'int default 0 null comment ''已重试次数''');
+call tripdog_add_column('t_doc', 'stage_timings', 'varchar(500) null comment ''各阶段耗时，如 load=12ms,parse=300ms''');
+call tripdog_add_column('t_doc', 'error_msg', 'varchar(500) null comment ''失败原因''');
+call tripdog_add_index('t_doc', 'idx_status_update', 'index idx_status_update on t_doc (status, update_time)');
+
+-- 文档内容哈希去重
+call tripdog_add_column('t_doc', 'content_hash', 'char(64) null comment ''文件内容SHA-256，用于重复上传检测'' after file_size');
+call tripdog_add_index('t_doc', 'idx_user_role_hash', 'index idx_user_role_hash on t_doc (user_id, role_id, content_hash)');
+
+-- 文档墓碑删除：status 增加 DELETED，后台清理完成后删除记录（modify 可重复执行）
+alter table t_doc
+    modify column status varchar(20) default 'READY' not null comment '解析状态：PENDING=待处理，PROCESSING=处理中，READY=可检索，FAILED=失败，DELETED=已删除待清理';
+
+-- 文档按内容寻址存储：同一内容只保存一份对象，按引用计数删除
+create table if not exists t_doc_object
+(
+    content_hash char(64)                            not null comment '内容SHA-256'
+        primary key,
+    object_key   varchar(128)                        not null comment 'MinIO对象路径：cas/{content_hash}',
+    file_size    bigint                              null comment '文件大小，单位字节',
+    ref_count    int       default 0                 not null comment '引用该对象的文档数，为0时删除对象',
+    create_time  timestamp default CURRENT_TIMESTAMP null comment '创建时间',
+    update_time  timestamp default CURRENT_TIMESTAMP null on update CURRENT_TIMESTAMP comment '更新时间'
+)
+    comment '文档对象引用计数表';
+
+-- 对象删除移到事务提交之后：释放引用时登记待删除对象，提交后删除，失败由定时任务重试
+create table if not exists t_doc_object_delete
+(
+    id          bigint auto_increment comment '记录ID'
+        primary key,
+    object_key  varchar(128)                        not null comment '待删除的MinIO对象路径',
+    create_time timestamp default CURRENT_TIMESTAMP null comment '登记时间',
+    constraint uk_object_key
+        unique (object_key)
+)
+    comment '待删除文档对象表：释放引用时在同一事务中登记，提交后删除对象，失败由定时任务重试';
+
+-- 向量迁移状态与检查点从Redis移到MySQL持久保存；迁移进行中时升级需先完成或取消迁移
+create table if not exists t_embedding_migration
+(
+    migration_id varchar(64)                         not null comment '迁移任务ID'
+        primary key,
+    source_table varchar(64)                         not null comment '原向量表',
+    target_table varchar(64)                         not null comment '影子表',
+    provider     varchar(16)                         not null comment '新向量模型提供方：remote/local',
+    model_name   varchar(64)                         not null comment '新向量模型',
+    dimension    int                                 not null comment '新模型维度',
+    phase        varchar(16)                         not null comment '阶段：BACKFILL/READY/CUTOVER/DONE/FAILED',
+    last_doc_id  bigint    default 0                 not null comment '回填检查点：已处理的最大文档ID',
+    total_docs   bigint    default 0                 not null comment '启动时待回填的文档数',
+    docs         bigint    default 0                 not null comment '已回填的文档数',
+    segments     bigint    default 0                 not null comment '已写入影子表的片段数',
+    failed_docs  bigint    default 0                 not null comment '超过重做次数被跳过的文档数',
+    error        varchar(500)                        null comment '失败原因',
+    started_at   bigint                              null comment '开始时间戳（毫秒）',
+    updated_at   bigint                              null comment '最近一次检查点时间戳（毫秒）',
+    cutover_at   bigint                              null comment '检索切换时间戳（毫秒）'
+)
+    comment '向量迁移任务：阶段与回填检查点，各实例据此决定是否双写与检索哪张表';
+
+create table if not exists t_embedding_migration_doc
+(
+    id           bigint auto_increment comment '记录ID'
+        primary key,
+    migration_id varchar(64)                         not null comment '迁移任务ID',
+    file_id      varchar(64)                         not null comment '文档fileId',
+    attempts     int       default 0                 not null comment '已重做次数，达到上限后跳过',
+    error        varchar(500)                        null comment '最近一次失败原因',
+    create_time  timestamp default CURRENT_TIMESTAMP null comment '登记时间',
+    update_time  timestamp default CURRENT_TIMESTAMP null on update CURRENT_TIMESTAMP comment '更新时间',
+    constraint uk_migration_file
+        unique (migration_id, file_id)
+)
+    comment '向量迁移待重做文档：影子表写入或回填失败的文档，由回填收尾与定时任务重做，超过次数的跳过（死信）';
+
+-- 角色公共语料：user_id = 0 的文档对该角色下所有用户可检索
+alter table t_doc
+    modify column user_id bigint not null comment '上传用户ID，0表示角色公共语料';
+
+-- 内容去重唯一键：有效文档的 (user_id, role_id, content_hash) 唯一。
+-- 建索引前先检查已有重复，有结果时需先删除多余文档，否则建索引失败：
+-- select user_id, role_id, content_hash, count(*) from t_doc
+-- where content_hash is not null and status not in ('FAILED', 'DELETED')
+-- group by user_id, role_id, content_hash having count(*) > 1;
+call tripdog_add_column('t_doc', 'dedup_hash',
+    'char(64) as (if(status in (''FAILED'', ''DELETED''), null, content_hash)) stored comment ''参与去重的内容哈希，失败与已删除的文档为NULL'' after error_msg');
+call tripdog_add_index('t_doc', 'uk_user_role_dedup_hash',
+    'unique index uk_user_role_dedup_hash on t_doc (user_id, role_id, dedup_hash)');
+call tripdog_drop_index('t_doc', 'idx_user_role_hash');
+
+drop procedure if exists tripdog_add_column;
+drop procedure if exists tripdog_add_index;
+drop procedure if exists tripdog_drop_index;
@@ -3,6 +3,8 @@ package com.tripdog.ai;
 import org.springframework.context.annotation.Configuration;
 
 import com.tripdog.ai.assistant.ChatAssistant;
+import com.tripdog.ai.embedding.CompactContentInjector;
+import com.tripdog.ai.embedding.ContentInjectConfig;
 import com.tripdog.ai.embedding.RetrieverFactory;
 import com.tripdog.ai.mcp.McpClientFactory;
 import dev.langchain4j.model.chat.StreamingChatModel;
@@ -26,13 +28,18 @@ public class AssistantService {
     final RetrieverFactory retrieverFactory;
     final CustomerChatMemoryProvider chatMemoryProvider;
     final McpClientFactory mcpClientFactory;
+    final ContentInjectConfig contentInjectConfig;
+    final QwenTokenCountEstimator tokenCountEstimator;
 
     public ChatAssistant getAssistant(Long roleId, Long userId) {
         RetrievalAugmentor retrievalAugmentor = DefaultRetrievalAugmentor.builder()
             .contentRetriever(retrieverFactory.getRetriever(roleId, userId))
-            .contentInjector(DefaultContentInjector.builder()
-                .promptTemplate(PromptTemplate.from("{{userMessage}}" + INJECT_TEMPLATE + "{{contents}}"))
-                .build())
+            .contentInjector(new CompactContentInjector(
+                DefaultContentInjector.builder()
+                    .promptTemplate(PromptTemplate.from("{{userMessage}}" + INJECT_TEMPLATE + "{{contents}}"))
+                    .build(),
+                contentInjectConfig,
+                tokenCountEstimator))
             .build();
 
         // todo 接入mcp
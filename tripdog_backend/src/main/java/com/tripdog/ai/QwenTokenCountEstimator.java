@@ -0,0 +1,55 @@
+package com.tripdog.ai;
+
+import org.springframework.stereotype.Component;
+
+import com.alibaba.dashscope.tokenizers.Tokenizer;
+import com.alibaba.dashscope.tokenizers.TokenizerFactory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/13 9:40
+ * @description: 共享的Qwen分词器，统一提供token计数
+ */
+@Component
+public class QwenTokenCountEstimator implements TokenCountEstimator {
+    private final Tokenizer tokenizer = TokenizerFactory.qwen();
+
+    @Override
+    public int estimateTokenCountInText(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return tokenizer.encodeOrdinary(text).size();
+    }
+
+    @Override
+    public int estimateTokenCountInMessage(ChatMessage message) {
+        String text = "";
+        if (message instanceof SystemMessage systemMessage) {
+            text = systemMessage.text();
+        } else if (message instanceof UserMessage userMessage) {
+            text = userMessage.hasSingleText() ? userMessage.singleText() : userMessage.toString();
+        } else if (message instanceof AiMessage aiMessage) {
+            text = aiMessage.text();
+        } else if (message instanceof ToolExecutionResultMessage toolMessage) {
+            text = toolMessage.text();
+        }
+        return estimateTokenCountInText(text);
+    }
+
+    @Override
+    public int estimateTokenCountInMessages(Iterable<ChatMessage> messages) {
+        int total = 0;
+        for (ChatMessage message : messages) {
+            total += estimateTokenCountInMessage(message);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,220 @@
+package com.tripdog.ai.embedding;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.tripdog.ai.QwenTokenCountEstimator;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.injector.ContentInjector;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.ai.ingest.TokenAwareDocumentSplitter.INDEX;
+import static com.tripdog.common.Constants.FILE_ID;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/13 10:15
+ * @description: 在注入前压缩检索内容：
+ * 1. 同一fileId下相邻/重叠的分片合并为一段，去掉切分时的重叠文本
+ * 2. 按MMR重排，丢弃与已选内容近似重复的片段（字符bigram的Jaccard相似度）
+ * 3. 按Qwen分词器计数裁剪到token预算内
+ * 处理后的内容交给delegate按原模板拼接。
+ */
+@Slf4j
+public class CompactContentInjector implements ContentInjector {
+
+    private final ContentInjector delegate;
+    private final ContentInjectConfig config;
+    private final QwenTokenCountEstimator tokenCountEstimator;
+
+    public CompactContentInjector(ContentInjector delegate, ContentInjectConfig config,
+                                  QwenTokenCountEstimator tokenCountEstimator) {
+        this.delegate = delegate;
+        this.config = config;
+        this.tokenCountEstimator = tokenCountEstimator;
+    }
+
+    @Override
+    public ChatMessage inject(List<Content> contents, ChatMessage chatMessage) {
+        if (!config.isEnabled() || contents == null || contents.isEmpty()) {
+            return delegate.inject(contents, chatMessage);
+        }
+        int originTokens = countTokens(contents);
+        List<Content> compacted = trimToBudget(selectDiverse(mergeAdjacent(contents)));
+        int finalTokens = countTokens(compacted);
+        log.info("检索内容压缩: segments {} -> {}, tokens {} -> {}, 节省 {}",
+            contents.size(), compacted.size(), originTokens, finalTokens, originTokens - finalTokens);
+        return delegate.inject(compacted, chatMessage);
+    }
+
+    /**
+     * 同一文件内按分片序号排序，序号连续的分片拼接并去除重叠部分
+     */
+    private List<Content> mergeAdjacent(List<Content> contents) {
+        Map<String, List<Content>> byFile = new LinkedHashMap<>();
+        List<Content> result = new ArrayList<>();
+        for (Content c : contents) {
+            Object fileId = c.textSegment().metadata().toMap().get(FILE_ID);
+            if (fileId == null || segmentIndex(c) < 0) {
+                result.add(c);
+                continue;
+            }
+            byFile.computeIfAbsent(fileId.toString(), k -> new ArrayList<>()).add(c);
+        }
+
+        for (List<Content> group : byFile.values()) {
+            group.sort(Comparator.comparingInt(this::segmentIndex));
+            Content current = group.getFirst();
+            int lastIndex = segmentIndex(current);
+            for (int i = 1; i < group.size(); i++) {
+                Content next = group.get(i);
+                int nextIndex = segmentIndex(next);
+                if (nextIndex == lastIndex + 1) {
+                    current = merge(current, next);
+                } else {
+                    result.add(current);
+                    current = next;
+                }
+                lastIndex = nextIndex;
+            }
+            result.add(current);
+        }
+        return result;
+    }
+
+    private Content merge(Content a, Content b) {
+        String left = a.textSegment().text();
+        String right = b.textSegment().text();
+        int overlap = overlapLength(left, right);
+        Metadata metadata = a.textSegment().metadata().copy();
+        TextSegment merged = TextSegment.from(left + right.substring(overlap), metadata);
+        return Content.from(merged, Map.of(ContentMetadata.SCORE, Math.max(score(a), score(b))));
+    }
+
+    /**
+     * left的后缀与right的前缀的最长重合长度
+     */
+    private int overlapLength(String left, String right) {
+        int max = Math.min(left.length(), right.length()) / 2;
+        for (int len = max; len > 0; len--) {
+            if (left.regionMatches(left.length() - len, right, 0, len)) {
+                return len;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * MMR: lambda * 相关性 - (1 - lambda) * 与已选内容的最大相似度
+     */
+    private List<Content> selectDiverse(List<Content> contents) {
+        List<Content> candidates = new ArrayList<>(contents);
+        List<Set<String>> candidateShingles = new ArrayList<>();
+        for (Content c : candidates) {
+            candidateShingles.add(shingles(c.textSegment().text()));
+        }
+
+        List<Content> selected = new ArrayList<>();
+        List<Set<String>> selectedShingles = new ArrayList<>();
+        double lambda = config.getMmrLambda();
+        while (!candidates.isEmpty()) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < candidates.size(); i++) {
+                double maxSim = 0;
+                for (Set<String> s : selectedShingles) {
+                    maxSim = Math.max(maxSim, jaccard(candidateShingles.get(i), s));
+                }
+                if (maxSim >= config.getDedupThreshold()) {
+                    candidates.remove(i);
+                    candidateShingles.remove(i);
+                    i--;
+                    continue;
+                }
+                double mmr = lambda * score(candidates.get(i)) - (1 - lambda) * maxSim;
+                if (mmr > bestScore) {
+                    bestScore = mmr;
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            selected.add(candidates.remove(best));
+            selectedShingles.add(candidateShingles.remove(best));
+        }
+        return selected;
+    }
+
+    private List<Content> trimToBudget(List<Content> contents) {
+        List<Content> result = new ArrayList<>();
+        int used = 0;
+        for (Content c : contents) {
+            int tokens = tokenCountEstimator.estimateTokenCountInText(c.textSegment().text());
+            if (used + tokens > config.getMaxTokens()) {
+                continue;
+            }
+            used += tokens;
+            result.add(c);
+        }
+        return result;
+    }
+
+    private int countTokens(List<Content> contents) {
+        int total = 0;
+        for (Content c : contents) {
+            total += tokenCountEstimator.estimateTokenCountInText(c.textSegment().text());
+        }
+        return total;
+    }
+
+    private int segmentIndex(Content c) {
+        Object index = c.textSegment().metadata().toMap().get(INDEX);
+        if (index == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(index.toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private double score(Content c) {
+        Object score = c.metadata().get(ContentMetadata.SCORE);
+        return score instanceof Number n ? n.doubleValue() : 0.0;
+    }
+
+    private Set<String> shingles(String text) {
+        String normalized = text.replaceAll("\\s+", "");
+        Set<String> set = new HashSet<>();
+        for (int i = 0; i + 2 <= normalized.length(); i++) {
+            set.add(normalized.substring(i, i + 2));
+        }
+        return set;
+    }
+
+    private double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int intersection = 0;
+        Set<String> smaller = a.size() < b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        for (String s : smaller) {
+            if (larger.contains(s)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+}
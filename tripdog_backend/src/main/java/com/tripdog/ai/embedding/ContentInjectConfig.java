@@ -0,0 +1,23 @@
+package com.tripdog.ai.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 检索内容注入配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.inject")
+public class ContentInjectConfig {
+    /** 是否启用合并/去重/预算裁剪，关闭时原样注入 */
+    private boolean enabled = true;
+    /** 注入内容的token预算 */
+    private int maxTokens = 1500;
+    /** 相似度超过该阈值视为近似重复，直接丢弃 */
+    private double dedupThreshold = 0.85;
+    /** MMR中相关性的权重，越小越偏向多样性 */
+    private double mmrLambda = 0.7;
+}
@@ -0,0 +1,133 @@
+package com.tripdog.ai.embedding;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.tripdog.common.RedisService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.common.Constants.GLOBAL_USER_ID;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/15 9:30
+ * @description: 文档语料版本号。
+ * 每个(用户,角色)语料的版本由 pair/user/role/global 四个Redis计数器组合而成，
+ * 上传/删除文档时原子递增对应计数器。检索结果缓存和进程内索引都以版本号作为有效性依据，
+ * 多节点部署下无需依赖TTL即可保证一致性。
+ * 角色公共语料（userId=0）被该角色下所有用户检索，变更时递增角色计数器。
+ * 递增失败（Redis不可用）时版本号没有变化，旧版本下的缓存仍会命中：失败的计数器记入本地待补列表，
+ * 补上之前涉及这些计数器的语料版本一律返回null（跳过缓存），并由定时任务重试递增。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CorpusVersionService {
+    private static final String PREFIX = "rag:corpus:version:";
+
+    private final RedisService redisService;
+    private final LocalVectorCache localVectorCache;
+
+    /** 递增失败、待补的计数器 */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 当前语料版本；Redis不可用时返回null，调用方应跳过缓存
+     */
+    public String current(Long userId, Long roleId) {
+        return version(List.of(pairKey(userId, roleId), userKey(userId), roleKey(roleId), globalKey()));
+    }
+
+    /**
+     * 角色公共语料（userId=0）的版本，只随角色与全局计数器变化；Redis不可用时返回null
+     */
+    public String currentShared(Long roleId) {
+        return version(List.of(roleKey(roleId), globalKey()));
+    }
+
+    private String version(List<String> keys) {
+        if (!pendingKeys.isEmpty()) {
+            retryPending();
+            if (keys.stream().anyMatch(pendingKeys::contains)) {
+                return null;
+            }
+        }
+        List<String> values = redisService.multiGetString(keys);
+        if (values == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String v : values) {
+            if (!sb.isEmpty()) {
+                sb.append('.');
+            }
+            sb.append(v == null ? "0" : v);
+        }
+        return sb.toString();
+    }
+
+    public void bump(Long userId, Long roleId) {
+        if (GLOBAL_USER_ID.equals(userId)) {
+            bumpRole(roleId);
+            return;
+        }
+        increment(pairKey(userId, roleId));
+        localVectorCache.invalidate(userId, roleId);
+    }
+
+    public void bumpUser(Long userId) {
+        increment(userKey(userId));
+        localVectorCache.invalidateUser(userId);
+    }
+
+    public void bumpRole(Long roleId) {
+        increment(roleKey(roleId));
+        localVectorCache.invalidateRole(roleId);
+    }
+
+    public void bumpAll() {
+        increment(globalKey());
+        localVectorCache.invalidateAll();
+    }
+
+    /**
+     * 补递增失败的计数器；一次成功的递增即可让失败期间写入的缓存全部失效
+     */
+    @Scheduled(fixedDelay = 5_000, initialDelay = 5_000)
+    public void retryPending() {
+        for (String key : pendingKeys) {
+            if (redisService.increment(key, 1) != null) {
+                pendingKeys.remove(key);
+                log.info("语料版本补递增成功: {}", key);
+            }
+        }
+    }
+
+    private void increment(String key) {
+        if (redisService.increment(key, 1) == null) {
+            pendingKeys.add(key);
+            log.warn("语料版本递增失败，补递增前跳过相关缓存: {}", key);
+        }
+    }
+
+    private String pairKey(Long userId, Long roleId) {
+        return PREFIX + userId + ":" + roleId;
+    }
+
+    private String userKey(Long userId) {
+        return PREFIX + "user:" + userId;
+    }
+
+    private String roleKey(Long roleId) {
+        return PREFIX + "role:" + roleId;
+    }
+
+    private String globalKey() {
+        return PREFIX + "global";
+    }
+}
@@ -0,0 +1,105 @@
+package com.tripdog.ai.embedding;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.common.Constants.FILE_ID;
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/11 11:05
+ * @description: (用户,角色)维度的文档检索器，检索范围包含角色公共语料。
+ * 依次尝试：按语料版本的检索结果缓存 {@link RetrievalResultCache}、进程内索引 {@link LocalVectorCache}、pgvector。
+ * 已删除待清理的文档通过 {@link DocTombstoneCache} 从过滤条件中排除。
+ * 向量迁移切换后改用新模型向量化查询并检索影子表 {@link ShadowVectorStore}，进程内索引缓存的是原表向量，不再使用。
+ */
+@Slf4j
+public class DocContentRetriever implements ContentRetriever {
+
+    private final Long userId;
+    private final Long roleId;
+    private final Filter filter;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final QueryEmbeddingBatcher queryEmbeddingBatcher;
+    private final LocalVectorCache localVectorCache;
+    private final CorpusVersionService corpusVersionService;
+    private final RetrievalResultCache retrievalResultCache;
+    private final DocTombstoneCache tombstoneCache;
+    private final ShadowVectorStore shadowVectorStore;
+    private final RetrievalConfig config;
+
+    public DocContentRetriever(Long userId, Long roleId, Filter filter,
+                               EmbeddingStore<TextSegment> embeddingStore,
+                               QueryEmbeddingBatcher queryEmbeddingBatcher,
+                               LocalVectorCache localVectorCache,
+                               CorpusVersionService corpusVersionService,
+                               RetrievalResultCache retrievalResultCache,
+                               DocTombstoneCache tombstoneCache,
+                               ShadowVectorStore shadowVectorStore,
+                               RetrievalConfig config) {
+        this.userId = userId;
+        this.roleId = roleId;
+        this.filter = filter;
+        this.embeddingStore = embeddingStore;
+        this.queryEmbeddingBatcher = queryEmbeddingBatcher;
+        this.localVectorCache = localVectorCache;
+        this.corpusVersionService = corpusVersionService;
+        this.retrievalResultCache = retrievalResultCache;
+        this.tombstoneCache = tombstoneCache;
+        this.shadowVectorStore = shadowVectorStore;
+        this.config = config;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        boolean cutOver = shadowVectorStore.isCutOver();
+        Embedding queryEmbedding = cutOver
+            ? shadowVectorStore.embedQuery(query.text())
+            : queryEmbeddingBatcher.embed(query.text());
+        int maxResults = config.getMaxResults();
+        double minScore = config.getMinScore();
+
+        String version = corpusVersionService.current(userId, roleId);
+        List<EmbeddingMatch<TextSegment>> matches = retrievalResultCache.get(
+            userId, roleId, version, queryEmbedding, maxResults, minScore);
+        if (matches == null) {
+            Set<String> tombstoned = tombstoneCache.tombstoned(userId, roleId, version);
+            Filter filter = tombstoned.isEmpty()
+                ? this.filter
+                : this.filter.and(metadataKey(FILE_ID).isNotIn(tombstoned));
+            matches = cutOver
+                ? null
+                : localVectorCache.search(userId, roleId, version, corpusVersionService.currentShared(roleId),
+                    tombstoned, queryEmbedding, maxResults, minScore);
+            if (matches == null) {
+                EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(queryEmbedding)
+                    .filter(filter)
+                    .maxResults(maxResults)
+                    .minScore(minScore)
+                    .build();
+                matches = (cutOver ? shadowVectorStore.search(request) : embeddingStore.search(request)).matches();
+            }
+            retrievalResultCache.put(userId, roleId, version, queryEmbedding, maxResults, minScore, matches);
+        }
+
+        return matches.stream()
+            .map(m -> Content.from(m.embedded(), Map.of(
+                ContentMetadata.SCORE, m.score(),
+                ContentMetadata.EMBEDDING_ID, m.embeddingId())))
+            .toList();
+    }
+}
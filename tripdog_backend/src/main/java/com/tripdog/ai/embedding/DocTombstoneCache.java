@@ -0,0 +1,45 @@
+package com.tripdog.ai.embedding;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import com.tripdog.mapper.DocMapper;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/20 19:10
+ * @description: 已删除待清理文档（墓碑）的本地缓存。
+ * 删除文档时会递增语料版本，这里按(用户,角色)缓存墓碑文件ID并以版本号判断是否过期，
+ * 检索时据此把墓碑文档排除在过滤条件之外，无需等待后台清理向量。
+ */
+@Component
+@RequiredArgsConstructor
+public class DocTombstoneCache {
+    private final DocMapper docMapper;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private record Entry(String version, Set<String> fileIds) {
+    }
+
+    /**
+     * @param version 当前语料版本，为null时（Redis不可用）直接查库
+     */
+    public Set<String> tombstoned(Long userId, Long roleId, String version) {
+        String key = userId + ":" + roleId;
+        Entry entry = cache.get(key);
+        if (entry != null && version != null && Objects.equals(entry.version(), version)) {
+            return entry.fileIds();
+        }
+        Set<String> fileIds = Set.copyOf(docMapper.selectTombstonedFileIds(userId, roleId));
+        if (version != null) {
+            cache.put(key, new Entry(version, fileIds));
+        }
+        return fileIds;
+    }
+}
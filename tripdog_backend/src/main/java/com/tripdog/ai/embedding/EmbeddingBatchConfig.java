@@ -0,0 +1,29 @@
+package com.tripdog.ai.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 查询向量微批配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.embedding-batch")
+public class EmbeddingBatchConfig {
+    /** 是否启用微批，关闭时每次查询单独调用向量模型 */
+    private boolean enabled = true;
+    /** 凑批最长等待时间（毫秒） */
+    private long lingerMs = 5;
+    /** 单批最大条数，DashScope text-embedding-v3 单次最多10条 */
+    private int maxBatchSize = 10;
+    /** 同时在途的批量请求数 */
+    private int maxConcurrentBatches = 8;
+    /** 排队中的查询上限，队列满时直接单独调用向量模型 */
+    private int maxQueueSize = 1000;
+    /** 等待所在批次返回的最长时间（毫秒），超时后改为单独调用向量模型 */
+    private long timeoutMs = 3000;
+    /** 批次统计日志输出间隔（秒） */
+    private int statsIntervalSeconds = 60;
+}
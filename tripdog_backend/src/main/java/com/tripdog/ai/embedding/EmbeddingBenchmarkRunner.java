@@ -0,0 +1,113 @@
+package com.tripdog.ai.embedding;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.tripdog.ai.ingest.IngestConfig;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/22 15:10
+ * @description: 向量模型基准，通过启动参数触发：
+ * --rag.embedding.benchmark-file=/path/to/doc.pdf [--rag.embedding.benchmark-max-segments=500]
+ * 对容器中所有 EmbeddingModel（rag.embedding.provider=local 时为本地模型与 DashScope）分别测量：
+ * 短查询单条向量化的 p50/p95/p99 延迟，以及按入库批大小 embedAll 的片段吞吐。不写入向量库。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rag.embedding", name = "benchmark-file")
+public class EmbeddingBenchmarkRunner implements ApplicationRunner {
+    private static final int LATENCY_SAMPLES = 50;
+    private static final int QUERY_CHARS = 30;
+
+    private final Map<String, EmbeddingModel> embeddingModels;
+    private final IngestConfig ingestConfig;
+
+    @Value("${rag.embedding.benchmark-file}")
+    private String benchmarkFile;
+
+    @Value("${rag.embedding.benchmark-max-segments:500}")
+    private int maxSegments;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Document document = loadDocument(Path.of(benchmarkFile).toAbsolutePath().toString(), new ApacheTikaDocumentParser());
+        List<TextSegment> segments = DocumentSplitters.recursive(300, 20).split(document);
+        if (segments.size() > maxSegments) {
+            segments = segments.subList(0, maxSegments);
+        }
+        // 聊天查询通常很短，用片段开头模拟
+        List<String> queries = segments.stream()
+            .limit(LATENCY_SAMPLES)
+            .map(s -> s.text().length() > QUERY_CHARS ? s.text().substring(0, QUERY_CHARS) : s.text())
+            .toList();
+
+        log.info("向量模型基准: file={}, segments={}, queries={}, models={}",
+            benchmarkFile, segments.size(), queries.size(), embeddingModels.keySet());
+        for (Map.Entry<String, EmbeddingModel> entry : embeddingModels.entrySet()) {
+            try {
+                benchmark(entry.getKey(), entry.getValue(), segments, queries);
+            } catch (Exception e) {
+                log.error("向量模型基准失败: model={}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private void benchmark(String name, EmbeddingModel model, List<TextSegment> segments, List<String> queries) {
+        // 预热：加载会话、建立连接
+        int dimension = model.embed("warmup").content().dimension();
+
+        long[] latencies = new long[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            long t = System.nanoTime();
+            model.embed(PrefixedEmbeddingModel.query(queries.get(i)));
+            latencies[i] = System.nanoTime() - t;
+        }
+        Arrays.sort(latencies);
+
+        int batchSize = Math.max(1, ingestConfig.getEmbedBatchSize());
+        long t0 = System.currentTimeMillis();
+        for (int from = 0; from < segments.size(); from += batchSize) {
+            List<TextSegment> batch = new ArrayList<>(segments.subList(from, Math.min(from + batchSize, segments.size())));
+            model.embedAll(batch);
+        }
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - t0);
+
+        log.info("向量模型基准: model={}, dimension={}, 查询延迟 p50={}ms p95={}ms p99={}ms, "
+                + "入库 {} segments / {}ms ({} segments/s, batch={})",
+            name, dimension,
+            millis(percentile(latencies, 50)), millis(percentile(latencies, 95)), millis(percentile(latencies, 99)),
+            segments.size(), elapsedMs, String.format("%.1f", segments.size() * 1000.0 / elapsedMs), batchSize);
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f", nanos / 1_000_000.0);
+    }
+}
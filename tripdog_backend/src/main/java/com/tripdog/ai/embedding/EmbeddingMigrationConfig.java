@@ -0,0 +1,39 @@
+package com.tripdog.ai.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 向量迁移配置：更换向量模型或维度时写入的影子表与新模型参数
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.migration")
+public class EmbeddingMigrationConfig {
+    /** 影子表名，不能与当前 pgvector.table 相同 */
+    private String targetTable;
+    /** 新向量模型提供方：remote 使用 DashScope（modelName）；local 使用进程内模型（rag.embedding.local） */
+    private String provider = "remote";
+    /** 新的 DashScope 向量模型，provider=local 时取 rag.embedding.local.modelName */
+    private String modelName = "text-embedding-v3";
+    /** 新模型输出维度 */
+    private int dimension = 1024;
+    /** 新模型的向量化请求速率上限（次/秒），所有实例的双写与回填合计，用于控制迁移成本；本地模型不限流 */
+    private double embedRequestsPerSecond = 5;
+    /** Redis 不可用时退回本实例令牌桶的容量 */
+    private int embedBurst = 5;
+    /** 新模型单次向量化的片段数 */
+    private int embedBatchSize = 10;
+    /** 回填每页文档数，每页完成后写入检查点 */
+    private int docBatchSize = 20;
+    /** 单篇文档的重做次数上限，超过后跳过并计入 failedDocs，不阻塞迁移 */
+    private int maxDocAttempts = 3;
+    /** 连续失败的文档数达到该值时停止回填（通常是模型或向量库不可用），而不是把所有文档都记为失败 */
+    private int maxConsecutiveFailures = 10;
+    /** 回填完成后重做双写失败文档的间隔（毫秒） */
+    private long retryIntervalMs = 60000;
+    /** 各实例从MySQL刷新迁移状态的间隔（毫秒），双写开启与检索切换最迟在该间隔后全部生效 */
+    private long stateRefreshMs = 5000;
+}
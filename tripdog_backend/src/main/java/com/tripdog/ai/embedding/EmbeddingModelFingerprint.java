@@ -0,0 +1,67 @@
+package com.tripdog.ai.embedding;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/22 16:10
+ * @description: 当前向量模型的标识：provider/模型名/维度。
+ * 片段向量缓存以它作为 namespace，换 provider 或模型（即使维度相同）都不会复用其他模型的向量；
+ * 向量表以表注释记录写入它的模型标识，启动时比对，不一致直接失败，避免两种向量空间混在一张表里。
+ */
+@Slf4j
+@Component
+public class EmbeddingModelFingerprint {
+    private static final String COMMENT_PREFIX = "embedding-model=";
+    /** 引入模型标识之前的向量表都由 DashScope text-embedding-v3 写入 */
+    private static final String LEGACY_PROVIDER = "remote";
+    private static final String LEGACY_MODEL = "text-embedding-v3";
+
+    private final String id;
+
+    public EmbeddingModelFingerprint(@Value("${rag.embedding.provider:remote}") String provider,
+                                     @Value("${langchain4j.community.dashscope.embedding-model.model-name:text-embedding-v3}")
+                                     String remoteModel,
+                                     LocalEmbeddingConfig localConfig,
+                                     PgVectorProperties pgVectorProperties) {
+        String model = "local".equals(provider) ? localConfig.getModelName() : remoteModel;
+        this.id = of(provider, model, pgVectorProperties.getDimension());
+    }
+
+    public static String of(String provider, String model, int dimension) {
+        return provider + "/" + model + "/" + dimension;
+    }
+
+    /**
+     * @return 当前模型标识，如 remote/text-embedding-v3/1024、local/multilingual-e5-small/384
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * 校验向量表由当前模型写入：表上没有记录时，空表记为当前模型，已有数据的表按旧版本的 DashScope 模型记录
+     * @param dimension 表的向量维度（已通过维度校验）
+     */
+    public static void verify(PgVectorJdbc pgVectorJdbc, String table, String expected, int dimension) {
+        JdbcTemplate jdbc = pgVectorJdbc.jdbcTemplate();
+        String comment = jdbc.queryForObject("SELECT obj_description(to_regclass(?), 'pg_class')", String.class, table);
+        String recorded = comment != null && comment.startsWith(COMMENT_PREFIX)
+            ? comment.substring(COMMENT_PREFIX.length())
+            : null;
+        if (recorded == null) {
+            Boolean hasRows = jdbc.queryForObject("SELECT EXISTS (SELECT 1 FROM " + table + ")", Boolean.class);
+            recorded = Boolean.TRUE.equals(hasRows) ? of(LEGACY_PROVIDER, LEGACY_MODEL, dimension) : expected;
+            jdbc.execute("COMMENT ON TABLE " + table + " IS '" + (COMMENT_PREFIX + recorded).replace("'", "''") + "'");
+            log.info("向量表记录模型标识: table={}, model={}", table, recorded);
+        }
+        if (!recorded.equals(expected)) {
+            throw new IllegalStateException("向量表 " + table + " 由 " + recorded + " 写入，与当前向量模型 " + expected
+                + " 不一致；更换向量模型请配置新表并重建索引，或通过 rag.migration 迁移");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.tripdog.ai.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 进程内向量模型配置（rag.embedding.provider=local 时生效）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.embedding.local")
+public class LocalEmbeddingConfig {
+    /** 模型名称，与维度一起构成模型标识（片段向量缓存 namespace、向量表模型校验），更换模型文件时需同步修改 */
+    private String modelName = "multilingual-e5-small";
+    /** ONNX模型文件路径，如 multilingual-e5-small 导出的 model.onnx */
+    private String modelPath;
+    /** 与模型配套的 tokenizer.json 路径 */
+    private String tokenizerPath;
+    /** 池化方式：MEAN 或 CLS，需与模型训练时一致 */
+    private String poolingMode = "MEAN";
+    /** 查询前缀，e5 系列要求查询以 "query: " 开头，不需要前缀的模型配置为空 */
+    private String queryPrefix = "query: ";
+    /** 文档片段前缀，e5 系列要求片段以 "passage: " 开头 */
+    private String passagePrefix = "passage: ";
+    /** 推理线程数，批量向量化时各片段在线程池中并行推理 */
+    private int threads = Runtime.getRuntime().availableProcessors();
+}
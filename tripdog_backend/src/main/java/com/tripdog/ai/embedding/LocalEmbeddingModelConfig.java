@@ -0,0 +1,72 @@
+package com.tripdog.ai.embedding;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.OnnxEmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.PoolingMode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/22 14:30
+ * @description: 进程内CPU向量模型（ONNX Runtime），通过 rag.embedding.provider=local 按部署选择。
+ * 注册为 @Primary，查询向量与文档入库都改用本地模型，DashScope 向量模型保留用于基准对比。
+ * 启动时校验模型输出维度与 pgvector.dimension 一致，向量表的模型标识由 {@link EmbeddingModelFingerprint} 校验，
+ * 维度相同的不同模型同样不能共用一张表；迁移方式：配置新的 pgvector.table（维度不同时同时修改 pgvector.dimension），
+ * 再以 --rag.reindex.run=true 从提取文本重建索引，或通过 rag.migration 不停机迁移。
+ * 查询与片段按配置加上指令前缀（e5 系列的 "query: " / "passage: "）。
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rag.embedding", name = "provider", havingValue = "local")
+public class LocalEmbeddingModelConfig {
+    private final LocalEmbeddingConfig config;
+    private final PgVectorProperties pgVectorProperties;
+
+    @Bean(destroyMethod = "shutdown")
+    ExecutorService localEmbeddingExecutor() {
+        return Executors.newFixedThreadPool(Math.max(1, config.getThreads()),
+            new CustomizableThreadFactory("local-embed-"));
+    }
+
+    @Bean
+    @Primary
+    EmbeddingModel localEmbeddingModel(ExecutorService localEmbeddingExecutor) {
+        return create(config, localEmbeddingExecutor, pgVectorProperties.getDimension());
+    }
+
+    /**
+     * 加载本地模型并校验输出维度，向量迁移以本地模型为目标时也通过这里创建
+     * @param dimension 期望的向量维度
+     */
+    public static EmbeddingModel create(LocalEmbeddingConfig config, ExecutorService executor, int dimension) {
+        Path model = Path.of(config.getModelPath());
+        Path tokenizer = Path.of(config.getTokenizerPath());
+        if (!Files.isReadable(model) || !Files.isReadable(tokenizer)) {
+            throw new IllegalStateException("本地向量模型文件不存在: " + model + ", " + tokenizer);
+        }
+        long start = System.currentTimeMillis();
+        OnnxEmbeddingModel embeddingModel = new OnnxEmbeddingModel(model, tokenizer,
+            PoolingMode.valueOf(config.getPoolingMode()), executor);
+
+        if (embeddingModel.dimension() != dimension) {
+            throw new IllegalStateException("本地向量模型维度 " + embeddingModel.dimension() + " 与期望维度 "
+                + dimension + " 不一致，请为该模型配置新的向量表并重建索引");
+        }
+        log.info("本地向量模型已加载: model={}, dimension={}, threads={}, 耗时={}ms",
+            config.getModelName(), dimension, config.getThreads(), System.currentTimeMillis() - start);
+        return new PrefixedEmbeddingModel(embeddingModel, config.getQueryPrefix(), config.getPassagePrefix());
+    }
+}
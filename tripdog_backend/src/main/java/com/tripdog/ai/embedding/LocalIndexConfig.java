@@ -0,0 +1,21 @@
+package com.tripdog.ai.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 进程内向量索引配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.local-index")
+public class LocalIndexConfig {
+    /** 是否启用进程内索引，关闭时所有检索直接走pgvector */
+    private boolean enabled = false;
+    /** 所有本地索引占用内存的上限（MB），超出后按LRU淘汰 */
+    private long maxMemoryMb = 256;
+    /** 单个(用户,角色)语料允许加载的最大片段数，超出则不缓存 */
+    private int maxSegmentsPerCorpus = 5000;
+}
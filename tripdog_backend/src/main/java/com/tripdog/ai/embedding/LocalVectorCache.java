@@ -0,0 +1,240 @@
+package com.tripdog.ai.embedding;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Predicate;
+
+import org.springframework.stereotype.Component;
+
+import com.tripdog.ai.embedding.PgVectorChunkDao.StoredChunk;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.common.Constants.FILE_ID;
+import static com.tripdog.common.Constants.GLOBAL_USER_ID;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/11 10:40
+ * @description: 热点用户文档向量的进程内缓存层。
+ * 首次检索时把(用户,角色)的私有片段与角色公共语料（userId=0）分别从pgvector精确读取（不经过ANN）成 {@link LocalVectorIndex}，
+ * 之后在本地完成检索：墓碑文档的片段在各索引取topK之前排除，两个索引的topK再按分数合并。公共语料每个角色只缓存一份，
+ * 该角色下所有用户共用，不随用户数重复占用内存。
+ * 索引记录加载时的语料版本（私有索引用完整版本，公共索引用角色版本），版本变化（含其他节点上的上传/删除）时重新加载，
+ * 总内存超过预算时按LRU淘汰。
+ * 同一语料同一版本的并发未命中只加载一次（single-flight）；加载期间发生的失效会取消这次加载，
+ * 加载结果既不缓存也不返回，调用方回退到pgvector，失效不会因与加载交错而丢失。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LocalVectorCache {
+    private final PgVectorChunkDao chunkDao;
+    private final LocalIndexConfig config;
+
+    /** accessOrder=true，迭代顺序即LRU顺序 */
+    private final LinkedHashMap<String, CachedIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    /** 进行中的加载，失效时移除并取消 */
+    private final Map<String, Loading> loading = new HashMap<>();
+    private long usedBytes = 0;
+
+    /**
+     * 在本地索引中检索用户私有片段与角色公共语料，合并后按分数取前 maxResults 条
+     *
+     * @param version 用户语料版本，为null（Redis不可用）时无法判断索引是否过期，不使用本地索引
+     * @param sharedVersion 角色公共语料版本，为null时同上
+     * @param excludedFileIds 墓碑文档，其片段不参与检索
+     * @return 检索结果；未启用、任一语料过大无法缓存或加载期间被失效时返回null，由调用方回退到pgvector
+     */
+    public List<EmbeddingMatch<TextSegment>> search(Long userId, Long roleId, String version, String sharedVersion,
+                                                    Set<String> excludedFileIds, Embedding query,
+                                                    int maxResults, double minScore) {
+        if (!config.isEnabled() || version == null || sharedVersion == null) {
+            return null;
+        }
+        CachedIndex shared = index(GLOBAL_USER_ID, roleId, sharedVersion, query.dimension());
+        if (shared == null) {
+            return null;
+        }
+        CachedIndex own = null;
+        if (!GLOBAL_USER_ID.equals(userId)) {
+            own = index(userId, roleId, version, query.dimension());
+            if (own == null) {
+                return null;
+            }
+        }
+
+        Predicate<TextSegment> live = segment -> excludedFileIds.isEmpty() || segment == null
+            || !excludedFileIds.contains(segment.metadata().getString(FILE_ID));
+        List<EmbeddingMatch<TextSegment>> merged = new ArrayList<>(shared.index().search(query, maxResults, minScore, live));
+        if (own != null) {
+            merged.addAll(own.index().search(query, maxResults, minScore, live));
+        }
+        return merged.stream()
+            .sorted(Comparator.comparingDouble((EmbeddingMatch<TextSegment> m) -> m.score()).reversed())
+            .limit(maxResults)
+            .toList();
+    }
+
+    /**
+     * 取指定版本的索引，未命中时加载；同一版本的并发未命中等待同一次加载
+     */
+    private CachedIndex index(Long userId, Long roleId, String version, int dimension) {
+        String key = key(userId, roleId);
+        Loading mine;
+        Loading inFlight;
+        synchronized (this) {
+            CachedIndex cached = indexes.get(key);
+            if (cached != null && version.equals(cached.version())) {
+                return cached;
+            }
+            inFlight = loading.get(key);
+            if (inFlight != null && version.equals(inFlight.version())) {
+                mine = null;
+            } else {
+                mine = new Loading(version, new CompletableFuture<>());
+                loading.put(key, mine);
+            }
+        }
+        if (mine == null) {
+            // 在锁外等待，加载失败或被失效取消时回退到pgvector
+            try {
+                return inFlight.future().join();
+            } catch (CancellationException | CompletionException e) {
+                return null;
+            }
+        }
+
+        CachedIndex result;
+        try {
+            LocalVectorIndex index = load(userId, roleId, dimension);
+            result = index == null ? null : new CachedIndex(version, index);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loading.remove(key, mine);
+            }
+            mine.future().completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            // 加载期间被失效或被更新版本的加载取代时，结果可能已过期
+            if (!loading.remove(key, mine)) {
+                result = null;
+            } else if (result != null) {
+                put(key, result);
+            }
+        }
+        mine.future().complete(result);
+        return result;
+    }
+
+    /**
+     * 文档变更后失效对应语料
+     */
+    public synchronized void invalidate(Long userId, Long roleId) {
+        remove(key(userId, roleId));
+    }
+
+    public synchronized void invalidateUser(Long userId) {
+        removeIf(k -> k.startsWith(userId + ":"));
+    }
+
+    public synchronized void invalidateRole(Long roleId) {
+        removeIf(k -> k.endsWith(":" + roleId));
+    }
+
+    public synchronized void invalidateAll() {
+        indexes.clear();
+        usedBytes = 0;
+        loading.values().forEach(l -> l.future().cancel(false));
+        loading.clear();
+    }
+
+    /**
+     * 按元数据精确读取整个语料（量化存储下ANN召回可能漏掉片段，不能用于加载全集）；条数超过上限时放弃缓存
+     */
+    private LocalVectorIndex load(Long userId, Long roleId, int dimension) {
+        int limit = config.getMaxSegmentsPerCorpus();
+        long start = System.currentTimeMillis();
+        List<StoredChunk> all = chunkDao.scan(userId, roleId, limit + 1);
+        if (all.size() > limit) {
+            log.debug("语料片段数超过本地索引上限 {}，跳过缓存", limit);
+            return null;
+        }
+        LocalVectorIndex index = new LocalVectorIndex(all, dimension);
+        log.info("加载本地向量索引: segments={}, bytes={}, cost={}ms",
+            index.size(), index.estimatedBytes(), System.currentTimeMillis() - start);
+        return index;
+    }
+
+    private synchronized void put(String key, CachedIndex cached) {
+        long budget = config.getMaxMemoryMb() * 1024 * 1024;
+        if (cached.index().estimatedBytes() > budget) {
+            return;
+        }
+        removeIndex(key);
+        indexes.put(key, cached);
+        usedBytes += cached.index().estimatedBytes();
+
+        Iterator<Map.Entry<String, CachedIndex>> it = indexes.entrySet().iterator();
+        while (usedBytes > budget && it.hasNext()) {
+            Map.Entry<String, CachedIndex> eldest = it.next();
+            usedBytes -= eldest.getValue().index().estimatedBytes();
+            it.remove();
+            log.debug("本地向量索引超出内存预算，淘汰 {}", eldest.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        removeIndex(key);
+        cancelLoading(key);
+    }
+
+    private void removeIndex(String key) {
+        CachedIndex old = indexes.remove(key);
+        if (old != null) {
+            usedBytes -= old.index().estimatedBytes();
+        }
+    }
+
+    private void cancelLoading(String key) {
+        Loading inFlight = loading.remove(key);
+        if (inFlight != null) {
+            inFlight.future().cancel(false);
+        }
+    }
+
+    private void removeIf(Predicate<String> keyMatcher) {
+        Iterator<Map.Entry<String, CachedIndex>> it = indexes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, CachedIndex> e = it.next();
+            if (keyMatcher.test(e.getKey())) {
+                usedBytes -= e.getValue().index().estimatedBytes();
+                it.remove();
+            }
+        }
+        loading.keySet().stream().filter(keyMatcher).toList().forEach(this::cancelLoading);
+    }
+
+    private String key(Long userId, Long roleId) {
+        return userId + ":" + roleId;
+    }
+
+    private record CachedIndex(String version, LocalVectorIndex index) {
+    }
+
+    private record Loading(String version, CompletableFuture<CachedIndex> future) {
+    }
+}
@@ -0,0 +1,111 @@
+package com.tripdog.ai.embedding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+import com.tripdog.ai.embedding.PgVectorChunkDao.StoredChunk;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.RelevanceScore;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/11 10:12
+ * @description: 单个(用户,角色)语料的扁平向量索引。
+ * 所有向量归一化后按行连续存放在一个float数组中，检索时做一次顺序内积扫描，
+ * 几千条片段的规模下比HNSW更省内存，且循环可被JIT自动向量化。
+ */
+public class LocalVectorIndex {
+    private final int dimension;
+    private final float[] vectors;
+    private final String[] ids;
+    private final TextSegment[] segments;
+    private final long estimatedBytes;
+
+    public LocalVectorIndex(List<StoredChunk> chunks, int dimension) {
+        int size = chunks.size();
+        this.dimension = dimension;
+        this.vectors = new float[size * dimension];
+        this.ids = new String[size];
+        this.segments = new TextSegment[size];
+
+        long textBytes = 0;
+        for (int i = 0; i < size; i++) {
+            StoredChunk chunk = chunks.get(i);
+            float[] v = chunk.embedding().vector();
+            float norm = norm(v);
+            for (int d = 0; d < dimension; d++) {
+                vectors[i * dimension + d] = v[d] / norm;
+            }
+            ids[i] = chunk.id();
+            segments[i] = chunk.segment();
+            if (segments[i] != null) {
+                textBytes += 2L * segments[i].text().length();
+            }
+        }
+        this.estimatedBytes = 4L * vectors.length + textBytes + 64L * size;
+    }
+
+    /**
+     * 暴力检索topK，分数与pgvector保持一致：(cos + 1) / 2
+     * @param accept 片段过滤条件，在取topK之前生效，被排除的片段不占名额
+     */
+    public List<EmbeddingMatch<TextSegment>> search(Embedding query, int maxResults, double minScore,
+                                                    Predicate<TextSegment> accept) {
+        float[] q = query.vector();
+        float qNorm = norm(q);
+        PriorityQueue<ScoredIndex> topK = new PriorityQueue<>();
+        int size = ids.length;
+        for (int i = 0; i < size; i++) {
+            int offset = i * dimension;
+            float dot = 0f;
+            for (int d = 0; d < dimension; d++) {
+                dot += vectors[offset + d] * q[d];
+            }
+            double score = RelevanceScore.fromCosineSimilarity(dot / qNorm);
+            boolean full = topK.size() >= maxResults;
+            // 过滤条件放在分数判断之后，只对能进入topK的片段求值
+            if (score < minScore || (full && score <= topK.peek().score) || !accept.test(segments[i])) {
+                continue;
+            }
+            if (full) {
+                topK.poll();
+            }
+            topK.add(new ScoredIndex(i, score));
+        }
+
+        List<EmbeddingMatch<TextSegment>> result = new ArrayList<>(topK.size());
+        while (!topK.isEmpty()) {
+            ScoredIndex si = topK.poll();
+            result.add(new EmbeddingMatch<>(si.score, ids[si.index], null, segments[si.index]));
+        }
+        return result.reversed();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    private static float norm(float[] v) {
+        double sum = 0;
+        for (float f : v) {
+            sum += f * f;
+        }
+        return sum == 0 ? 1f : (float) Math.sqrt(sum);
+    }
+
+    private record ScoredIndex(int index, double score) implements Comparable<ScoredIndex> {
+        @Override
+        public int compareTo(ScoredIndex o) {
+            return Double.compare(score, o.score);
+        }
+    }
+}
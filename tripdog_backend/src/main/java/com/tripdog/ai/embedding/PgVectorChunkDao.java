@@ -0,0 +1,191 @@
+package com.tripdog.ai.embedding;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/19 15:10
+ * @description: 按文档维护片段的JDBC操作，兼容原生表与量化表两种存储布局。
+ * 替换文档时新增与删除在同一个pgvector事务中完成，检索要么看到旧版本要么看到新版本。
+ * 向量迁移进行中时，删除同步作用于影子表（影子表的片段ID与原表一致）。
+ */
+@Component
+@RequiredArgsConstructor
+public class PgVectorChunkDao {
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final PgVectorJdbc pgVectorJdbc;
+    private final PgVectorProperties pgVectorProperties;
+    private final ObjectMapper objectMapper;
+    private final ShadowVectorStore shadowVectorStore;
+
+    /**
+     * 查询文档当前的全部片段ID
+     */
+    public Set<String> chunkIds(String fileId) {
+        return new HashSet<>(pgVectorJdbc.jdbcTemplate().queryForList(
+            "SELECT embedding_id::text FROM " + segmentTable() + " WHERE metadata->>'fileId' = ?", String.class, fileId));
+    }
+
+    /**
+     * 存储中的一个片段：ID、全精度向量与文本
+     */
+    public record StoredChunk(String id, Embedding embedding, TextSegment segment) {
+    }
+
+    /**
+     * 按元数据精确读取(用户,角色)范围内的全部片段，不经过ANN，量化存储时向量取自全精度侧表；
+     * 走 (roleId, userId) 表达式索引
+     * @param limit 最多读取条数
+     */
+    public List<StoredChunk> scan(Long userId, Long roleId, int limit) {
+        String sql = embeddingStore instanceof QuantizedPgVectorEmbeddingStore
+            ? "SELECT q.embedding_id::text AS embedding_id, f.embedding::text AS embedding, q.text, q.metadata::text AS metadata"
+                + " FROM " + segmentTable() + " q JOIN "
+                + QuantizedPgVectorEmbeddingStore.fullTable(pgVectorProperties.getTable())
+                + " f ON f.embedding_id = q.embedding_id"
+                + " WHERE q.metadata->>'roleId' = ? AND q.metadata->>'userId' = ? LIMIT ?"
+            : "SELECT embedding_id::text AS embedding_id, embedding::text AS embedding, text, metadata::text AS metadata"
+                + " FROM " + segmentTable()
+                + " WHERE metadata->>'roleId' = ? AND metadata->>'userId' = ? LIMIT ?";
+        return pgVectorJdbc.jdbcTemplate().query(sql, (rs, rowNum) -> {
+            String text = rs.getString("text");
+            return new StoredChunk(rs.getString("embedding_id"),
+                Embedding.from(QuantizedPgVectorEmbeddingStore.parseVector(rs.getString("embedding"))),
+                text == null ? null : TextSegment.from(text, fromJson(rs.getString("metadata"))));
+        }, String.valueOf(roleId), String.valueOf(userId), limit);
+    }
+
+    /**
+     * 按用户/角色范围删除一批向量：先按元数据取不超过limit个ID，再按主键删除，
+     * 单条语句只锁定有限行，大范围清理不会长时间阻塞检索；取ID走 userId（_user）与 roleId（_role_user）表达式索引
+     * @param userId 用户ID，为null不限
+     * @param roleId 角色ID，为null不限
+     * @return 本批删除的片段数，0表示已删完
+     */
+    public int removeBatch(Long userId, Long roleId, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT embedding_id::text FROM ").append(segmentTable()).append(" WHERE true");
+        List<Object> args = new ArrayList<>();
+        if (userId != null) {
+            sql.append(" AND metadata->>'userId' = ?");
+            args.add(String.valueOf(userId));
+        }
+        if (roleId != null) {
+            sql.append(" AND metadata->>'roleId' = ?");
+            args.add(String.valueOf(roleId));
+        }
+        sql.append(" LIMIT ").append(limit);
+        List<String> ids = pgVectorJdbc.jdbcTemplate().queryForList(sql.toString(), String.class, args.toArray());
+        if (!ids.isEmpty()) {
+            embeddingStore.removeAll(ids);
+            shadowVectorStore.removeAll(ids);
+        }
+        return ids.size();
+    }
+
+    /**
+     * 按片段ID分批删除文档的全部向量，每批走主键删除，避免对整表做元数据过滤删除
+     * @return 删除的片段数
+     */
+    public int removeChunks(String fileId, int batchSize) {
+        List<String> ids = new ArrayList<>(chunkIds(fileId));
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            embeddingStore.removeAll(ids.subList(from, Math.min(from + batchSize, ids.size())));
+        }
+        shadowVectorStore.removeFile(fileId);
+        return ids.size();
+    }
+
+    /**
+     * 在一个事务内写入新增片段、刷新保留片段的元数据（位置可能变化）并删除移除的片段
+     */
+    public void swap(List<String> addIds, List<Embedding> addEmbeddings, List<TextSegment> addSegments,
+                     List<String> keptIds, List<TextSegment> keptSegments, Collection<String> removeIds) {
+        List<Object[]> keptRows = new ArrayList<>(keptIds.size());
+        for (int i = 0; i < keptIds.size(); i++) {
+            keptRows.add(new Object[]{toJson(keptSegments.get(i)), keptIds.get(i)});
+        }
+        if (embeddingStore instanceof QuantizedPgVectorEmbeddingStore quantized) {
+            // 量化存储与本DAO共用同一个数据源，内层事务自动加入外层事务
+            pgVectorJdbc.transactionTemplate().executeWithoutResult(status -> {
+                quantized.addAll(addIds, addEmbeddings, addSegments);
+                if (!keptRows.isEmpty()) {
+                    pgVectorJdbc.jdbcTemplate().batchUpdate("UPDATE " + segmentTable()
+                        + " SET metadata = ?::jsonb WHERE embedding_id = ?::uuid", keptRows);
+                }
+                quantized.removeAll(removeIds);
+            });
+            return;
+        }
+
+        String table = pgVectorProperties.getTable();
+        List<Object[]> rows = new ArrayList<>(addIds.size());
+        for (int i = 0; i < addIds.size(); i++) {
+            rows.add(new Object[]{
+                addIds.get(i),
+                QuantizedPgVectorEmbeddingStore.toVectorLiteral(addEmbeddings.get(i).vector()),
+                addSegments.get(i).text(),
+                toJson(addSegments.get(i))
+            });
+        }
+        pgVectorJdbc.transactionTemplate().executeWithoutResult(status -> {
+            if (!rows.isEmpty()) {
+                pgVectorJdbc.jdbcTemplate().batchUpdate("INSERT INTO " + table
+                    + " (embedding_id, embedding, text, metadata) VALUES (?::uuid, ?::vector, ?, ?::json)"
+                    + " ON CONFLICT (embedding_id) DO UPDATE SET embedding = EXCLUDED.embedding,"
+                    + " text = EXCLUDED.text, metadata = EXCLUDED.metadata", rows);
+            }
+            if (!keptRows.isEmpty()) {
+                pgVectorJdbc.jdbcTemplate().batchUpdate("UPDATE " + table
+                    + " SET metadata = ?::json WHERE embedding_id = ?::uuid", keptRows);
+            }
+            if (!removeIds.isEmpty()) {
+                pgVectorJdbc.jdbcTemplate().update("DELETE FROM " + table
+                    + " WHERE embedding_id = ANY(string_to_array(?, ',')::uuid[])", String.join(",", removeIds));
+            }
+        });
+    }
+
+    private String segmentTable() {
+        return embeddingStore instanceof QuantizedPgVectorEmbeddingStore
+            ? QuantizedPgVectorEmbeddingStore.quantizedTable(pgVectorProperties.getTable())
+            : pgVectorProperties.getTable();
+    }
+
+    private Metadata fromJson(String json) {
+        if (json == null) {
+            return new Metadata();
+        }
+        try {
+            return Metadata.from(objectMapper.readValue(json, MAP_TYPE));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(TextSegment segment) {
+        try {
+            return objectMapper.writeValueAsString(segment.metadata().toMap());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
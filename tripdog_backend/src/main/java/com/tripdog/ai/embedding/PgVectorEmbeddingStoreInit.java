@@ -2,72 +2,78 @@ package com.tripdog.ai.embedding;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.util.StringUtils;
 
-import com.tripdog.common.utils.ThreadLocalUtils;
-
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * @author: iohw
  * @date: 2025/9/26 13:24
- * @description:
+ * @description: 向量存储。维度取自 pgvector.dimension，启动时与已有表的维度比对，
+ * 不一致说明更换了向量模型却沿用旧表，直接失败而不是写入维度错误的向量；
+ * 维度相同的不同模型通过表上记录的模型标识区分（{@link EmbeddingModelFingerprint}）。
  */
+@Slf4j
 @Configuration
 @RequiredArgsConstructor
 public class PgVectorEmbeddingStoreInit {
-    final String ROLE_ID = "roleId";
-    final String USER_ID = "userId";
-    final String FILE_ID = "fileId";
-    final String FILE_NAME = "fileName";
-    final String UPLOAD_TIME = "uploadTime";
     final PgVectorProperties pgVectorProperties;
+    final PgVectorJdbc pgVectorJdbc;
+    final EmbeddingModelFingerprint fingerprint;
 
     @Bean
     EmbeddingStore<TextSegment> initEmbeddingStore() {
-        return PgVectorEmbeddingStore.builder()
+        int dimension = pgVectorProperties.getDimension();
+        String table = pgVectorProperties.getStorageMode() == PgVectorProperties.StorageMode.FULL
+            ? pgVectorProperties.getTable()
+            : QuantizedPgVectorEmbeddingStore.fullTable(pgVectorProperties.getTable());
+        checkDimension(pgVectorJdbc, table, dimension);
+
+        if (pgVectorProperties.getStorageMode() != PgVectorProperties.StorageMode.FULL) {
+            QuantizedPgVectorEmbeddingStore store = new QuantizedPgVectorEmbeddingStore(
+                pgVectorJdbc,
+                pgVectorProperties.getTable(),
+                dimension,
+                pgVectorProperties.getStorageMode(),
+                pgVectorProperties.getRerankFactor(),
+                pgVectorProperties.getEfSearch());
+            EmbeddingModelFingerprint.verify(pgVectorJdbc, table, fingerprint.id(), dimension);
+            return store;
+        }
+        EmbeddingStore<TextSegment> store = PgVectorEmbeddingStore.builder()
                 .host(pgVectorProperties.getHost())
                 .port(pgVectorProperties.getPort())
                 .user(pgVectorProperties.getUser())
                 .password(pgVectorProperties.getPassword())
                 .database(pgVectorProperties.getDatabase())
                 .table(pgVectorProperties.getTable())
-                .dimension(1024)
+                .dimension(dimension)
                 .dropTableFirst(false)
                 .createTable(true)
                 .build();
-
+        // 账号/角色清理按 userId、roleId 分批取片段ID，没有表达式索引时每批都要扫全表
+        pgVectorJdbc.jdbcTemplate().execute("CREATE INDEX IF NOT EXISTS " + table + "_role_user ON " + table
+            + " ((metadata->>'roleId'), (metadata->>'userId'))");
+        pgVectorJdbc.jdbcTemplate().execute("CREATE INDEX IF NOT EXISTS " + table + "_user ON " + table
+            + " ((metadata->>'userId'))");
+        EmbeddingModelFingerprint.verify(pgVectorJdbc, table, fingerprint.id(), dimension);
+        return store;
     }
 
-    @Bean
-    public EmbeddingStoreIngestor embeddingStoreIngestor(EmbeddingStore<TextSegment> embeddingStore, EmbeddingModel embeddingModel) {
-        DocumentSplitter documentSplitter = DocumentSplitters.recursive(300,20);
-        return EmbeddingStoreIngestor.builder()
-            .embeddingModel(embeddingModel)
-            .embeddingStore(embeddingStore)
-            .documentSplitter(documentSplitter)
-            .documentTransformer(dc -> {
-                Long roleId = (Long) ThreadLocalUtils.get(ROLE_ID);
-                Long userId = (Long) ThreadLocalUtils.get(USER_ID);
-                String fileId = (String) ThreadLocalUtils.get(FILE_ID);
-                String fileName = (String) ThreadLocalUtils.get(FILE_NAME);
-                String uploadTime = (String) ThreadLocalUtils.get(UPLOAD_TIME);
-
-                if(roleId != null) dc.metadata().put(ROLE_ID, roleId);
-                if(userId != null) dc.metadata().put(USER_ID, userId);
-                if(StringUtils.hasText(fileId)) dc.metadata().put(FILE_ID, fileId);
-                if(StringUtils.hasText(fileName)) dc.metadata().put(FILE_NAME, fileName);
-                if(StringUtils.hasText(uploadTime)) dc.metadata().put(UPLOAD_TIME, uploadTime);
-
-                return dc;
-            })
-            .build();
+    /**
+     * pgvector 的 vector(n) 列把维度存放在 atttypmod 中；表不存在时跳过
+     */
+    static void checkDimension(PgVectorJdbc pgVectorJdbc, String table, int dimension) {
+        Integer existing = pgVectorJdbc.jdbcTemplate().query(
+            "SELECT atttypmod FROM pg_attribute WHERE attrelid = to_regclass(?) AND attname = 'embedding'",
+            rs -> rs.next() ? rs.getInt(1) : null, table);
+        if (existing != null && existing > 0 && existing != dimension) {
+            throw new IllegalStateException("向量表 " + table + " 的维度为 " + existing + "，与 pgvector.dimension "
+                + dimension + " 不一致；更换向量模型请配置新表并重建索引");
+        }
+        log.info("向量表维度校验通过: table={}, dimension={}", table, dimension);
     }
 }
@@ -0,0 +1,106 @@
+package com.tripdog.ai.embedding;
+
+import java.util.Collection;
+import java.util.List;
+
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Not;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/12 9:50
+ * @description: 把langchain4j的元数据Filter翻译为针对jsonb列 metadata 的SQL条件。
+ * 等值类比较统一按文本比较（metadata->>'key'），大小比较转numeric。
+ */
+public class PgVectorFilterMapper {
+    private static final String COLUMN = "metadata";
+
+    private PgVectorFilterMapper() {
+    }
+
+    /**
+     * @param filter 元数据过滤器，可为null
+     * @param params 输出参数，按占位符顺序追加
+     * @return SQL条件片段
+     */
+    public static String toSql(Filter filter, List<Object> params) {
+        if (filter == null) {
+            return "TRUE";
+        }
+        if (filter instanceof And and) {
+            return "(" + toSql(and.left(), params) + " AND " + toSql(and.right(), params) + ")";
+        }
+        if (filter instanceof Or or) {
+            return "(" + toSql(or.left(), params) + " OR " + toSql(or.right(), params) + ")";
+        }
+        if (filter instanceof Not not) {
+            return "(NOT " + toSql(not.expression(), params) + ")";
+        }
+        if (filter instanceof IsEqualTo f) {
+            params.add(String.valueOf(f.comparisonValue()));
+            return text(f.key()) + " = ?";
+        }
+        if (filter instanceof IsNotEqualTo f) {
+            params.add(String.valueOf(f.comparisonValue()));
+            return "(" + text(f.key()) + " IS NULL OR " + text(f.key()) + " <> ?)";
+        }
+        if (filter instanceof IsIn f) {
+            return text(f.key()) + " IN (" + placeholders(f.comparisonValues(), params) + ")";
+        }
+        if (filter instanceof IsNotIn f) {
+            return "(" + text(f.key()) + " IS NULL OR " + text(f.key())
+                + " NOT IN (" + placeholders(f.comparisonValues(), params) + "))";
+        }
+        if (filter instanceof IsGreaterThan f) {
+            params.add(f.comparisonValue());
+            return numeric(f.key()) + " > ?";
+        }
+        if (filter instanceof IsGreaterThanOrEqualTo f) {
+            params.add(f.comparisonValue());
+            return numeric(f.key()) + " >= ?";
+        }
+        if (filter instanceof IsLessThan f) {
+            params.add(f.comparisonValue());
+            return numeric(f.key()) + " < ?";
+        }
+        if (filter instanceof IsLessThanOrEqualTo f) {
+            params.add(f.comparisonValue());
+            return numeric(f.key()) + " <= ?";
+        }
+        throw new UnsupportedOperationException("不支持的过滤条件: " + filter.getClass().getName());
+    }
+
+    private static String placeholders(Collection<?> values, List<Object> params) {
+        StringBuilder sb = new StringBuilder();
+        for (Object v : values) {
+            if (!sb.isEmpty()) {
+                sb.append(", ");
+            }
+            sb.append('?');
+            params.add(String.valueOf(v));
+        }
+        return sb.isEmpty() ? "NULL" : sb.toString();
+    }
+
+    private static String text(String key) {
+        return "(" + COLUMN + "->>'" + escape(key) + "')";
+    }
+
+    private static String numeric(String key) {
+        return "(" + COLUMN + "->>'" + escape(key) + "')::numeric";
+    }
+
+    private static String escape(String key) {
+        return key.replace("'", "''");
+    }
+}
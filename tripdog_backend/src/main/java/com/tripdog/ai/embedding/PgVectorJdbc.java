@@ -0,0 +1,71 @@
+package com.tripdog.ai.embedding;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/12 9:30
+ * @description: 直连pgvector库的JDBC入口。
+ * 数据源不注册为Spring Bean，避免顶替MySQL的自动配置数据源；首次使用时才建立连接池。
+ */
+@Component
+@RequiredArgsConstructor
+public class PgVectorJdbc implements DisposableBean {
+    private final PgVectorProperties pgVectorProperties;
+    private volatile HikariDataSource dataSource;
+    private volatile JdbcTemplate jdbcTemplate;
+    private volatile TransactionTemplate transactionTemplate;
+
+    public JdbcTemplate jdbcTemplate() {
+        init();
+        return jdbcTemplate;
+    }
+
+    public TransactionTemplate transactionTemplate() {
+        init();
+        return transactionTemplate;
+    }
+
+    public DataSource dataSource() {
+        init();
+        return dataSource;
+    }
+
+    private void init() {
+        if (dataSource != null) {
+            return;
+        }
+        synchronized (this) {
+            if (dataSource != null) {
+                return;
+            }
+            HikariDataSource ds = new HikariDataSource();
+            ds.setPoolName("pgvector");
+            ds.setJdbcUrl(String.format("jdbc:postgresql://%s:%d/%s",
+                pgVectorProperties.getHost(), pgVectorProperties.getPort(), pgVectorProperties.getDatabase()));
+            ds.setUsername(pgVectorProperties.getUser());
+            ds.setPassword(pgVectorProperties.getPassword());
+            ds.setMaximumPoolSize(pgVectorProperties.getMaxPoolSize());
+            jdbcTemplate = new JdbcTemplate(ds);
+            transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(ds));
+            dataSource = ds;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+}
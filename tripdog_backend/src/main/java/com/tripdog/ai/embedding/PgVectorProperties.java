@@ -20,4 +20,23 @@ public class PgVectorProperties {
     private String user;
     private String password;
     private String table;
-}
\ No newline at end of file
+    /** 向量维度，DashScope 向量模型按此维度输出（Matryoshka 降维）；已有表的维度不同时启动失败 */
+    private int dimension = 1024;
+    /** 直连JDBC连接池大小（量化存储、批量维护任务使用） */
+    private int maxPoolSize = 10;
+    /** 向量存储模式 */
+    private StorageMode storageMode = StorageMode.FULL;
+    /** 量化模式下ANN阶段候选数 = maxResults * rerankFactor，再用全精度向量精排 */
+    private int rerankFactor = 4;
+    /** 量化模式下带过滤条件检索时的 hnsw.ef_search 下限，实际取其与候选数中的较大值（不超过pgvector上限1000） */
+    private int efSearch = 200;
+
+    public enum StorageMode {
+        /** langchain4j原生表，float32向量；不建HNSW索引，过滤后精确扫描 */
+        FULL,
+        /** halfvec半精度向量做ANN，全精度向量存侧表用于精排 */
+        HALFVEC,
+        /** bit二值量化向量做ANN（汉明距离），全精度向量存侧表用于精排 */
+        BINARY
+    }
+}
@@ -0,0 +1,51 @@
+package com.tripdog.ai.embedding;
+
+import java.util.List;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/22 16:30
+ * @description: 为需要指令前缀的向量模型（如 e5 系列的 "query: " / "passage: "）补上前缀。
+ * 查询通过 {@link #query(String)} 标记，其余输入按文档片段处理；前缀只用于向量化，不改变调用方的片段。
+ */
+public class PrefixedEmbeddingModel implements EmbeddingModel {
+    private static final String INPUT_TYPE = "embeddingInput";
+    private static final String QUERY = "query";
+
+    private final EmbeddingModel delegate;
+    private final String queryPrefix;
+    private final String passagePrefix;
+
+    public PrefixedEmbeddingModel(EmbeddingModel delegate, String queryPrefix, String passagePrefix) {
+        this.delegate = delegate;
+        this.queryPrefix = queryPrefix == null ? "" : queryPrefix;
+        this.passagePrefix = passagePrefix == null ? "" : passagePrefix;
+    }
+
+    /**
+     * 把查询文本包装成带查询标记的片段，不需要前缀的模型忽略该标记
+     */
+    public static TextSegment query(String text) {
+        return TextSegment.from(text, Metadata.from(INPUT_TYPE, QUERY));
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        List<TextSegment> prefixed = segments.stream()
+            .map(s -> TextSegment.from((QUERY.equals(s.metadata().getString(INPUT_TYPE)) ? queryPrefix : passagePrefix)
+                + s.text(), s.metadata()))
+            .toList();
+        return delegate.embedAll(prefixed);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
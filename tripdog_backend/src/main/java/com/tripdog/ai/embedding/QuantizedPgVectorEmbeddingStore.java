@@ -0,0 +1,385 @@
+package com.tripdog.ai.embedding;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tripdog.ai.embedding.PgVectorProperties.StorageMode;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/12 10:20
+ * @description: 量化向量存储。
+ * 主表 {table}_q 存halfvec/bit量化向量 + 文本 + 元数据，并建HNSW索引负责ANN召回；
+ * 侧表 {table}_full 只存全精度vector，不建索引，仅用于对候选集做精确重排。
+ * 召回 maxResults * rerankFactor 个候选后按全精度余弦相似度重排取topK。
+ * 带过滤条件的检索：HNSW先取 ef_search 个近邻再过滤，单个用户只占全表很小一部分时过滤后常常不足topK。
+ * 因此在事务内按候选数调大 hnsw.ef_search（pgvector 上限 1000），pgvector 0.8+ 再开启 hnsw.iterative_scan=relaxed_order，
+ * 过滤后不足时继续扫描索引；另建 (roleId, userId) 表达式索引，过滤条件足够选择性时由规划器改走精确扫描。
+ * 候选数超过 ef_search 上限（如加载整个语料）时不走ANN，直接按全精度向量对过滤后的全部片段精确排序。
+ */
+@Slf4j
+public class QuantizedPgVectorEmbeddingStore implements EmbeddingStore<TextSegment> {
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+    /** pgvector 允许的 hnsw.ef_search 最大值 */
+    static final int MAX_EF_SEARCH = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PgVectorJdbc pgVectorJdbc;
+    private final String quantizedTable;
+    private final String fullTable;
+    private final int dimension;
+    private final StorageMode mode;
+    private final int rerankFactor;
+    private final int efSearch;
+    private final boolean iterativeScan;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public QuantizedPgVectorEmbeddingStore(PgVectorJdbc pgVectorJdbc, String table, int dimension,
+                                           StorageMode mode, int rerankFactor, int efSearch) {
+        this.pgVectorJdbc = pgVectorJdbc;
+        this.jdbcTemplate = pgVectorJdbc.jdbcTemplate();
+        this.quantizedTable = quantizedTable(table);
+        this.fullTable = fullTable(table);
+        this.dimension = dimension;
+        this.mode = mode;
+        this.rerankFactor = Math.max(1, rerankFactor);
+        this.efSearch = efSearch;
+        createTables();
+        this.iterativeScan = supportsIterativeScan();
+        log.info("量化存储: table={}, mode={}, efSearch={}, iterativeScan={}", quantizedTable, mode, efSearch, iterativeScan);
+    }
+
+    public static String quantizedTable(String table) {
+        return table + "_q";
+    }
+
+    public static String fullTable(String table) {
+        return table + "_full";
+    }
+
+    private void createTables() {
+        String columnType = mode == StorageMode.BINARY ? "bit(" + dimension + ")" : "halfvec(" + dimension + ")";
+        String opsClass = mode == StorageMode.BINARY ? "bit_hamming_ops" : "halfvec_cosine_ops";
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS vector");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + quantizedTable + " ("
+            + "embedding_id UUID PRIMARY KEY, "
+            + "embedding " + columnType + ", "
+            + "text TEXT NULL, "
+            + "metadata JSONB NULL)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + fullTable + " ("
+            + "embedding_id UUID PRIMARY KEY, "
+            + "embedding vector(" + dimension + "))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + quantizedTable + "_hnsw ON " + quantizedTable
+            + " USING hnsw (embedding " + opsClass + ")");
+        // 检索过滤条件为 roleId = ? AND userId IN (?, 0)
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + quantizedTable + "_role_user ON " + quantizedTable
+            + " ((metadata->>'roleId'), (metadata->>'userId'))");
+        // 账号清理按 userId 单独过滤
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + quantizedTable + "_user ON " + quantizedTable
+            + " ((metadata->>'userId'))");
+    }
+
+    /**
+     * hnsw.iterative_scan 自 pgvector 0.8.0 起提供
+     */
+    private boolean supportsIterativeScan() {
+        String version = jdbcTemplate.query("SELECT extversion FROM pg_extension WHERE extname = 'vector'",
+            rs -> rs.next() ? rs.getString(1) : null);
+        if (version == null) {
+            return false;
+        }
+        String[] parts = version.split("\\.");
+        int major = Integer.parseInt(parts[0]);
+        int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+        return major > 0 || minor >= 8;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), null);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = randomIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        List<String> ids = randomIds(embeddings.size());
+        addAll(ids, embeddings, embedded);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Object[]> quantizedRows = new ArrayList<>(ids.size());
+        List<Object[]> fullRows = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            TextSegment segment = embedded == null ? null : embedded.get(i);
+            String vector = toVectorLiteral(embeddings.get(i).vector());
+            quantizedRows.add(new Object[] {
+                ids.get(i),
+                vector,
+                segment == null ? null : segment.text(),
+                segment == null ? null : toJson(segment.metadata())
+            });
+            fullRows.add(new Object[] {ids.get(i), vector});
+        }
+        String upsertQuantized = "INSERT INTO " + quantizedTable + " (embedding_id, embedding, text, metadata) "
+            + "VALUES (?::uuid, " + quantizeExpr("?::vector") + ", ?, ?::jsonb) "
+            + "ON CONFLICT (embedding_id) DO UPDATE SET embedding = EXCLUDED.embedding, "
+            + "text = EXCLUDED.text, metadata = EXCLUDED.metadata";
+        String upsertFull = "INSERT INTO " + fullTable + " (embedding_id, embedding) VALUES (?::uuid, ?::vector) "
+            + "ON CONFLICT (embedding_id) DO UPDATE SET embedding = EXCLUDED.embedding";
+        pgVectorJdbc.transactionTemplate().executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(upsertQuantized, quantizedRows);
+            jdbcTemplate.batchUpdate(upsertFull, fullRows);
+        });
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        String joined = String.join(",", ids);
+        pgVectorJdbc.transactionTemplate().executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM " + fullTable
+                + " WHERE embedding_id = ANY(string_to_array(?, ',')::uuid[])", joined);
+            jdbcTemplate.update("DELETE FROM " + quantizedTable
+                + " WHERE embedding_id = ANY(string_to_array(?, ',')::uuid[])", joined);
+        });
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        List<Object> params = new ArrayList<>();
+        String where = PgVectorFilterMapper.toSql(filter, params);
+        pgVectorJdbc.transactionTemplate().executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM " + fullTable + " WHERE embedding_id IN "
+                + "(SELECT embedding_id FROM " + quantizedTable + " WHERE " + where + ")", params.toArray());
+            jdbcTemplate.update("DELETE FROM " + quantizedTable + " WHERE " + where, params.toArray());
+        });
+    }
+
+    @Override
+    public void removeAll() {
+        pgVectorJdbc.transactionTemplate().executeWithoutResult(status -> {
+            jdbcTemplate.update("TRUNCATE " + fullTable);
+            jdbcTemplate.update("TRUNCATE " + quantizedTable);
+        });
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        String queryVector = toVectorLiteral(request.queryEmbedding().vector());
+        int candidates = request.maxResults() * rerankFactor;
+        if (candidates > MAX_EF_SEARCH) {
+            return exactSearch(request, queryVector);
+        }
+        List<Object> params = new ArrayList<>();
+        String where = PgVectorFilterMapper.toSql(request.filter(), params);
+        // 占位符顺序：filter参数、ANN查询向量、候选数、精排查询向量、maxResults
+        params.add(queryVector);
+        params.add(candidates);
+        params.add(queryVector);
+        params.add(request.maxResults());
+
+        // ANN阶段走量化向量的HNSW索引，外层用全精度向量重新计算余弦距离
+        String sql = "WITH candidates AS ("
+            + " SELECT embedding_id, text, metadata FROM " + quantizedTable
+            + " WHERE " + where
+            + " ORDER BY embedding " + distanceOperator() + " " + quantizeExpr("?::vector")
+            + " LIMIT ?)"
+            + " SELECT c.embedding_id, c.text, c.metadata::text AS metadata, f.embedding::text AS embedding,"
+            + " 1 - (f.embedding <=> ?::vector) AS cosine"
+            + " FROM candidates c JOIN " + fullTable + " f ON f.embedding_id = c.embedding_id"
+            + " ORDER BY cosine DESC LIMIT ?";
+
+        List<EmbeddingMatch<TextSegment>> matches;
+        if (request.filter() == null) {
+            matches = jdbcTemplate.query(sql, matchMapper(), params.toArray());
+        } else {
+            // set_config(..., true) 等同 SET LOCAL，只在本事务内生效，不污染连接池中的连接
+            matches = pgVectorJdbc.transactionTemplate().execute(status -> {
+                jdbcTemplate.query("SELECT set_config('hnsw.ef_search', ?, true)", rs -> null,
+                    String.valueOf(Math.min(MAX_EF_SEARCH, Math.max(efSearch, candidates))));
+                if (iterativeScan) {
+                    jdbcTemplate.query("SELECT set_config('hnsw.iterative_scan', 'relaxed_order', true)", rs -> null);
+                }
+                return jdbcTemplate.query(sql, matchMapper(), params.toArray());
+            });
+        }
+        return result(matches, request.minScore());
+    }
+
+    /**
+     * 不经过ANN，按全精度向量对过滤后的全部片段计算余弦相似度取topK。
+     * 排序表达式在侧表的全精度列上，该列没有索引，规划器只能精确扫描，结果不受量化误差与 ef_search 影响
+     */
+    private EmbeddingSearchResult<TextSegment> exactSearch(EmbeddingSearchRequest request, String queryVector) {
+        // 占位符顺序：查询向量、filter参数、maxResults
+        List<Object> params = new ArrayList<>();
+        params.add(queryVector);
+        String where = PgVectorFilterMapper.toSql(request.filter(), params);
+        params.add(request.maxResults());
+        String sql = "SELECT q.embedding_id, q.text, q.metadata::text AS metadata, f.embedding::text AS embedding,"
+            + " 1 - (f.embedding <=> ?::vector) AS cosine"
+            + " FROM " + quantizedTable + " q JOIN " + fullTable + " f ON f.embedding_id = q.embedding_id"
+            + " WHERE " + where
+            + " ORDER BY cosine DESC LIMIT ?";
+        return result(jdbcTemplate.query(sql, matchMapper(), params.toArray()), request.minScore());
+    }
+
+    private RowMapper<EmbeddingMatch<TextSegment>> matchMapper() {
+        return (rs, rowNum) -> {
+            double score = RelevanceScore.fromCosineSimilarity(rs.getDouble("cosine"));
+            String text = rs.getString("text");
+            TextSegment segment = text == null ? null : TextSegment.from(text, fromJson(rs.getString("metadata")));
+            return new EmbeddingMatch<>(score, rs.getString("embedding_id"),
+                Embedding.from(parseVector(rs.getString("embedding"))), segment);
+        };
+    }
+
+    private static EmbeddingSearchResult<TextSegment> result(List<EmbeddingMatch<TextSegment>> matches, double minScore) {
+        return new EmbeddingSearchResult<>(matches.stream()
+            .filter(m -> m.score() >= minScore)
+            .toList());
+    }
+
+    /**
+     * 从langchain4j原生表按embedding_id分批回填量化表与全精度侧表
+     *
+     * @return 回填行数
+     */
+    public long backfillFrom(String sourceTable, int batchSize) {
+        long total = 0;
+        String lastId = "00000000-0000-0000-0000-000000000000";
+        while (true) {
+            List<String> ids = jdbcTemplate.queryForList("SELECT embedding_id::text FROM " + sourceTable
+                + " WHERE embedding_id > ?::uuid ORDER BY embedding_id LIMIT ?", String.class, lastId, batchSize);
+            if (ids.isEmpty()) {
+                return total;
+            }
+            String from = ids.getFirst();
+            String to = ids.getLast();
+            pgVectorJdbc.transactionTemplate().executeWithoutResult(status -> {
+                jdbcTemplate.update("INSERT INTO " + quantizedTable + " (embedding_id, embedding, text, metadata)"
+                    + " SELECT embedding_id, " + quantizeExpr("embedding") + ", text, metadata::jsonb FROM " + sourceTable
+                    + " WHERE embedding_id BETWEEN ?::uuid AND ?::uuid ON CONFLICT (embedding_id) DO NOTHING", from, to);
+                jdbcTemplate.update("INSERT INTO " + fullTable + " (embedding_id, embedding)"
+                    + " SELECT embedding_id, embedding FROM " + sourceTable
+                    + " WHERE embedding_id BETWEEN ?::uuid AND ?::uuid ON CONFLICT (embedding_id) DO NOTHING", from, to);
+            });
+            total += ids.size();
+            lastId = to;
+            log.info("量化表回填进度: {} 行, 最后ID {}", total, lastId);
+        }
+    }
+
+    private String quantizeExpr(String vectorExpr) {
+        return mode == StorageMode.BINARY
+            ? "binary_quantize(" + vectorExpr + ")::bit(" + dimension + ")"
+            : "(" + vectorExpr + ")::halfvec(" + dimension + ")";
+    }
+
+    private String distanceOperator() {
+        return mode == StorageMode.BINARY ? "<~>" : "<=>";
+    }
+
+    private List<String> randomIds(int n) {
+        List<String> ids = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+
+    public static String toVectorLiteral(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 10).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    public static float[] parseVector(String literal) {
+        String body = literal.substring(1, literal.length() - 1);
+        if (body.isEmpty()) {
+            return new float[0];
+        }
+        String[] parts = body.split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i]);
+        }
+        return vector;
+    }
+
+    private String toJson(Metadata metadata) {
+        try {
+            return objectMapper.writeValueAsString(metadata.toMap());
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("元数据序列化失败", e);
+        }
+    }
+
+    private Metadata fromJson(String json) {
+        if (json == null) {
+            return new Metadata();
+        }
+        try {
+            return Metadata.from(objectMapper.readValue(json, MAP_TYPE));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("元数据反序列化失败", e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.tripdog.ai.embedding;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.common.Constants.GLOBAL_USER_ID;
+import static com.tripdog.common.Constants.ROLE_ID;
+import static com.tripdog.common.Constants.USER_ID;
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/12 14:02
+ * @description: 量化存储的运维命令，通过启动参数触发：
+ * --pgvector.quantized.backfill=true  从原生表回填量化表与全精度侧表
+ * --pgvector.quantized.benchmark=true 以原生表精确检索为基准，对比量化存储的召回率与延迟（分别测无过滤与按用户过滤）
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnExpression("${pgvector.quantized.backfill:false} or ${pgvector.quantized.benchmark:false}")
+public class QuantizedStoreRunner implements ApplicationRunner {
+    private static final int BACKFILL_BATCH = 1000;
+    private static final int BENCHMARK_QUERIES = 200;
+    private static final int BENCHMARK_K = 10;
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final PgVectorProperties pgVectorProperties;
+    private final PgVectorJdbc pgVectorJdbc;
+
+    @Value("${pgvector.quantized.backfill:false}")
+    private boolean backfill;
+    @Value("${pgvector.quantized.benchmark:false}")
+    private boolean benchmark;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!(embeddingStore instanceof QuantizedPgVectorEmbeddingStore store)) {
+            log.warn("当前存储模式为 {}，量化存储命令不执行", pgVectorProperties.getStorageMode());
+            return;
+        }
+        String sourceTable = pgVectorProperties.getTable();
+        if (backfill) {
+            long start = System.currentTimeMillis();
+            long rows = store.backfillFrom(sourceTable, BACKFILL_BATCH);
+            log.info("量化表回填完成: {} 行, 耗时 {}ms", rows, System.currentTimeMillis() - start);
+        }
+        if (benchmark) {
+            runBenchmark(store, sourceTable);
+        }
+    }
+
+    private void runBenchmark(QuantizedPgVectorEmbeddingStore store, String sourceTable) {
+        JdbcTemplate jdbc = pgVectorJdbc.jdbcTemplate();
+        List<Sample> samples = jdbc.query("SELECT embedding::text AS embedding, metadata->>'userId' AS user_id,"
+            + " metadata->>'roleId' AS role_id FROM " + sourceTable + " ORDER BY random() LIMIT ?",
+            (rs, rowNum) -> new Sample(rs.getString("embedding"), rs.getString("user_id"), rs.getString("role_id")),
+            BENCHMARK_QUERIES);
+        if (samples.isEmpty()) {
+            log.warn("原生表 {} 无数据，跳过基准测试", sourceTable);
+            return;
+        }
+        runBenchmark(store, sourceTable, samples, false);
+        // 线上检索都带 (角色, 用户+全局语料) 过滤，单个用户只占全表很小一部分，这是HNSW召回最容易下降的场景
+        runBenchmark(store, sourceTable, samples.stream().filter(s -> s.userId() != null && s.roleId() != null).toList(), true);
+    }
+
+    private void runBenchmark(QuantizedPgVectorEmbeddingStore store, String sourceTable, List<Sample> samples,
+                              boolean filtered) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        JdbcTemplate jdbc = pgVectorJdbc.jdbcTemplate();
+        double recallSum = 0;
+        List<Long> exactNanos = new ArrayList<>();
+        List<Long> quantizedNanos = new ArrayList<>();
+        for (Sample sample : samples) {
+            long t0 = System.nanoTime();
+            Set<String> exact = new HashSet<>(filtered
+                ? jdbc.queryForList("SELECT embedding_id::text FROM " + sourceTable
+                    + " WHERE metadata->>'roleId' = ? AND metadata->>'userId' IN (?, ?)"
+                    + " ORDER BY embedding <=> ?::vector LIMIT ?", String.class,
+                    sample.roleId(), sample.userId(), String.valueOf(GLOBAL_USER_ID), sample.embedding(), BENCHMARK_K)
+                : jdbc.queryForList("SELECT embedding_id::text FROM " + sourceTable
+                    + " ORDER BY embedding <=> ?::vector LIMIT ?", String.class, sample.embedding(), BENCHMARK_K));
+            long t1 = System.nanoTime();
+            List<EmbeddingMatch<TextSegment>> approx = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(QuantizedPgVectorEmbeddingStore.parseVector(sample.embedding())))
+                .filter(filtered ? filterOf(sample) : null)
+                .maxResults(BENCHMARK_K)
+                .minScore(0.0)
+                .build()).matches();
+            long t2 = System.nanoTime();
+
+            long hit = approx.stream().filter(m -> exact.contains(m.embeddingId())).count();
+            recallSum += exact.isEmpty() ? 1.0 : (double) hit / exact.size();
+            exactNanos.add(t1 - t0);
+            quantizedNanos.add(t2 - t1);
+        }
+        log.info("量化存储基准[{}{}]: queries={}, recall@{}={}, 精确检索 p50={}ms p95={}ms, 量化检索 p50={}ms p95={}ms",
+            pgVectorProperties.getStorageMode(), filtered ? ", 按用户过滤" : "", samples.size(), BENCHMARK_K,
+            String.format("%.4f", recallSum / samples.size()),
+            percentileMillis(exactNanos, 0.5), percentileMillis(exactNanos, 0.95),
+            percentileMillis(quantizedNanos, 0.5), percentileMillis(quantizedNanos, 0.95));
+    }
+
+    /**
+     * 与 RetrieverFactory 相同的检索过滤条件
+     */
+    private Filter filterOf(Sample sample) {
+        return metadataKey(ROLE_ID).isEqualTo(Long.valueOf(sample.roleId()))
+            .and(metadataKey(USER_ID).isIn(List.of(Long.valueOf(sample.userId()), GLOBAL_USER_ID)));
+    }
+
+    private record Sample(String embedding, String userId, String roleId) {
+    }
+
+    private String percentileMillis(List<Long> nanos, double p) {
+        List<Long> sorted = nanos.stream().sorted().toList();
+        long v = sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(p * sorted.size()) - 1));
+        return String.format("%.2f", v / 1_000_000.0);
+    }
+}
@@ -0,0 +1,199 @@
+package com.tripdog.ai.embedding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/14 9:20
+ * @description: 查询向量微批器。
+ * 并发检索的查询文本先进入队列，调度线程在lingerMs内凑满maxBatchSize条后一次embedAll，
+ * 再逐个完成调用方的future。批量HTTP调用在独立线程池执行，调度线程不被阻塞。
+ * 调度线程凑批前先取得并发批次许可（maxConcurrentBatches），批次返回后归还：向量模型变慢时请求停留在有界队列中，
+ * 不会被不断移入线程池积压。
+ * 队列满、等待超过 timeoutMs 或微批已关闭时调用方改为单独调用向量模型，不会无限阻塞在检索路径上；
+ * 线程池拒绝与关闭时未完成的future以异常结束。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QueryEmbeddingBatcher implements DisposableBean {
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingBatchConfig config;
+
+    private BlockingQueue<PendingEmbedding> queue;
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder itemCount = new LongAdder();
+    private final LongAdder fullBatchCount = new LongAdder();
+    private final AtomicLong lastStatsAt = new AtomicLong(System.currentTimeMillis());
+    private ExecutorService callExecutor;
+    private Semaphore batchPermits;
+    private Thread dispatcher;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() {
+        queue = new LinkedBlockingQueue<>(config.getMaxQueueSize());
+        batchPermits = new Semaphore(config.getMaxConcurrentBatches());
+        callExecutor = Executors.newFixedThreadPool(config.getMaxConcurrentBatches(),
+            new CustomizableThreadFactory("embedding-batch-"));
+        dispatcher = Thread.ofPlatform().name("embedding-batcher").daemon().start(this::dispatchLoop);
+    }
+
+    /**
+     * 获取查询文本的向量，调用线程阻塞直到所在批次返回
+     */
+    public Embedding embed(String text) {
+        if (!config.isEnabled() || !running) {
+            return embeddingModel.embed(PrefixedEmbeddingModel.query(text)).content();
+        }
+        CompletableFuture<Embedding> future = new CompletableFuture<>();
+        if (!queue.offer(new PendingEmbedding(text, future))) {
+            log.warn("查询向量队列已满({})，改为单独调用", config.getMaxQueueSize());
+            return embeddingModel.embed(PrefixedEmbeddingModel.query(text)).content();
+        }
+        try {
+            return future.get(config.getTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 取消后批次返回时跳过该条，避免重复计算
+            future.cancel(false);
+            log.warn("等待查询向量批次超时({}ms)，改为单独调用", config.getTimeoutMs());
+            return embeddingModel.embed(PrefixedEmbeddingModel.query(text)).content();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new IllegalStateException("获取查询向量被中断", e);
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                batchPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                PendingEmbedding first = queue.take();
+                List<PendingEmbedding> batch = new ArrayList<>(config.getMaxBatchSize());
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getLingerMs());
+                while (batch.size() < config.getMaxBatchSize()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, config.getMaxBatchSize() - batch.size());
+                        break;
+                    }
+                    PendingEmbedding next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                try {
+                    callExecutor.execute(() -> {
+                        try {
+                            flush(batch);
+                        } finally {
+                            batchPermits.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    batchPermits.release();
+                    log.error("查询向量批次提交失败, size={}", batch.size(), e);
+                    batch.forEach(p -> p.future().completeExceptionally(e));
+                }
+            } catch (InterruptedException e) {
+                batchPermits.release();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void flush(List<PendingEmbedding> all) {
+        // 等待超时的调用方已自行计算
+        List<PendingEmbedding> batch = all.stream().filter(p -> !p.future().isDone()).toList();
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            List<TextSegment> segments = batch.stream().map(p -> PrefixedEmbeddingModel.query(p.text())).toList();
+            List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(embeddings.get(i));
+            }
+        } catch (Exception e) {
+            log.error("批量获取查询向量失败, size={}", batch.size(), e);
+            batch.forEach(p -> p.future().completeExceptionally(e));
+        }
+        recordStats(batch.size());
+    }
+
+    private void recordStats(int size) {
+        batchCount.increment();
+        itemCount.add(size);
+        if (size >= config.getMaxBatchSize()) {
+            fullBatchCount.increment();
+        }
+        long now = System.currentTimeMillis();
+        long last = lastStatsAt.get();
+        if (now - last >= config.getStatsIntervalSeconds() * 1000L && lastStatsAt.compareAndSet(last, now)) {
+            long batches = batchCount.sumThenReset();
+            long items = itemCount.sumThenReset();
+            long full = fullBatchCount.sumThenReset();
+            log.info("查询向量微批统计: batches={}, items={}, avgFill={}, fullBatches={}, queued={}",
+                batches, items, batches == 0 ? "0" : String.format("%.2f", (double) items / batches),
+                full, queue.size());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        if (callExecutor != null) {
+            callExecutor.shutdown();
+        }
+        if (queue != null) {
+            List<PendingEmbedding> pending = new ArrayList<>();
+            queue.drainTo(pending);
+            IllegalStateException closed = new IllegalStateException("查询向量微批已关闭");
+            pending.forEach(p -> p.future().completeExceptionally(closed));
+        }
+    }
+
+    private record PendingEmbedding(String text, CompletableFuture<Embedding> future) {
+    }
+}
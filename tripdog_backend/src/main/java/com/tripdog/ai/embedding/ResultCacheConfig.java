@@ -0,0 +1,21 @@
+package com.tripdog.ai.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 检索结果缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.result-cache")
+public class ResultCacheConfig {
+    /** 是否启用检索结果缓存 */
+    private boolean enabled = true;
+    /** 缓存过期时间（分钟），只用于回收旧版本的缓存，不影响正确性 */
+    private long ttlMinutes = 30;
+    /** 查询向量量化粒度：每个分量按 round(v * levels) 取整后参与哈希，越小越容易命中相近问题 */
+    private int quantizationLevels = 100;
+}
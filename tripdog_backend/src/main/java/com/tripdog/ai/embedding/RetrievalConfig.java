@@ -0,0 +1,19 @@
+package com.tripdog.ai.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 文档检索配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.retrieval")
+public class RetrievalConfig {
+    /** 每轮最多召回的片段数 */
+    private int maxResults = 10;
+    /** 最低相关度分数（0~1，由余弦相似度换算） */
+    private double minScore = 0.8;
+}
@@ -0,0 +1,117 @@
+package com.tripdog.ai.embedding;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.tripdog.common.RedisService;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/15 10:05
+ * @description: 检索结果缓存。
+ * key = (userId, roleId, 语料版本, 量化后的查询向量哈希, maxResults, minScore)，
+ * 语料变更时版本号递增，旧key自然失效，因此不需要靠TTL猜测一致性。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RetrievalResultCache {
+    private static final String PREFIX = "rag:retrieval:";
+
+    private final RedisService redisService;
+    private final ResultCacheConfig config;
+
+    public List<EmbeddingMatch<TextSegment>> get(Long userId, Long roleId, String version,
+                                                 Embedding query, int maxResults, double minScore) {
+        if (!config.isEnabled() || version == null) {
+            return null;
+        }
+        CachedRetrieval cached = redisService.getObject(
+            key(userId, roleId, version, query, maxResults, minScore), CachedRetrieval.class);
+        if (cached == null) {
+            return null;
+        }
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(cached.getMatches().size());
+        for (CachedMatch m : cached.getMatches()) {
+            matches.add(new EmbeddingMatch<>(m.getScore(), m.getEmbeddingId(), null,
+                TextSegment.from(m.getText(), Metadata.from(m.getMetadata()))));
+        }
+        return matches;
+    }
+
+    public void put(Long userId, Long roleId, String version, Embedding query, int maxResults, double minScore,
+                    List<EmbeddingMatch<TextSegment>> matches) {
+        if (!config.isEnabled() || version == null) {
+            return;
+        }
+        List<CachedMatch> cachedMatches = new ArrayList<>(matches.size());
+        for (EmbeddingMatch<TextSegment> m : matches) {
+            if (m.embedded() == null) {
+                return;
+            }
+            cachedMatches.add(new CachedMatch(m.embeddingId(), m.score(),
+                m.embedded().text(), m.embedded().metadata().toMap()));
+        }
+        redisService.setObject(key(userId, roleId, version, query, maxResults, minScore),
+            new CachedRetrieval(cachedMatches), config.getTtlMinutes(), TimeUnit.MINUTES);
+    }
+
+    private String key(Long userId, Long roleId, String version, Embedding query, int maxResults, double minScore) {
+        return PREFIX + userId + ":" + roleId + ":" + version + ":" + maxResults + ":" + minScore + ":"
+            + quantizedHash(query.vector());
+    }
+
+    /**
+     * 分量按量化粒度取整后做SHA-256，数值上极接近的查询向量落到同一个key
+     */
+    private String quantizedHash(float[] vector) {
+        int levels = config.getQuantizationLevels();
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * 2);
+        for (float v : vector) {
+            buffer.putShort((short) Math.round(v * levels));
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(levels).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(buffer.array()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CachedRetrieval {
+        private List<CachedMatch> matches;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CachedMatch {
+        private String embeddingId;
+        private Double score;
+        private String text;
+        private Map<String, Object> metadata;
+    }
+}
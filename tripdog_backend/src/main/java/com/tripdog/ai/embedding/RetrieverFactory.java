@@ -1,21 +1,23 @@
 package com.tripdog.ai.embedding;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.context.annotation.Configuration;
 
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.RequiredArgsConstructor;
+import static com.tripdog.common.Constants.GLOBAL_USER_ID;
 import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
 
 /**
  * @author: iohw
  * @date: 2025/9/26 14:21
- * @description:
+ * @description: 按(角色,用户)创建检索器，检索范围为该用户在角色下的私有文档与角色公共语料（userId=0），
+ * 一次查询按相似度统一排序。
  */
 @Configuration
 @RequiredArgsConstructor
@@ -23,23 +25,29 @@ public class RetrieverFactory {
     final String ROLE_ID = "roleId";
     final String USER_ID = "userId";
     final EmbeddingStore<TextSegment> embeddingStore;
-    final EmbeddingModel embeddingModel;
-    final Map<String, EmbeddingStoreContentRetriever> cache = new HashMap<>();
+    final QueryEmbeddingBatcher queryEmbeddingBatcher;
+    final LocalVectorCache localVectorCache;
+    final CorpusVersionService corpusVersionService;
+    final RetrievalResultCache retrievalResultCache;
+    final DocTombstoneCache docTombstoneCache;
+    final ShadowVectorStore shadowVectorStore;
+    final RetrievalConfig retrievalConfig;
+    final Map<String, ContentRetriever> cache = new ConcurrentHashMap<>();
 
-    public EmbeddingStoreContentRetriever getRetriever(Long roleId, Long userId) {
+    public ContentRetriever getRetriever(Long roleId, Long userId) {
         String k = roleId + ":" + userId;
-        if(cache.containsKey(k)) {
-            return cache.get(k);
-        }
-        EmbeddingStoreContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
-            .embeddingStore(embeddingStore)
-            .embeddingModel(embeddingModel)
-            .maxResults(10) //todo 配置抽离
-            .minScore(0.8)
-            .filter(metadataKey(ROLE_ID).isEqualTo(roleId)
-                .and(metadataKey(USER_ID).isEqualTo(userId)))
-            .build();
-        cache.put(k, retriever);
-        return retriever;
+        return cache.computeIfAbsent(k, key -> new DocContentRetriever(
+            userId,
+            roleId,
+            metadataKey(ROLE_ID).isEqualTo(roleId)
+                .and(metadataKey(USER_ID).isIn(List.of(userId, GLOBAL_USER_ID))),
+            embeddingStore,
+            queryEmbeddingBatcher,
+            localVectorCache,
+            corpusVersionService,
+            retrievalResultCache,
+            docTombstoneCache,
+            shadowVectorStore,
+            retrievalConfig));
     }
 }
@@ -0,0 +1,439 @@
+package com.tripdog.ai.embedding;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tripdog.ai.ingest.ClusterRateLimiter;
+import com.tripdog.ai.ingest.EmbeddingRateLimiter;
+import com.tripdog.ai.ingest.IngestConfig;
+import com.tripdog.common.RedisService;
+import com.tripdog.mapper.EmbeddingMigrationDocMapper;
+import com.tripdog.mapper.EmbeddingMigrationMapper;
+import com.tripdog.model.dto.EmbeddingMigration;
+
+import dev.langchain4j.community.model.dashscope.QwenEmbeddingModel;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/23 10:30
+ * @description: 向量迁移期间的影子表。
+ * 迁移状态保存在MySQL（t_embedding_migration）中，各实例按 stateRefreshMs 刷新；读取失败时沿用上次读到的状态，
+ * 不会因数据库短暂不可用而停止双写或切回原表；启动后从未读到状态时写入路径直接失败，由调用方重试。
+ * 迁移进行中时，入库、替换与删除在写原表之后同步写影子表（双写），影子表的向量由新模型计算；
+ * 双写失败不影响原表写入，文档登记到 t_embedding_migration_doc 由回填收尾与定时任务重做。
+ * 新模型为 DashScope 时受所有实例共享的限流器约束，也可以是进程内本地模型（rag.migration.provider=local）。
+ * 切换（CUTOVER）后检索改用新模型向量化查询并检索影子表。
+ * 配置的 pgvector.table 已是影子表时（切换后按新配置重新部署）不再双写，影子表即为主表。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ShadowVectorStore implements DisposableBean {
+    public static final String BACKFILL = "BACKFILL";
+    public static final String READY = "READY";
+    public static final String CUTOVER = "CUTOVER";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+    private static final Set<String> MIRRORING_PHASES = Set.of(BACKFILL, READY, CUTOVER, FAILED);
+    private static final String RATE_KEY = "rag:migration:rate";
+    private static final String LOCAL = "local";
+
+    private final PgVectorJdbc pgVectorJdbc;
+    private final PgVectorProperties pgVectorProperties;
+    private final EmbeddingMigrationConfig config;
+    private final IngestConfig ingestConfig;
+    private final LocalEmbeddingConfig localEmbeddingConfig;
+    private final EmbeddingMigrationMapper migrationMapper;
+    private final EmbeddingMigrationDocMapper migrationDocMapper;
+    private final RedisService redisService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${DASHSCOPE_API_KEY}")
+    private String apiKey;
+
+    /**
+     * 新模型的限流器，所有实例的双写与回填共用，在线入库的桶不受影响
+     */
+    private ClusterRateLimiter rateLimiter;
+
+    private volatile EmbeddingMigration state;
+    private volatile boolean known;
+    private volatile long loadedAt;
+    private volatile Target target;
+    private ExecutorService localExecutor;
+
+    /**
+     * 影子表及其向量模型
+     */
+    private record Target(String table, EmbeddingModel model, EmbeddingStore<TextSegment> store, boolean local) {
+    }
+
+    /**
+     * 已用新模型向量化、等待写入影子表的文档片段
+     */
+    public record Prepared(String table, String fileId, List<String> ids,
+                           List<Embedding> embeddings, List<TextSegment> segments) {
+    }
+
+    @PostConstruct
+    public void start() {
+        rateLimiter = new ClusterRateLimiter(redisService, RATE_KEY, config::getEmbedRequestsPerSecond,
+            new EmbeddingRateLimiter(config::getEmbedRequestsPerSecond, config::getEmbedBurst));
+    }
+
+    /**
+     * 当前迁移状态，超过刷新间隔时从MySQL重新读取
+     * @return 没有迁移任务时返回null
+     */
+    public EmbeddingMigration state() {
+        if (System.currentTimeMillis() - loadedAt > config.getStateRefreshMs()) {
+            refresh();
+        }
+        return state;
+    }
+
+    /**
+     * 重新读取迁移状态，失败时沿用上次的状态
+     */
+    public void refresh() {
+        try {
+            state = migrationMapper.selectLatest();
+            known = true;
+        } catch (Exception e) {
+            log.warn("读取迁移状态失败，沿用上次状态: phase={}",
+                known ? (state == null ? null : state.getPhase()) : "未知", e);
+        }
+        loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 保存迁移状态并立即在本实例生效，写入失败时抛出异常
+     */
+    public void save(EmbeddingMigration migration) {
+        migration.setUpdatedAt(System.currentTimeMillis());
+        migrationMapper.upsert(migration);
+        state = migration;
+        known = true;
+        loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 删除迁移任务及其待重做文档
+     */
+    public void clear(EmbeddingMigration migration) {
+        migrationDocMapper.deleteByMigrationId(migration.getMigrationId());
+        migrationMapper.deleteById(migration.getMigrationId());
+        state = null;
+        known = true;
+        target = null;
+        loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 是否需要双写：迁移未完成且影子表不是当前配置的主表
+     * @throws IllegalStateException 启动后从未读到迁移状态，无法判断是否需要双写
+     */
+    public boolean isMirroring() {
+        EmbeddingMigration migration = state();
+        if (!known) {
+            throw new IllegalStateException("迁移状态未知，暂不能写入向量");
+        }
+        return mirroring(migration);
+    }
+
+    /**
+     * 检索是否已切换到影子表；状态未知时检索原表（切换后原表仍在双写）
+     */
+    public boolean isCutOver() {
+        EmbeddingMigration migration = state();
+        return known && mirroring(migration) && CUTOVER.equals(migration.getPhase());
+    }
+
+    private boolean mirroring(EmbeddingMigration migration) {
+        return migration != null
+            && MIRRORING_PHASES.contains(migration.getPhase())
+            && !migration.getTargetTable().equals(pgVectorProperties.getTable());
+    }
+
+    /**
+     * 创建影子表并校验维度与模型标识，表已存在时沿用（继续中断的迁移）
+     */
+    public void createTarget(EmbeddingMigration migration) {
+        PgVectorEmbeddingStoreInit.checkDimension(pgVectorJdbc, migration.getTargetTable(), migration.getDimension());
+        String table = target(migration).table();
+        EmbeddingModelFingerprint.verify(pgVectorJdbc, table,
+            EmbeddingModelFingerprint.of(migration.getProvider(), migration.getModelName(), migration.getDimension()),
+            migration.getDimension());
+        // 双写按文档替换、对账按文档比对，都按 fileId 访问影子表
+        pgVectorJdbc.jdbcTemplate().execute("CREATE INDEX IF NOT EXISTS " + table + "_file ON " + table
+            + " ((metadata->>'fileId'))");
+    }
+
+    /**
+     * 用新模型向量化文档片段，不写入；未在迁移时返回null。
+     * 向量化与写入分开，调用方可先完成耗时且可能失败的向量化，再在主表写入成功后写影子表
+     */
+    public Prepared prepare(String fileId, List<String> ids, List<TextSegment> segments) {
+        if (!isMirroring()) {
+            return null;
+        }
+        Target target = target(state());
+        int batchSize = Math.max(1, config.getEmbedBatchSize());
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (int from = 0; from < segments.size(); from += batchSize) {
+            embeddings.addAll(embedWithRetry(target,
+                segments.subList(from, Math.min(from + batchSize, segments.size()))));
+        }
+        return new Prepared(target.table(), fileId, ids, embeddings, segments);
+    }
+
+    /**
+     * 同 {@link #prepare}，但新模型向量化失败时登记文档待重做并返回null，不影响原表写入
+     */
+    public Prepared prepareQuietly(String fileId, List<String> ids, List<TextSegment> segments) {
+        if (!isMirroring()) {
+            return null;
+        }
+        try {
+            return prepare(fileId, ids, segments);
+        } catch (Exception e) {
+            recordFailure(fileId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 在一个事务内用新片段替换影子表中该文档的全部片段
+     */
+    public void write(Prepared prepared) {
+        if (prepared == null) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(prepared.ids().size());
+        for (int i = 0; i < prepared.ids().size(); i++) {
+            rows.add(new Object[]{
+                prepared.ids().get(i),
+                QuantizedPgVectorEmbeddingStore.toVectorLiteral(prepared.embeddings().get(i).vector()),
+                prepared.segments().get(i).text(),
+                toJson(prepared.segments().get(i))
+            });
+        }
+        String table = prepared.table();
+        pgVectorJdbc.transactionTemplate().executeWithoutResult(status -> {
+            pgVectorJdbc.jdbcTemplate().update("DELETE FROM " + table + " WHERE metadata->>'fileId' = ?",
+                prepared.fileId());
+            if (!rows.isEmpty()) {
+                pgVectorJdbc.jdbcTemplate().batchUpdate("INSERT INTO " + table
+                    + " (embedding_id, embedding, text, metadata) VALUES (?::uuid, ?::vector, ?, ?::json)"
+                    + " ON CONFLICT (embedding_id) DO UPDATE SET embedding = EXCLUDED.embedding,"
+                    + " text = EXCLUDED.text, metadata = EXCLUDED.metadata", rows);
+            }
+        });
+    }
+
+    /**
+     * 同 {@link #write}，失败时登记文档待重做
+     */
+    public void writeQuietly(Prepared prepared) {
+        if (prepared == null) {
+            return;
+        }
+        try {
+            write(prepared);
+        } catch (Exception e) {
+            recordFailure(prepared.fileId(), e);
+        }
+    }
+
+    /**
+     * 双写文档片段，未在迁移时不做任何事
+     */
+    public void mirror(String fileId, List<String> ids, List<TextSegment> segments) {
+        write(prepare(fileId, ids, segments));
+    }
+
+    /**
+     * 双写文档片段，失败时登记文档待重做而不是抛出，原表写入已成功的入库不因影子表失败而失败
+     */
+    public void mirrorQuietly(String fileId, List<String> ids, List<TextSegment> segments) {
+        if (!isMirroring()) {
+            return;
+        }
+        try {
+            mirror(fileId, ids, segments);
+        } catch (Exception e) {
+            recordFailure(fileId, e);
+        }
+    }
+
+    /**
+     * 登记影子表写入失败的文档，由回填收尾或定时任务重做
+     */
+    public void recordFailure(String fileId, Exception e) {
+        EmbeddingMigration migration = state;
+        log.warn("影子表写入失败，登记待重做: fileId={}", fileId, e);
+        if (migration == null) {
+            return;
+        }
+        String message = String.valueOf(e.getMessage());
+        try {
+            migrationDocMapper.upsert(migration.getMigrationId(), fileId,
+                message.length() > 500 ? message.substring(0, 500) : message);
+        } catch (Exception ex) {
+            // 回填收尾的对账按文档比对影子表，仍能发现缺失的文档
+            log.error("登记影子表待重做文档失败: fileId={}", fileId, ex);
+        }
+    }
+
+    /**
+     * 影子表中已有片段的文档fileId，用于回填收尾的对账
+     */
+    public Set<String> fileIds(EmbeddingMigration migration) {
+        return new HashSet<>(pgVectorJdbc.jdbcTemplate().queryForList(
+            "SELECT DISTINCT metadata->>'fileId' FROM " + migration.getTargetTable(), String.class));
+    }
+
+    public void removeFile(String fileId) {
+        if (isMirroring()) {
+            pgVectorJdbc.jdbcTemplate().update("DELETE FROM " + target(state()).table()
+                + " WHERE metadata->>'fileId' = ?", fileId);
+        }
+    }
+
+    public void removeAll(Collection<String> ids) {
+        if (isMirroring() && !ids.isEmpty()) {
+            target(state()).store().removeAll(ids);
+        }
+    }
+
+    public void removeAll(Filter filter) {
+        if (isMirroring()) {
+            target(state()).store().removeAll(filter);
+        }
+    }
+
+    public void removeAll() {
+        if (isMirroring()) {
+            target(state()).store().removeAll();
+        }
+    }
+
+    /**
+     * 用新模型向量化查询；检索延迟敏感，不经过迁移限流
+     */
+    public Embedding embedQuery(String text) {
+        return target(state()).model().embed(PrefixedEmbeddingModel.query(text)).content();
+    }
+
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return target(state()).store().search(request);
+    }
+
+    private Target target(EmbeddingMigration migration) {
+        Target current = target;
+        if (current != null && current.table().equals(migration.getTargetTable())) {
+            return current;
+        }
+        synchronized (this) {
+            if (target != null && target.table().equals(migration.getTargetTable())) {
+                return target;
+            }
+            boolean local = LOCAL.equals(migration.getProvider());
+            EmbeddingModel model;
+            if (local) {
+                if (localExecutor == null) {
+                    localExecutor = Executors.newFixedThreadPool(Math.max(1, localEmbeddingConfig.getThreads()),
+                        new CustomizableThreadFactory("migration-embed-"));
+                }
+                model = LocalEmbeddingModelConfig.create(localEmbeddingConfig, localExecutor, migration.getDimension());
+            } else {
+                model = QwenEmbeddingModel.builder()
+                    .apiKey(apiKey)
+                    .modelName(migration.getModelName())
+                    .dimension(migration.getDimension())
+                    .build();
+            }
+            EmbeddingStore<TextSegment> store = PgVectorEmbeddingStore.builder()
+                .host(pgVectorProperties.getHost())
+                .port(pgVectorProperties.getPort())
+                .user(pgVectorProperties.getUser())
+                .password(pgVectorProperties.getPassword())
+                .database(pgVectorProperties.getDatabase())
+                .table(migration.getTargetTable())
+                .dimension(migration.getDimension())
+                .dropTableFirst(false)
+                .createTable(true)
+                .build();
+            log.info("影子表已就绪: table={}, provider={}, model={}, dimension={}",
+                migration.getTargetTable(), migration.getProvider(), migration.getModelName(), migration.getDimension());
+            target = new Target(migration.getTargetTable(), model, store, local);
+            return target;
+        }
+    }
+
+    private List<Embedding> embedWithRetry(Target target, List<TextSegment> batch) {
+        int maxAttempts = Math.max(1, ingestConfig.getEmbedMaxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                // 本地模型只占用本机CPU，没有调用成本，不限流
+                if (!target.local()) {
+                    rateLimiter.acquire();
+                }
+                return target.model().embedAll(new ArrayList<>(batch)).content();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("向量化被中断", e);
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                long sleep = ingestConfig.getEmbedRetryBackoffMs() << (attempt - 1);
+                log.warn("影子表向量化失败，{}ms后第{}次重试: {}", sleep, attempt, e.getMessage());
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("向量化被中断", ie);
+                }
+            }
+        }
+    }
+
+    private String toJson(TextSegment segment) {
+        try {
+            return objectMapper.writeValueAsString(segment.metadata().toMap());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (localExecutor != null) {
+            localExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.tripdog.ai.ingest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import com.tripdog.common.RedisService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/23 15:40
+ * @description: 跨实例的固定窗口限流器。
+ * 所有实例对同一个Redis计数器按时间窗口自增，窗口内超出配额的请求等到下一个窗口，总速率不随实例数增加；
+ * 速率低于每秒1次时拉长窗口，保证每个窗口至少放行1次。
+ * Redis 不可用时退回本实例令牌桶（此时上限按实例计算）并记录告警，限流不会阻塞业务。
+ */
+@Slf4j
+public class ClusterRateLimiter {
+    private final RedisService redisService;
+    private final String key;
+    private final DoubleSupplier rate;
+    private final EmbeddingRateLimiter fallback;
+
+    /**
+     * @param key Redis计数器前缀
+     * @param rate 所有实例合计的每秒请求数，小于等于0表示不限流
+     * @param fallback Redis 不可用时使用的本实例令牌桶
+     */
+    public ClusterRateLimiter(RedisService redisService, String key, DoubleSupplier rate, EmbeddingRateLimiter fallback) {
+        this.redisService = redisService;
+        this.key = key;
+        this.rate = rate;
+        this.fallback = fallback;
+    }
+
+    /**
+     * 获取一次请求配额，当前窗口已满时阻塞到下一个窗口
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            double rate = this.rate.getAsDouble();
+            if (rate <= 0) {
+                return;
+            }
+            long windowMs = Math.max(1000L, (long) Math.ceil(1000 / rate));
+            long permits = Math.max(1L, (long) Math.floor(rate * windowMs / 1000));
+            long now = System.currentTimeMillis();
+            long window = now / windowMs;
+            String windowKey = key + ":" + windowMs + ":" + window;
+            Long count = redisService.increment(windowKey, 1);
+            if (count == null) {
+                log.warn("限流计数失败，退回本实例限流: {}", key);
+                fallback.acquire();
+                return;
+            }
+            if (count == 1) {
+                redisService.expire(windowKey, windowMs * 2, TimeUnit.MILLISECONDS);
+            }
+            if (count <= permits) {
+                return;
+            }
+            Thread.sleep(Math.max(1, (window + 1) * windowMs - now));
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.tripdog.ai.ingest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.tripdog.ai.ingest.TokenAwareDocumentSplitter.Chunk;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.model.entity.DocDO;
+
+import dev.langchain4j.community.model.dashscope.QwenEmbeddingModel;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.common.Constants.DOC_READY;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/23 16:40
+ * @description: 向量维度离线评估，通过启动参数触发：
+ * --rag.eval.dimensions=512,256 [--rag.eval.k=10] [--rag.eval.max-segments=2000] [--rag.eval.queries-file=/path/to/queries.txt]
+ * 从已入库文档的提取文本取样切分，分别以基线维度（默认1024）与各候选维度调用 text-embedding-v3 向量化片段与查询，
+ * 以基线维度的精确 top-k 为标准答案计算 recall@k；同时给出把基线向量截断到该维度再归一化（Matryoshka）的 recall@k、
+ * top-1 平均余弦相似度（用于调整 minScore）、单向量存储字节数与暴力检索耗时。不写入向量库。
+ * 查询文件每行一条真实聊天问题，未提供时用片段开头模拟短查询。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rag.eval", name = "dimensions")
+public class DimensionEvalRunner implements ApplicationRunner {
+    private static final int QUERY_CHARS = 30;
+
+    private final DocMapper docMapper;
+    private final ExtractedTextStore extractedTextStore;
+    private final DocumentIngestionPipeline pipeline;
+    private final DocIngestionService docIngestionService;
+    private final EmbeddingRateLimiter rateLimiter;
+    private final IngestConfig ingestConfig;
+
+    @Value("${rag.eval.dimensions}")
+    private int[] dimensions;
+
+    @Value("${rag.eval.baseline-dimension:1024}")
+    private int baselineDimension;
+
+    @Value("${rag.eval.model-name:text-embedding-v3}")
+    private String modelName;
+
+    @Value("${rag.eval.k:10}")
+    private int k;
+
+    @Value("${rag.eval.max-segments:2000}")
+    private int maxSegments;
+
+    @Value("${rag.eval.max-queries:200}")
+    private int maxQueries;
+
+    @Value("${rag.eval.queries-file:}")
+    private String queriesFile;
+
+    @Value("${DASHSCOPE_API_KEY}")
+    private String apiKey;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        List<TextSegment> segments = loadCorpus();
+        List<String> queries = loadQueries(segments);
+        if (segments.size() <= k || queries.isEmpty()) {
+            log.warn("维度评估语料不足: segments={}, queries={}, k={}", segments.size(), queries.size(), k);
+            return;
+        }
+        log.info("维度评估: model={}, baseline={}, dimensions={}, segments={}, queries={}, k={}",
+            modelName, baselineDimension, Arrays.toString(dimensions), segments.size(), queries.size(), k);
+
+        EmbeddingModel baselineModel = model(baselineDimension);
+        float[][] baselineSegments = embed(baselineModel, segments);
+        float[][] baselineQueries = embed(baselineModel, queries.stream().map(TextSegment::from).toList());
+        List<Set<Integer>> truth = new ArrayList<>(queries.size());
+        for (float[] query : baselineQueries) {
+            truth.add(topK(query, baselineSegments).ids());
+        }
+        report("baseline", baselineDimension, baselineSegments, baselineQueries, truth);
+
+        for (int dimension : dimensions) {
+            if (dimension == baselineDimension) {
+                continue;
+            }
+            try {
+                EmbeddingModel model = model(dimension);
+                report("api", dimension, embed(model, segments),
+                    embed(model, queries.stream().map(TextSegment::from).toList()), truth);
+                if (dimension < baselineDimension) {
+                    report("truncated", dimension, truncate(baselineSegments, dimension),
+                        truncate(baselineQueries, dimension), truth);
+                }
+            } catch (Exception e) {
+                log.error("维度评估失败: dimension={}", dimension, e);
+            }
+        }
+    }
+
+    /**
+     * 按文档ID顺序读取已入库文档的提取文本并切分，直到达到片段上限；没有提取文本或读取失败的文档跳过
+     */
+    private List<TextSegment> loadCorpus() {
+        List<TextSegment> segments = new ArrayList<>();
+        long lastId = 0;
+        List<DocDO> page;
+        while (segments.size() < maxSegments
+                && !(page = docMapper.selectByStatusAfterId(DOC_READY, lastId, ingestConfig.getReindexBatchSize())).isEmpty()) {
+            for (DocDO doc : page) {
+                String text;
+                try {
+                    text = extractedTextStore.load(doc);
+                } catch (Exception e) {
+                    log.warn("读取提取文本失败，跳过: fileId={}", doc.getFileId(), e);
+                    continue;
+                }
+                if (text == null) {
+                    continue;
+                }
+                for (Chunk chunk : pipeline.split(Document.from(text), docIngestionService.contextOf(doc))) {
+                    if (segments.size() >= maxSegments) {
+                        break;
+                    }
+                    segments.add(chunk.segment());
+                }
+            }
+            lastId = page.getLast().getId();
+        }
+        return segments;
+    }
+
+    private List<String> loadQueries(List<TextSegment> segments) throws Exception {
+        List<String> queries;
+        if (queriesFile != null && !queriesFile.isBlank()) {
+            queries = Files.readAllLines(Path.of(queriesFile)).stream().map(String::trim).filter(s -> !s.isEmpty()).toList();
+        } else {
+            // 聊天查询通常很短，用随机片段的开头模拟；固定种子保证各次评估可比
+            List<TextSegment> shuffled = new ArrayList<>(segments);
+            Collections.shuffle(shuffled, new Random(42));
+            queries = shuffled.stream()
+                .map(s -> s.text().length() > QUERY_CHARS ? s.text().substring(0, QUERY_CHARS) : s.text())
+                .toList();
+        }
+        return queries.size() > maxQueries ? queries.subList(0, maxQueries) : queries;
+    }
+
+    private void report(String mode, int dimension, float[][] segments, float[][] queries, List<Set<Integer>> truth) {
+        double recall = 0;
+        double top1Score = 0;
+        long searchNanos = 0;
+        for (int i = 0; i < queries.length; i++) {
+            long t = System.nanoTime();
+            TopK result = topK(queries[i], segments);
+            searchNanos += System.nanoTime() - t;
+            Set<Integer> hit = new HashSet<>(result.ids());
+            hit.retainAll(truth.get(i));
+            recall += (double) hit.size() / k;
+            top1Score += result.top1Score();
+        }
+        log.info("维度评估: mode={}, dimension={}, recall@{}={}, top1平均余弦={}, 单向量{}字节, 暴力检索{}ms/查询",
+            mode, dimension, k,
+            String.format("%.4f", recall / queries.length),
+            String.format("%.4f", top1Score / queries.length),
+            dimension * Float.BYTES,
+            String.format("%.2f", searchNanos / 1_000_000.0 / queries.length));
+    }
+
+    /**
+     * @param ids top-k 片段下标
+     * @param top1Score 最高余弦相似度
+     */
+    private record TopK(Set<Integer> ids, double top1Score) {
+    }
+
+    /**
+     * 向量均已归一化，点积即余弦相似度
+     */
+    private TopK topK(float[] query, float[][] segments) {
+        double[] scores = new double[segments.length];
+        Integer[] order = new Integer[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            double dot = 0;
+            for (int j = 0; j < query.length; j++) {
+                dot += query[j] * segments[i][j];
+            }
+            scores[i] = dot;
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+        return new TopK(new HashSet<>(Arrays.asList(order).subList(0, Math.min(k, order.length))), scores[order[0]]);
+    }
+
+    private EmbeddingModel model(int dimension) {
+        return QwenEmbeddingModel.builder()
+            .apiKey(apiKey)
+            .modelName(modelName)
+            .dimension(dimension)
+            .build();
+    }
+
+    /**
+     * 分批向量化，经过入库令牌桶限流
+     */
+    private float[][] embed(EmbeddingModel model, List<TextSegment> segments) throws InterruptedException {
+        int batchSize = Math.max(1, ingestConfig.getEmbedBatchSize());
+        float[][] vectors = new float[segments.size()][];
+        for (int from = 0; from < segments.size(); from += batchSize) {
+            rateLimiter.acquire();
+            List<Embedding> embeddings = model.embedAll(
+                new ArrayList<>(segments.subList(from, Math.min(from + batchSize, segments.size())))).content();
+            for (int i = 0; i < embeddings.size(); i++) {
+                vectors[from + i] = normalize(embeddings.get(i).vector());
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * 截取前 dimension 维并重新归一化
+     */
+    private static float[][] truncate(float[][] vectors, int dimension) {
+        float[][] result = new float[vectors.length][];
+        for (int i = 0; i < vectors.length; i++) {
+            result[i] = normalize(Arrays.copyOf(vectors[i], dimension));
+        }
+        return result;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) (vector[i] / norm);
+            }
+        }
+        return vector;
+    }
+}
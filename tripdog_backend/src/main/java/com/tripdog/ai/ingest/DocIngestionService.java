@@ -0,0 +1,403 @@
+package com.tripdog.ai.ingest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.common.utils.TeeDigestInputStream;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.model.entity.DocDO;
+import com.tripdog.service.impl.DocObjectService;
+import com.tripdog.service.impl.VectorDataService;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+
+import dev.langchain4j.data.document.Document;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.common.Constants.DOC_DELETED;
+import static com.tripdog.common.Constants.DOC_FAILED;
+import static com.tripdog.common.Constants.DOC_PENDING;
+import static com.tripdog.common.Constants.DOC_PROCESSING;
+import static com.tripdog.common.Constants.DOC_READY;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/16 10:05
+ * @description: 文档异步解析服务。
+ * 上传接口只负责存储原文件并写入PENDING记录，解析、切分、向量化与入库由本服务的有界线程池完成。
+ * 任务通过 PENDING→PROCESSING 条件更新抢占，多实例部署时同一文档只会被处理一次；
+ * 失败后清理已写入的向量并按指数退避重试，超过最大次数标记FAILED。
+ * 处理中的文档以 update_time 作为租约，本实例按 leaseSeconds/3 的间隔为在途文档续约（心跳），
+ * 启动时及定时扫描只把租约过期的PROCESSING重置为PENDING并重新投递，耗时很长的解析不会被误判为中断。
+ * 原文件按内容寻址存储，其他文档已解析过相同内容时直接复用提取文本，跳过下载与解析。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocIngestionService implements DisposableBean {
+    private static final int PROGRESS_LOADED = 10;
+    private static final int PROGRESS_PARSED = 30;
+    private static final int PROGRESS_DONE = 100;
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final DocMapper docMapper;
+    private final DocumentIngestionPipeline pipeline;
+    private final DocumentParseService parseService;
+    private final ExtractedTextStore extractedTextStore;
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+    private final VectorDataService vectorDataService;
+    private final DocObjectService docObjectService;
+    private final CorpusVersionService corpusVersionService;
+    private final IngestConfig config;
+
+    /** 已投递但尚未执行完的文档，避免定时扫描重复投递 */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    /** 等待退避重试的文档，退避期间不接受投递 */
+    private final Set<String> retryPending = ConcurrentHashMap.newKeySet();
+    /** 上传时保留的小文件副本，解析时直接使用，省去一次MinIO下载 */
+    private final Map<String, byte[]> inlineContents = new ConcurrentHashMap<>();
+    private final AtomicLong inlineBytes = new AtomicLong();
+    private ThreadPoolExecutor workers;
+    private ScheduledExecutorService retryScheduler;
+
+    @PostConstruct
+    public void start() {
+        workers = new ThreadPoolExecutor(
+            config.getWorkerThreads(), config.getWorkerThreads(),
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(config.getQueueCapacity()),
+            new CustomizableThreadFactory("doc-ingest-"),
+            new ThreadPoolExecutor.AbortPolicy());
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("doc-ingest-retry-"));
+        long heartbeatMs = Math.max(1000L, config.getLeaseSeconds() * 1000L / 3);
+        retryScheduler.scheduleWithFixedDelay(this::renewLeases, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 为本实例在途的文档续约（解析与替换任务均在 inFlight 中）
+     */
+    private void renewLeases() {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        try {
+            docMapper.renewProcessing(List.copyOf(inFlight));
+        } catch (Exception e) {
+            log.warn("续约处理中文档失败", e);
+        }
+    }
+
+    /**
+     * 投递解析任务并附带上传时的内存副本，副本总量超出预算时忽略副本
+     */
+    public void submit(String fileId, byte[] content) {
+        if (content != null && inlineBytes.addAndGet(content.length) <= config.getInlineBufferBudgetBytes()) {
+            inlineContents.put(fileId, content);
+        } else if (content != null) {
+            inlineBytes.addAndGet(-content.length);
+        }
+        submit(fileId);
+        if (!inFlight.contains(fileId)) {
+            releaseInline(fileId);
+        }
+    }
+
+    /**
+     * 投递解析任务，队列已满时文档保持PENDING，等待定时扫描补投
+     */
+    public void submit(String fileId) {
+        if (retryPending.contains(fileId) || !inFlight.add(fileId)) {
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    process(fileId);
+                } finally {
+                    releaseInline(fileId);
+                    inFlight.remove(fileId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(fileId);
+            log.warn("解析队列已满，文档稍后重新投递: {}", fileId);
+        }
+    }
+
+    /**
+     * 在解析线程池中执行针对某个文档的其他任务（如替换），与解析任务共享并发与去重控制
+     * @return 是否已投递
+     */
+    boolean execute(String fileId, Runnable job) {
+        if (!inFlight.add(fileId)) {
+            return false;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    inFlight.remove(fileId);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(fileId);
+            return false;
+        }
+    }
+
+    /**
+     * 启动后恢复未完成的任务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverOnStartup() {
+        rescan();
+    }
+
+    /**
+     * 定时扫描：重置中断任务并补投PENDING文档
+     */
+    @Scheduled(fixedDelayString = "${rag.ingest.rescan-interval-ms:60000}",
+               initialDelayString = "${rag.ingest.rescan-interval-ms:60000}")
+    public void rescan() {
+        try {
+            int reset = docMapper.resetStaleProcessing(config.getLeaseSeconds());
+            if (reset > 0) {
+                log.warn("重置{}个中断的解析任务为PENDING", reset);
+            }
+            List<DocDO> pending = docMapper.selectByStatus(DOC_PENDING, config.getRescanBatchSize());
+            for (DocDO doc : pending) {
+                submit(doc.getFileId());
+            }
+        } catch (Exception e) {
+            log.error("扫描待解析文档失败", e);
+        }
+    }
+
+    private void process(String fileId) {
+        // 抢占任务，失败说明已被其他实例处理或文档已删除
+        if (docMapper.compareAndSetStatus(fileId, DOC_PENDING, DOC_PROCESSING) == 0) {
+            return;
+        }
+        DocDO doc = docMapper.selectByFileId(fileId);
+        if (doc == null) {
+            return;
+        }
+
+        Map<String, Long> timings = new LinkedHashMap<>();
+        String stage = "load";
+        try {
+            long start = System.currentTimeMillis();
+            Document document = reuseExtractedText(doc);
+            if (document != null) {
+                timings.put("reuse", System.currentTimeMillis() - start);
+                docMapper.updateProgress(fileId, PROGRESS_PARSED);
+            } else {
+                DocumentParseService.ParsedDocument parsed;
+                // 直传文件未经过应用节点，内容哈希在解析读取时顺带计算
+                boolean digest = doc.getContentHash() == null;
+                try (InputStream in = digest ? new TeeDigestInputStream(open(doc), 0) : open(doc)) {
+                    docMapper.updateProgress(fileId, PROGRESS_LOADED);
+                    timings.put(stage, System.currentTimeMillis() - start);
+
+                    stage = "parse";
+                    start = System.currentTimeMillis();
+                    parsed = parseService.parse(in, fileId, doc.getFileName());
+                    if (digest) {
+                        backfillContentHash(doc, (TeeDigestInputStream) in);
+                    }
+                }
+                timings.put(stage, System.currentTimeMillis() - start);
+                docMapper.updateProgress(fileId, PROGRESS_PARSED);
+
+                // 迁移到内容寻址路径并保存提取文本，后续重建索引与相同内容的上传直接使用；失败不影响本次入库
+                stage = "persist";
+                start = System.currentTimeMillis();
+                if (digest) {
+                    try {
+                        docObjectService.adopt(doc);
+                    } catch (Exception e) {
+                        log.warn("迁移到内容寻址路径失败，保留原路径: fileId={}", fileId, e);
+                    }
+                }
+                try {
+                    extractedTextStore.save(doc, parsed);
+                } catch (Exception e) {
+                    log.warn("保存提取文本失败: fileId={}", fileId, e);
+                }
+                timings.put(stage, System.currentTimeMillis() - start);
+                document = parsed.document();
+            }
+
+            stage = "ingest";
+            start = System.currentTimeMillis();
+            int segmentCount = pipeline.ingest(document, contextOf(doc));
+            timings.put(stage, System.currentTimeMillis() - start);
+
+            // 处理期间文档被删除：清理刚写入的向量，不再回写状态
+            DocDO latest = docMapper.selectByFileId(fileId);
+            if (latest == null || DOC_DELETED.equals(latest.getStatus())) {
+                vectorDataService.deleteByDocumentId(fileId);
+                log.info("文档在解析期间被删除，已清理向量: {}", fileId);
+                return;
+            }
+            corpusVersionService.bump(doc.getUserId(), doc.getRoleId());
+
+            doc.setStatus(DOC_READY);
+            doc.setProgress(PROGRESS_DONE);
+            doc.setSegmentCount(segmentCount);
+            doc.setStageTimings(formatTimings(timings));
+            doc.setErrorMsg(null);
+            docMapper.updateIngestResult(doc);
+            log.info("文档解析完成: fileId={}, timings={}", fileId, doc.getStageTimings());
+        } catch (Exception e) {
+            log.error("文档解析失败: fileId={}, stage={}", fileId, stage, e);
+            handleFailure(doc, stage, timings, e);
+        }
+    }
+
+    /**
+     * 内容寻址对象已有提取文本（相同内容已被解析过）时直接复用，读取失败时回退到正常解析
+     */
+    private Document reuseExtractedText(DocDO doc) {
+        if (!DocObjectService.isContentAddressed(doc.getFileUrl())) {
+            return null;
+        }
+        try {
+            String text = extractedTextStore.load(doc);
+            if (text != null) {
+                log.info("复用已有提取文本: fileId={}, objectKey={}", doc.getFileId(), doc.getFileUrl());
+                return Document.from(text);
+            }
+        } catch (Exception e) {
+            log.debug("读取提取文本失败，重新解析: fileId={}", doc.getFileId(), e);
+        }
+        return null;
+    }
+
+    /**
+     * 解析器可能没有读完整个文件，读完剩余部分后字节数与文件大小一致才回填哈希
+     */
+    private void backfillContentHash(DocDO doc, TeeDigestInputStream in) {
+        try {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            log.debug("读取剩余内容失败，跳过内容哈希: fileId={}", doc.getFileId());
+            return;
+        }
+        if (doc.getFileSize() != null && in.getBytesRead() == doc.getFileSize().longValue()) {
+            doc.setContentHash(in.sha256Hex());
+            try {
+                docMapper.updateContentHash(doc.getFileId(), doc.getContentHash());
+            } catch (DuplicateKeyException e) {
+                // 同一用户同一角色已有相同内容的有效文档，本文档不参与去重，仍正常入库
+                log.info("直传文档与已有文档内容相同，不回填内容哈希: fileId={}", doc.getFileId());
+            }
+        }
+    }
+
+    private InputStream open(DocDO doc) throws Exception {
+        byte[] inline = inlineContents.get(doc.getFileId());
+        if (inline != null) {
+            return new ByteArrayInputStream(inline);
+        }
+        return minioClient.getObject(GetObjectArgs.builder()
+            .bucket(minioConfig.getBucketName())
+            .object(doc.getFileUrl())
+            .build());
+    }
+
+    private void releaseInline(String fileId) {
+        byte[] removed = inlineContents.remove(fileId);
+        if (removed != null) {
+            inlineBytes.addAndGet(-removed.length);
+        }
+    }
+
+    IngestionContext contextOf(DocDO doc) {
+        return new IngestionContext(doc.getUserId(), doc.getRoleId(), doc.getFileId(), doc.getFileName(), uploadTime(doc));
+    }
+
+    private void handleFailure(DocDO doc, String stage, Map<String, Long> timings, Exception e) {
+        String fileId = doc.getFileId();
+        try {
+            // 清理可能已部分写入的向量，保证重试幂等
+            vectorDataService.deleteByDocumentId(fileId);
+        } catch (Exception ex) {
+            log.error("清理失败文档的向量数据异常: {}", fileId, ex);
+        }
+
+        int retryCount = doc.getRetryCount() == null ? 0 : doc.getRetryCount();
+        boolean retry = retryCount < config.getMaxRetries() && !(e instanceof NonRetryableIngestException);
+        doc.setRetryCount(retryCount + 1);
+        doc.setStatus(retry ? DOC_PENDING : DOC_FAILED);
+        doc.setProgress(0);
+        doc.setStageTimings(formatTimings(timings));
+        doc.setErrorMsg(truncate(stage + ": " + e.getMessage()));
+        if (docMapper.updateIngestResult(doc) == 0 || !retry) {
+            return;
+        }
+
+        long delay = config.getRetryBackoffMs() << Math.min(retryCount, 10);
+        retryPending.add(fileId);
+        retryScheduler.schedule(() -> {
+            retryPending.remove(fileId);
+            submit(fileId);
+        }, delay, TimeUnit.MILLISECONDS);
+        log.info("文档将在{}ms后第{}次重试: {}", delay, retryCount + 1, fileId);
+    }
+
+    private String uploadTime(DocDO doc) {
+        if (doc.getCreateTime() == null) {
+            return Instant.now().toString();
+        }
+        return doc.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toString();
+    }
+
+    private String formatTimings(Map<String, Long> timings) {
+        return timings.entrySet().stream()
+            .map(e -> e.getKey() + "=" + e.getValue() + "ms")
+            .collect(Collectors.joining(","));
+    }
+
+    private String truncate(String message) {
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+
+    @Override
+    public void destroy() {
+        retryScheduler.shutdownNow();
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,68 @@
+package com.tripdog.ai.ingest;
+
+import java.util.List;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.tripdog.ai.embedding.PgVectorChunkDao;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.model.entity.DocDO;
+import com.tripdog.service.impl.DocObjectService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/20 19:40
+ * @description: 已删除文档的后台清理。
+ * 删除接口只把文档标记为DELETED（墓碑），检索立即排除；本服务定时分批删除向量，
+ * 确认向量为空后删除墓碑记录并释放原文件引用（内容寻址对象在引用数归零时才删除，删除后确认对象已不存在）。
+ * 任一步失败记录原因并在下一轮重试，超过最大尝试次数后保留墓碑等待人工处理，数据不会处于无记录的半删除状态。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocPurgeService {
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final DocMapper docMapper;
+    private final PgVectorChunkDao chunkDao;
+    private final DocObjectService docObjectService;
+    private final IngestConfig config;
+
+    @Scheduled(fixedDelayString = "${rag.ingest.purge-interval-ms:30000}", initialDelay = 30_000)
+    public void purge() {
+        List<DocDO> docs = docMapper.selectPurgeable(config.getPurgeMaxAttempts(), config.getPurgeBatchSize());
+        for (DocDO doc : docs) {
+            try {
+                purge(doc);
+            } catch (Exception e) {
+                int attempt = (doc.getRetryCount() == null ? 0 : doc.getRetryCount()) + 1;
+                log.warn("文档清理失败，稍后重试: fileId={}, attempt={}", doc.getFileId(), attempt, e);
+                String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+                docMapper.updatePurgeFailure(doc.getFileId(),
+                    message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+                if (attempt >= config.getPurgeMaxAttempts()) {
+                    log.error("文档清理多次失败，需人工处理: fileId={}", doc.getFileId());
+                }
+            }
+        }
+    }
+
+    private void purge(DocDO doc) throws Exception {
+        String fileId = doc.getFileId();
+        long start = System.currentTimeMillis();
+
+        int removed = chunkDao.removeChunks(fileId, config.getPurgeVectorBatchSize());
+        // 校验：清理期间仍在写入的向量留到下一轮
+        if (!chunkDao.chunkIds(fileId).isEmpty()) {
+            throw new IllegalStateException("向量未清理干净");
+        }
+
+        // 删除记录与释放引用在同一事务中，对象删除失败时墓碑保留
+        docObjectService.deleteTombstone(doc);
+        log.info("文档清理完成: fileId={}, 向量={}, 耗时={}ms", fileId, removed, System.currentTimeMillis() - start);
+    }
+}
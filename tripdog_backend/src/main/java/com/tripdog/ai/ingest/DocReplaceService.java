@@ -0,0 +1,201 @@
+package com.tripdog.ai.ingest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.embedding.PgVectorChunkDao;
+import com.tripdog.ai.embedding.ShadowVectorStore;
+import com.tripdog.ai.ingest.TokenAwareDocumentSplitter.Chunk;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.model.dto.FileUploadDTO;
+import com.tripdog.model.entity.DocDO;
+import com.tripdog.service.impl.DocObjectService;
+import com.tripdog.service.impl.VectorDataService;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+
+import dev.langchain4j.data.embedding.Embedding;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.common.Constants.DOC_FAILED;
+import static com.tripdog.common.Constants.DOC_PENDING;
+import static com.tripdog.common.Constants.DOC_PROCESSING;
+import static com.tripdog.common.Constants.DOC_READY;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/19 16:00
+ * @description: 文档替换（增量重新入库）。
+ * 新版本解析切分后，按稳定片段ID与库中该文档的片段做差集：只向量化新增片段，
+ * 新增、元数据刷新与删除在同一个pgvector事务中完成，检索不会看到半更新的语料；
+ * 替换期间旧版本始终可检索；版本切换之前失败时回到旧版本，切换之后的步骤（影子表、提取文本）失败只记录日志。
+ * 向量迁移进行中时，新模型的向量在切换前算好，版本切换成功后整篇写入影子表。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocReplaceService {
+    private final DocMapper docMapper;
+    private final DocIngestionService docIngestionService;
+    private final DocumentParseService parseService;
+    private final DocumentIngestionPipeline pipeline;
+    private final PgVectorChunkDao chunkDao;
+    private final ExtractedTextStore extractedTextStore;
+    private final CorpusVersionService corpusVersionService;
+    private final VectorDataService vectorDataService;
+    private final DocObjectService docObjectService;
+    private final ShadowVectorStore shadowVectorStore;
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+
+    /**
+     * 抢占文档并投递替换任务
+     * @param fileId 被替换文档的文件ID
+     * @param upload 已登记到内容寻址路径的新版本
+     * @return 是否投递成功，文档不存在或正在处理中时返回false
+     */
+    public boolean submit(String fileId, FileUploadDTO upload, String fileName, long fileSize) {
+        DocDO current = docMapper.selectByFileId(fileId);
+        if (current == null) {
+            return false;
+        }
+        try {
+            if (docMapper.compareAndSetStatus(fileId, DOC_READY, DOC_PROCESSING) == 0
+                && docMapper.compareAndSetStatus(fileId, DOC_FAILED, DOC_PROCESSING) == 0) {
+                return false;
+            }
+        } catch (DuplicateKeyException e) {
+            // FAILED 文档重新参与去重时，已有相同内容的有效文档
+            log.info("已有相同内容的文档，拒绝替换: fileId={}", fileId);
+            return false;
+        }
+        DocDO next = new DocDO();
+        next.setFileId(fileId);
+        next.setUserId(current.getUserId());
+        next.setRoleId(current.getRoleId());
+        next.setCreateTime(current.getCreateTime());
+        next.setFileUrl(upload.getObjectKey());
+        next.setFileName(fileName);
+        next.setFileSize((double) fileSize);
+        next.setContentHash(upload.getContentHash());
+
+        boolean submitted = docIngestionService.execute(fileId, () -> replace(current, next, upload.getContent()));
+        if (!submitted) {
+            docMapper.compareAndSetStatus(fileId, DOC_PROCESSING, current.getStatus());
+        }
+        return submitted;
+    }
+
+    private void replace(DocDO current, DocDO next, byte[] content) {
+        String fileId = current.getFileId();
+        Map<String, Long> timings = new LinkedHashMap<>();
+        DocumentParseService.ParsedDocument parsed;
+        ShadowVectorStore.Prepared shadow;
+        List<Chunk> added = new ArrayList<>();
+        List<Chunk> kept = new ArrayList<>();
+        List<String> removed;
+        boolean swapped = false;
+
+        // 提交前：版本切换（replaceVersion）之前的任何失败都回到旧版本
+        try {
+            long start = System.currentTimeMillis();
+            try (InputStream in = content != null ? new ByteArrayInputStream(content) : minioClient.getObject(
+                    GetObjectArgs.builder().bucket(minioConfig.getBucketName()).object(next.getFileUrl()).build())) {
+                parsed = parseService.parse(in, fileId, next.getFileName());
+            }
+            timings.put("parse", System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            List<Chunk> chunks = pipeline.split(parsed.document(), docIngestionService.contextOf(next));
+            Set<String> existing = chunkDao.chunkIds(fileId);
+            for (Chunk chunk : chunks) {
+                (existing.contains(chunk.id()) ? kept : added).add(chunk);
+            }
+            Set<String> nextIds = chunks.stream().map(Chunk::id).collect(Collectors.toSet());
+            removed = existing.stream().filter(id -> !nextIds.contains(id)).toList();
+            timings.put("diff", System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            List<Embedding> embeddings = pipeline.embed(added, fileId);
+            // 新模型向量化失败只登记重做，不影响替换
+            shadow = shadowVectorStore.prepareQuietly(fileId,
+                chunks.stream().map(Chunk::id).toList(), chunks.stream().map(Chunk::segment).toList());
+            timings.put("embed", System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            chunkDao.swap(
+                added.stream().map(Chunk::id).toList(), embeddings, added.stream().map(Chunk::segment).toList(),
+                kept.stream().map(Chunk::id).toList(), kept.stream().map(Chunk::segment).toList(),
+                removed);
+            swapped = true;
+            timings.put("swap", System.currentTimeMillis() - start);
+
+            next.setSegmentCount(chunks.size());
+            next.setStageTimings(timings.entrySet().stream()
+                .map(e -> e.getKey() + "=" + e.getValue() + "ms").collect(Collectors.joining(",")));
+            // 切换版本与释放旧版本对象在同一事务中
+            if (!docObjectService.replaceVersion(next, current.getFileUrl())) {
+                // 替换期间文档被删除
+                vectorDataService.deleteByDocumentId(fileId);
+                docObjectService.releaseQuietly(next.getFileUrl());
+                return;
+            }
+        } catch (Exception e) {
+            rollback(current, next, swapped, e);
+            return;
+        }
+
+        // 提交后：新版本已生效，旧版本对象已释放，以下步骤失败只记录日志，不再回滚，也不释放新版本对象
+        // 版本切换后再写影子表，与迁移回填并发时回填可据 file_url 发现版本变化；失败时登记由迁移任务重做
+        shadowVectorStore.writeQuietly(shadow);
+        corpusVersionService.bump(next.getUserId(), next.getRoleId());
+        try {
+            extractedTextStore.save(next, parsed);
+        } catch (Exception e) {
+            log.warn("保存提取文本失败: fileId={}", fileId, e);
+        }
+        log.info("文档替换完成: fileId={}, 新增={}, 保留={}, 删除={}, timings={}",
+            fileId, added.size(), kept.size(), removed.size(), next.getStageTimings());
+    }
+
+    /**
+     * 版本切换前失败：释放新版本对象，文档回到旧版本。
+     * 片段已切换（swap 已提交）而版本切换失败时，向量库已是新版本、文档记录仍是旧版本，
+     * 此时清除该文档的向量并置为PENDING，由解析任务按旧版本重新入库（定时扫描会补投）
+     */
+    private void rollback(DocDO current, DocDO next, boolean swapped, Exception e) {
+        String fileId = current.getFileId();
+        log.error("文档替换失败，保留旧版本: fileId={}, 片段已切换={}", fileId, swapped, e);
+        docObjectService.releaseQuietly(next.getFileUrl());
+        String status = current.getStatus() == null ? DOC_READY : current.getStatus();
+        if (swapped) {
+            try {
+                vectorDataService.deleteByDocumentId(fileId);
+                status = DOC_PENDING;
+            } catch (Exception ex) {
+                log.error("清理替换失败文档的向量异常: {}", fileId, ex);
+            }
+            corpusVersionService.bump(current.getUserId(), current.getRoleId());
+        }
+        current.setStatus(status);
+        String message = "替换失败: " + e.getMessage();
+        current.setErrorMsg(message.length() > 500 ? message.substring(0, 500) : message);
+        try {
+            docMapper.updateIngestResult(current);
+        } catch (Exception ex) {
+            // 文档保持PROCESSING，租约过期后由定时扫描重置为PENDING重新入库
+            log.error("回写替换失败状态异常: {}", fileId, ex);
+        }
+    }
+}
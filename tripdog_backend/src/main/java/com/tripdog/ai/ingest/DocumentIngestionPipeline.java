@@ -0,0 +1,230 @@
+package com.tripdog.ai.ingest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.tripdog.ai.embedding.ShadowVectorStore;
+import com.tripdog.ai.ingest.TokenAwareDocumentSplitter.Chunk;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/16 16:40
+ * @description: 文档入库流水线：写入元数据 → 切分 → 分批向量化 → 写入向量库。
+ * 元数据来自显式传入的 {@link IngestionContext}，不依赖调用线程，
+ * 同一文档的各批次在 ingest-embed 线程池上并行向量化，多个文档可由不同工作线程同时入库。
+ * 每个批次先经过全局令牌桶限流，失败按指数退避重试；向量化完成即 addAll 写入，
+ * 在途批次数受 embedMaxInFlight 限制，向量不会在内存中累积，大文档内存占用保持平稳。
+ * 片段按文本SHA-256先查 {@link SegmentEmbeddingCache}，只有未命中的片段才调用向量模型。
+ * 切分由 {@link TokenAwareDocumentSplitter} 完成，片段以稳定ID写入。
+ * 向量迁移进行中时，写入原表后再由 {@link ShadowVectorStore} 用新模型写入影子表；
+ * 影子表写入失败不影响入库结果，文档登记后由迁移任务重做。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DocumentIngestionPipeline implements DisposableBean {
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final IngestConfig config;
+    private final EmbeddingRateLimiter rateLimiter;
+    private final SegmentEmbeddingCache segmentEmbeddingCache;
+    private final IngestDedupMetrics dedupMetrics;
+    private final TokenAwareDocumentSplitter documentSplitter;
+    private final ShadowVectorStore shadowVectorStore;
+    private ExecutorService embedExecutor;
+
+    @PostConstruct
+    public void start() {
+        embedExecutor = Executors.newFixedThreadPool(config.getEmbedConcurrency(),
+            new CustomizableThreadFactory("ingest-embed-"));
+    }
+
+    /**
+     * 入库一个文档
+     * @return 写入的片段数
+     */
+    public int ingest(Document document, IngestionContext context) {
+        long start = System.currentTimeMillis();
+        List<Chunk> chunks = split(document, context);
+        store(chunks, context);
+        shadowVectorStore.mirrorQuietly(context.fileId(),
+            chunks.stream().map(Chunk::id).toList(), chunks.stream().map(Chunk::segment).toList());
+        long cost = Math.max(1, System.currentTimeMillis() - start);
+        log.info("文档入库完成: fileId={}, segments={}, 耗时={}ms, 吞吐={} segments/s",
+            context.fileId(), chunks.size(), cost, String.format("%.1f", chunks.size() * 1000.0 / cost));
+        return chunks.size();
+    }
+
+    /**
+     * 写入上下文元数据并切分
+     */
+    public List<Chunk> split(Document document, IngestionContext context) {
+        context.applyTo(document.metadata());
+        return documentSplitter.split(document, context.fileId(), context.roleId());
+    }
+
+    /**
+     * 分批向量化并写入向量库
+     */
+    public void store(List<Chunk> segments, IngestionContext context) {
+        forEachEmbeddedBatch(segments, context.fileId(), (from, batch, embeddings) -> embeddingStore.addAll(
+            batch.stream().map(Chunk::id).toList(), embeddings, batch.stream().map(Chunk::segment).toList()));
+    }
+
+    /**
+     * 只向量化不写入，返回与片段顺序一致的向量，由调用方自行决定写入时机
+     */
+    public List<Embedding> embed(List<Chunk> segments, String fileId) {
+        Embedding[] result = new Embedding[segments.size()];
+        forEachEmbeddedBatch(segments, fileId, (from, batch, embeddings) -> {
+            for (int i = 0; i < embeddings.size(); i++) {
+                result[from + i] = embeddings.get(i);
+            }
+        });
+        return Arrays.asList(result);
+    }
+
+    @FunctionalInterface
+    private interface BatchSink {
+        void accept(int from, List<Chunk> batch, List<Embedding> embeddings);
+    }
+
+    private void forEachEmbeddedBatch(List<Chunk> segments, String fileId, BatchSink sink) {
+        if (segments.isEmpty()) {
+            return;
+        }
+
+        int batchSize = Math.max(1, config.getEmbedBatchSize());
+        Semaphore inFlight = new Semaphore(Math.max(1, config.getEmbedMaxInFlight()));
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        AtomicInteger reused = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try {
+            for (int from = 0; from < segments.size() && failure.get() == null; from += batchSize) {
+                int batchFrom = from;
+                List<Chunk> batch = segments.subList(from, Math.min(from + batchSize, segments.size()));
+                inFlight.acquire();
+                futures.add(CompletableFuture.runAsync(() -> {
+                        EmbeddedBatch embedded = embedBatch(batch);
+                        sink.accept(batchFrom, batch, embedded.embeddings());
+                        reused.addAndGet(embedded.reused());
+                    }, embedExecutor)
+                    .whenComplete((v, e) -> {
+                        inFlight.release();
+                        if (e != null) {
+                            failure.compareAndSet(null, asRuntime(e));
+                        }
+                    }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new IllegalStateException("文档入库被中断: " + fileId, e);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        dedupMetrics.recordSegments(segments.size(), reused.get());
+        log.debug("片段向量化完成: fileId={}, segments={}, 复用向量={}", fileId, segments.size(), reused.get());
+    }
+
+    /**
+     * @param embeddings 与批次顺序一致的向量
+     * @param reused 复用缓存向量的片段数
+     */
+    private record EmbeddedBatch(List<Embedding> embeddings, int reused) {
+    }
+
+    private EmbeddedBatch embedBatch(List<Chunk> batch) {
+        List<TextSegment> segments = batch.stream().map(Chunk::segment).toList();
+        if (!segmentEmbeddingCache.isEnabled()) {
+            return new EmbeddedBatch(embedWithRetry(segments), 0);
+        }
+
+        List<String> hashes = batch.stream().map(Chunk::hash).toList();
+        Map<String, Embedding> known = segmentEmbeddingCache.lookup(hashes);
+        int reused = (int) hashes.stream().filter(known::containsKey).count();
+
+        // 同一批内的重复文本只向量化一次
+        Map<String, TextSegment> misses = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (!known.containsKey(hashes.get(i))) {
+                misses.putIfAbsent(hashes.get(i), segments.get(i));
+            }
+        }
+        if (!misses.isEmpty()) {
+            List<Embedding> computed = embedWithRetry(new ArrayList<>(misses.values()));
+            Map<String, Embedding> fresh = new LinkedHashMap<>();
+            int i = 0;
+            for (String hash : misses.keySet()) {
+                fresh.put(hash, computed.get(i++));
+            }
+            segmentEmbeddingCache.save(fresh);
+            known.putAll(fresh);
+        }
+
+        return new EmbeddedBatch(hashes.stream().map(known::get).toList(), reused);
+    }
+
+    private List<Embedding> embedWithRetry(List<TextSegment> batch) {
+        int maxAttempts = Math.max(1, config.getEmbedMaxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            try {
+                rateLimiter.acquire();
+                return embeddingModel.embedAll(batch).content();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("向量化被中断", e);
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                // 指数退避 + 抖动，避免多个批次同时重试再次触发限流
+                long backoff = config.getEmbedRetryBackoffMs() << (attempt - 1);
+                long sleep = backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                log.warn("向量化失败，{}ms后第{}次重试: {}", sleep, attempt, e.getMessage());
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("向量化被中断", ie);
+                }
+            }
+        }
+    }
+
+    private RuntimeException asRuntime(Throwable e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return cause instanceof RuntimeException re ? re : new IllegalStateException(cause);
+    }
+
+    @Override
+    public void destroy() {
+        embedExecutor.shutdown();
+    }
+}
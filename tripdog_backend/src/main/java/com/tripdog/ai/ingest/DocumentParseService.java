@@ -0,0 +1,225 @@
+package com.tripdog.ai.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.tripdog.ai.ingest.parser.DocumentParserRouter;
+import com.tripdog.ai.ingest.parser.DocumentParserRouter.ParserKind;
+import com.tripdog.ai.ingest.parser.HtmlTextDocumentParser;
+import com.tripdog.ai.ingest.parser.PlainTextDocumentParser;
+import com.tripdog.common.utils.AbortableInputStream;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/18 10:15
+ * @description: 文档解析服务。
+ * 解析在独立的有界线程池中执行，与聊天请求线程、入库工作线程隔离；
+ * 每个文档有解析超时，提取文本超过 maxExtractedChars 即中止，防止超大或恶意文件占满CPU与堆内存。
+ * 超时后中止解析线程读取的输入流并中断线程，再等待线程退出（最多 parseAbortGraceSeconds）后才返回，
+ * 调用方关闭输入流时解析线程已不再读取；Tika 不读流的纯计算阶段不一定响应中断，
+ * 线程池有界保证最坏情况下也只占用 parseThreads 个线程。
+ * 纯文本、Markdown、JSON、HTML 等由 {@link DocumentParserRouter} 路由到快速通道解析器，不经过Tika，
+ * 但与Tika共用解析线程池、超时与中止逻辑，畸形的超大文本同样受限。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DocumentParseService implements DisposableBean {
+    private final IngestConfig config;
+
+    private final LongAdder fastParsed = new LongAdder();
+    private final LongAdder parsed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder extractedChars = new LongAdder();
+    private final LongAdder parseMillis = new LongAdder();
+    private ThreadPoolExecutor parseExecutor;
+    private DocumentParser tikaParser;
+    private DocumentParser plainParser;
+    private DocumentParser htmlParser;
+    private long lastReported;
+
+    @PostConstruct
+    public void start() {
+        parseExecutor = new ThreadPoolExecutor(
+            config.getParseThreads(), config.getParseThreads(),
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(config.getParseQueueCapacity()),
+            new CustomizableThreadFactory("doc-parse-"),
+            new ThreadPoolExecutor.AbortPolicy());
+        int writeLimit = config.getMaxExtractedChars();
+        tikaParser = new ApacheTikaDocumentParser(null, () -> new BodyContentHandler(writeLimit), null, null, false);
+        plainParser = new PlainTextDocumentParser(writeLimit);
+        htmlParser = new HtmlTextDocumentParser(writeLimit);
+    }
+
+    /**
+     * 按扩展名与文件头选择解析方式（文本类走快速通道，二进制格式交给Tika），在解析池中执行
+     * @param in 文档输入流，由调用方关闭
+     * @param fileId 文件ID，仅用于日志
+     * @param fileName 原始文件名，用于判断扩展名
+     */
+    public ParsedDocument parse(InputStream in, String fileId, String fileName) {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        ParserKind kind = sniff(buffered, fileName);
+        return new ParsedDocument(parseInPool(kind, buffered, fileId), kind);
+    }
+
+    /**
+     * 解析结果
+     * @param document 提取出的文档
+     * @param parser 实际使用的解析方式
+     */
+    public record ParsedDocument(Document document, ParserKind parser) {
+    }
+
+    /**
+     * 供基准测试直接指定解析方式
+     */
+    public DocumentParser parserOf(ParserKind kind) {
+        return switch (kind) {
+            case PLAIN -> plainParser;
+            case HTML -> htmlParser;
+            case TIKA -> tikaParser;
+        };
+    }
+
+    public static ParserKind sniff(BufferedInputStream in, String fileName) {
+        try {
+            byte[] head = new byte[DocumentParserRouter.SNIFF_BYTES];
+            in.mark(head.length);
+            int n = in.readNBytes(head, 0, head.length);
+            in.reset();
+            return DocumentParserRouter.route(fileName, head, n);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 在解析线程池中解析文档，调用线程阻塞等待结果
+     * @param in 文档输入流，由调用方关闭
+     * @param fileId 文件ID，仅用于日志
+     */
+    private Document parseInPool(ParserKind kind, InputStream in, String fileId) {
+        DocumentParser parser = parserOf(kind);
+        long start = System.currentTimeMillis();
+        AbortableInputStream guarded = new AbortableInputStream(in);
+        AtomicBoolean started = new AtomicBoolean();
+        CountDownLatch exited = new CountDownLatch(1);
+        Future<Document> future;
+        try {
+            future = parseExecutor.submit(() -> {
+                // 已被放弃的任务不再开始
+                if (!started.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return parser.parse(guarded);
+                } finally {
+                    exited.countDown();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            // 解析池繁忙属于暂时状态，交给入库重试
+            throw new IllegalStateException("解析线程池已满", e);
+        }
+
+        try {
+            Document document = future.get(config.getParseTimeoutSeconds(), TimeUnit.SECONDS);
+            long cost = System.currentTimeMillis() - start;
+            int chars = document.text() == null ? 0 : document.text().length();
+            (kind == ParserKind.TIKA ? parsed : fastParsed).increment();
+            extractedChars.add(chars);
+            parseMillis.add(cost);
+            log.info("文档解析完成[{}]: fileId={}, chars={}, 耗时={}ms", kind, fileId, chars, cost);
+            return document;
+        } catch (TimeoutException e) {
+            abort(future, guarded, started, exited, fileId);
+            timeouts.increment();
+            throw new NonRetryableIngestException("解析超时(" + config.getParseTimeoutSeconds() + "s)", e);
+        } catch (InterruptedException e) {
+            abort(future, guarded, started, exited, fileId);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("解析被中断", e);
+        } catch (ExecutionException e) {
+            failed.increment();
+            Throwable cause = e.getCause();
+            if (WriteLimitReachedException.isWriteLimitReached(cause)) {
+                throw new NonRetryableIngestException("提取文本超过上限(" + config.getMaxExtractedChars() + "字符)", cause);
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 放弃解析任务：中止输入流并中断线程，等待线程退出后返回，调用方才能安全关闭输入流
+     */
+    private void abort(Future<Document> future, AbortableInputStream guarded, AtomicBoolean started,
+                       CountDownLatch exited, String fileId) {
+        guarded.abort();
+        future.cancel(true);
+        if (started.compareAndSet(false, true)) {
+            // 任务尚未开始，之后也不会再开始
+            return;
+        }
+        try {
+            if (!exited.await(config.getParseAbortGraceSeconds(), TimeUnit.SECONDS)) {
+                log.warn("解析线程在{}s内未退出，放弃等待: fileId={}", config.getParseAbortGraceSeconds(), fileId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Scheduled(fixedDelay = 300_000, initialDelay = 300_000)
+    public void report() {
+        long total = fastParsed.sum() + parsed.sum() + failed.sum() + timeouts.sum();
+        if (total == lastReported) {
+            return;
+        }
+        lastReported = total;
+        long ok = fastParsed.sum() + parsed.sum();
+        log.info("文档解析统计: 快速通道={}, Tika成功={}, 失败={}, 超时={}, 拒绝={}, 平均耗时={}ms, 平均字符数={}, 排队={}",
+            fastParsed.sum(), parsed.sum(), failed.sum(), timeouts.sum(), rejected.sum(),
+            ok == 0 ? 0 : parseMillis.sum() / ok,
+            ok == 0 ? 0 : extractedChars.sum() / ok,
+            parseExecutor.getQueue().size());
+    }
+
+    @Override
+    public void destroy() {
+        parseExecutor.shutdownNow();
+    }
+}
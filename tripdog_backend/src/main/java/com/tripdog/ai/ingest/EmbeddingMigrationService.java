@@ -0,0 +1,445 @@
+package com.tripdog.ai.ingest;
+
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.embedding.EmbeddingMigrationConfig;
+import com.tripdog.ai.embedding.LocalEmbeddingConfig;
+import com.tripdog.ai.embedding.PgVectorJdbc;
+import com.tripdog.ai.embedding.PgVectorProperties;
+import com.tripdog.ai.embedding.ShadowVectorStore;
+import com.tripdog.ai.ingest.TokenAwareDocumentSplitter.Chunk;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.mapper.EmbeddingMigrationDocMapper;
+import com.tripdog.mapper.EmbeddingMigrationMapper;
+import com.tripdog.model.dto.EmbeddingMigration;
+import com.tripdog.model.entity.DocDO;
+import com.tripdog.model.entity.EmbeddingMigrationDocDO;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+
+import dev.langchain4j.data.document.Document;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.ai.embedding.ShadowVectorStore.BACKFILL;
+import static com.tripdog.ai.embedding.ShadowVectorStore.CUTOVER;
+import static com.tripdog.ai.embedding.ShadowVectorStore.DONE;
+import static com.tripdog.ai.embedding.ShadowVectorStore.FAILED;
+import static com.tripdog.ai.embedding.ShadowVectorStore.READY;
+import static com.tripdog.common.Constants.DOC_DELETED;
+import static com.tripdog.common.Constants.DOC_FAILED;
+import static com.tripdog.common.Constants.DOC_READY;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/23 11:20
+ * @description: 不停机的向量迁移（更换向量模型或维度）。
+ * 1. start：按 rag.migration 创建影子表并开启双写，等待各实例读到新状态后，后台按文档ID分页回填：
+ *    从保存的提取文本重新切分，用新模型向量化写入影子表，每篇文档完成后写入检查点，失败或重启后 resume 从检查点继续；
+ *    单篇文档失败时登记到 t_embedding_migration_doc 并继续，连续 maxConsecutiveFailures 篇失败才停止（FAILED）；
+ *    新模型的请求速率受 rag.migration.embedRequestsPerSecond 限制（所有实例合计），回填期间的新入库由双写覆盖。
+ *    回填结束后先对账：比对有效文档与影子表中的文档，补写缺失的、删除已删除文档的残留，
+ *    再重做登记的文档，超过 maxDocAttempts 次仍失败的跳过并计入 failedDocs，之后才进入READY。
+ * 2. cutover：回填完成（READY）后切换，所有实例在 stateRefreshMs 内改为检索影子表，并使全部检索缓存失效；
+ *    切换后仍双写原表，可随时回到原表；READY 之后双写失败的文档由定时任务重做。
+ * 3. finish：按新配置（pgvector.table、向量模型与维度）重新部署后执行，删除原表。
+ * 仅支持 FULL 存储模式。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmbeddingMigrationService implements DisposableBean {
+    private final ShadowVectorStore shadowVectorStore;
+    private final EmbeddingMigrationConfig config;
+    private final PgVectorProperties pgVectorProperties;
+    private final PgVectorJdbc pgVectorJdbc;
+    private final LocalEmbeddingConfig localEmbeddingConfig;
+    private final EmbeddingMigrationMapper migrationMapper;
+    private final EmbeddingMigrationDocMapper migrationDocMapper;
+    private final DocMapper docMapper;
+    private final ExtractedTextStore extractedTextStore;
+    private final DocumentParseService parseService;
+    private final DocumentIngestionPipeline pipeline;
+    private final DocIngestionService docIngestionService;
+    private final CorpusVersionService corpusVersionService;
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("embedding-migration-"));
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * 一轮重做的结果
+     * @param processed 本实例认领并重做的文档数
+     * @param failed 其中仍失败的文档数
+     */
+    record RetryResult(int processed, int failed) {
+    }
+
+    /**
+     * 创建影子表并开始回填
+     */
+    public synchronized EmbeddingMigration start() {
+        EmbeddingMigration current = status();
+        if (current != null && !DONE.equals(current.getPhase())) {
+            throw new IllegalStateException("已有未完成的迁移: " + current.getMigrationId() + " " + current.getPhase());
+        }
+        if (pgVectorProperties.getStorageMode() != PgVectorProperties.StorageMode.FULL) {
+            throw new IllegalStateException("向量迁移仅支持 FULL 存储模式");
+        }
+        String targetTable = config.getTargetTable();
+        if (targetTable == null || targetTable.isBlank() || targetTable.equals(pgVectorProperties.getTable())) {
+            throw new IllegalStateException("rag.migration.targetTable 未配置或与当前向量表相同");
+        }
+
+        EmbeddingMigration migration = new EmbeddingMigration();
+        migration.setMigrationId(UUID.randomUUID().toString());
+        migration.setSourceTable(pgVectorProperties.getTable());
+        migration.setTargetTable(targetTable);
+        migration.setProvider(config.getProvider());
+        migration.setModelName("local".equals(config.getProvider())
+            ? localEmbeddingConfig.getModelName() : config.getModelName());
+        migration.setDimension(config.getDimension());
+        migration.setTotalDocs(docMapper.countByStatus(DOC_READY));
+        migration.setStartedAt(System.currentTimeMillis());
+        shadowVectorStore.createTarget(migration);
+        submit(migration);
+        log.info("向量迁移已开始: {}", migration);
+        return migration;
+    }
+
+    /**
+     * 从检查点继续中断或失败的回填
+     */
+    public synchronized EmbeddingMigration resume() {
+        EmbeddingMigration migration = current();
+        if (running.get() || !(BACKFILL.equals(migration.getPhase()) || FAILED.equals(migration.getPhase()))) {
+            return migration;
+        }
+        migration.setError(null);
+        shadowVectorStore.createTarget(migration);
+        submit(migration);
+        return migration;
+    }
+
+    public EmbeddingMigration status() {
+        shadowVectorStore.refresh();
+        return shadowVectorStore.state();
+    }
+
+    /**
+     * 检索切换到影子表
+     */
+    public synchronized EmbeddingMigration cutover() {
+        EmbeddingMigration migration = current();
+        if (!READY.equals(migration.getPhase())) {
+            throw new IllegalStateException("回填未完成，当前阶段: " + migration.getPhase());
+        }
+        if (migration.getFailedDocs() > 0) {
+            log.warn("切换时有 {} 篇文档未能写入影子表，切换后检索不到，明细见 t_embedding_migration_doc",
+                migration.getFailedDocs());
+        }
+        migration.setPhase(CUTOVER);
+        migration.setCutoverAt(System.currentTimeMillis());
+        shadowVectorStore.save(migration);
+        // 缓存的检索结果来自原表，切换后全部失效
+        corpusVersionService.bumpAll();
+        log.warn("向量检索已切换到影子表: table={}, model={}, dimension={}",
+            migration.getTargetTable(), migration.getModelName(), migration.getDimension());
+        return migration;
+    }
+
+    /**
+     * 切回原表，影子表与双写保留，可再次切换
+     */
+    public synchronized EmbeddingMigration rollback() {
+        EmbeddingMigration migration = current();
+        if (!CUTOVER.equals(migration.getPhase())) {
+            throw new IllegalStateException("未切换，当前阶段: " + migration.getPhase());
+        }
+        migration.setPhase(READY);
+        migration.setCutoverAt(null);
+        shadowVectorStore.save(migration);
+        corpusVersionService.bumpAll();
+        log.warn("向量检索已切回原表: table={}", migration.getSourceTable());
+        return migration;
+    }
+
+    /**
+     * 按新配置重新部署后删除原表。所有实例都已使用新配置时才能执行，否则仍按旧配置运行的实例会写入失败
+     */
+    public synchronized EmbeddingMigration finish() {
+        EmbeddingMigration migration = current();
+        if (!CUTOVER.equals(migration.getPhase())) {
+            throw new IllegalStateException("未切换，当前阶段: " + migration.getPhase());
+        }
+        if (!migration.getTargetTable().equals(pgVectorProperties.getTable())) {
+            throw new IllegalStateException("请先把 pgvector.table 配置为 " + migration.getTargetTable()
+                + "（向量模型 " + migration.getProvider() + "/" + migration.getModelName()
+                + "，维度 " + migration.getDimension() + "）并重新部署");
+        }
+        pgVectorJdbc.jdbcTemplate().execute("DROP TABLE IF EXISTS " + migration.getSourceTable());
+        migrationDocMapper.deleteByMigrationId(migration.getMigrationId());
+        migration.setPhase(DONE);
+        shadowVectorStore.save(migration);
+        log.warn("向量迁移完成，已删除原表: {}", migration.getSourceTable());
+        return migration;
+    }
+
+    /**
+     * 放弃未切换的迁移：停止双写并删除影子表
+     */
+    public synchronized void cancel() {
+        EmbeddingMigration migration = current();
+        if (running.get() || CUTOVER.equals(migration.getPhase()) || DONE.equals(migration.getPhase())) {
+            throw new IllegalStateException("回填进行中或已切换的迁移不能取消，当前阶段: " + migration.getPhase());
+        }
+        shadowVectorStore.clear(migration);
+        // 等其他实例读到新状态停止双写后再删表，避免其入库写影子表失败
+        try {
+            Thread.sleep(config.getStateRefreshMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("取消迁移被中断", e);
+        }
+        pgVectorJdbc.jdbcTemplate().execute("DROP TABLE IF EXISTS " + migration.getTargetTable());
+        log.warn("向量迁移已取消，已删除影子表: {}", migration.getTargetTable());
+    }
+
+    private EmbeddingMigration current() {
+        EmbeddingMigration migration = status();
+        if (migration == null) {
+            throw new IllegalStateException("没有进行中的迁移");
+        }
+        return migration;
+    }
+
+    private void submit(EmbeddingMigration migration) {
+        migration.setPhase(BACKFILL);
+        shadowVectorStore.save(migration);
+        running.set(true);
+        executor.execute(() -> {
+            try {
+                backfill(migration);
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    void backfill(EmbeddingMigration migration) {
+        long start = System.currentTimeMillis();
+        try {
+            // 等待其他实例读到新状态并开启双写，之后进入READY的文档不会漏写
+            Thread.sleep(config.getStateRefreshMs());
+            int consecutiveFailures = 0;
+            List<DocDO> page;
+            while (!(page = docMapper.selectByStatusAfterId(
+                    DOC_READY, migration.getLastDocId(), config.getDocBatchSize())).isEmpty()) {
+                for (DocDO doc : page) {
+                    try {
+                        migration.setSegments(migration.getSegments() + backfill(doc));
+                        consecutiveFailures = 0;
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        // 连续失败通常是模型或向量库不可用，停在该文档等待 resume，而不是把后续文档都记为失败
+                        if (Thread.currentThread().isInterrupted()
+                                || ++consecutiveFailures >= Math.max(1, config.getMaxConsecutiveFailures())) {
+                            throw e;
+                        }
+                        shadowVectorStore.recordFailure(doc.getFileId(), e);
+                    }
+                    migration.setDocs(migration.getDocs() + 1);
+                    migration.setLastDocId(doc.getId());
+                    shadowVectorStore.save(migration);
+                }
+                log.info("向量迁移进度: docs={}/{}, segments={}, checkpoint={}",
+                    migration.getDocs(), migration.getTotalDocs(), migration.getSegments(), migration.getLastDocId());
+            }
+            reconcile(migration);
+            migration.setFailedDocs(migrationDocMapper.countFailed(migration.getMigrationId(), maxDocAttempts()));
+            migration.setPhase(READY);
+            shadowVectorStore.save(migration);
+            log.info("向量迁移回填完成，可切换: docs={}, segments={}, 跳过={}, 耗时={}s",
+                migration.getDocs(), migration.getSegments(), migration.getFailedDocs(),
+                (System.currentTimeMillis() - start) / 1000);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.error("向量迁移回填失败，可从检查点继续: checkpoint={}", migration.getLastDocId(), e);
+            migration.setPhase(FAILED);
+            migration.setError(e.getMessage());
+            try {
+                shadowVectorStore.save(migration);
+            } catch (Exception ex) {
+                // 阶段仍为BACKFILL，resume 从上一个已保存的检查点继续
+                log.error("保存迁移失败状态异常: {}", migration.getMigrationId(), ex);
+            }
+        }
+    }
+
+    /**
+     * 对账：有效文档在影子表中没有片段的登记重做，影子表中已删除文档的片段删除；
+     * 之后逐轮重做登记的文档，直到没有可重做的文档（每轮每篇最多一次，仍有失败时间隔 retryIntervalMs 再试）
+     */
+    private void reconcile(EmbeddingMigration migration) throws InterruptedException {
+        Set<String> shadowed = shadowVectorStore.fileIds(migration);
+        Set<String> ready = new HashSet<>();
+        int missing = 0;
+        long lastId = 0;
+        List<DocDO> page;
+        while (!(page = docMapper.selectByStatusAfterId(DOC_READY, lastId, config.getDocBatchSize())).isEmpty()) {
+            for (DocDO doc : page) {
+                ready.add(doc.getFileId());
+                boolean empty = doc.getSegmentCount() != null && doc.getSegmentCount() == 0;
+                if (!empty && !shadowed.contains(doc.getFileId())) {
+                    migrationDocMapper.upsert(migration.getMigrationId(), doc.getFileId(), "对账：影子表缺少该文档");
+                    missing++;
+                }
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+        int removed = 0;
+        for (String fileId : shadowed) {
+            if (ready.contains(fileId)) {
+                continue;
+            }
+            // 入库中的文档由双写覆盖，只清理已删除文档的残留
+            DocDO doc = docMapper.selectByFileId(fileId);
+            if (doc == null || DOC_DELETED.equals(doc.getStatus())) {
+                shadowVectorStore.removeFile(fileId);
+                removed++;
+            }
+        }
+        log.info("向量迁移对账: 有效文档={}, 影子表文档={}, 缺失={}, 已删除残留={}",
+            ready.size(), shadowed.size(), missing, removed);
+
+        RetryResult result;
+        while ((result = retryPending(migration)).processed() > 0) {
+            if (result.failed() > 0) {
+                Thread.sleep(config.getRetryIntervalMs());
+            }
+        }
+    }
+
+    /**
+     * READY 之后双写失败的文档由各实例定时重做，认领记录保证同一文档同一时刻只有一个实例处理
+     */
+    @Scheduled(fixedDelayString = "${rag.migration.retry-interval-ms:60000}", initialDelay = 60_000)
+    public void retryFailed() {
+        try {
+            EmbeddingMigration migration = shadowVectorStore.state();
+            if (migration == null || running.get() || !shadowVectorStore.isMirroring()
+                    || !(READY.equals(migration.getPhase()) || CUTOVER.equals(migration.getPhase()))) {
+                return;
+            }
+            RetryResult result = retryPending(migration);
+            if (result.processed() > 0) {
+                migrationMapper.updateFailedDocs(migration.getMigrationId(),
+                    migrationDocMapper.countFailed(migration.getMigrationId(), maxDocAttempts()));
+                log.info("影子表重做: 处理={}, 失败={}", result.processed(), result.failed());
+            }
+        } catch (Exception e) {
+            log.warn("影子表重做任务异常", e);
+        }
+    }
+
+    /**
+     * 认领并重做一批登记的文档；成功的删除登记，失败的记录原因，重做次数达到上限后不再重做
+     */
+    RetryResult retryPending(EmbeddingMigration migration) {
+        List<EmbeddingMigrationDocDO> pending = migrationDocMapper.selectRetryable(
+            migration.getMigrationId(), maxDocAttempts(), config.getDocBatchSize());
+        int processed = 0;
+        int failed = 0;
+        for (EmbeddingMigrationDocDO row : pending) {
+            if (migrationDocMapper.claim(row.getId(), row.getAttempts()) == 0) {
+                continue;
+            }
+            processed++;
+            try {
+                redo(row.getFileId());
+                migrationDocMapper.deleteDone(row.getId(), row.getAttempts() + 1);
+            } catch (Exception e) {
+                failed++;
+                log.warn("影子表重做失败: fileId={}, attempts={}", row.getFileId(), row.getAttempts() + 1, e);
+                String message = String.valueOf(e.getMessage());
+                migrationDocMapper.updateError(row.getId(), message.length() > 500 ? message.substring(0, 500) : message);
+            }
+        }
+        return new RetryResult(processed, failed);
+    }
+
+    /**
+     * 按文档当前状态重做：有效文档重新回填，已删除或失败的文档清除影子表中的片段，入库中的文档由双写覆盖
+     */
+    private void redo(String fileId) throws Exception {
+        DocDO doc = docMapper.selectByFileId(fileId);
+        if (doc == null || DOC_DELETED.equals(doc.getStatus()) || DOC_FAILED.equals(doc.getStatus())) {
+            shadowVectorStore.removeFile(fileId);
+        } else if (DOC_READY.equals(doc.getStatus())) {
+            backfill(doc);
+        }
+    }
+
+    private int maxDocAttempts() {
+        return Math.max(1, config.getMaxDocAttempts());
+    }
+
+    /**
+     * 回填一篇文档，返回写入的片段数
+     */
+    private int backfill(DocDO doc) throws Exception {
+        while (true) {
+            List<Chunk> chunks = pipeline.split(load(doc), docIngestionService.contextOf(doc));
+            shadowVectorStore.mirror(doc.getFileId(),
+                chunks.stream().map(Chunk::id).toList(), chunks.stream().map(Chunk::segment).toList());
+
+            // 与删除、替换并发时以写入后的文档状态为准：已删除的补删，版本已变化的按新版本重做
+            DocDO current = docMapper.selectByFileId(doc.getFileId());
+            if (current == null || DOC_DELETED.equals(current.getStatus())) {
+                shadowVectorStore.removeFile(doc.getFileId());
+                return 0;
+            }
+            if (current.getFileUrl().equals(doc.getFileUrl())) {
+                return chunks.size();
+            }
+            doc = current;
+        }
+    }
+
+    private Document load(DocDO doc) throws Exception {
+        String text = extractedTextStore.load(doc);
+        if (text != null) {
+            return Document.from(text);
+        }
+        try (InputStream in = minioClient.getObject(GetObjectArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .object(doc.getFileUrl())
+                .build())) {
+            DocumentParseService.ParsedDocument parsed = parseService.parse(in, doc.getFileId(), doc.getFileName());
+            extractedTextStore.save(doc, parsed);
+            return parsed.document();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
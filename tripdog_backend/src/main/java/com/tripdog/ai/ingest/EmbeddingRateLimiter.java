@@ -0,0 +1,79 @@
+package com.tripdog.ai.ingest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/17 9:30
+ * @description: 入库向量化请求的令牌桶限流器。
+ * 所有文档共享同一个桶，保证并发入库时对 DashScope 的总请求速率不超过 embedRequestsPerSecond，
+ * 桶容量 embedBurst 允许短时突发。速率与容量每次获取时读取，配置刷新后立即生效。
+ * 向量迁移的新模型使用独立的桶（见 ShadowVectorStore），不占用在线入库的配额。
+ */
+@Component
+public class EmbeddingRateLimiter {
+    private final DoubleSupplier rate;
+    private final IntSupplier burst;
+
+    private double tokens = -1;
+    private long lastRefillNanos;
+
+    @Autowired
+    public EmbeddingRateLimiter(IngestConfig config) {
+        this(config::getEmbedRequestsPerSecond, config::getEmbedBurst);
+    }
+
+    /**
+     * @param rate 每秒请求数，小于等于0表示不限流
+     * @param burst 桶容量
+     */
+    public EmbeddingRateLimiter(DoubleSupplier rate, IntSupplier burst) {
+        this.rate = rate;
+        this.burst = burst;
+    }
+
+    /**
+     * 获取一个令牌，令牌不足时阻塞等待
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos = tryAcquire();
+            if (waitNanos <= 0) {
+                return;
+            }
+            LockSupport.parkNanos(waitNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * @return 0 表示已获取令牌，否则为下一个令牌到来前需要等待的纳秒数
+     */
+    private synchronized long tryAcquire() {
+        double rate = this.rate.getAsDouble();
+        if (rate <= 0) {
+            return 0;
+        }
+        int burst = Math.max(1, this.burst.getAsInt());
+        long now = System.nanoTime();
+        if (tokens < 0) {
+            tokens = burst;
+        } else {
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+        }
+        lastRefillNanos = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+}
@@ -0,0 +1,104 @@
+package com.tripdog.ai.ingest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tripdog.common.utils.HashUtils;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.model.entity.DocDO;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.errors.ErrorResponseException;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/18 20:10
+ * @description: 提取文本的派生对象存储。
+ * 解析得到的纯文本与解析清单保存在原文件旁边：{objectKey}.extracted.txt 与 {objectKey}.manifest.json，
+ * 重新切分或更换向量模型时直接读取文本，无需再下载原文件和跑Tika。
+ * 原文件按内容寻址存储（cas/{sha256}）时，相同内容的文档共享同一份提取文本，随对象引用归零一起删除。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ExtractedTextStore {
+    private static final String TEXT_SUFFIX = ".extracted.txt";
+    private static final String MANIFEST_SUFFIX = ".manifest.json";
+
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 保存提取文本与解析清单
+     */
+    public void save(DocDO doc, DocumentParseService.ParsedDocument parsed) throws Exception {
+        byte[] text = parsed.document().text().getBytes(StandardCharsets.UTF_8);
+        put(doc.getFileUrl() + TEXT_SUFFIX, text, "text/plain; charset=utf-8");
+
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("fileId", doc.getFileId());
+        manifest.put("fileName", doc.getFileName());
+        manifest.put("contentHash", doc.getContentHash());
+        manifest.put("parser", parsed.parser().name());
+        manifest.put("chars", parsed.document().text().length());
+        manifest.put("textBytes", text.length);
+        manifest.put("textSha256", HashUtils.sha256Hex(text));
+        manifest.put("parsedAt", Instant.now().toString());
+        put(doc.getFileUrl() + MANIFEST_SUFFIX, objectMapper.writeValueAsBytes(manifest), "application/json");
+    }
+
+    /**
+     * 读取提取文本，不存在时返回null
+     */
+    public String load(DocDO doc) throws Exception {
+        try (InputStream in = minioClient.getObject(GetObjectArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .object(doc.getFileUrl() + TEXT_SUFFIX)
+                .build())) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 删除派生对象，失败只记录日志
+     */
+    public void delete(String objectKey) {
+        for (String suffix : new String[]{TEXT_SUFFIX, MANIFEST_SUFFIX}) {
+            try {
+                minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(minioConfig.getBucketName())
+                    .object(objectKey + suffix)
+                    .build());
+            } catch (Exception e) {
+                log.warn("删除派生对象失败: {}{}", objectKey, suffix, e);
+            }
+        }
+    }
+
+    private void put(String objectKey, byte[] bytes, String contentType) throws Exception {
+        minioClient.putObject(PutObjectArgs.builder()
+            .bucket(minioConfig.getBucketName())
+            .object(objectKey)
+            .stream(new ByteArrayInputStream(bytes), bytes.length, -1)
+            .contentType(contentType)
+            .build());
+    }
+}
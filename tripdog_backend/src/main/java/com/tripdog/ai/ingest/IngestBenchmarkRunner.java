@@ -0,0 +1,81 @@
+package com.tripdog.ai.ingest;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.tripdog.service.impl.VectorDataService;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/16 17:25
+ * @description: 入库吞吐基准，通过启动参数触发：
+ * --rag.ingest.benchmark-file=/path/to/doc.pdf
+ * 分别用原先的串行 EmbeddingStoreIngestor 与 {@link DocumentIngestionPipeline} 入库同一文档，
+ * 输出 segments/s 对比，结束后删除两次写入的向量。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rag.ingest", name = "benchmark-file")
+public class IngestBenchmarkRunner implements ApplicationRunner {
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final DocumentIngestionPipeline pipeline;
+    private final VectorDataService vectorDataService;
+
+    @Value("${rag.ingest.benchmark-file}")
+    private String benchmarkFile;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        String path = Path.of(benchmarkFile).toAbsolutePath().toString();
+        String baselineId = "benchmark-" + UUID.randomUUID();
+        String pipelineId = "benchmark-" + UUID.randomUUID();
+        try {
+            // 基线：串行切分、向量化、写入
+            Document baselineDoc = loadDocument(path, new ApacheTikaDocumentParser());
+            new IngestionContext(0L, 0L, baselineId, benchmarkFile, Instant.now().toString())
+                .applyTo(baselineDoc.metadata());
+            EmbeddingStoreIngestor ingestor = EmbeddingStoreIngestor.builder()
+                .embeddingModel(embeddingModel)
+                .embeddingStore(embeddingStore)
+                .documentSplitter(DocumentSplitters.recursive(300, 20))
+                .build();
+            long t0 = System.currentTimeMillis();
+            ingestor.ingest(baselineDoc);
+            long baselineMs = Math.max(1, System.currentTimeMillis() - t0);
+
+            Document pipelineDoc = loadDocument(path, new ApacheTikaDocumentParser());
+            long t1 = System.currentTimeMillis();
+            int segments = pipeline.ingest(pipelineDoc,
+                new IngestionContext(0L, 0L, pipelineId, benchmarkFile, Instant.now().toString()));
+            long pipelineMs = Math.max(1, System.currentTimeMillis() - t1);
+
+            log.info("入库吞吐基准: file={}, segments={}, 串行 {}ms ({} segments/s), 并行流水线 {}ms ({} segments/s)",
+                benchmarkFile, segments,
+                baselineMs, String.format("%.1f", segments * 1000.0 / baselineMs),
+                pipelineMs, String.format("%.1f", segments * 1000.0 / pipelineMs));
+        } finally {
+            vectorDataService.deleteByDocumentId(baselineId);
+            vectorDataService.deleteByDocumentId(pipelineId);
+        }
+    }
+}
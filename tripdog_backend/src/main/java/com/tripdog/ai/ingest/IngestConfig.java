@@ -0,0 +1,77 @@
+package com.tripdog.ai.ingest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 文档异步解析配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.ingest")
+public class IngestConfig {
+    /** 解析工作线程数，与聊天请求线程隔离 */
+    private int workerThreads = 2;
+    /** 等待队列容量，队列满时文档保持PENDING，由定时扫描补投 */
+    private int queueCapacity = 100;
+    /** 最大重试次数，超过后标记FAILED */
+    private int maxRetries = 3;
+    /** 重试基础退避时间（毫秒），按2的幂次递增 */
+    private long retryBackoffMs = 5000;
+    /** 处理中文档的租约（秒），处理期间按 leaseSeconds/3 的间隔续约，超过租约未续约视为进程中断，重置为PENDING */
+    private int leaseSeconds = 120;
+    /** 定时扫描待处理文档的间隔（毫秒） */
+    private long rescanIntervalMs = 60000;
+    /** 单次扫描最多投递的文档数 */
+    private int rescanBatchSize = 50;
+    /** 入库时单次向量化的片段数，DashScope text-embedding-v3 单次最多10条 */
+    private int embedBatchSize = 10;
+    /** 单个文档并行向量化的批次数（所有文档共享该线程池） */
+    private int embedConcurrency = 4;
+    /** 单个文档同时在途（已提交未写入）的批次数上限，限制内存占用 */
+    private int embedMaxInFlight = 8;
+    /** 全局向量化请求速率上限（次/秒），小于等于0表示不限流 */
+    private double embedRequestsPerSecond = 20;
+    /** 令牌桶容量，允许的短时突发请求数 */
+    private int embedBurst = 10;
+    /** 单批向量化最大尝试次数 */
+    private int embedMaxAttempts = 4;
+    /** 向量化重试基础退避时间（毫秒），按2的幂次递增 */
+    private long embedRetryBackoffMs = 500;
+    /** 上传MinIO的分片大小（字节），不小于5MB，-1表示由SDK自动计算 */
+    private long uploadPartSize = 10L * 1024 * 1024;
+    /** 小于该大小（字节）的文件上传时保留内存副本，解析时不再从MinIO下载 */
+    private int inlineParseMaxBytes = 4 * 1024 * 1024;
+    /** 等待解析的内存副本总量上限（字节），超出后退回从MinIO读取 */
+    private long inlineBufferBudgetBytes = 64L * 1024 * 1024;
+    /** 解析线程数，Tika 与快速通道解析都只在该线程池中执行 */
+    private int parseThreads = 2;
+    /** 解析等待队列容量 */
+    private int parseQueueCapacity = 20;
+    /** 单个文档解析超时（秒） */
+    private int parseTimeoutSeconds = 120;
+    /** 超时后等待解析线程退出的最长时间（秒），之后调用方才关闭输入流 */
+    private int parseAbortGraceSeconds = 5;
+    /** 单个文档最多提取的字符数，超过即中止解析 */
+    private int maxExtractedChars = 2_000_000;
+    /** 重建索引的文档并发数 */
+    private int reindexConcurrency = 2;
+    /** 重建索引每页文档数，每页完成后写入检查点 */
+    private int reindexBatchSize = 50;
+    /** 重建索引每分钟最多提交的文档数，小于等于0表示不限制 */
+    private int reindexDocsPerMinute = 120;
+    /** 是否启用片段向量缓存（相同文本复用已有向量） */
+    private boolean segmentCacheEnabled = true;
+    /** 片段向量缓存保留天数，超过该天数未被命中的记录每天清理一次，小于等于0表示不清理 */
+    private int segmentCacheRetentionDays = 90;
+    /** 后台清理已删除文档的间隔（毫秒） */
+    private long purgeIntervalMs = 30000;
+    /** 单次清理的文档数 */
+    private int purgeBatchSize = 20;
+    /** 按ID删除向量时每批的片段数 */
+    private int purgeVectorBatchSize = 500;
+    /** 单个文档最多清理尝试次数，超过后保留墓碑等待人工处理 */
+    private int purgeMaxAttempts = 10;
+}
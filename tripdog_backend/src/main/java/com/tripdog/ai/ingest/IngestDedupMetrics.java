@@ -0,0 +1,54 @@
+package com.tripdog.ai.ingest;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/17 15:05
+ * @description: 入库去重统计：文档级重复上传与片段级向量复用的命中率，定时输出到日志
+ */
+@Slf4j
+@Component
+public class IngestDedupMetrics {
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder duplicateUploads = new LongAdder();
+    private final LongAdder segments = new LongAdder();
+    private final LongAdder reusedSegments = new LongAdder();
+    private long lastUploads;
+    private long lastSegments;
+
+    public void recordUpload(boolean duplicate) {
+        uploads.increment();
+        if (duplicate) {
+            duplicateUploads.increment();
+        }
+    }
+
+    public void recordSegments(int total, int reused) {
+        segments.add(total);
+        reusedSegments.add(reused);
+    }
+
+    @Scheduled(fixedDelay = 300_000, initialDelay = 300_000)
+    public void report() {
+        long u = uploads.sum();
+        long s = segments.sum();
+        if (u == lastUploads && s == lastSegments) {
+            return;
+        }
+        lastUploads = u;
+        lastSegments = s;
+        log.info("入库去重统计: 上传={}, 重复文档={} ({}), 片段={}, 复用向量={} ({})",
+            u, duplicateUploads.sum(), ratio(duplicateUploads.sum(), u),
+            s, reusedSegments.sum(), ratio(reusedSegments.sum(), s));
+    }
+
+    private String ratio(long part, long total) {
+        return total == 0 ? "0.00%" : String.format("%.2f%%", part * 100.0 / total);
+    }
+}
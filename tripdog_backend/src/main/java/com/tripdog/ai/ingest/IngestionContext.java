@@ -0,0 +1,31 @@
+package com.tripdog.ai.ingest;
+
+import dev.langchain4j.data.document.Metadata;
+import static com.tripdog.common.Constants.FILE_ID;
+import static com.tripdog.common.Constants.FILE_NAME;
+import static com.tripdog.common.Constants.ROLE_ID;
+import static com.tripdog.common.Constants.UPLOAD_TIME;
+import static com.tripdog.common.Constants.USER_ID;
+
+/**
+ * 单次文档入库的上下文，显式随调用传递，替代原先放在 ThreadLocal 中的元数据
+ *
+ * @param userId     上传用户ID
+ * @param roleId     所属角色ID
+ * @param fileId     文件唯一标识
+ * @param fileName   原始文件名
+ * @param uploadTime 上传时间（ISO-8601）
+ */
+public record IngestionContext(Long userId, Long roleId, String fileId, String fileName, String uploadTime) {
+
+    /**
+     * 把上下文写入文档元数据，切分后每个片段都会继承
+     */
+    public void applyTo(Metadata metadata) {
+        if (roleId != null) metadata.put(ROLE_ID, roleId);
+        if (userId != null) metadata.put(USER_ID, userId);
+        if (fileId != null && !fileId.isBlank()) metadata.put(FILE_ID, fileId);
+        if (fileName != null && !fileName.isBlank()) metadata.put(FILE_NAME, fileName);
+        if (uploadTime != null && !uploadTime.isBlank()) metadata.put(UPLOAD_TIME, uploadTime);
+    }
+}
@@ -0,0 +1,15 @@
+package com.tripdog.ai.ingest;
+
+/**
+ * 不应重试的入库失败（超时、超出提取上限等），直接标记FAILED
+ */
+public class NonRetryableIngestException extends RuntimeException {
+
+    public NonRetryableIngestException(String message) {
+        super(message);
+    }
+
+    public NonRetryableIngestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,87 @@
+package com.tripdog.ai.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.tripdog.ai.ingest.parser.DocumentParserRouter.ParserKind;
+
+import dev.langchain4j.data.document.DocumentParser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/18 16:30
+ * @description: 解析基准，通过启动参数触发：
+ * --rag.ingest.parser-benchmark-dir=/path/to/samples
+ * 对目录下每个样本分别用路由选中的解析方式与Tika解析，按扩展名汇总平均耗时与提取字符数。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rag.ingest", name = "parser-benchmark-dir")
+public class ParserBenchmarkRunner implements ApplicationRunner {
+    private static final int ROUNDS = 3;
+
+    private final DocumentParseService parseService;
+
+    @Value("${rag.ingest.parser-benchmark-dir}")
+    private String sampleDir;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        List<Path> samples;
+        try (Stream<Path> files = Files.walk(Path.of(sampleDir))) {
+            samples = files.filter(Files::isRegularFile).toList();
+        }
+        Map<String, long[]> stats = new TreeMap<>();
+        for (Path sample : samples) {
+            String name = sample.getFileName().toString();
+            String ext = name.contains(".") ? name.substring(name.lastIndexOf('.') + 1).toLowerCase() : "";
+            ParserKind kind;
+            try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(sample))) {
+                kind = DocumentParseService.sniff(in, name);
+            }
+            try {
+                long routed = time(parseService.parserOf(kind), sample);
+                long tika = time(parseService.parserOf(ParserKind.TIKA), sample);
+                long[] s = stats.computeIfAbsent(ext + "/" + kind, k -> new long[3]);
+                s[0]++;
+                s[1] += routed;
+                s[2] += tika;
+            } catch (Exception e) {
+                log.warn("样本解析失败: {}", sample, e);
+            }
+        }
+        stats.forEach((key, s) -> log.info("解析基准[{}]: files={}, 路由解析平均={}ms, Tika平均={}ms",
+            key, s[0], String.format("%.2f", s[1] / 1e6 / s[0]), String.format("%.2f", s[2] / 1e6 / s[0])));
+    }
+
+    /**
+     * 多轮解析取平均，返回纳秒
+     */
+    private long time(DocumentParser parser, Path sample) throws IOException {
+        long total = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            try (InputStream in = Files.newInputStream(sample)) {
+                long t0 = System.nanoTime();
+                parser.parse(in);
+                total += System.nanoTime() - t0;
+            }
+        }
+        return total / ROUNDS;
+    }
+}
@@ -0,0 +1,195 @@
+package com.tripdog.ai.ingest;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.embedding.PgVectorChunkDao;
+import com.tripdog.ai.embedding.ShadowVectorStore;
+import com.tripdog.ai.ingest.TokenAwareDocumentSplitter.Chunk;
+import com.tripdog.common.RedisService;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.model.entity.DocDO;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.common.Constants.DOC_READY;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/18 21:00
+ * @description: 重建索引命令，通过启动参数触发：
+ * --rag.reindex.run=true    从保存的提取文本重新切分、向量化并写入向量库
+ * --rag.reindex.reset=true  忽略检查点，从头开始
+ * 按文档ID分页处理，每页完成后把最后一个ID写入Redis检查点，中断后再次执行从检查点继续；
+ * 每篇文档按稳定片段ID在一个事务中覆盖写入新向量并删除不再存在的片段，重建期间检索不会看到空文档；
+ * 失败的文档ID在推进检查点之前写入Redis，下次执行先重试这些文档，全部成功后才清除；
+ * 文档级并发由 reindexConcurrency 控制，提交速率由 reindexDocsPerMinute 限制，向量化仍受全局令牌桶约束。
+ * 没有提取文本的旧文档会回退为下载原文件解析，并顺带补存提取文本。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "rag.reindex", name = "run", havingValue = "true")
+public class ReindexRunner implements ApplicationRunner {
+    private static final String CHECKPOINT_KEY = "rag:reindex:checkpoint";
+    private static final String FAILED_KEY = "rag:reindex:failed";
+
+    private final DocMapper docMapper;
+    private final ExtractedTextStore extractedTextStore;
+    private final DocumentParseService parseService;
+    private final DocumentIngestionPipeline pipeline;
+    private final DocIngestionService docIngestionService;
+    private final PgVectorChunkDao chunkDao;
+    private final ShadowVectorStore shadowVectorStore;
+    private final CorpusVersionService corpusVersionService;
+    private final RedisService redisService;
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+    private final IngestConfig config;
+
+    @Value("${rag.reindex.reset:false}")
+    private boolean reset;
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        if (reset) {
+            redisService.delete(CHECKPOINT_KEY);
+            redisService.delete(FAILED_KEY);
+        }
+        String checkpoint = redisService.getString(CHECKPOINT_KEY);
+        long lastId = checkpoint == null ? 0L : Long.parseLong(checkpoint);
+        Set<String> failedIds = ConcurrentHashMap.newKeySet();
+        failedIds.addAll(loadFailed());
+        log.info("开始重建索引: checkpoint={}, 待重试={}", lastId, failedIds.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(config.getReindexConcurrency(),
+            new CustomizableThreadFactory("reindex-"));
+        AtomicInteger done = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        try {
+            // 先重试上次失败的文档，已删除或不再是READY的直接移出
+            List<DocDO> retries = new ArrayList<>();
+            for (String fileId : List.copyOf(failedIds)) {
+                DocDO doc = docMapper.selectByFileId(fileId);
+                if (doc == null || !DOC_READY.equals(doc.getStatus())) {
+                    failedIds.remove(fileId);
+                } else {
+                    retries.add(doc);
+                }
+            }
+            if (!retries.isEmpty()) {
+                process(retries, executor, done, failedIds);
+                saveFailed(failedIds);
+                log.info("重试上次失败的文档: {} 篇, 仍失败 {} 篇", retries.size(), failedIds.size());
+            }
+
+            while (true) {
+                List<DocDO> page = docMapper.selectByStatusAfterId(DOC_READY, lastId, config.getReindexBatchSize());
+                if (page.isEmpty()) {
+                    break;
+                }
+                process(page, executor, done, failedIds);
+
+                // 失败列表先于检查点保存，检查点不会越过未记录的失败文档
+                saveFailed(failedIds);
+                lastId = page.getLast().getId();
+                redisService.setString(CHECKPOINT_KEY, String.valueOf(lastId));
+                log.info("重建索引进度: checkpoint={}, 完成={}, 失败={}", lastId, done.get(), failedIds.size());
+            }
+            redisService.delete(CHECKPOINT_KEY);
+            if (failedIds.isEmpty()) {
+                redisService.delete(FAILED_KEY);
+            }
+            log.info("重建索引结束: 完成={}, 失败={}, 耗时={}s{}", done.get(), failedIds.size(),
+                (System.currentTimeMillis() - start) / 1000, failedIds.isEmpty() ? "" : "，失败文档将在下次执行时重试");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void process(List<DocDO> docs, ExecutorService executor, AtomicInteger done, Set<String> failedIds)
+            throws InterruptedException {
+        long intervalMs = config.getReindexDocsPerMinute() > 0 ? 60_000L / config.getReindexDocsPerMinute() : 0;
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (DocDO doc : docs) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    reindex(doc);
+                    failedIds.remove(doc.getFileId());
+                    done.incrementAndGet();
+                } catch (Exception e) {
+                    failedIds.add(doc.getFileId());
+                    log.error("重建索引失败: fileId={}", doc.getFileId(), e);
+                }
+            }, executor));
+            if (intervalMs > 0) {
+                Thread.sleep(intervalMs);
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    private Set<String> loadFailed() {
+        String value = redisService.getString(FAILED_KEY);
+        if (value == null || value.isEmpty()) {
+            return Set.of();
+        }
+        return Set.of(value.split(","));
+    }
+
+    private void saveFailed(Set<String> failedIds) {
+        if (failedIds.isEmpty()) {
+            redisService.delete(FAILED_KEY);
+        } else {
+            redisService.setString(FAILED_KEY, String.join(",", failedIds));
+        }
+    }
+
+    private void reindex(DocDO doc) throws Exception {
+        String text = extractedTextStore.load(doc);
+        if (text == null) {
+            try (InputStream in = minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(minioConfig.getBucketName())
+                    .object(doc.getFileUrl())
+                    .build())) {
+                DocumentParseService.ParsedDocument parsed = parseService.parse(in, doc.getFileId(), doc.getFileName());
+                extractedTextStore.save(doc, parsed);
+                text = parsed.document().text();
+            }
+        }
+
+        // 全部片段重新向量化后按稳定ID覆盖写入，同一事务中删除新切分中已不存在的片段
+        List<Chunk> chunks = pipeline.split(Document.from(text), docIngestionService.contextOf(doc));
+        List<Embedding> embeddings = pipeline.embed(chunks, doc.getFileId());
+        List<String> ids = chunks.stream().map(Chunk::id).toList();
+        List<TextSegment> segments = chunks.stream().map(Chunk::segment).toList();
+        Set<String> current = new HashSet<>(ids);
+        List<String> stale = chunkDao.chunkIds(doc.getFileId()).stream().filter(id -> !current.contains(id)).toList();
+        chunkDao.swap(ids, embeddings, segments, List.of(), List.of(), stale);
+        shadowVectorStore.mirrorQuietly(doc.getFileId(), ids, segments);
+        docMapper.updateSegmentCount(doc.getFileId(), chunks.size());
+        corpusVersionService.bump(doc.getUserId(), doc.getRoleId());
+    }
+}
@@ -0,0 +1,140 @@
+package com.tripdog.ai.ingest;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.tripdog.ai.embedding.EmbeddingModelFingerprint;
+import com.tripdog.ai.embedding.PgVectorJdbc;
+import com.tripdog.ai.embedding.PgVectorProperties;
+import com.tripdog.ai.embedding.QuantizedPgVectorEmbeddingStore;
+
+import dev.langchain4j.data.embedding.Embedding;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/17 14:30
+ * @description: 片段向量缓存（内容哈希 → 向量），存放在pgvector库的 {table}_segment_cache 表。
+ * 相同文本的片段只向量化一次，之后的入库直接复用；namespace 取当前模型标识（provider/模型名/维度，
+ * 见 {@link EmbeddingModelFingerprint}），换 provider、模型或维度时不会串用。
+ * 命中时按天刷新 last_used_at，每天清理超过 segmentCacheRetentionDays 未使用的记录，
+ * 换模型后旧 namespace 的记录不再被命中，到期后一并清理。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SegmentEmbeddingCache {
+    private static final int PURGE_BATCH = 5000;
+
+    private final PgVectorJdbc pgVectorJdbc;
+    private final PgVectorProperties pgVectorProperties;
+    private final IngestConfig config;
+    private final EmbeddingModelFingerprint fingerprint;
+
+    private volatile boolean tableReady;
+
+    public boolean isEnabled() {
+        return config.isSegmentCacheEnabled();
+    }
+
+    /**
+     * 批量查询已缓存的向量
+     * @param hashes 片段文本的SHA-256
+     * @return 命中的 hash → 向量
+     */
+    public Map<String, Embedding> lookup(Collection<String> hashes) {
+        Map<String, Embedding> hits = new HashMap<>();
+        if (hashes.isEmpty()) {
+            return hits;
+        }
+        JdbcTemplate jdbc = jdbc();
+        jdbc.query("SELECT text_hash, embedding::text FROM " + table()
+                + " WHERE namespace = ? AND text_hash = ANY(string_to_array(?, ','))",
+            rs -> {
+                hits.put(rs.getString(1), Embedding.from(QuantizedPgVectorEmbeddingStore.parseVector(rs.getString(2))));
+            },
+            fingerprint.id(), String.join(",", hashes));
+        if (!hits.isEmpty()) {
+            // 同一记录每天最多刷新一次，避免热点片段反复写
+            jdbc.update("UPDATE " + table() + " SET last_used_at = now()"
+                    + " WHERE namespace = ? AND text_hash = ANY(string_to_array(?, ','))"
+                    + " AND last_used_at < now() - interval '1 day'",
+                fingerprint.id(), String.join(",", hits.keySet()));
+        }
+        return hits;
+    }
+
+    /**
+     * 分批删除长期未使用的记录
+     */
+    @Scheduled(cron = "${rag.ingest.segment-cache-purge-cron:0 30 3 * * ?}")
+    public void purgeExpired() {
+        if (!isEnabled() || config.getSegmentCacheRetentionDays() <= 0) {
+            return;
+        }
+        try {
+            long total = 0;
+            int deleted;
+            do {
+                deleted = jdbc().update("DELETE FROM " + table() + " WHERE ctid = ANY(ARRAY("
+                    + "SELECT ctid FROM " + table() + " WHERE last_used_at < now() - make_interval(days => ?) LIMIT ?))",
+                    config.getSegmentCacheRetentionDays(), PURGE_BATCH);
+                total += deleted;
+            } while (deleted >= PURGE_BATCH);
+            if (total > 0) {
+                log.info("清理过期片段向量缓存: {} 条", total);
+            }
+        } catch (Exception e) {
+            log.error("清理片段向量缓存失败", e);
+        }
+    }
+
+    /**
+     * 保存新计算的向量，已存在的hash保持不变
+     */
+    public void save(Map<String, Embedding> embeddings) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = embeddings.entrySet().stream()
+            .map(e -> new Object[]{e.getKey(), fingerprint.id(),
+                QuantizedPgVectorEmbeddingStore.toVectorLiteral(e.getValue().vector())})
+            .toList();
+        jdbc().batchUpdate("INSERT INTO " + table() + " (text_hash, namespace, embedding) VALUES (?, ?, ?::vector)"
+            + " ON CONFLICT (text_hash, namespace) DO NOTHING", rows);
+    }
+
+    private String table() {
+        return pgVectorProperties.getTable() + "_segment_cache";
+    }
+
+    private JdbcTemplate jdbc() {
+        JdbcTemplate jdbc = pgVectorJdbc.jdbcTemplate();
+        if (!tableReady) {
+            synchronized (this) {
+                if (!tableReady) {
+                    jdbc.execute("CREATE EXTENSION IF NOT EXISTS vector");
+                    jdbc.execute("CREATE TABLE IF NOT EXISTS " + table() + " ("
+                        + "text_hash CHAR(64) NOT NULL, "
+                        + "namespace VARCHAR(64) NOT NULL, "
+                        + "embedding vector NOT NULL, "
+                        + "created_at TIMESTAMPTZ NOT NULL DEFAULT now(), "
+                        + "last_used_at TIMESTAMPTZ NOT NULL DEFAULT now(), "
+                        + "PRIMARY KEY (text_hash, namespace))");
+                    jdbc.execute("ALTER TABLE " + table()
+                        + " ADD COLUMN IF NOT EXISTS last_used_at TIMESTAMPTZ NOT NULL DEFAULT now()");
+                    jdbc.execute("CREATE INDEX IF NOT EXISTS " + table() + "_last_used ON " + table() + " (last_used_at)");
+                    tableReady = true;
+                }
+            }
+        }
+        return jdbc;
+    }
+}
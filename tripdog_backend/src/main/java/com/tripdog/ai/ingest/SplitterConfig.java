@@ -0,0 +1,48 @@
+package com.tripdog.ai.ingest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 文档切分配置，长度单位均为Qwen token
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rag.splitter")
+public class SplitterConfig {
+    /** 默认单片段最大token数 */
+    private int maxTokens = 256;
+    /** 默认相邻片段重叠token数 */
+    private int overlapTokens = 32;
+    /** 文本超过该字符数时按章节/分页并行切分 */
+    private int parallelThresholdChars = 200_000;
+    /** 并行切分时每个分段的目标字符数，相邻小章节会合并到该大小 */
+    private int sectionTargetChars = 50_000;
+    /** 并行切分线程数 */
+    private int parallelism = 4;
+    /** 按角色覆盖切分参数，key为角色ID */
+    private Map<Long, RoleSplit> roles = new HashMap<>();
+
+    @Data
+    public static class RoleSplit {
+        /** 单片段最大token数 */
+        private Integer maxTokens;
+        /** 相邻片段重叠token数 */
+        private Integer overlapTokens;
+    }
+
+    public int maxTokensFor(Long roleId) {
+        RoleSplit split = roleId == null ? null : roles.get(roleId);
+        return split != null && split.getMaxTokens() != null ? split.getMaxTokens() : maxTokens;
+    }
+
+    public int overlapTokensFor(Long roleId) {
+        RoleSplit split = roleId == null ? null : roles.get(roleId);
+        return split != null && split.getOverlapTokens() != null ? split.getOverlapTokens() : overlapTokens;
+    }
+}
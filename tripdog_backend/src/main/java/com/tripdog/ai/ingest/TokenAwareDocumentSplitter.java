@@ -0,0 +1,138 @@
+package com.tripdog.ai.ingest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.tripdog.ai.QwenTokenCountEstimator;
+import com.tripdog.common.utils.HashUtils;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/19 10:20
+ * @description: 按token切分文档。
+ * 片段长度用共享的Qwen分词器计算，中文文本的片段大小与实际向量化/提示词成本一致；切分参数可按角色覆盖。
+ * 超大文档先在分页符、Markdown标题、"第X章"等章节边界处切成若干分段并行切分，再按原顺序拼接。
+ * 每个片段带 chunkHash（文本SHA-256）元数据，片段ID由 fileId + chunkHash + 同文本出现序号 生成，
+ * 内容不变的片段在重新入库时ID不变，可以直接跳过。
+ */
+@Component
+@RequiredArgsConstructor
+public class TokenAwareDocumentSplitter implements DisposableBean {
+    public static final String INDEX = "index";
+    public static final String CHUNK_HASH = "chunkHash";
+
+    private static final Pattern SECTION_BOUNDARY = Pattern.compile(
+        "\\f|(?m)(?=^[ \\t]*(?:#{1,6}[ \\t]|第[一二三四五六七八九十百千零〇\\d]+[章节篇部卷]))");
+
+    private final SplitterConfig config;
+    private final QwenTokenCountEstimator tokenCountEstimator;
+
+    private final Map<Long, DocumentSplitter> splitters = new ConcurrentHashMap<>();
+    private ExecutorService splitExecutor;
+
+    /**
+     * 切分结果
+     * @param id 稳定的片段ID
+     * @param hash 片段文本SHA-256
+     * @param segment 片段
+     */
+    public record Chunk(String id, String hash, TextSegment segment) {
+    }
+
+    @PostConstruct
+    public void start() {
+        splitExecutor = Executors.newFixedThreadPool(config.getParallelism(), new CustomizableThreadFactory("ingest-split-"));
+    }
+
+    public List<Chunk> split(Document document, String fileId, Long roleId) {
+        DocumentSplitter splitter = splitterFor(roleId);
+        String text = document.text();
+        List<TextSegment> segments;
+        if (text.length() <= config.getParallelThresholdChars()) {
+            segments = splitter.split(document);
+        } else {
+            List<CompletableFuture<List<TextSegment>>> futures = sections(text).stream()
+                .map(section -> CompletableFuture.supplyAsync(
+                    () -> splitter.split(Document.from(section, document.metadata().copy())), splitExecutor))
+                .toList();
+            segments = new ArrayList<>();
+            for (CompletableFuture<List<TextSegment>> future : futures) {
+                segments.addAll(future.join());
+            }
+        }
+
+        List<Chunk> chunks = new ArrayList<>(segments.size());
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            TextSegment segment = segments.get(i);
+            String hash = HashUtils.sha256Hex(segment.text());
+            int occurrence = occurrences.merge(hash, 1, Integer::sum);
+            Metadata metadata = segment.metadata().copy();
+            metadata.put(INDEX, String.valueOf(i));
+            metadata.put(CHUNK_HASH, hash);
+            chunks.add(new Chunk(chunkId(fileId, hash, occurrence), hash, TextSegment.from(segment.text(), metadata)));
+        }
+        return chunks;
+    }
+
+    /**
+     * 同一文档内相同文本的第N次出现对应固定ID
+     */
+    public static String chunkId(String fileId, String hash, int occurrence) {
+        return UUID.nameUUIDFromBytes((fileId + ":" + hash + ":" + occurrence).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private DocumentSplitter splitterFor(Long roleId) {
+        int maxTokens = config.maxTokensFor(roleId);
+        int overlapTokens = config.overlapTokensFor(roleId);
+        // 缓存key带上参数，配置刷新后自动换用新的切分器
+        long key = ((long) maxTokens << 32) | overlapTokens;
+        return splitters.computeIfAbsent(key,
+            k -> DocumentSplitters.recursive(maxTokens, overlapTokens, tokenCountEstimator));
+    }
+
+    /**
+     * 按章节边界切开，再把相邻的小章节合并到目标大小
+     */
+    private List<String> sections(String text) {
+        List<String> sections = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String part : SECTION_BOUNDARY.split(text)) {
+            if (current.length() > 0 && current.length() + part.length() > config.getSectionTargetChars()) {
+                sections.add(current.toString());
+                current.setLength(0);
+            }
+            current.append(part);
+        }
+        if (!current.toString().isBlank()) {
+            sections.add(current.toString());
+        }
+        return sections.stream().filter(s -> !s.isBlank()).toList();
+    }
+
+    @Override
+    public void destroy() {
+        splitExecutor.shutdown();
+    }
+}
@@ -0,0 +1,85 @@
+package com.tripdog.ai.ingest.parser;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/18 15:10
+ * @description: 按扩展名与文件头魔数选择解析方式。
+ * 魔数优先：PDF、ZIP(docx/xlsx/pptx)、OLE(doc/xls/ppt)、RTF 以及含NUL字节的二进制内容一律交给Tika，
+ * 防止改了扩展名的二进制文件被当作文本；其余按扩展名走纯文本或HTML快速通道。
+ */
+public class DocumentParserRouter {
+
+    public enum ParserKind {
+        /** 纯文本直读 */
+        PLAIN,
+        /** 轻量HTML正文提取 */
+        HTML,
+        /** Apache Tika */
+        TIKA
+    }
+
+    /** 判断所需的文件头字节数 */
+    public static final int SNIFF_BYTES = 512;
+
+    private static final Set<String> PLAIN_EXTENSIONS = Set.of(
+        "txt", "text", "md", "markdown", "csv", "tsv", "json", "jsonl", "log", "yaml", "yml", "xml");
+    private static final Set<String> HTML_EXTENSIONS = Set.of("html", "htm", "xhtml");
+
+    private DocumentParserRouter() {
+    }
+
+    public static ParserKind route(String fileName, byte[] head, int headLength) {
+        if (isBinary(head, headLength)) {
+            return ParserKind.TIKA;
+        }
+        String ext = extension(fileName);
+        if (HTML_EXTENSIONS.contains(ext)) {
+            return ParserKind.HTML;
+        }
+        if (PLAIN_EXTENSIONS.contains(ext)) {
+            return ParserKind.PLAIN;
+        }
+        return ParserKind.TIKA;
+    }
+
+    private static boolean isBinary(byte[] head, int length) {
+        if (startsWith(head, length, '%', 'P', 'D', 'F')
+            || startsWith(head, length, 'P', 'K', 0x03, 0x04)
+            || startsWith(head, length, 0xD0, 0xCF, 0x11, 0xE0)
+            || startsWith(head, length, '{', '\\', 'r', 't', 'f')) {
+            return true;
+        }
+        // UTF-16 带BOM的文本含NUL字节，但仍是文本
+        if (startsWith(head, length, 0xFF, 0xFE) || startsWith(head, length, 0xFE, 0xFF)) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (head[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((head[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String extension(String fileName) {
+        if (fileName == null || !fileName.contains(".")) {
+            return "";
+        }
+        return fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+}
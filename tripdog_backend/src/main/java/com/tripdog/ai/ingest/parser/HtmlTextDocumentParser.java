@@ -0,0 +1,92 @@
+package com.tripdog.ai.ingest.parser;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.tripdog.ai.ingest.NonRetryableIngestException;
+
+import dev.langchain4j.data.document.Document;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/18 14:45
+ * @description: 轻量HTML正文提取：去掉script/style/注释与标签，块级标签换行，解码常见实体。
+ * 只用于检索入库，不追求版式还原；复杂页面仍可改走Tika。
+ */
+public class HtmlTextDocumentParser extends PlainTextDocumentParser {
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]+charset=[\"']?([\\w-]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INVISIBLE = Pattern.compile(
+        "<!--.*?-->|<(script|style|noscript|template)\\b[^>]*>.*?</\\1\\s*>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern BLOCK_TAG = Pattern.compile(
+        "</?(p|div|br|li|tr|h[1-6]|section|article|table|ul|ol|pre|blockquote|header|footer)\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TAG = Pattern.compile("<[^>]+>");
+    private static final Pattern NUMERIC_ENTITY = Pattern.compile("&#(x?)([0-9a-fA-F]+);");
+    private static final Pattern BLANK_LINES = Pattern.compile("[ \\t\\x0B\\f\\r]*\\n[\\s]*\\n+");
+    private static final Pattern SPACES = Pattern.compile("[ \\t\\x0B\\f\\r]+");
+    private static final Map<String, String> ENTITIES = Map.of(
+        "&nbsp;", " ", "&lt;", "<", "&gt;", ">", "&quot;", "\"", "&apos;", "'");
+
+    public HtmlTextDocumentParser(int maxChars) {
+        super(maxChars);
+    }
+
+    @Override
+    public Document parse(InputStream inputStream) {
+        byte[] bytes = readBounded(inputStream);
+        String html = decodeHtml(bytes);
+        String text = extract(html);
+        if (text.isBlank()) {
+            throw new NonRetryableIngestException("文档内容为空");
+        }
+        return Document.from(text);
+    }
+
+    private String decodeHtml(byte[] bytes) {
+        // 优先使用页面声明的编码，否则按纯文本规则识别
+        String head = new String(bytes, 0, Math.min(bytes.length, 2048), StandardCharsets.ISO_8859_1);
+        Matcher m = META_CHARSET.matcher(head);
+        if (m.find()) {
+            try {
+                return new String(bytes, Charset.forName(m.group(1)));
+            } catch (IllegalArgumentException ignored) {
+                // 未知编码，走自动识别
+            }
+        }
+        return decode(bytes);
+    }
+
+    static String extract(String html) {
+        String text = INVISIBLE.matcher(html).replaceAll(" ");
+        text = BLOCK_TAG.matcher(text).replaceAll("\n");
+        text = TAG.matcher(text).replaceAll("");
+        text = decodeEntities(text);
+        text = SPACES.matcher(text).replaceAll(" ");
+        text = BLANK_LINES.matcher(text).replaceAll("\n\n");
+        return text.strip();
+    }
+
+    private static String decodeEntities(String text) {
+        Matcher m = NUMERIC_ENTITY.matcher(text);
+        StringBuilder sb = new StringBuilder(text.length());
+        while (m.find()) {
+            int cp;
+            try {
+                cp = Integer.parseInt(m.group(2), m.group(1).isEmpty() ? 10 : 16);
+            } catch (NumberFormatException e) {
+                cp = -1;
+            }
+            m.appendReplacement(sb, Character.isValidCodePoint(cp) ? Matcher.quoteReplacement(Character.toString(cp)) : "");
+        }
+        m.appendTail(sb);
+        String result = sb.toString();
+        for (Map.Entry<String, String> e : ENTITIES.entrySet()) {
+            result = result.replace(e.getKey(), e.getValue());
+        }
+        // &amp; 最后处理，避免二次解码
+        return result.replace("&amp;", "&");
+    }
+}
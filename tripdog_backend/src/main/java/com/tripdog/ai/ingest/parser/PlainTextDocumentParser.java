@@ -0,0 +1,97 @@
+package com.tripdog.ai.ingest.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import com.tripdog.ai.ingest.NonRetryableIngestException;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/18 14:20
+ * @description: 纯文本解析（txt/md/csv/json等），不经过Tika。
+ * 编码识别顺序：BOM → 严格UTF-8校验 → GB18030（兼容GBK/GB2312，国内Windows导出的文本多为此编码）。
+ */
+public class PlainTextDocumentParser implements DocumentParser {
+    private static final Charset FALLBACK_CHARSET = Charset.forName("GB18030");
+
+    private final int maxChars;
+
+    public PlainTextDocumentParser(int maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    @Override
+    public Document parse(InputStream inputStream) {
+        String text = decode(readBounded(inputStream));
+        if (text.isBlank()) {
+            throw new NonRetryableIngestException("文档内容为空");
+        }
+        return Document.from(text);
+    }
+
+    /**
+     * 按字符上限读取字节，UTF-8下单字符最多4字节
+     */
+    protected byte[] readBounded(InputStream inputStream) {
+        try {
+            long maxBytes = (long) maxChars * 4;
+            byte[] bytes = inputStream.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxBytes));
+            if (bytes.length >= maxBytes && inputStream.read() != -1) {
+                throw new NonRetryableIngestException("提取文本超过上限(" + maxChars + "字符)");
+            }
+            return bytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected String decode(byte[] bytes) {
+        String text;
+        if (startsWith(bytes, 0xEF, 0xBB, 0xBF)) {
+            text = new String(bytes, 3, bytes.length - 3, StandardCharsets.UTF_8);
+        } else if (startsWith(bytes, 0xFF, 0xFE)) {
+            text = new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_16LE);
+        } else if (startsWith(bytes, 0xFE, 0xFF)) {
+            text = new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_16BE);
+        } else {
+            text = decodeUtf8OrFallback(bytes);
+        }
+        if (text.length() > maxChars) {
+            throw new NonRetryableIngestException("提取文本超过上限(" + maxChars + "字符)");
+        }
+        return text;
+    }
+
+    private String decodeUtf8OrFallback(byte[] bytes) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(bytes))
+                .toString();
+        } catch (CharacterCodingException e) {
+            return new String(bytes, FALLBACK_CHARSET);
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, int... prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
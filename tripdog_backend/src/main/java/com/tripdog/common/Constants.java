@@ -16,5 +16,12 @@ public class Constants {
     public static final String FILE_NAME = "fileName";
     public static final String UPLOAD_TIME = "uploadTime";
     public static final String INJECT_TEMPLATE = "\n文档/文件/附件的内容如下，你可以基于下面的内容回答:\n";
+    public static final String DOC_PENDING = "PENDING";
+    public static final String DOC_PROCESSING = "PROCESSING";
+    public static final String DOC_READY = "READY";
+    public static final String DOC_FAILED = "FAILED";
+    public static final String DOC_DELETED = "DELETED";
+    /** 角色公共语料的归属用户ID，所有用户检索该角色时都会检索到 */
+    public static final Long GLOBAL_USER_ID = 0L;
     public static final String DEFAULT_AVATAR = "/avatar/default_avatar.jpg";
 }
@@ -6,6 +6,8 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -78,6 +80,20 @@ public class RedisService {
         }
     }
 
+    /**
+     * 批量获取字符串值
+     * @param keys 键列表
+     * @return 与keys一一对应的值，不存在的key对应null；异常时返回null
+     */
+    public List<String> multiGetString(List<String> keys) {
+        try {
+            return stringRedisTemplate.opsForValue().multiGet(keys);
+        } catch (Exception e) {
+            log.error("Redis multiGetString操作失败, keys: {}", keys, e);
+            return null;
+        }
+    }
+
     /**
      * 设置字符串值
      * @param key 键
@@ -237,4 +253,54 @@ public class RedisService {
             return null;
         }
     }
+
+    /**
+     * key不存在时设置字符串值并指定过期时间
+     * @return 是否设置成功，Redis异常时返回null
+     */
+    public Boolean setIfAbsent(String key, String value, long timeout, TimeUnit unit) {
+        try {
+            return stringRedisTemplate.opsForValue().setIfAbsent(key, value, timeout, unit);
+        } catch (Exception e) {
+            log.error("Redis setIfAbsent操作失败, key: {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 向有序集合添加成员
+     */
+    public void zAdd(String key, String member, double score) {
+        try {
+            stringRedisTemplate.opsForZSet().add(key, member, score);
+        } catch (Exception e) {
+            log.error("Redis zAdd操作失败, key: {}", key, e);
+        }
+    }
+
+    /**
+     * 按分数范围查询有序集合成员
+     * @return 成员集合，Redis异常时返回null
+     */
+    public Set<String> zRangeByScore(String key, double min, double max) {
+        try {
+            return stringRedisTemplate.opsForZSet().rangeByScore(key, min, max);
+        } catch (Exception e) {
+            log.error("Redis zRangeByScore操作失败, key: {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 从有序集合删除成员
+     * @return 删除的成员数，Redis异常时返回null
+     */
+    public Long zRemove(String key, String member) {
+        try {
+            return stringRedisTemplate.opsForZSet().remove(key, member);
+        } catch (Exception e) {
+            log.error("Redis zRemove操作失败, key: {}", key, e);
+            return null;
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package com.tripdog.common.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/18 11:40
+ * @description: 可由其他线程中止的输入流。
+ * 中止后所有读取立即抛出 InterruptedIOException，不再访问底层流；
+ * 用于解析超时后放弃工作线程，调用方随后关闭底层流也不会与仍在运行的解析线程并发读写。
+ */
+public class AbortableInputStream extends FilterInputStream {
+    private volatile boolean aborted;
+
+    public AbortableInputStream(InputStream in) {
+        super(in);
+    }
+
+    public void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        check();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        check();
+        return super.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        check();
+        return super.skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        check();
+        return super.available();
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        check();
+        super.reset();
+    }
+
+    /**
+     * 关闭由调用方负责，解析器关闭流时不关闭底层流
+     */
+    @Override
+    public void close() {
+        aborted = true;
+    }
+
+    private void check() throws InterruptedIOException {
+        if (aborted) {
+            throw new InterruptedIOException("输入流已中止");
+        }
+    }
+}
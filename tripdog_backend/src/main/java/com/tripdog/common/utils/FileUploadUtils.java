@@ -1,7 +1,7 @@
 package com.tripdog.common.utils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -67,6 +67,64 @@ public class FileUploadUtils {
      * @return 上传结果DTO
      */
     public FileUploadDTO upload2Minio(MultipartFile file, Long userId, MinioClient minioClient, String bucketName, String path) {
+        return upload2Minio(file, userId, minioClient, bucketName, path, -1, 0);
+    }
+
+    /**
+     * 单次读取上传文件到MinIO，读取过程中同步计算SHA-256，并保留不超过teeMaxBytes的内存副本
+     *
+     * @param partSize 分片大小，-1表示由SDK自动计算
+     * @param teeMaxBytes 内存副本上限，0表示不保留
+     * @return 上传结果DTO，包含内容哈希与副本
+     */
+    public FileUploadDTO upload2Minio(MultipartFile file, Long userId, MinioClient minioClient, String bucketName,
+                                      String path, long partSize, int teeMaxBytes) {
+        return upload(file, userId, bucketName, path, objectKey -> {
+            // 上传文件到MinIO，读取的同时计算哈希并保留小文件副本
+            TeeDigestInputStream inputStream = new TeeDigestInputStream(file.getInputStream(), teeMaxBytes);
+            try (inputStream) {
+                minioClient.putObject(
+                    PutObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectKey)
+                        .stream(inputStream, file.getSize(), partSize)
+                        .contentType(file.getContentType())
+                        .build()
+                );
+            }
+            return FileUploadDTO.builder()
+                .contentHash(inputStream.sha256Hex())
+                .bytesRead(inputStream.getBytesRead())
+                .content(inputStream.getCopy());
+        });
+    }
+
+    /**
+     * 上传调用方已读入内存并计算过哈希的文件内容，不再读取请求体、不再计算哈希
+     *
+     * @param content 文件内容
+     * @param contentHash content 的SHA-256
+     * @return 上传结果DTO，内存副本即 content
+     */
+    public FileUploadDTO upload2Minio(MultipartFile file, byte[] content, String contentHash, Long userId,
+                                      MinioClient minioClient, String bucketName, String path) {
+        return upload(file, userId, bucketName, path, objectKey -> {
+            minioClient.putObject(
+                PutObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(objectKey)
+                    .stream(new ByteArrayInputStream(content), content.length, -1)
+                    .contentType(file.getContentType())
+                    .build()
+            );
+            return FileUploadDTO.builder()
+                .contentHash(contentHash)
+                .bytesRead(content.length)
+                .content(content);
+        });
+    }
+
+    private FileUploadDTO upload(MultipartFile file, Long userId, String bucketName, String path, Uploader uploader) {
         try {
             // 检查文件
             if (file.isEmpty()) {
@@ -79,31 +137,18 @@ public class FileUploadUtils {
                 throw new RuntimeException("文件名无效或缺少扩展名");
             }
 
-            String fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
-            String fileName = UUID.randomUUID().toString() + fileExtension;
-
             // 构建对象路径：用户ID/文件名
-            String objectKey = userId + path + "/" + fileName;
+            String objectKey = newObjectKey(userId, path, originalFilename);
+            String fileName = objectKey.substring(objectKey.lastIndexOf("/") + 1);
 
-            // 获取文件输入流
-            InputStream inputStream = file.getInputStream();
-
-            // 上传文件到MinIO
-            minioClient.putObject(
-                PutObjectArgs.builder()
-                    .bucket(bucketName)
-                    .object(objectKey)
-                    .stream(inputStream, file.getSize(), -1)
-                    .contentType(file.getContentType())
-                    .build()
-            );
+            FileUploadDTO.FileUploadDTOBuilder builder = uploader.put(objectKey);
 
             // 构建文件访问URL
             String fileUrl = String.format(MINIO_HOST + "/%s/%s", bucketName, objectKey);
 
             log.info("文件上传成功: 用户ID={}, 文件名={}, 对象路径={}", userId, originalFilename, objectKey);
 
-            return FileUploadDTO.builder()
+            return builder
                 .fileId(GeneratorIdUtils.getUUID())
                 .fileName(fileName)
                 .filePath(fileUrl)
@@ -119,6 +164,21 @@ public class FileUploadUtils {
         }
     }
 
+    /**
+     * 把内容写入指定对象，返回已填入内容相关字段的DTO构建器
+     */
+    private interface Uploader {
+        FileUploadDTO.FileUploadDTOBuilder put(String objectKey) throws Exception;
+    }
+
+    /**
+     * 生成新对象路径：用户ID + path + / + 随机文件名（保留原扩展名）
+     */
+    public static String newObjectKey(Long userId, String path, String originalFilename) {
+        String fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
+        return userId + path + "/" + UUID.randomUUID() + fileExtension;
+    }
+
     /**
      * 根据对象路径从MinIO删除文件
      *
@@ -0,0 +1,96 @@
+package com.tripdog.common.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/17 19:20
+ * @description: 单次读取的上传流：读取时同步计算SHA-256、统计字节数，
+ * 并在不超过 teeMaxBytes 时保留一份内存副本供解析直接使用；超过上限即丢弃副本，内存占用有界。
+ */
+public class TeeDigestInputStream extends FilterInputStream {
+    private final MessageDigest digest = HashUtils.newSha256();
+    private final int teeMaxBytes;
+    private ByteArrayOutputStream copy;
+    private long bytesRead;
+
+    public TeeDigestInputStream(InputStream in, int teeMaxBytes) {
+        super(in);
+        this.teeMaxBytes = teeMaxBytes;
+        this.copy = teeMaxBytes > 0 ? new ByteArrayOutputStream(Math.min(teeMaxBytes, 64 * 1024)) : null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            digest.update((byte) b);
+            tee(new byte[]{(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            digest.update(b, off, n);
+            tee(b, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // 跳过的字节无法计入摘要与副本，逐块读取代替
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (r == -1) {
+                break;
+            }
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void tee(byte[] b, int off, int len) {
+        bytesRead += len;
+        if (copy == null) {
+            return;
+        }
+        if (bytesRead > teeMaxBytes) {
+            copy = null;
+            return;
+        }
+        copy.write(b, off, len);
+    }
+
+    /**
+     * 读取完毕后调用，返回十六进制SHA-256
+     */
+    public String sha256Hex() {
+        return HashUtils.toHex(digest);
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return 完整内容副本，超过上限时为null
+     */
+    public byte[] getCopy() {
+        return copy != null ? copy.toByteArray() : null;
+    }
+}
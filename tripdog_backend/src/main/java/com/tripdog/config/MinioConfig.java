@@ -17,6 +17,38 @@ public class MinioConfig {
     private String accessKey;
     private String secretKey;
     private String bucketName;
+    /**
+     * 预签名URL使用的对外地址，为空时使用endpoint（签名包含host，必须是客户端实际访问的地址）
+     */
+    private String presignEndpoint;
+    /**
+     * 存储区域，预签名客户端固定使用该区域签名，签名时无需访问对外地址查询
+     */
+    private String region = "us-east-1";
+    /**
+     * 预签名URL有效期，秒
+     */
+    private int presignExpirySeconds = 600;
+    /**
+     * 过期直传申请的清理间隔，毫秒
+     */
+    private long presignCleanupIntervalMs = 600_000;
+    /**
+     * 直传文件大小上限，字节
+     */
+    private long presignMaxUploadBytes = 100L * 1024 * 1024;
+    /**
+     * 分片上传的分片大小，字节，不小于5MB
+     */
+    private long multipartPartSize = 8L * 1024 * 1024;
+    /**
+     * 分片上传文件大小上限，字节
+     */
+    private long multipartMaxUploadBytes = 2L * 1024 * 1024 * 1024;
+    /**
+     * 分片上传会话有效期，小时，超时未完成的临时分片会被清理
+     */
+    private int multipartExpireHours = 24;
 
     @Bean
     public MinioClient minioClient() {
@@ -0,0 +1,23 @@
+package com.tripdog.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * 账号/角色数据清理配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "purge")
+public class PurgeConfig {
+    /** 每批删除的向量数 */
+    private int vectorBatchSize = 500;
+    /** 每批删除的数据库行数（文档、会话、聊天记录等） */
+    private int rowBatchSize = 500;
+    /** 两批之间的停顿（毫秒），给在线检索与聊天让出数据库 */
+    private long batchPauseMs = 200;
+    /** 清理任务进度在Redis中保留的天数 */
+    private int jobTtlDays = 7;
+}
@@ -0,0 +1,241 @@
+package com.tripdog.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+import com.tripdog.ai.ingest.EmbeddingMigrationService;
+import com.tripdog.common.ErrorCode;
+import com.tripdog.common.Result;
+import com.tripdog.model.dto.DocDelDTO;
+import com.tripdog.model.dto.DocListDTO;
+import com.tripdog.model.dto.DocStatusDTO;
+import com.tripdog.model.dto.EmbeddingMigration;
+import com.tripdog.model.dto.PurgeDTO;
+import com.tripdog.model.dto.PurgeJobDTO;
+import com.tripdog.model.dto.PurgeJob;
+import com.tripdog.model.dto.UploadDTO;
+import com.tripdog.model.vo.DocVO;
+import com.tripdog.service.impl.AccountPurgeService;
+import com.tripdog.service.impl.GlobalCorpusService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 运维接口控制器
+ * @author: iohw
+ * @date: 2025/10/21 11:20
+ * @description: 账号/角色数据清理、角色公共语料管理、向量迁移等运维操作，使用 X-Admin-Token 请求头鉴权，未配置 admin.token 时全部拒绝
+ */
+@RestController
+@RequestMapping("/admin")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "运维管理", description = "账号与角色数据清理、角色公共语料管理、向量迁移等运维接口")
+public class AdminController {
+    private static final String TOKEN_HEADER = "X-Admin-Token";
+
+    private final AccountPurgeService accountPurgeService;
+    private final GlobalCorpusService globalCorpusService;
+    private final EmbeddingMigrationService embeddingMigrationService;
+
+    @Value("${admin.token:}")
+    private String adminToken;
+
+    @PostMapping("/purge/start")
+    @Operation(summary = "创建清理任务",
+              description = "按用户、角色或用户+角色清理向量、文档、会话、聊天记录、亲密度记录与MinIO文件，后台分批执行")
+    public Result<PurgeJob> startPurge(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                       @RequestBody PurgeDTO purgeDTO) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        if (purgeDTO.getUserId() == null && purgeDTO.getRoleId() == null) {
+            return Result.error(ErrorCode.PARAM_ERROR, "userId与roleId至少指定一个");
+        }
+        log.warn("创建清理任务: userId={}, roleId={}", purgeDTO.getUserId(), purgeDTO.getRoleId());
+        return Result.success(accountPurgeService.start(purgeDTO.getUserId(), purgeDTO.getRoleId()));
+    }
+
+    @PostMapping("/purge/status")
+    @Operation(summary = "查询清理任务进度")
+    public Result<PurgeJob> purgeStatus(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                        @RequestBody @Validated PurgeJobDTO jobDTO) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        PurgeJob job = accountPurgeService.get(jobDTO.getJobId());
+        return job == null ? Result.error(ErrorCode.NOT_FOUND) : Result.success(job);
+    }
+
+    @PostMapping("/purge/resume")
+    @Operation(summary = "从检查点继续清理任务", description = "用于失败或进程重启后中断的任务")
+    public Result<PurgeJob> resumePurge(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                        @RequestBody @Validated PurgeJobDTO jobDTO) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        PurgeJob job = accountPurgeService.resume(jobDTO.getJobId());
+        return job == null ? Result.error(ErrorCode.NOT_FOUND) : Result.success(job);
+    }
+
+    @PostMapping("/corpus/upload")
+    @Operation(summary = "上传角色公共文档",
+              description = "文档只解析、向量化一次，该角色下所有用户检索时与各自的私有文档一起召回；返回PENDING状态的文档")
+    public Result<DocVO> uploadCorpus(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                      UploadDTO uploadDTO) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        if (uploadDTO.getRoleId() == null || uploadDTO.getFile() == null || uploadDTO.getFile().isEmpty()) {
+            return Result.error(ErrorCode.PARAM_ERROR);
+        }
+        try {
+            return Result.success(globalCorpusService.upload(uploadDTO.getRoleId(), uploadDTO.getFile()));
+        } catch (Exception e) {
+            log.error("公共文档上传异常: roleId={}", uploadDTO.getRoleId(), e);
+            return Result.error(ErrorCode.SYSTEM_ERROR);
+        }
+    }
+
+    @PostMapping("/corpus/list")
+    @Operation(summary = "查询角色公共文档列表")
+    public Result<List<DocVO>> listCorpus(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                          @RequestBody DocListDTO docListDTO) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        if (docListDTO.getRoleId() == null) {
+            return Result.error(ErrorCode.PARAM_ERROR, "roleId不能为空");
+        }
+        return Result.success(globalCorpusService.list(docListDTO.getRoleId()));
+    }
+
+    @PostMapping("/corpus/status")
+    @Operation(summary = "查询公共文档解析状态")
+    public Result<DocVO> corpusStatus(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                      @RequestBody @Validated DocStatusDTO docStatusDTO) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        DocVO docVO = globalCorpusService.get(docStatusDTO.getFileId());
+        return docVO == null ? Result.error(ErrorCode.NOT_FOUND) : Result.success(docVO);
+    }
+
+    @PostMapping("/corpus/delete")
+    @Operation(summary = "删除角色公共文档", description = "立即从该角色所有用户的检索中排除，向量与文件由后台清理")
+    public Result<String> deleteCorpus(@RequestHeader(value = TOKEN_HEADER, required = false) String token,
+                                       @RequestBody DocDelDTO docDelDTO) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        if (!globalCorpusService.delete(docDelDTO.getFileId())) {
+            return Result.error(ErrorCode.NOT_FOUND);
+        }
+        log.warn("删除公共文档: fileId={}", docDelDTO.getFileId());
+        return Result.success("文档删除成功");
+    }
+
+    @PostMapping("/migration/start")
+    @Operation(summary = "开始向量迁移",
+              description = "按 rag.migration 创建影子表并开启双写，后台用新模型从提取文本回填，检索仍使用原表")
+    public Result<EmbeddingMigration> startMigration(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        log.warn("开始向量迁移");
+        return migrate(embeddingMigrationService::start);
+    }
+
+    @PostMapping("/migration/status")
+    @Operation(summary = "查询向量迁移进度")
+    public Result<EmbeddingMigration> migrationStatus(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        EmbeddingMigration migration = embeddingMigrationService.status();
+        return migration == null ? Result.error(ErrorCode.NOT_FOUND) : Result.success(migration);
+    }
+
+    @PostMapping("/migration/resume")
+    @Operation(summary = "从检查点继续向量迁移回填", description = "用于失败或进程重启后中断的回填")
+    public Result<EmbeddingMigration> resumeMigration(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        return migrate(embeddingMigrationService::resume);
+    }
+
+    @PostMapping("/migration/cutover")
+    @Operation(summary = "检索切换到影子表", description = "回填完成后执行，各实例在状态刷新间隔内切换，切换后仍双写原表")
+    public Result<EmbeddingMigration> cutoverMigration(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        log.warn("向量检索切换到影子表");
+        return migrate(embeddingMigrationService::cutover);
+    }
+
+    @PostMapping("/migration/rollback")
+    @Operation(summary = "检索切回原表")
+    public Result<EmbeddingMigration> rollbackMigration(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        log.warn("向量检索切回原表");
+        return migrate(embeddingMigrationService::rollback);
+    }
+
+    @PostMapping("/migration/finish")
+    @Operation(summary = "完成向量迁移并删除原表", description = "所有实例按新的 pgvector.table 与向量模型配置重新部署后执行")
+    public Result<EmbeddingMigration> finishMigration(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        log.warn("完成向量迁移");
+        return migrate(embeddingMigrationService::finish);
+    }
+
+    @PostMapping("/migration/cancel")
+    @Operation(summary = "取消未切换的向量迁移", description = "停止双写并删除影子表")
+    public Result<String> cancelMigration(@RequestHeader(value = TOKEN_HEADER, required = false) String token) {
+        if (!authorized(token)) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        try {
+            embeddingMigrationService.cancel();
+        } catch (IllegalStateException e) {
+            return Result.error(ErrorCode.OPERATION_FAILED, e.getMessage());
+        }
+        log.warn("取消向量迁移");
+        return Result.success("迁移已取消");
+    }
+
+    private Result<EmbeddingMigration> migrate(Supplier<EmbeddingMigration> action) {
+        try {
+            return Result.success(action.get());
+        } catch (IllegalStateException e) {
+            return Result.error(ErrorCode.OPERATION_FAILED, e.getMessage());
+        }
+    }
+
+    private boolean authorized(String token) {
+        if (adminToken == null || adminToken.isBlank() || token == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(adminToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,15 +1,18 @@
 package com.tripdog.controller;
 
-import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
 
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -19,38 +22,45 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.ingest.DocIngestionService;
+import com.tripdog.ai.ingest.DocReplaceService;
+import com.tripdog.ai.ingest.IngestConfig;
+import com.tripdog.ai.ingest.IngestDedupMetrics;
 import com.tripdog.common.ErrorCode;
 import com.tripdog.common.Result;
 import com.tripdog.common.utils.FileUploadUtils;
-import com.tripdog.common.utils.ThreadLocalUtils;
+import com.tripdog.common.utils.HashUtils;
 import com.tripdog.config.MinioConfig;
 import com.tripdog.model.dto.DocDelDTO;
+import com.tripdog.service.impl.DocObjectService;
+import com.tripdog.service.impl.DocPresignService;
 import com.tripdog.service.impl.UserSessionService;
-import com.tripdog.service.impl.VectorDataService;
 import com.tripdog.model.dto.DocDownloadDTO;
 import com.tripdog.model.dto.DocListDTO;
+import com.tripdog.model.dto.DocReplaceDTO;
+import com.tripdog.model.dto.DocStatusDTO;
 import com.tripdog.model.dto.FileUploadDTO;
+import com.tripdog.model.dto.PresignCompleteDTO;
+import com.tripdog.model.dto.PresignUploadDTO;
+import com.tripdog.model.dto.PresignedUploadIntent;
 import com.tripdog.model.dto.UploadDTO;
 import com.tripdog.model.entity.DocDO;
 import com.tripdog.model.vo.DocVO;
+import com.tripdog.model.vo.PresignedUrlVO;
 import com.tripdog.model.vo.UserInfoVO;
 import com.tripdog.service.DocService;
 import io.minio.GetObjectArgs;
 import io.minio.MinioClient;
-import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import static com.tripdog.common.Constants.FILE_ID;
-import static com.tripdog.common.Constants.FILE_NAME;
-import static com.tripdog.common.Constants.ROLE_ID;
-import static com.tripdog.common.Constants.UPLOAD_TIME;
-import static com.tripdog.common.Constants.USER_ID;
-import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.loadDocument;
+import static com.tripdog.common.Constants.DOC_PENDING;
 
 /**
  * 文档管理控制器
@@ -64,20 +74,26 @@ import static dev.langchain4j.data.document.loader.FileSystemDocumentLoader.load
 @Slf4j
 @Tag(name = "文档管理", description = "文档上传、解析、下载、删除和向量化相关接口")
 public class DocController {
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
 
-    private final EmbeddingStoreIngestor ingestor;
     private final MinioClient minioClient;
     private final MinioConfig minioConfig;
     private final DocService docService;
     private final UserSessionService userSessionService;
-    private final VectorDataService vectorDataService;
     private final FileUploadUtils fileUploadUtils;
+    private final CorpusVersionService corpusVersionService;
+    private final DocIngestionService docIngestionService;
+    private final IngestDedupMetrics dedupMetrics;
+    private final IngestConfig ingestConfig;
+    private final DocReplaceService docReplaceService;
+    private final DocPresignService docPresignService;
+    private final DocObjectService docObjectService;
 
     @PostMapping("/parse")
     @Operation(summary = "文档上传并解析",
-              description = "上传文件到MinIO存储，然后解析文档内容并创建向量嵌入用于AI检索")
+              description = "上传文件到MinIO存储后立即返回PENDING状态，解析与向量化在后台完成，可通过/doc/status查询进度")
     @ApiResponses(value = {
-        @ApiResponse(responseCode = "200", description = "文档上传并解析成功"),
+        @ApiResponse(responseCode = "200", description = "文档上传成功，等待解析"),
         @ApiResponse(responseCode = "10001", description = "参数错误"),
         @ApiResponse(responseCode = "10105", description = "用户未登录"),
         @ApiResponse(responseCode = "10000", description = "系统异常")
@@ -91,60 +107,308 @@ public class DocController {
         MultipartFile file = uploadDTO.getFile();
         String fileId = UUID.randomUUID().toString();
 
-        // 设置元数据到ThreadLocal，用于向量存储时添加
-        ThreadLocalUtils.set(ROLE_ID, uploadDTO.getRoleId());
-        ThreadLocalUtils.set(USER_ID, userInfoVO.getId());
-        ThreadLocalUtils.set(FILE_ID, fileId);
-        ThreadLocalUtils.set(FILE_NAME, file.getOriginalFilename());
-        ThreadLocalUtils.set(UPLOAD_TIME, java.time.Instant.now().toString());
-
         try {
-            // 上传文件到MinIO
-            FileUploadDTO fileUploadDTO = fileUploadUtils.upload2Minio(
-                file,
-                userInfoVO.getId(),
-                minioClient,
-                minioConfig.getBucketName(),
-                "/doc"
-            );
+            // 小文件（会保留内存副本）只读一次进内存并算哈希，重复上传直接返回，不写MinIO；
+            // 不重复时直接上传这份内存副本，不再读请求体、不再算哈希。
+            // 大文件若先算哈希需要把请求体完整读两遍（或落盘），因此在上传MinIO的同时计算，
+            // 重复时多一次写入与删除，换取只读一遍请求体
+            long start = System.currentTimeMillis();
+            FileUploadDTO fileUploadDTO;
+            if (file.getSize() <= ingestConfig.getInlineParseMaxBytes()) {
+                byte[] content = file.getBytes();
+                String contentHash = HashUtils.sha256Hex(content);
+                DocVO existing = docService.getDocByContentHash(userInfoVO.getId(), uploadDTO.getRoleId(), contentHash);
+                if (existing != null) {
+                    dedupMetrics.recordUpload(true);
+                    log.info("重复上传，复用已有文档: fileId={}, contentHash={}", existing.getFileId(), contentHash);
+                    return Result.success(existing);
+                }
+                fileUploadDTO = fileUploadUtils.upload2Minio(file, content, contentHash, userInfoVO.getId(),
+                    minioClient, minioConfig.getBucketName(), "/doc");
+            } else {
+                fileUploadDTO = fileUploadUtils.upload2Minio(
+                    file,
+                    userInfoVO.getId(),
+                    minioClient,
+                    minioConfig.getBucketName(),
+                    "/doc",
+                    ingestConfig.getUploadPartSize(),
+                    ingestConfig.getInlineParseMaxBytes()
+                );
+            }
+            String contentHash = fileUploadDTO.getContentHash();
+            log.info("文档上传完成: size={}, bytesRead={}, inline={}, 耗时={}ms", file.getSize(),
+                fileUploadDTO.getBytesRead(), fileUploadDTO.getContent() != null, System.currentTimeMillis() - start);
+
+            // 同一用户、同一角色重复上传相同文件时直接返回已有文档，不再解析和向量化
+            DocVO existing = docService.getDocByContentHash(userInfoVO.getId(), uploadDTO.getRoleId(), contentHash);
+            dedupMetrics.recordUpload(existing != null);
+            if (existing != null) {
+                FileUploadUtils.deleteFromMinio(fileUploadDTO.getObjectKey(), minioClient, minioConfig.getBucketName());
+                log.info("重复上传，复用已有文档: fileId={}, contentHash={}", existing.getFileId(), contentHash);
+                return Result.success(existing);
+            }
+
+            // 按内容寻址登记原文件：其他用户已上传过相同内容时只增加引用
+            String objectKey = docObjectService.adopt(fileUploadDTO.getObjectKey(), contentHash, file.getSize());
 
-            // 保存文档信息到数据库
+            // 保存文档信息到数据库，解析由后台任务完成
             DocDO docDO = new DocDO();
             docDO.setFileId(fileId);
             docDO.setUserId(userInfoVO.getId());
             docDO.setRoleId(uploadDTO.getRoleId());
-            docDO.setFileUrl(fileUploadDTO.getObjectKey());
+            docDO.setFileUrl(objectKey);
             docDO.setFileName(file.getOriginalFilename());
             docDO.setFileSize((double) file.getSize());
+            docDO.setContentHash(contentHash);
+            docDO.setStatus(DOC_PENDING);
+
+            boolean saved;
+            try {
+                saved = docService.saveDoc(docDO);
+            } catch (DuplicateKeyException e) {
+                // 并发上传相同内容，唯一键拦截了后到的请求
+                docObjectService.releaseQuietly(objectKey);
+                existing = docService.getDocByContentHash(userInfoVO.getId(), uploadDTO.getRoleId(), contentHash);
+                if (existing != null) {
+                    log.info("并发重复上传，复用已有文档: fileId={}, contentHash={}", existing.getFileId(), contentHash);
+                    return Result.success(existing);
+                }
+                throw e;
+            }
+            if (!saved) {
+                log.error("保存文档信息到数据库失败: {}", docDO);
+                docObjectService.releaseQuietly(objectKey);
+                return Result.error(ErrorCode.SYSTEM_ERROR);
+            }
+
+            docIngestionService.submit(fileId, fileUploadDTO.getContent());
+            return Result.success(docService.getDocByFileId(fileId));
+        } catch (Exception e) {
+            log.error("文档上传处理异常", e);
+            return Result.error(ErrorCode.SYSTEM_ERROR);
+        }
+    }
+
+    @PostMapping("/presign/upload")
+    @Operation(summary = "申请直传上传地址",
+              description = "返回短时有效的预签名POST表单，客户端把表单字段与文件直接提交到MinIO，完成后调用/doc/presign/complete登记")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "签发成功"),
+        @ApiResponse(responseCode = "10001", description = "文件名或大小无效"),
+        @ApiResponse(responseCode = "10105", description = "用户未登录")
+    })
+    public Result<PresignedUrlVO> presignUpload(@RequestBody @Validated PresignUploadDTO presignDTO) {
+        UserInfoVO userInfoVO = userSessionService.getCurrentUser();
+        if (userInfoVO == null) {
+            return Result.error(ErrorCode.USER_NOT_LOGIN);
+        }
+        if (!presignDTO.getFileName().contains(".")) {
+            return Result.error(ErrorCode.PARAM_ERROR, "文件名无效或缺少扩展名");
+        }
+        if (presignDTO.getFileSize() > minioConfig.getPresignMaxUploadBytes()) {
+            return Result.error(ErrorCode.PARAM_ERROR, "文件超过大小上限");
+        }
+
+        try {
+            return Result.success(docPresignService.createUpload(userInfoVO.getId(), presignDTO.getRoleId(),
+                presignDTO.getFileName(), presignDTO.getFileSize()));
+        } catch (Exception e) {
+            log.error("签发直传地址异常", e);
+            return Result.error(ErrorCode.SYSTEM_ERROR);
+        }
+    }
+
+    @PostMapping("/presign/complete")
+    @Operation(summary = "直传完成回调",
+              description = "校验对象已上传后登记文档并投递后台解析，返回PENDING状态的文档；重复回调返回已登记的文档")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "登记成功，等待解析"),
+        @ApiResponse(responseCode = "10001", description = "文件尚未上传或大小超限"),
+        @ApiResponse(responseCode = "10003", description = "同一上传正在登记中"),
+        @ApiResponse(responseCode = "10105", description = "用户未登录"),
+        @ApiResponse(responseCode = "10404", description = "上传申请不存在或已过期")
+    })
+    public Result<DocVO> presignComplete(@RequestBody @Validated PresignCompleteDTO completeDTO) {
+        UserInfoVO userInfoVO = userSessionService.getCurrentUser();
+        if (userInfoVO == null) {
+            return Result.error(ErrorCode.USER_NOT_LOGIN);
+        }
+        String fileId = completeDTO.getFileId();
+
+        // 重复回调
+        DocVO registered = docService.getDocByFileId(fileId);
+        if (registered != null) {
+            return userInfoVO.getId().equals(registered.getUserId())
+                ? Result.success(registered) : Result.error(ErrorCode.NO_AUTH);
+        }
+
+        PresignedUploadIntent intent = docPresignService.getIntent(fileId);
+        if (intent == null) {
+            return Result.error(ErrorCode.NOT_FOUND);
+        }
+        if (!userInfoVO.getId().equals(intent.getUserId())) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        // 并发回调只有一个进入登记，其余返回处理中，客户端稍后重试即可拿到已登记的文档
+        if (!docPresignService.claim(fileId)) {
+            return Result.error(ErrorCode.OPERATION_FAILED, "上传正在登记中，请稍后再试");
+        }
+
+        boolean registeredNow = false;
+        try {
+            StatObjectResponse stat = docPresignService.stat(intent.getObjectKey());
+            if (stat == null) {
+                return Result.error(ErrorCode.PARAM_ERROR, "文件尚未上传完成");
+            }
+            // 上传策略已限制请求体大小，这里以实际对象大小兜底
+            if (stat.size() == 0 || stat.size() > minioConfig.getPresignMaxUploadBytes()) {
+                FileUploadUtils.deleteFromMinio(intent.getObjectKey(), minioClient, minioConfig.getBucketName());
+                docPresignService.removeIntent(intent);
+                return Result.error(ErrorCode.PARAM_ERROR, "文件为空或超过大小上限");
+            }
+
+            // 内容哈希在后台解析读取文件时计算，这里不再经应用节点读取文件
+            DocDO docDO = new DocDO();
+            docDO.setFileId(fileId);
+            docDO.setUserId(intent.getUserId());
+            docDO.setRoleId(intent.getRoleId());
+            docDO.setFileUrl(intent.getObjectKey());
+            docDO.setFileName(intent.getFileName());
+            docDO.setFileSize((double) stat.size());
+            docDO.setStatus(DOC_PENDING);
 
             if (!docService.saveDoc(docDO)) {
                 log.error("保存文档信息到数据库失败: {}", docDO);
                 return Result.error(ErrorCode.SYSTEM_ERROR);
             }
+            registeredNow = true;
+            docPresignService.removeIntent(intent);
 
-            // 先上传到本地临时目录用于解析
-            FileUploadDTO localFileDTO = FileUploadUtils.upload2Local(file, "/tmp");
-            File localFile = new File(localFileDTO.getFilePath());
+            docIngestionService.submit(fileId);
+            return Result.success(docService.getDocByFileId(fileId));
+        } catch (Exception e) {
+            log.error("直传完成登记异常: fileId={}", fileId, e);
+            return Result.error(ErrorCode.SYSTEM_ERROR);
+        } finally {
+            // 未登记成功时释放抢占，允许客户端重试；登记成功后保留到过期，重复回调走已登记分支
+            if (!registeredNow) {
+                docPresignService.releaseClaim(fileId);
+            }
+        }
+    }
 
-            try {
-                // 解析文档并创建向量嵌入
-                DocumentParser parser = new ApacheTikaDocumentParser();
-                Document doc = loadDocument(localFile.getAbsolutePath(), parser);
-                ingestor.ingest(doc);
+    @PostMapping("/presign/download")
+    @Operation(summary = "申请直连下载地址",
+              description = "返回短时有效的预签名GET地址，客户端直接从MinIO下载")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "签发成功"),
+        @ApiResponse(responseCode = "10105", description = "用户未登录"),
+        @ApiResponse(responseCode = "10404", description = "文件不存在"),
+        @ApiResponse(responseCode = "10500", description = "无权访问")
+    })
+    public Result<PresignedUrlVO> presignDownload(@RequestBody @Validated DocDownloadDTO downloadDTO) {
+        UserInfoVO userInfoVO = userSessionService.getCurrentUser();
+        if (userInfoVO == null) {
+            return Result.error(ErrorCode.USER_NOT_LOGIN);
+        }
+
+        DocVO docVO = docService.getDocByFileId(downloadDTO.getFileId());
+        if (docVO == null) {
+            return Result.error(ErrorCode.NOT_FOUND);
+        }
+        if (!userInfoVO.getId().equals(docVO.getUserId())) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+
+        try {
+            return Result.success(docPresignService.createDownload(docVO));
+        } catch (Exception e) {
+            log.error("签发下载地址异常: fileId={}", docVO.getFileId(), e);
+            return Result.error(ErrorCode.SYSTEM_ERROR);
+        }
+    }
 
-                // 返回文档信息
-                DocVO docVO = docService.getDocByFileId(fileId);
+    @PostMapping("/replace")
+    @Operation(summary = "替换文档",
+              description = "上传新版本替换已有文档：只向量化变化的片段，新旧片段在一个事务内切换，替换期间旧版本仍可检索")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "替换任务已提交"),
+        @ApiResponse(responseCode = "10003", description = "文档正在处理中"),
+        @ApiResponse(responseCode = "10105", description = "用户未登录"),
+        @ApiResponse(responseCode = "10404", description = "文件不存在")
+    })
+    public Result<DocVO> replace(DocReplaceDTO replaceDTO) {
+        UserInfoVO userInfoVO = userSessionService.getCurrentUser();
+        if (userInfoVO == null) {
+            return Result.error(ErrorCode.USER_NOT_LOGIN);
+        }
+        if (replaceDTO.getFileId() == null || replaceDTO.getFile() == null) {
+            return Result.error(ErrorCode.PARAM_ERROR);
+        }
+
+        DocVO docVO = docService.getDocByFileId(replaceDTO.getFileId());
+        if (docVO == null) {
+            return Result.error(ErrorCode.NOT_FOUND);
+        }
+        if (!userInfoVO.getId().equals(docVO.getUserId())) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+
+        try {
+            MultipartFile file = replaceDTO.getFile();
+            FileUploadDTO fileUploadDTO = fileUploadUtils.upload2Minio(
+                file,
+                userInfoVO.getId(),
+                minioClient,
+                minioConfig.getBucketName(),
+                "/doc",
+                ingestConfig.getUploadPartSize(),
+                ingestConfig.getInlineParseMaxBytes()
+            );
+            // 内容未变化，直接返回
+            if (fileUploadDTO.getContentHash().equals(docVO.getContentHash())) {
+                FileUploadUtils.deleteFromMinio(fileUploadDTO.getObjectKey(), minioClient, minioConfig.getBucketName());
                 return Result.success(docVO);
-            } finally {
-                // 清理本地临时文件
-                FileUploadUtils.deleteLocalFile(localFile);
             }
+
+            fileUploadDTO.setObjectKey(docObjectService.adopt(
+                fileUploadDTO.getObjectKey(), fileUploadDTO.getContentHash(), file.getSize()));
+            if (!docReplaceService.submit(docVO.getFileId(), fileUploadDTO, file.getOriginalFilename(), file.getSize())) {
+                docObjectService.releaseQuietly(fileUploadDTO.getObjectKey());
+                return Result.error(ErrorCode.OPERATION_FAILED, "文档正在处理中，请稍后再试");
+            }
+            return Result.success(docService.getDocByFileId(docVO.getFileId()));
         } catch (Exception e) {
-            log.error("文档上传处理异常", e);
+            log.error("文档替换异常", e);
             return Result.error(ErrorCode.SYSTEM_ERROR);
         }
     }
 
+    @PostMapping("/status")
+    @Operation(summary = "查询文档解析状态",
+              description = "返回文档解析状态（PENDING/PROCESSING/READY/FAILED）、进度、片段数与各阶段耗时")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "查询成功"),
+        @ApiResponse(responseCode = "10105", description = "用户未登录"),
+        @ApiResponse(responseCode = "10404", description = "文件不存在")
+    })
+    public Result<DocVO> status(@RequestBody @Validated DocStatusDTO docStatusDTO) {
+        UserInfoVO userInfoVO = userSessionService.getCurrentUser();
+        if (userInfoVO == null) {
+            return Result.error(ErrorCode.USER_NOT_LOGIN);
+        }
+
+        DocVO docVO = docService.getDocByFileId(docStatusDTO.getFileId());
+        if (docVO == null) {
+            return Result.error(ErrorCode.NOT_FOUND);
+        }
+        if (!userInfoVO.getId().equals(docVO.getUserId())) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        return Result.success(docVO);
+    }
+
     @PostMapping("/list")
     @Operation(summary = "查询文档列表",
               description = "根据用户ID和角色ID查询文档列表，如果不传角色ID则查询用户所有文档")
@@ -173,62 +437,178 @@ public class DocController {
 
     @PostMapping("/download")
     @Operation(summary = "下载文档",
-              description = "根据文件ID下载文档")
+              description = "根据文件ID下载文档，文件内容从MinIO流式写出，支持Range断点续传与ETag协商缓存")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "下载成功"),
+        @ApiResponse(responseCode = "206", description = "返回部分内容"),
+        @ApiResponse(responseCode = "304", description = "文件未修改"),
+        @ApiResponse(responseCode = "416", description = "请求范围无效"),
         @ApiResponse(responseCode = "10001", description = "参数错误"),
         @ApiResponse(responseCode = "10105", description = "用户未登录"),
         @ApiResponse(responseCode = "10404", description = "文件不存在")
     })
-    public ResponseEntity<byte[]> download(@RequestBody @Validated DocDownloadDTO downloadDTO) {
+    public void download(@RequestBody @Validated DocDownloadDTO downloadDTO,
+                         HttpServletRequest request, HttpServletResponse response) {
+        streamDoc(downloadDTO.getFileId(), request, response);
+    }
+
+    @GetMapping("/download")
+    @Operation(summary = "下载文档（GET）",
+              description = "与POST下载相同，便于浏览器和下载工具携带Range、If-None-Match请求头续传")
+    public void downloadByGet(@RequestParam("fileId") String fileId,
+                              HttpServletRequest request, HttpServletResponse response) {
+        streamDoc(fileId, request, response);
+    }
+
+    /**
+     * 以固定缓冲区把MinIO对象直接写到响应流，不在堆内缓存整个文件
+     */
+    private void streamDoc(String fileId, HttpServletRequest request, HttpServletResponse response) {
         try {
             // 从用户会话服务获取当前登录用户信息
             UserInfoVO userInfoVO = userSessionService.getCurrentUser();
             if (userInfoVO == null) {
-                 throw new RuntimeException(ErrorCode.USER_NOT_LOGIN.getMessage());
+                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                return;
             }
 
             // 查询文档信息
-            DocVO docVO = docService.getDocByFileId(downloadDTO.getFileId());
+            DocVO docVO = docService.getDocByFileId(fileId);
             if (docVO == null) {
-                return ResponseEntity.notFound().build();
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
             }
 
             // 检查文档所有权
             if (!userInfoVO.getId().equals(docVO.getUserId())) {
-                return ResponseEntity.badRequest().build();
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
             }
 
-            // 从MinIO下载文件
-            InputStream inputStream = minioClient.getObject(
-                GetObjectArgs.builder()
+            StatObjectResponse stat = minioClient.statObject(
+                StatObjectArgs.builder()
                     .bucket(minioConfig.getBucketName())
                     .object(docVO.getFileUrl())
                     .build()
             );
-            byte[] bytes = inputStream.readAllBytes();
-            inputStream.close();
+            long size = stat.size();
+            String etag = "\"" + stat.etag() + "\"";
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, stat.lastModified().toInstant().toEpochMilli());
+
+            // 客户端缓存的版本仍然有效
+            if (etagMatches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
 
-            // 设置响应头
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment",
-                URLEncoder.encode(docVO.getFileName(), StandardCharsets.UTF_8));
-            headers.setContentLength(bytes.length);
+            long offset = 0;
+            long length = size;
+            String range = request.getHeader(HttpHeaders.RANGE);
+            String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+            // If-Range 与当前版本不一致时忽略 Range，返回完整文件
+            if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                List<HttpRange> ranges = parseRanges(range);
+                // 只支持单一范围，多范围请求按完整文件返回
+                if (ranges.size() == 1) {
+                    HttpRange httpRange = ranges.get(0);
+                    if (size == 0 || httpRange.getRangeStart(size) >= size) {
+                        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                        response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                        return;
+                    }
+                    offset = httpRange.getRangeStart(size);
+                    length = httpRange.getRangeEnd(size) - offset + 1;
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE,
+                        "bytes " + offset + "-" + (offset + length - 1) + "/" + size);
+                }
+            }
 
-            return ResponseEntity.ok()
-                .headers(headers)
-                .body(bytes);
+            // 设置响应头
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.formData()
+                .name("attachment")
+                .filename(URLEncoder.encode(docVO.getFileName(), StandardCharsets.UTF_8))
+                .build()
+                .toString());
+            response.setContentLengthLong(length);
+            if (length == 0) {
+                return;
+            }
 
+            GetObjectArgs.Builder args = GetObjectArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .object(docVO.getFileUrl());
+            if (length < size) {
+                args.offset(offset).length(length);
+            }
+            try (InputStream in = minioClient.getObject(args.build())) {
+                OutputStream out = response.getOutputStream();
+                byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                out.flush();
+            }
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code()) && !response.isCommitted()) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            log.error("文档下载异常: fileId={}", fileId, e);
+            failDownload(response);
+        } catch (IOException e) {
+            if (!response.isCommitted()) {
+                log.error("文档下载异常: fileId={}", fileId, e);
+                failDownload(response);
+                return;
+            }
+            // 已开始写出时多为客户端中断下载（断点续传时很常见）
+            log.warn("文档下载中断: fileId={}, {}", fileId, e.getMessage());
         } catch (Exception e) {
-            log.error("文档下载异常", e);
-            return ResponseEntity.internalServerError().build();
+            log.error("文档下载异常: fileId={}", fileId, e);
+            failDownload(response);
+        }
+    }
+
+    private static List<HttpRange> parseRanges(String range) {
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            // 语法错误的 Range 按规范忽略
+            return List.of();
+        }
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void failDownload(HttpServletResponse response) {
+        if (!response.isCommitted()) {
+            response.reset();
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         }
     }
 
     @PostMapping("/delete")
     @Operation(summary = "删除文档",
-              description = "根据文件ID删除文档（包括MinIO中的文件、数据库记录和对应的向量数据）")
+              description = "根据文件ID删除文档：立即从检索中排除，MinIO文件、向量数据与数据库记录由后台清理")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "删除成功"),
         @ApiResponse(responseCode = "10105", description = "用户未登录"),
@@ -254,22 +634,11 @@ public class DocController {
                 return Result.error(ErrorCode.NO_AUTH);
             }
 
-            // 从MinIO删除文件
-            minioClient.removeObject(
-                RemoveObjectArgs.builder()
-                    .bucket(minioConfig.getBucketName())
-                    .object(docVO.getFileUrl())
-                    .build()
-            );
-
-            // 删除对应的向量数据
-            vectorDataService.deleteByDocumentId(fileId);
-
-            // 从数据库删除记录
+            // 只标记墓碑并使检索缓存失效，向量、原文件与提取文本由后台清理
             if (!docService.deleteDoc(fileId)) {
-                log.error("删除数据库文档记录失败: {}", fileId);
-                return Result.error(ErrorCode.SYSTEM_ERROR);
+                return Result.error(ErrorCode.NOT_FOUND);
             }
+            corpusVersionService.bump(docVO.getUserId(), docVO.getRoleId());
 
             return Result.success("文档删除成功");
 
@@ -0,0 +1,209 @@
+package com.tripdog.controller;
+
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+import com.tripdog.ai.ingest.DocIngestionService;
+import com.tripdog.common.ErrorCode;
+import com.tripdog.common.Result;
+import com.tripdog.common.utils.FileUploadUtils;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.model.dto.MultipartInitDTO;
+import com.tripdog.model.dto.MultipartPartDTO;
+import com.tripdog.model.dto.MultipartUploadDTO;
+import com.tripdog.model.dto.MultipartUploadSession;
+import com.tripdog.model.entity.DocDO;
+import com.tripdog.model.vo.DocVO;
+import com.tripdog.model.vo.MultipartUploadVO;
+import com.tripdog.model.vo.UserInfoVO;
+import com.tripdog.service.DocService;
+import com.tripdog.service.impl.DocMultipartUploadService;
+import com.tripdog.service.impl.UserSessionService;
+import io.minio.MinioClient;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.common.Constants.DOC_PENDING;
+
+/**
+ * 文档分片上传控制器
+ * @author: iohw
+ * @date: 2025/10/20 15:40
+ * @description: 大文件分片上传：初始化、并行上传分片、查询进度、完成与取消
+ */
+@RestController
+@RequestMapping("/doc/multipart")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "文档分片上传", description = "大文件可续传的分片上传接口")
+public class DocMultipartController {
+
+    private final DocMultipartUploadService multipartUploadService;
+    private final DocService docService;
+    private final DocIngestionService docIngestionService;
+    private final UserSessionService userSessionService;
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+
+    @PostMapping("/init")
+    @Operation(summary = "初始化分片上传",
+              description = "返回上传ID、分片大小与分片数，客户端按序号切分文件后可并行上传各分片")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "初始化成功"),
+        @ApiResponse(responseCode = "10001", description = "文件名或大小无效"),
+        @ApiResponse(responseCode = "10105", description = "用户未登录")
+    })
+    public Result<MultipartUploadVO> init(@RequestBody @Validated MultipartInitDTO initDTO) {
+        UserInfoVO userInfoVO = userSessionService.getCurrentUser();
+        if (userInfoVO == null) {
+            return Result.error(ErrorCode.USER_NOT_LOGIN);
+        }
+        if (!initDTO.getFileName().contains(".")) {
+            return Result.error(ErrorCode.PARAM_ERROR, "文件名无效或缺少扩展名");
+        }
+        if (initDTO.getFileSize() > minioConfig.getMultipartMaxUploadBytes()) {
+            return Result.error(ErrorCode.PARAM_ERROR, "文件超过大小上限");
+        }
+        return Result.success(multipartUploadService.initiate(userInfoVO.getId(), initDTO.getRoleId(),
+            initDTO.getFileName(), initDTO.getFileSize()));
+    }
+
+    @PostMapping("/part")
+    @Operation(summary = "上传分片",
+              description = "上传一个分片并校验SHA-256（必填），同一分片可重复上传覆盖；不同分片可并行上传")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "分片已接收"),
+        @ApiResponse(responseCode = "10001", description = "分片序号、大小或校验和错误"),
+        @ApiResponse(responseCode = "10105", description = "用户未登录"),
+        @ApiResponse(responseCode = "10404", description = "上传会话不存在或已过期")
+    })
+    public Result<MultipartUploadVO.PartVO> uploadPart(MultipartPartDTO partDTO) {
+        if (partDTO.getPartNumber() == null || partDTO.getFile() == null || partDTO.getSha256() == null) {
+            return Result.error(ErrorCode.PARAM_ERROR);
+        }
+        Result<MultipartUploadSession> session = ownedSession(partDTO.getUploadId());
+        if (session.getData() == null) {
+            return Result.error(session.getCode(), session.getMessage());
+        }
+
+        try {
+            return Result.success(multipartUploadService.uploadPart(session.getData(), partDTO.getPartNumber(),
+                partDTO.getSha256(), partDTO.getFile()));
+        } catch (IllegalArgumentException e) {
+            return Result.error(ErrorCode.PARAM_ERROR, e.getMessage());
+        } catch (Exception e) {
+            log.error("分片上传异常: uploadId={}, part={}", partDTO.getUploadId(), partDTO.getPartNumber(), e);
+            return Result.error(ErrorCode.SYSTEM_ERROR);
+        }
+    }
+
+    @PostMapping("/status")
+    @Operation(summary = "查询分片上传进度", description = "返回已接收的分片，断点续传时只需补传缺失的分片")
+    public Result<MultipartUploadVO> status(@RequestBody @Validated MultipartUploadDTO uploadDTO) {
+        Result<MultipartUploadSession> session = ownedSession(uploadDTO.getUploadId());
+        if (session.getData() == null) {
+            return Result.error(session.getCode(), session.getMessage());
+        }
+        return Result.success(multipartUploadService.status(session.getData()));
+    }
+
+    @PostMapping("/complete")
+    @Operation(summary = "完成分片上传",
+              description = "全部分片到齐后在MinIO服务端合并，登记文档并投递后台解析，返回PENDING状态的文档")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "合并成功，等待解析"),
+        @ApiResponse(responseCode = "10001", description = "仍有分片未上传"),
+        @ApiResponse(responseCode = "10003", description = "同一上传正在合并"),
+        @ApiResponse(responseCode = "10105", description = "用户未登录"),
+        @ApiResponse(responseCode = "10404", description = "上传会话不存在或已过期")
+    })
+    public Result<DocVO> complete(@RequestBody @Validated MultipartUploadDTO uploadDTO) {
+        Result<MultipartUploadSession> ownedSession = ownedSession(uploadDTO.getUploadId());
+        if (ownedSession.getData() == null) {
+            return Result.error(ownedSession.getCode(), ownedSession.getMessage());
+        }
+        MultipartUploadSession session = ownedSession.getData();
+        // 并发完成只有一个进入合并；合并成功后抢占记录保留到过期，迟到的完成请求不会重复合并
+        if (!multipartUploadService.claim(session)) {
+            return Result.error(ErrorCode.OPERATION_FAILED, "上传正在合并，请稍后再试");
+        }
+
+        try {
+            multipartUploadService.complete(session);
+        } catch (IllegalStateException e) {
+            multipartUploadService.releaseClaim(session);
+            return Result.error(ErrorCode.PARAM_ERROR, e.getMessage());
+        } catch (Exception e) {
+            multipartUploadService.releaseClaim(session);
+            log.error("分片合并异常: uploadId={}", session.getUploadId(), e);
+            return Result.error(ErrorCode.SYSTEM_ERROR);
+        }
+
+        // 内容哈希在后台解析读取文件时计算
+        DocDO docDO = new DocDO();
+        docDO.setFileId(session.getFileId());
+        docDO.setUserId(session.getUserId());
+        docDO.setRoleId(session.getRoleId());
+        docDO.setFileUrl(session.getObjectKey());
+        docDO.setFileName(session.getFileName());
+        docDO.setFileSize((double) session.getFileSize());
+        docDO.setStatus(DOC_PENDING);
+
+        boolean saved;
+        try {
+            saved = docService.saveDoc(docDO);
+        } catch (Exception e) {
+            saved = false;
+            log.error("保存文档信息到数据库异常: {}", docDO, e);
+        }
+        if (!saved) {
+            // 并发重复完成时文档已由另一个请求登记
+            DocVO registered = docService.getDocByFileId(session.getFileId());
+            if (registered != null) {
+                return Result.success(registered);
+            }
+            log.error("保存文档信息到数据库失败: {}", docDO);
+            FileUploadUtils.deleteFromMinio(session.getObjectKey(), minioClient, minioConfig.getBucketName());
+            return Result.error(ErrorCode.SYSTEM_ERROR);
+        }
+        docIngestionService.submit(session.getFileId());
+        return Result.success(docService.getDocByFileId(session.getFileId()));
+    }
+
+    @PostMapping("/abort")
+    @Operation(summary = "取消分片上传", description = "删除已上传的临时分片与上传会话")
+    public Result<Void> abort(@RequestBody @Validated MultipartUploadDTO uploadDTO) {
+        Result<MultipartUploadSession> session = ownedSession(uploadDTO.getUploadId());
+        if (session.getData() == null) {
+            return Result.error(session.getCode(), session.getMessage());
+        }
+        multipartUploadService.abort(session.getData());
+        return Result.success();
+    }
+
+    /**
+     * 校验登录与会话归属，失败时返回不带数据的错误结果
+     */
+    private Result<MultipartUploadSession> ownedSession(String uploadId) {
+        UserInfoVO userInfoVO = userSessionService.getCurrentUser();
+        if (userInfoVO == null) {
+            return Result.error(ErrorCode.USER_NOT_LOGIN);
+        }
+        MultipartUploadSession session = uploadId == null ? null : multipartUploadService.getSession(uploadId);
+        if (session == null) {
+            return Result.error(ErrorCode.NOT_FOUND);
+        }
+        if (!userInfoVO.getId().equals(session.getUserId())) {
+            return Result.error(ErrorCode.NO_AUTH);
+        }
+        return Result.success(session);
+    }
+}
@@ -50,4 +50,10 @@ public interface ChatHistoryMapper {
      * 根据会话ID删除所有聊天记录
      */
     int deleteByConversationId(@Param("conversationId") String conversationId);
+
+    /**
+     * 分批删除多个会话的聊天记录，每次最多limit条，返回0表示已删完
+     */
+    int deleteBatchByConversationIds(@Param("conversationIds") List<String> conversationIds,
+                                     @Param("limit") Integer limit);
 }
@@ -42,4 +42,16 @@ public interface ConversationMapper {
      * 动态条件查询会话列表
      */
     List<ConversationDO> selectConversationList(ConversationDO conversation);
+
+    /**
+     * 按用户/角色范围分批查询会话ID（用于账号或角色清理），userId、roleId为null不限
+     */
+    List<String> selectConversationIdsByScope(@Param("userId") Long userId, @Param("roleId") Long roleId,
+                                              @Param("limit") Integer limit);
+
+    /**
+     * 按用户/角色范围删除会话，conversationIds为null时删除范围内任意会话，每次最多limit条
+     */
+    int deleteByScope(@Param("userId") Long userId, @Param("roleId") Long roleId,
+                      @Param("conversationIds") List<String> conversationIds, @Param("limit") Integer limit);
 }
@@ -0,0 +1,19 @@
+package com.tripdog.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 会话摘要表 Mapper 接口
+ */
+@Mapper
+public interface ConversationSummaryMapper {
+
+    /**
+     * 分批删除多个会话的摘要，每次最多limit条，返回0表示已删完
+     */
+    int deleteBatchByConversationIds(@Param("conversationIds") List<String> conversationIds,
+                                     @Param("limit") Integer limit);
+}
@@ -4,6 +4,7 @@ import com.tripdog.model.entity.DocDO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -54,4 +55,168 @@ public interface DocMapper {
      * @return 文档信息
      */
     DocDO selectById(@Param("id") Long id);
+
+    /**
+     * 查询同一用户、同一角色下内容相同且未失败的文档
+     * @param userId 用户ID
+     * @param roleId 角色ID
+     * @param contentHash 文件内容SHA-256
+     * @return 文档信息
+     */
+    DocDO selectByContentHash(@Param("userId") Long userId,
+                              @Param("roleId") Long roleId,
+                              @Param("contentHash") String contentHash);
+
+    /**
+     * 条件更新状态（用于抢占任务，避免多节点重复处理）
+     * @param fileId 文件ID
+     * @param expectStatus 期望的当前状态
+     * @param status 新状态
+     * @return 影响行数
+     */
+    int compareAndSetStatus(@Param("fileId") String fileId,
+                            @Param("expectStatus") String expectStatus,
+                            @Param("status") String status);
+
+    /**
+     * 更新处理进度
+     * @param fileId 文件ID
+     * @param progress 进度
+     * @return 影响行数
+     */
+    int updateProgress(@Param("fileId") String fileId, @Param("progress") Integer progress);
+
+    /**
+     * 更新解析结果（状态、片段数、耗时、重试次数、失败原因）
+     * @param doc 文档信息
+     * @return 影响行数
+     */
+    int updateIngestResult(DocDO doc);
+
+    /**
+     * 替换文档后更新为新版本（对象路径、文件名、大小、内容哈希、片段数）并恢复READY
+     * @param doc 新版本文档信息
+     * @return 影响行数
+     */
+    int updateVersion(DocDO doc);
+
+    /**
+     * 查询指定状态的文档
+     * @param status 状态
+     * @param limit 最大条数
+     * @return 文档列表
+     */
+    List<DocDO> selectByStatus(@Param("status") String status, @Param("limit") Integer limit);
+
+    /**
+     * 统计指定状态的文档数
+     * @param status 状态
+     * @return 文档数
+     */
+    long countByStatus(@Param("status") String status);
+
+    /**
+     * 按ID游标分页查询指定状态的文档（用于重建索引）
+     * @param status 状态
+     * @param lastId 上一页最后一条的ID
+     * @param limit 每页条数
+     * @return 文档列表
+     */
+    List<DocDO> selectByStatusAfterId(@Param("status") String status,
+                                      @Param("lastId") Long lastId,
+                                      @Param("limit") Integer limit);
+
+    /**
+     * 更新片段数
+     * @param fileId 文件ID
+     * @param segmentCount 片段数
+     * @return 影响行数
+     */
+    int updateSegmentCount(@Param("fileId") String fileId, @Param("segmentCount") Integer segmentCount);
+
+    /**
+     * 回填内容哈希（直传文件在解析时才计算）
+     * @param fileId 文件ID
+     * @param contentHash 内容SHA-256
+     * @return 影响行数
+     */
+    int updateContentHash(@Param("fileId") String fileId, @Param("contentHash") String contentHash);
+
+    /**
+     * 切换对象路径（直传文件计算出哈希后迁移到内容寻址路径），仅当当前路径与预期一致且文档未删除时更新
+     * @param fileId 文件ID
+     * @param expectedUrl 当前对象路径
+     * @param fileUrl 新对象路径
+     * @return 影响行数
+     */
+    int updateFileUrl(@Param("fileId") String fileId, @Param("expectedUrl") String expectedUrl,
+                      @Param("fileUrl") String fileUrl);
+
+    /**
+     * 标记为已删除（墓碑），检索立即排除，数据由后台清理
+     * @param fileId 文件ID
+     * @return 影响行数，已是墓碑时为0
+     */
+    int markDeleted(@Param("fileId") String fileId);
+
+    /**
+     * 查询用户在某角色下待清理的文档（含角色公共语料）
+     * @param userId 用户ID
+     * @param roleId 角色ID
+     * @return 文件ID列表
+     */
+    List<String> selectTombstonedFileIds(@Param("userId") Long userId, @Param("roleId") Long roleId);
+
+    /**
+     * 查询待清理的墓碑文档，按上次尝试时间排序，尝试次数用尽的除外
+     * @param maxAttempts 最大尝试次数
+     * @param limit 最大条数
+     * @return 文档列表
+     */
+    List<DocDO> selectPurgeable(@Param("maxAttempts") Integer maxAttempts, @Param("limit") Integer limit);
+
+    /**
+     * 按用户/角色范围分批查询文档（含各种状态），用于账号或角色清理
+     * @param userId 用户ID，为null不限
+     * @param roleId 角色ID，为null不限
+     * @param limit 最大条数
+     * @return 文档列表
+     */
+    List<DocDO> selectByScope(@Param("userId") Long userId, @Param("roleId") Long roleId, @Param("limit") Integer limit);
+
+    /**
+     * 按主键批量删除
+     * @param ids 文档ID列表
+     * @return 影响行数
+     */
+    int deleteByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 记录一次清理失败
+     * @param fileId 文件ID
+     * @param errorMsg 失败原因
+     * @return 影响行数
+     */
+    int updatePurgeFailure(@Param("fileId") String fileId, @Param("errorMsg") String errorMsg);
+
+    /**
+     * 清理完成后删除墓碑记录
+     * @param fileId 文件ID
+     * @return 影响行数
+     */
+    int deleteTombstone(@Param("fileId") String fileId);
+
+    /**
+     * 把租约已过期的处理中文档重置为待处理（进程崩溃后恢复）
+     * @param leaseSeconds 超过多少秒未续约视为中断
+     * @return 影响行数
+     */
+    int resetStaleProcessing(@Param("leaseSeconds") Integer leaseSeconds);
+
+    /**
+     * 续约本实例正在处理的文档
+     * @param fileIds 文件ID列表
+     * @return 影响行数
+     */
+    int renewProcessing(@Param("fileIds") Collection<String> fileIds);
 }
@@ -0,0 +1,34 @@
+package com.tripdog.mapper;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 待删除文档对象Mapper接口
+ */
+@Mapper
+public interface DocObjectDeleteMapper {
+
+    /**
+     * 登记待删除对象，已登记时忽略
+     * @param objectKey 对象路径
+     * @return 影响行数
+     */
+    int insert(@Param("objectKey") String objectKey);
+
+    /**
+     * 按登记顺序查询一批待删除对象
+     * @param limit 数量上限
+     * @return 对象路径列表
+     */
+    List<String> selectPending(@Param("limit") int limit);
+
+    /**
+     * 删除登记记录
+     * @param objectKey 对象路径
+     * @return 影响行数
+     */
+    int deleteByObjectKey(@Param("objectKey") String objectKey);
+}
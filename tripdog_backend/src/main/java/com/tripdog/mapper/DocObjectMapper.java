@@ -0,0 +1,41 @@
+package com.tripdog.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import com.tripdog.model.entity.DocObjectDO;
+
+/**
+ * 文档对象引用计数Mapper接口
+ */
+@Mapper
+public interface DocObjectMapper {
+
+    /**
+     * 增加一次引用，对象未登记时插入引用数为1的记录
+     * @param docObject 对象信息
+     * @return 影响行数：新插入为1，已存在时为2
+     */
+    int insertOrIncrement(DocObjectDO docObject);
+
+    /**
+     * 减少一次引用
+     * @param contentHash 内容SHA-256
+     * @return 影响行数
+     */
+    int decrement(@Param("contentHash") String contentHash);
+
+    /**
+     * 查询并锁定对象记录，释放引用与新增引用在同一行上串行
+     * @param contentHash 内容SHA-256
+     * @return 对象信息，不存在返回null
+     */
+    DocObjectDO selectForUpdate(@Param("contentHash") String contentHash);
+
+    /**
+     * 删除已无引用的对象记录
+     * @param contentHash 内容SHA-256
+     * @return 影响行数
+     */
+    int deleteUnreferenced(@Param("contentHash") String contentHash);
+}
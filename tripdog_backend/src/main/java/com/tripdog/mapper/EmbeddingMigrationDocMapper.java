@@ -0,0 +1,76 @@
+package com.tripdog.mapper;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import com.tripdog.model.entity.EmbeddingMigrationDocDO;
+
+/**
+ * 向量迁移待重做文档Mapper接口
+ */
+@Mapper
+public interface EmbeddingMigrationDocMapper {
+
+    /**
+     * 登记待重做文档，已登记时清零重做次数（文档有了新的失败写入，重新给予重做机会）
+     * @param migrationId 迁移任务ID
+     * @param fileId 文档fileId
+     * @param error 失败原因
+     * @return 影响行数
+     */
+    int upsert(@Param("migrationId") String migrationId,
+               @Param("fileId") String fileId,
+               @Param("error") String error);
+
+    /**
+     * 查询重做次数未达上限的文档
+     * @param migrationId 迁移任务ID
+     * @param maxAttempts 重做次数上限
+     * @param limit 数量上限
+     * @return 待重做文档列表
+     */
+    List<EmbeddingMigrationDocDO> selectRetryable(@Param("migrationId") String migrationId,
+                                                  @Param("maxAttempts") int maxAttempts,
+                                                  @Param("limit") int limit);
+
+    /**
+     * 认领一次重做：重做次数仍为查询时的值才加一，多个实例只有一个认领成功
+     * @param id 记录ID
+     * @param attempts 查询时的重做次数
+     * @return 影响行数，1表示认领成功
+     */
+    int claim(@Param("id") Long id, @Param("attempts") int attempts);
+
+    /**
+     * 记录重做失败原因
+     * @param id 记录ID
+     * @param error 失败原因
+     * @return 影响行数
+     */
+    int updateError(@Param("id") Long id, @Param("error") String error);
+
+    /**
+     * 重做成功后删除记录；认领后又被重新登记（重做次数已清零）的保留
+     * @param id 记录ID
+     * @param attempts 认领后的重做次数
+     * @return 影响行数
+     */
+    int deleteDone(@Param("id") Long id, @Param("attempts") int attempts);
+
+    /**
+     * 统计超过重做次数被跳过的文档数
+     * @param migrationId 迁移任务ID
+     * @param maxAttempts 重做次数上限
+     * @return 文档数
+     */
+    long countFailed(@Param("migrationId") String migrationId, @Param("maxAttempts") int maxAttempts);
+
+    /**
+     * 删除迁移任务的全部记录
+     * @param migrationId 迁移任务ID
+     * @return 影响行数
+     */
+    int deleteByMigrationId(@Param("migrationId") String migrationId);
+}
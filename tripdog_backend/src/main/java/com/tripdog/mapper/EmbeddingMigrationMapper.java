@@ -0,0 +1,41 @@
+package com.tripdog.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import com.tripdog.model.dto.EmbeddingMigration;
+
+/**
+ * 向量迁移任务Mapper接口
+ */
+@Mapper
+public interface EmbeddingMigrationMapper {
+
+    /**
+     * 查询最近一次开始的迁移任务
+     * @return 迁移任务，没有时返回null
+     */
+    EmbeddingMigration selectLatest();
+
+    /**
+     * 保存迁移任务，已存在时更新阶段与检查点
+     * @param migration 迁移任务
+     * @return 影响行数
+     */
+    int upsert(EmbeddingMigration migration);
+
+    /**
+     * 只更新跳过的文档数，不覆盖其他实例可能已修改的阶段
+     * @param migrationId 任务ID
+     * @param failedDocs 跳过的文档数
+     * @return 影响行数
+     */
+    int updateFailedDocs(@Param("migrationId") String migrationId, @Param("failedDocs") long failedDocs);
+
+    /**
+     * 删除迁移任务
+     * @param migrationId 任务ID
+     * @return 影响行数
+     */
+    int deleteById(@Param("migrationId") String migrationId);
+}
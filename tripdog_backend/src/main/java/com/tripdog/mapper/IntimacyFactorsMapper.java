@@ -47,4 +47,10 @@ public interface IntimacyFactorsMapper {
      * 根据会话ID删除所有亲密度因素记录
      */
     int deleteByConversationId(@Param("conversationId") Long conversationId);
+
+    /**
+     * 分批删除多个会话的亲密度因素记录，每次最多limit条，返回0表示已删完
+     */
+    int deleteBatchByConversationIds(@Param("conversationIds") List<String> conversationIds,
+                                     @Param("limit") Integer limit);
 }
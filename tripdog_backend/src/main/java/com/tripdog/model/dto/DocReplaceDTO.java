@@ -0,0 +1,22 @@
+package com.tripdog.model.dto;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import lombok.Data;
+
+/**
+ * 文档替换请求DTO
+ */
+@Data
+public class DocReplaceDTO {
+
+    /**
+     * 被替换文档的文件ID
+     */
+    private String fileId;
+
+    /**
+     * 新版本文件
+     */
+    private MultipartFile file;
+}
@@ -0,0 +1,17 @@
+package com.tripdog.model.dto;
+
+import lombok.Data;
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * 文档解析状态查询DTO
+ */
+@Data
+public class DocStatusDTO {
+
+    /**
+     * 文件ID
+     */
+    @NotBlank(message = "文件ID不能为空")
+    private String fileId;
+}
@@ -0,0 +1,90 @@
+package com.tripdog.model.dto;
+
+import lombok.Data;
+
+/**
+ * 向量迁移任务，阶段与回填检查点保存在 t_embedding_migration 中，所有实例据此决定是否双写与检索哪张表
+ */
+@Data
+public class EmbeddingMigration {
+
+    /**
+     * 任务ID
+     */
+    private String migrationId;
+
+    /**
+     * 原向量表
+     */
+    private String sourceTable;
+
+    /**
+     * 影子表
+     */
+    private String targetTable;
+
+    /**
+     * 新向量模型提供方：remote（DashScope）/ local（进程内ONNX模型）
+     */
+    private String provider;
+
+    /**
+     * 新向量模型
+     */
+    private String modelName;
+
+    /**
+     * 新模型维度
+     */
+    private Integer dimension;
+
+    /**
+     * 阶段：BACKFILL/READY/CUTOVER/DONE/FAILED
+     */
+    private String phase;
+
+    /**
+     * 回填检查点：已处理的最大文档ID
+     */
+    private long lastDocId;
+
+    /**
+     * 启动时待回填的文档数（估计值，回填期间新增的文档由双写覆盖）
+     */
+    private long totalDocs;
+
+    /**
+     * 已回填的文档数
+     */
+    private long docs;
+
+    /**
+     * 已写入影子表的片段数
+     */
+    private long segments;
+
+    /**
+     * 超过重做次数被跳过的文档数，明细见 t_embedding_migration_doc
+     */
+    private long failedDocs;
+
+    /**
+     * 失败原因：连续多篇文档失败（通常是模型或向量库不可用）时回填停止，继续任务时从检查点重试
+     */
+    private String error;
+
+    /**
+     * 开始时间戳（毫秒）
+     */
+    private Long startedAt;
+
+    /**
+     * 最近一次检查点时间戳（毫秒）
+     */
+    private Long updatedAt;
+
+    /**
+     * 检索切换时间戳（毫秒）
+     */
+    private Long cutoverAt;
+}
@@ -16,4 +16,7 @@ public class FileUploadDTO {
     private String objectKey;
     private String filePath;
     private String fileName; // 文件名
+    private String contentHash; // 内容SHA-256
+    private long bytesRead;     // 实际读取的字节数
+    private byte[] content;     // 小文件的内存副本，超过上限为null
 }
@@ -0,0 +1,32 @@
+package com.tripdog.model.dto;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import lombok.Data;
+
+/**
+ * 分片上传DTO
+ */
+@Data
+public class MultipartPartDTO {
+
+    /**
+     * 上传ID
+     */
+    private String uploadId;
+
+    /**
+     * 分片序号，从1开始
+     */
+    private Integer partNumber;
+
+    /**
+     * 客户端计算的分片SHA-256（十六进制），必填，用于校验传输完整性
+     */
+    private String sha256;
+
+    /**
+     * 分片内容
+     */
+    private MultipartFile file;
+}
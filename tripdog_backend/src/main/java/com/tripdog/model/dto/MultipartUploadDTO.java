@@ -0,0 +1,17 @@
+package com.tripdog.model.dto;
+
+import lombok.Data;
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * 分片上传状态查询、完成与取消DTO
+ */
+@Data
+public class MultipartUploadDTO {
+
+    /**
+     * 上传ID
+     */
+    @NotBlank(message = "上传ID不能为空")
+    private String uploadId;
+}
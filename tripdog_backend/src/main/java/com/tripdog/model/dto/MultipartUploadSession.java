@@ -0,0 +1,55 @@
+package com.tripdog.model.dto;
+
+import lombok.Data;
+
+/**
+ * 分片上传会话，保存在Redis中
+ */
+@Data
+public class MultipartUploadSession {
+
+    /**
+     * 上传ID
+     */
+    private String uploadId;
+
+    /**
+     * 完成后登记的文件ID
+     */
+    private String fileId;
+
+    /**
+     * 申请人
+     */
+    private Long userId;
+
+    /**
+     * 角色ID
+     */
+    private Long roleId;
+
+    /**
+     * 合并后的对象路径
+     */
+    private String objectKey;
+
+    /**
+     * 原始文件名
+     */
+    private String fileName;
+
+    /**
+     * 文件大小，字节
+     */
+    private Long fileSize;
+
+    /**
+     * 分片大小，字节（最后一片可以更小）
+     */
+    private Long partSize;
+
+    /**
+     * 分片数
+     */
+    private Integer partCount;
+}
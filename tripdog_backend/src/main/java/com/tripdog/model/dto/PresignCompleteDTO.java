@@ -0,0 +1,17 @@
+package com.tripdog.model.dto;
+
+import lombok.Data;
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * 直传完成回调DTO
+ */
+@Data
+public class PresignCompleteDTO {
+
+    /**
+     * 申请直传时返回的文件ID
+     */
+    @NotBlank(message = "文件ID不能为空")
+    private String fileId;
+}
@@ -0,0 +1,32 @@
+package com.tripdog.model.dto;
+
+import lombok.Data;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+/**
+ * 直传上传申请DTO
+ */
+@Data
+public class PresignUploadDTO {
+
+    /**
+     * 角色ID
+     */
+    @NotNull(message = "角色ID不能为空")
+    private Long roleId;
+
+    /**
+     * 原始文件名（需包含扩展名）
+     */
+    @NotBlank(message = "文件名不能为空")
+    private String fileName;
+
+    /**
+     * 文件大小，字节
+     */
+    @NotNull(message = "文件大小不能为空")
+    @Positive(message = "文件大小必须大于0")
+    private Long fileSize;
+}
@@ -0,0 +1,40 @@
+package com.tripdog.model.dto;
+
+import lombok.Data;
+
+/**
+ * 待完成的直传上传，申请时写入Redis，完成回调时校验并登记文档
+ */
+@Data
+public class PresignedUploadIntent {
+
+    /**
+     * 文件ID
+     */
+    private String fileId;
+
+    /**
+     * 申请人
+     */
+    private Long userId;
+
+    /**
+     * 角色ID
+     */
+    private Long roleId;
+
+    /**
+     * 对象路径
+     */
+    private String objectKey;
+
+    /**
+     * 原始文件名
+     */
+    private String fileName;
+
+    /**
+     * 申请时声明的文件大小，字节
+     */
+    private Long fileSize;
+}
@@ -0,0 +1,20 @@
+package com.tripdog.model.dto;
+
+import lombok.Data;
+
+/**
+ * 账号/角色清理请求DTO，userId与roleId至少指定一个
+ */
+@Data
+public class PurgeDTO {
+
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 角色ID
+     */
+    private Long roleId;
+}
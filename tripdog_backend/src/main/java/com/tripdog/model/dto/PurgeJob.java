@@ -0,0 +1,75 @@
+package com.tripdog.model.dto;
+
+import lombok.Data;
+
+/**
+ * 账号/角色清理任务，进度检查点保存在Redis中
+ */
+@Data
+public class PurgeJob {
+
+    /**
+     * 任务ID
+     */
+    private String jobId;
+
+    /**
+     * 用户ID，为null表示不限用户
+     */
+    private Long userId;
+
+    /**
+     * 角色ID，为null表示不限角色
+     */
+    private Long roleId;
+
+    /**
+     * 状态：RUNNING/DONE/FAILED
+     */
+    private String status;
+
+    /**
+     * 当前阶段：VECTORS/DOCS/CONVERSATIONS/OBJECTS/DONE
+     */
+    private String stage;
+
+    /**
+     * 已删除的向量数
+     */
+    private long vectors;
+
+    /**
+     * 已删除的文档数
+     */
+    private long docs;
+
+    /**
+     * 已删除的会话数
+     */
+    private long conversations;
+
+    /**
+     * 已删除的聊天记录、亲密度记录与会话摘要数
+     */
+    private long messages;
+
+    /**
+     * 已删除的MinIO对象数（引用归零的文档对象与用户目录下的其余对象）
+     */
+    private long objects;
+
+    /**
+     * 失败原因
+     */
+    private String error;
+
+    /**
+     * 开始时间戳（毫秒）
+     */
+    private Long startedAt;
+
+    /**
+     * 最近一次检查点时间戳（毫秒）
+     */
+    private Long updatedAt;
+}
@@ -0,0 +1,17 @@
+package com.tripdog.model.dto;
+
+import lombok.Data;
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * 清理任务查询/恢复DTO
+ */
+@Data
+public class PurgeJobDTO {
+
+    /**
+     * 任务ID
+     */
+    @NotBlank(message = "任务ID不能为空")
+    private String jobId;
+}
@@ -44,6 +44,41 @@ public class DocDO {
      */
     private Double fileSize;
 
+    /**
+     * 文件内容SHA-256
+     */
+    private String contentHash;
+
+    /**
+     * 解析状态：PENDING/PROCESSING/READY/FAILED
+     */
+    private String status;
+
+    /**
+     * 处理进度：0-100
+     */
+    private Integer progress;
+
+    /**
+     * 向量片段数
+     */
+    private Integer segmentCount;
+
+    /**
+     * 已重试次数
+     */
+    private Integer retryCount;
+
+    /**
+     * 各阶段耗时
+     */
+    private String stageTimings;
+
+    /**
+     * 失败原因
+     */
+    private String errorMsg;
+
     /**
      * 创建时间
      */
@@ -0,0 +1,41 @@
+package com.tripdog.model.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 文档对象引用计数实体类（按内容寻址存储的MinIO对象）
+ */
+@Data
+public class DocObjectDO {
+
+    /**
+     * 内容SHA-256
+     */
+    private String contentHash;
+
+    /**
+     * MinIO对象路径：cas/{contentHash}
+     */
+    private String objectKey;
+
+    /**
+     * 文件大小，单位字节
+     */
+    private Long fileSize;
+
+    /**
+     * 引用该对象的文档数
+     */
+    private Integer refCount;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
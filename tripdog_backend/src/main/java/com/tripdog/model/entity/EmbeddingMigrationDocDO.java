@@ -0,0 +1,46 @@
+package com.tripdog.model.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 向量迁移待重做文档实体类
+ */
+@Data
+public class EmbeddingMigrationDocDO {
+
+    /**
+     * 记录ID
+     */
+    private Long id;
+
+    /**
+     * 迁移任务ID
+     */
+    private String migrationId;
+
+    /**
+     * 文档fileId
+     */
+    private String fileId;
+
+    /**
+     * 已重做次数，达到上限后跳过
+     */
+    private Integer attempts;
+
+    /**
+     * 最近一次失败原因
+     */
+    private String error;
+
+    /**
+     * 登记时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
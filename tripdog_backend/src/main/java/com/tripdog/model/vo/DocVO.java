@@ -50,6 +50,36 @@ public class DocVO {
      */
     private String fileSizeFormatted;
 
+    /**
+     * 文件内容SHA-256
+     */
+    private String contentHash;
+
+    /**
+     * 解析状态：PENDING/PROCESSING/READY/FAILED
+     */
+    private String status;
+
+    /**
+     * 处理进度：0-100
+     */
+    private Integer progress;
+
+    /**
+     * 向量片段数
+     */
+    private Integer segmentCount;
+
+    /**
+     * 各阶段耗时
+     */
+    private String stageTimings;
+
+    /**
+     * 失败原因
+     */
+    private String errorMsg;
+
     /**
      * 创建时间
      */
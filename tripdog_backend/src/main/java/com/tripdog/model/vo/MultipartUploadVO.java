@@ -0,0 +1,46 @@
+package com.tripdog.model.vo;
+
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * 分片上传状态
+ */
+@Data
+public class MultipartUploadVO {
+
+    /**
+     * 上传ID
+     */
+    private String uploadId;
+
+    /**
+     * 完成后的文件ID
+     */
+    private String fileId;
+
+    /**
+     * 分片大小，字节（最后一片可以更小）
+     */
+    private Long partSize;
+
+    /**
+     * 分片数
+     */
+    private Integer partCount;
+
+    /**
+     * 已接收的分片，断点续传时只需上传缺失的分片
+     */
+    private List<PartVO> receivedParts;
+
+    /**
+     * 已接收分片
+     * @param partNumber 分片序号
+     * @param size 分片大小
+     * @param sha256 分片SHA-256
+     */
+    public record PartVO(int partNumber, long size, String sha256) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.tripdog.model.vo;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 预签名URL
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresignedUrlVO {
+
+    /**
+     * 文件ID
+     */
+    private String fileId;
+
+    /**
+     * HTTP方法：POST上传 / GET下载
+     */
+    private String method;
+
+    /**
+     * 预签名URL，客户端直接访问MinIO
+     */
+    private String url;
+
+    /**
+     * POST上传的表单字段（含签名策略），客户端原样提交，文件放在最后的 file 字段；GET下载为null
+     */
+    private Map<String, String> formData;
+
+    /**
+     * 有效期，秒
+     */
+    private Integer expireSeconds;
+}
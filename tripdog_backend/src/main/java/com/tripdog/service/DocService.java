@@ -33,12 +33,21 @@ public interface DocService {
     List<DocVO> getDocsByUserId(Long userId);
 
     /**
-     * 根据文件ID查询文档
+     * 根据文件ID查询文档（已删除待清理的除外）
      * @param fileId 文件ID
      * @return 文档信息
      */
     DocVO getDocByFileId(String fileId);
 
+    /**
+     * 查询同一用户、同一角色下内容相同的文档（失败的除外）
+     * @param userId 用户ID
+     * @param roleId 角色ID
+     * @param contentHash 文件内容SHA-256
+     * @return 文档信息，不存在返回null
+     */
+    DocVO getDocByContentHash(Long userId, Long roleId, String contentHash);
+
     /**
      * 根据文档ID查询文档
      * @param id 文档ID
@@ -47,9 +56,9 @@ public interface DocService {
     DocVO getDocById(Long id);
 
     /**
-     * 删除文档
+     * 删除文档：只标记墓碑，检索立即排除，向量与文件由后台清理
      * @param fileId 文件ID
-     * @return 是否成功
+     * @return 是否成功，已删除时返回false
      */
     boolean deleteDoc(String fileId);
 }
@@ -0,0 +1,287 @@
+package com.tripdog.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.embedding.PgVectorChunkDao;
+import com.tripdog.common.RedisService;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.config.PurgeConfig;
+import com.tripdog.mapper.ChatHistoryMapper;
+import com.tripdog.mapper.ConversationMapper;
+import com.tripdog.mapper.ConversationSummaryMapper;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.mapper.IntimacyFactorsMapper;
+import com.tripdog.model.dto.PurgeJob;
+import com.tripdog.model.entity.DocDO;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/21 10:30
+ * @description: 账号/角色数据清理流水线。
+ * 依次清理 pgvector 向量、t_doc 与文档文件引用、会话及其聊天记录、亲密度记录与摘要、用户目录下的其余MinIO对象，
+ * 每一步都按有界批次删除并在批次之间停顿，单条语句只锁定有限行，不会拖慢在线检索与聊天。
+ * 每批完成后把阶段与计数写入Redis检查点，任务中断后可从当前阶段继续（已删除的数据不会再被查到）。
+ * 向量删完后立即递增语料版本，检索结果缓存与进程内索引不再返回已删除片段，即使后续阶段耗时很长或失败；全部完成后再递增一次。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AccountPurgeService implements DisposableBean {
+    private static final String JOB_KEY_PREFIX = "purge:job:";
+    private static final String RUNNING = "RUNNING";
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+    private static final List<String> STAGES = List.of("VECTORS", "DOCS", "CONVERSATIONS", "OBJECTS", DONE);
+
+    private final PgVectorChunkDao chunkDao;
+    private final DocMapper docMapper;
+    private final ConversationMapper conversationMapper;
+    private final ChatHistoryMapper chatHistoryMapper;
+    private final IntimacyFactorsMapper intimacyFactorsMapper;
+    private final ConversationSummaryMapper conversationSummaryMapper;
+    private final DocObjectService docObjectService;
+    private final CorpusVersionService corpusVersionService;
+    private final RedisService redisService;
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+    private final PurgeConfig config;
+
+    /**
+     * 清理任务串行执行，避免多个大清理同时占用数据库
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("account-purge-"));
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 创建并投递清理任务
+     * @param userId 用户ID，为null表示清理角色在所有用户下的数据
+     * @param roleId 角色ID，为null表示清理用户在所有角色下的数据
+     */
+    public PurgeJob start(Long userId, Long roleId) {
+        if (userId == null && roleId == null) {
+            throw new IllegalArgumentException("userId与roleId至少指定一个");
+        }
+        PurgeJob job = new PurgeJob();
+        job.setJobId(UUID.randomUUID().toString());
+        job.setUserId(userId);
+        job.setRoleId(roleId);
+        job.setStage(STAGES.get(0));
+        job.setStartedAt(System.currentTimeMillis());
+        submit(job);
+        log.info("账号清理任务已创建: jobId={}, userId={}, roleId={}", job.getJobId(), userId, roleId);
+        return job;
+    }
+
+    /**
+     * 从检查点继续未完成的任务
+     * @return 任务不存在返回null
+     */
+    public PurgeJob resume(String jobId) {
+        PurgeJob job = get(jobId);
+        if (job == null || DONE.equals(job.getStatus()) || running.contains(jobId)) {
+            return job;
+        }
+        job.setError(null);
+        submit(job);
+        return job;
+    }
+
+    public PurgeJob get(String jobId) {
+        return redisService.getObject(JOB_KEY_PREFIX + jobId, PurgeJob.class);
+    }
+
+    private void submit(PurgeJob job) {
+        job.setStatus(RUNNING);
+        checkpoint(job);
+        running.add(job.getJobId());
+        executor.execute(() -> {
+            try {
+                run(job);
+            } finally {
+                running.remove(job.getJobId());
+            }
+        });
+    }
+
+    private void run(PurgeJob job) {
+        try {
+            for (int i = STAGES.indexOf(job.getStage()); i < STAGES.size() - 1; i++) {
+                switch (STAGES.get(i)) {
+                    case "VECTORS" -> {
+                        purgeVectors(job);
+                        bumpVersion(job);
+                    }
+                    case "DOCS" -> purgeDocs(job);
+                    case "CONVERSATIONS" -> purgeConversations(job);
+                    case "OBJECTS" -> purgeObjects(job);
+                    default -> throw new IllegalStateException("未知阶段: " + STAGES.get(i));
+                }
+                job.setStage(STAGES.get(i + 1));
+                checkpoint(job);
+            }
+            bumpVersion(job);
+            job.setStatus(DONE);
+            checkpoint(job);
+            log.info("账号清理完成: {}", job);
+        } catch (Exception e) {
+            log.error("账号清理失败，可从检查点继续: jobId={}, stage={}", job.getJobId(), job.getStage(), e);
+            job.setStatus(FAILED);
+            job.setError(e.getMessage());
+            checkpoint(job);
+        }
+    }
+
+    private void purgeVectors(PurgeJob job) throws InterruptedException {
+        int removed;
+        while ((removed = chunkDao.removeBatch(job.getUserId(), job.getRoleId(), config.getVectorBatchSize())) > 0) {
+            job.setVectors(job.getVectors() + removed);
+            pause(job);
+        }
+    }
+
+    /**
+     * 删除记录并释放文件引用，同一批在一个事务中完成；其他用户仍在引用的内容寻址对象保留。
+     * 记录删除后即不会被再次查到
+     */
+    private void purgeDocs(PurgeJob job) throws Exception {
+        List<DocDO> docs;
+        while (!(docs = docMapper.selectByScope(job.getUserId(), job.getRoleId(), config.getRowBatchSize())).isEmpty()) {
+            DocObjectService.DeleteResult deleted = docObjectService.deleteDocs(docs);
+            job.setDocs(job.getDocs() + deleted.docs());
+            job.setObjects(job.getObjects() + deleted.objects());
+            pause(job);
+        }
+        // 文档记录删除前仍在入库的文档可能又写入了向量，再扫一遍
+        purgeVectors(job);
+    }
+
+    /**
+     * 先分批删聊天记录、亲密度记录与会话摘要，再删会话本身；最后清理没有conversation_id的会话
+     */
+    private void purgeConversations(PurgeJob job) throws InterruptedException {
+        int limit = config.getRowBatchSize();
+        List<String> conversationIds;
+        while (!(conversationIds = conversationMapper.selectConversationIdsByScope(
+                job.getUserId(), job.getRoleId(), limit)).isEmpty()) {
+            int removed;
+            while ((removed = chatHistoryMapper.deleteBatchByConversationIds(conversationIds, limit)) > 0) {
+                job.setMessages(job.getMessages() + removed);
+                pause(job);
+            }
+            while ((removed = intimacyFactorsMapper.deleteBatchByConversationIds(conversationIds, limit)) > 0) {
+                job.setMessages(job.getMessages() + removed);
+                pause(job);
+            }
+            while ((removed = conversationSummaryMapper.deleteBatchByConversationIds(conversationIds, limit)) > 0) {
+                job.setMessages(job.getMessages() + removed);
+                pause(job);
+            }
+            job.setConversations(job.getConversations()
+                + conversationMapper.deleteByScope(job.getUserId(), job.getRoleId(), conversationIds, limit));
+            pause(job);
+        }
+        int removed;
+        while ((removed = conversationMapper.deleteByScope(job.getUserId(), job.getRoleId(), null, limit)) > 0) {
+            job.setConversations(job.getConversations() + removed);
+            pause(job);
+        }
+    }
+
+    /**
+     * 清理用户目录下剩余的对象（未登记的直传、替换残留等）；按角色清理时对象已随文档释放。
+     * 内容寻址对象位于 cas/ 下，不在用户目录中，只随引用释放删除
+     */
+    private void purgeObjects(PurgeJob job) throws Exception {
+        if (job.getUserId() == null || job.getRoleId() != null) {
+            return;
+        }
+        List<DeleteObject> batch = new ArrayList<>();
+        for (Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .prefix(job.getUserId() + "/")
+                .recursive(true)
+                .build())) {
+            batch.add(new DeleteObject(result.get().objectName()));
+            if (batch.size() >= config.getRowBatchSize()) {
+                removeObjects(batch);
+                job.setObjects(job.getObjects() + batch.size());
+                batch = new ArrayList<>();
+                pause(job);
+            }
+        }
+        removeObjects(batch);
+        job.setObjects(job.getObjects() + batch.size());
+    }
+
+    private void removeObjects(List<DeleteObject> objects) {
+        if (objects.isEmpty()) {
+            return;
+        }
+        // removeObjects是惰性的，必须遍历结果才会真正执行删除
+        for (Result<DeleteError> result : minioClient.removeObjects(RemoveObjectsArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .objects(objects)
+                .build())) {
+            try {
+                DeleteError error = result.get();
+                throw new IllegalStateException("删除对象失败: " + error.objectName() + " " + error.message());
+            } catch (IllegalStateException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("删除对象失败", e);
+            }
+        }
+    }
+
+    private void bumpVersion(PurgeJob job) {
+        if (job.getUserId() != null && job.getRoleId() != null) {
+            corpusVersionService.bump(job.getUserId(), job.getRoleId());
+        } else if (job.getUserId() != null) {
+            corpusVersionService.bumpUser(job.getUserId());
+        } else {
+            corpusVersionService.bumpRole(job.getRoleId());
+        }
+    }
+
+    /**
+     * 写入检查点并在批次之间停顿
+     */
+    private void pause(PurgeJob job) throws InterruptedException {
+        checkpoint(job);
+        if (config.getBatchPauseMs() > 0) {
+            Thread.sleep(config.getBatchPauseMs());
+        }
+    }
+
+    private void checkpoint(PurgeJob job) {
+        job.setUpdatedAt(System.currentTimeMillis());
+        redisService.setObject(JOB_KEY_PREFIX + job.getJobId(), job, config.getJobTtlDays(), TimeUnit.DAYS);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
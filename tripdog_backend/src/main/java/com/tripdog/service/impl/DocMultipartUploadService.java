@@ -0,0 +1,290 @@
+package com.tripdog.service.impl;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.tripdog.common.RedisService;
+import com.tripdog.common.utils.FileUploadUtils;
+import com.tripdog.common.utils.TeeDigestInputStream;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.model.dto.MultipartUploadSession;
+import com.tripdog.model.vo.MultipartUploadVO;
+import com.tripdog.model.vo.MultipartUploadVO.PartVO;
+import io.minio.ComposeObjectArgs;
+import io.minio.ComposeSource;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/20 15:20
+ * @description: 可续传的分片上传。
+ * 初始化后客户端可并行上传各分片，每个分片单独写入 multipart/{uploadId}/ 下的临时对象并校验SHA-256，
+ * 已接收分片记录在Redis中，断线后查询状态只补传缺失分片；全部到齐后由MinIO服务端合并（composeObject），
+ * 合并不经过应用节点。完成前先以 SET NX 抢占会话，并发的完成请求与之后到达的分片都会被拒绝。
+ * 会话随Redis过期，超时未完成的临时分片由定时任务清理。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocMultipartUploadService {
+    private static final String SESSION_KEY_PREFIX = "doc:multipart:";
+    private static final String PART_PREFIX = "multipart/";
+    /**
+     * S3合并要求除最后一片外每片不小于5MB
+     */
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PARTS = 10000;
+
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+    private final RedisService redisService;
+
+    public MultipartUploadVO initiate(Long userId, Long roleId, String fileName, long fileSize) {
+        long partSize = Math.max(MIN_PART_SIZE, minioConfig.getMultipartPartSize());
+        // 分片数超出上限时放大分片
+        partSize = Math.max(partSize, (fileSize + MAX_PARTS - 1) / MAX_PARTS);
+
+        MultipartUploadSession session = new MultipartUploadSession();
+        session.setUploadId(UUID.randomUUID().toString());
+        session.setFileId(UUID.randomUUID().toString());
+        session.setUserId(userId);
+        session.setRoleId(roleId);
+        session.setObjectKey(FileUploadUtils.newObjectKey(userId, "/doc", fileName));
+        session.setFileName(fileName);
+        session.setFileSize(fileSize);
+        session.setPartSize(partSize);
+        session.setPartCount((int) ((fileSize + partSize - 1) / partSize));
+        redisService.setObject(sessionKey(session.getUploadId()), session,
+            minioConfig.getMultipartExpireHours(), TimeUnit.HOURS);
+        log.info("分片上传初始化: uploadId={}, userId={}, size={}, parts={}",
+            session.getUploadId(), userId, fileSize, session.getPartCount());
+        return toVO(session, List.of());
+    }
+
+    /**
+     * 查询会话，过期或已完成返回null
+     */
+    public MultipartUploadSession getSession(String uploadId) {
+        return redisService.getObject(sessionKey(uploadId), MultipartUploadSession.class);
+    }
+
+    /**
+     * 接收一个分片：写入临时对象的同时计算SHA-256，与客户端声明不一致则丢弃
+     * @param sha256 客户端计算的分片SHA-256，必填
+     */
+    public PartVO uploadPart(MultipartUploadSession session, int partNumber, String sha256, MultipartFile file) throws Exception {
+        if (partNumber < 1 || partNumber > session.getPartCount()) {
+            throw new IllegalArgumentException("分片序号超出范围: " + partNumber);
+        }
+        if (sha256 == null || !sha256.matches("[0-9a-fA-F]{64}")) {
+            throw new IllegalArgumentException("缺少分片SHA-256或格式错误: " + partNumber);
+        }
+        if (Boolean.TRUE.equals(redisService.hasKey(claimKey(session.getUploadId())))) {
+            throw new IllegalArgumentException("上传正在合并，不再接收分片");
+        }
+        long expected = expectedPartSize(session, partNumber);
+        if (file.getSize() != expected) {
+            throw new IllegalArgumentException("分片大小不正确，应为" + expected + "字节");
+        }
+
+        String partKey = partKey(session.getUploadId(), partNumber);
+        TeeDigestInputStream in = new TeeDigestInputStream(file.getInputStream(), 0);
+        try (in) {
+            minioClient.putObject(PutObjectArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .object(partKey)
+                .stream(in, expected, -1)
+                .build());
+        }
+        String actual = in.sha256Hex();
+        if (!sha256.equalsIgnoreCase(actual)) {
+            FileUploadUtils.deleteFromMinio(partKey, minioClient, minioConfig.getBucketName());
+            throw new IllegalArgumentException("分片校验失败: " + partNumber);
+        }
+
+        // 分片记录与会话同时过期
+        Long ttl = redisService.getExpire(sessionKey(session.getUploadId()), TimeUnit.SECONDS);
+        long seconds = ttl != null && ttl > 0 ? ttl : TimeUnit.HOURS.toSeconds(minioConfig.getMultipartExpireHours());
+        redisService.setString(partRecordKey(session.getUploadId(), partNumber), expected + ":" + actual,
+            seconds, TimeUnit.SECONDS);
+        return new PartVO(partNumber, expected, actual);
+    }
+
+    /**
+     * 查询上传状态与已接收分片
+     */
+    public MultipartUploadVO status(MultipartUploadSession session) {
+        return toVO(session, receivedParts(session));
+    }
+
+    /**
+     * 抢占会话的完成操作，同一会话只有一个请求能进入合并，失败时调用 releaseClaim 允许重试
+     * @return 是否抢占成功，Redis不可用时返回false
+     */
+    public boolean claim(MultipartUploadSession session) {
+        return Boolean.TRUE.equals(redisService.setIfAbsent(claimKey(session.getUploadId()), "1",
+            minioConfig.getMultipartExpireHours(), TimeUnit.HOURS));
+    }
+
+    public void releaseClaim(MultipartUploadSession session) {
+        redisService.delete(claimKey(session.getUploadId()));
+    }
+
+    /**
+     * 全部分片到齐后在MinIO服务端合并为最终对象并清理临时分片
+     * @throws IllegalStateException 仍有分片未上传
+     */
+    public void complete(MultipartUploadSession session) throws Exception {
+        List<PartVO> parts = receivedParts(session);
+        if (parts.size() != session.getPartCount()) {
+            throw new IllegalStateException("分片未全部上传: " + parts.size() + "/" + session.getPartCount());
+        }
+        List<ComposeSource> sources = IntStream.rangeClosed(1, session.getPartCount())
+            .mapToObj(n -> ComposeSource.builder()
+                .bucket(minioConfig.getBucketName())
+                .object(partKey(session.getUploadId(), n))
+                .build())
+            .toList();
+        long start = System.currentTimeMillis();
+        minioClient.composeObject(ComposeObjectArgs.builder()
+            .bucket(minioConfig.getBucketName())
+            .object(session.getObjectKey())
+            .sources(sources)
+            .build());
+        log.info("分片合并完成: uploadId={}, parts={}, 耗时={}ms",
+            session.getUploadId(), sources.size(), System.currentTimeMillis() - start);
+        discard(session);
+    }
+
+    /**
+     * 取消上传，删除临时分片与会话
+     */
+    public void abort(MultipartUploadSession session) {
+        discard(session);
+        log.info("分片上传已取消: uploadId={}", session.getUploadId());
+    }
+
+    /**
+     * 清理超时未完成的临时分片：会话已过期且分片最后写入早于有效期
+     */
+    @Scheduled(fixedDelayString = "${minio.multipart-cleanup-interval-ms:3600000}", initialDelay = 600_000)
+    public void cleanupAbandoned() {
+        ZonedDateTime deadline = ZonedDateTime.now().minusHours(minioConfig.getMultipartExpireHours());
+        List<DeleteObject> expired = new ArrayList<>();
+        try {
+            for (Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
+                    .bucket(minioConfig.getBucketName())
+                    .prefix(PART_PREFIX)
+                    .recursive(true)
+                    .build())) {
+                Item item = result.get();
+                String uploadId = item.objectName().substring(PART_PREFIX.length()).split("/")[0];
+                if (item.lastModified().isBefore(deadline) && getSession(uploadId) == null) {
+                    expired.add(new DeleteObject(item.objectName()));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("扫描临时分片失败", e);
+        }
+        if (!expired.isEmpty()) {
+            removeObjects(expired);
+            log.info("已清理超时分片: {}", expired.size());
+        }
+    }
+
+    private void discard(MultipartUploadSession session) {
+        List<DeleteObject> objects = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int n = 1; n <= session.getPartCount(); n++) {
+            objects.add(new DeleteObject(partKey(session.getUploadId(), n)));
+            keys.add(partRecordKey(session.getUploadId(), n));
+        }
+        removeObjects(objects);
+        keys.forEach(redisService::delete);
+        redisService.delete(sessionKey(session.getUploadId()));
+    }
+
+    private void removeObjects(List<DeleteObject> objects) {
+        // removeObjects是惰性的，必须遍历结果才会真正执行删除
+        for (Result<DeleteError> result : minioClient.removeObjects(RemoveObjectsArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .objects(objects)
+                .build())) {
+            try {
+                DeleteError error = result.get();
+                log.warn("删除临时分片失败: {} {}", error.objectName(), error.message());
+            } catch (Exception e) {
+                log.warn("删除临时分片失败", e);
+            }
+        }
+    }
+
+    private List<PartVO> receivedParts(MultipartUploadSession session) {
+        List<String> keys = IntStream.rangeClosed(1, session.getPartCount())
+            .mapToObj(n -> partRecordKey(session.getUploadId(), n))
+            .toList();
+        List<String> values = redisService.multiGetString(keys);
+        List<PartVO> parts = new ArrayList<>();
+        if (values == null) {
+            return parts;
+        }
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            if (value != null) {
+                String[] fields = value.split(":", 2);
+                parts.add(new PartVO(i + 1, Long.parseLong(fields[0]), fields[1]));
+            }
+        }
+        return parts;
+    }
+
+    private MultipartUploadVO toVO(MultipartUploadSession session, List<PartVO> parts) {
+        MultipartUploadVO vo = new MultipartUploadVO();
+        vo.setUploadId(session.getUploadId());
+        vo.setFileId(session.getFileId());
+        vo.setPartSize(session.getPartSize());
+        vo.setPartCount(session.getPartCount());
+        vo.setReceivedParts(parts);
+        return vo;
+    }
+
+    private static long expectedPartSize(MultipartUploadSession session, int partNumber) {
+        return partNumber < session.getPartCount()
+            ? session.getPartSize()
+            : session.getFileSize() - session.getPartSize() * (session.getPartCount() - 1);
+    }
+
+    private static String sessionKey(String uploadId) {
+        return SESSION_KEY_PREFIX + uploadId;
+    }
+
+    private static String claimKey(String uploadId) {
+        return SESSION_KEY_PREFIX + uploadId + ":completing";
+    }
+
+    private static String partRecordKey(String uploadId, int partNumber) {
+        return SESSION_KEY_PREFIX + uploadId + ":part:" + partNumber;
+    }
+
+    private static String partKey(String uploadId, int partNumber) {
+        return PART_PREFIX + uploadId + "/" + String.format("%05d", partNumber);
+    }
+}
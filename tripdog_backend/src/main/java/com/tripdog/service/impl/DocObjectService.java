@@ -0,0 +1,309 @@
+package com.tripdog.service.impl;
+
+import java.util.List;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tripdog.ai.ingest.ExtractedTextStore;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.mapper.DocObjectDeleteMapper;
+import com.tripdog.mapper.DocObjectMapper;
+import com.tripdog.model.entity.DocDO;
+import com.tripdog.model.entity.DocObjectDO;
+import io.minio.CopyObjectArgs;
+import io.minio.CopySource;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.errors.ErrorResponseException;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/21 16:20
+ * @description: 文档对象的内容寻址存储。
+ * 上传先写入临时路径，得到SHA-256后登记到 cas/{sha256}：内容已存在时只增加引用并删除临时对象，
+ * 否则在MinIO服务端复制一份；t_doc.file_url 引用内容寻址路径，同一内容只保存一份原文件与提取文本。
+ * 释放引用与新增引用都锁定 t_doc_object 记录，引用数归零时才删除对象，并发上传相同内容不会读到已删除的对象。
+ * MinIO删除不在引用计数事务中执行：引用归零时在同一事务中登记到 t_doc_object_delete，提交后再删除对象，
+ * 事务回滚时对象保留；删除时重新锁定引用记录，期间被重新登记的内容不删除；删除失败的登记由定时任务重试。
+ * 引入本机制之前的对象（非 cas/ 路径）仍按一文档一对象处理，释放即删除。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocObjectService {
+    private static final String CAS_PREFIX = "cas/";
+
+    private static final int PURGE_BATCH_SIZE = 500;
+
+    private final DocObjectMapper docObjectMapper;
+    private final DocObjectDeleteMapper docObjectDeleteMapper;
+    private final DocMapper docMapper;
+    private final ExtractedTextStore extractedTextStore;
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+    private final TransactionTemplate transactionTemplate;
+
+    public static boolean isContentAddressed(String objectKey) {
+        return objectKey != null && objectKey.startsWith(CAS_PREFIX);
+    }
+
+    /**
+     * 把已上传的临时对象登记为内容寻址对象并增加一次引用
+     * @param tempKey 临时对象路径，登记后删除
+     * @param contentHash 内容SHA-256
+     * @param fileSize 文件大小
+     * @return 内容寻址路径
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public String adopt(String tempKey, String contentHash, long fileSize) throws Exception {
+        String objectKey = CAS_PREFIX + contentHash;
+        DocObjectDO docObject = new DocObjectDO();
+        docObject.setContentHash(contentHash);
+        docObject.setObjectKey(objectKey);
+        docObject.setFileSize(fileSize);
+        // 新登记（影响行数为1）或对象意外丢失时从临时对象复制；行锁保证复制期间不会被并发释放删除
+        boolean inserted = docObjectMapper.insertOrIncrement(docObject) == 1;
+        if (inserted || !exists(objectKey)) {
+            minioClient.copyObject(CopyObjectArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .object(objectKey)
+                .source(CopySource.builder().bucket(minioConfig.getBucketName()).object(tempKey).build())
+                .build());
+        }
+        afterCommit(() -> removeQuietly(tempKey));
+        log.info("登记内容寻址对象: objectKey={}, 复用={}", objectKey, !inserted);
+        return objectKey;
+    }
+
+    /**
+     * 直传/分片上传的文档在解析时才得到哈希，此时把文档迁移到内容寻址路径
+     * @return 是否已迁移；文档已删除或已是内容寻址路径时返回false
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public boolean adopt(DocDO doc) throws Exception {
+        if (doc.getContentHash() == null || isContentAddressed(doc.getFileUrl())) {
+            return false;
+        }
+        String tempKey = doc.getFileUrl();
+        String objectKey = CAS_PREFIX + doc.getContentHash();
+        // 先锁定文档记录；文档已删除时保留原路径，由墓碑清理按旧方式删除
+        if (docMapper.updateFileUrl(doc.getFileId(), tempKey, objectKey) == 0) {
+            return false;
+        }
+        adopt(tempKey, doc.getContentHash(), doc.getFileSize() == null ? 0 : doc.getFileSize().longValue());
+        doc.setFileUrl(objectKey);
+        return true;
+    }
+
+    /**
+     * 释放一次引用，引用数归零时登记删除，事务提交后删除对象与提取文本
+     * @return 对象是否已登记删除
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public boolean release(String objectKey) throws Exception {
+        if (objectKey == null) {
+            return false;
+        }
+        if (!isContentAddressed(objectKey)) {
+            scheduleRemoval(objectKey);
+            return true;
+        }
+        String contentHash = objectKey.substring(CAS_PREFIX.length());
+        docObjectMapper.decrement(contentHash);
+        DocObjectDO docObject = docObjectMapper.selectForUpdate(contentHash);
+        if (docObject == null || docObject.getRefCount() > 0) {
+            return false;
+        }
+        docObjectMapper.deleteUnreferenced(contentHash);
+        scheduleRemoval(objectKey);
+        return true;
+    }
+
+    /**
+     * 删除墓碑记录并释放其对象；墓碑已被删除时不重复释放
+     * @return 是否删除了墓碑
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public boolean deleteTombstone(DocDO doc) throws Exception {
+        if (docMapper.deleteTombstone(doc.getFileId()) == 0) {
+            return false;
+        }
+        release(doc.getFileUrl());
+        return true;
+    }
+
+    /**
+     * 批量删除结果
+     * @param docs 实际删除的文档记录数
+     * @param objects 引用归零而删除的对象数，仍被其他文档引用的对象不计入
+     */
+    public record DeleteResult(int docs, int objects) {
+    }
+
+    /**
+     * 删除文档记录并释放对象，用于账号/角色清理；已被其他任务删除的记录不重复释放
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public DeleteResult deleteDocs(List<DocDO> docs) throws Exception {
+        int deleted = 0;
+        int objects = 0;
+        for (DocDO doc : docs) {
+            if (docMapper.deleteByIds(List.of(doc.getId())) == 0) {
+                continue;
+            }
+            deleted++;
+            if (release(doc.getFileUrl())) {
+                objects++;
+            }
+        }
+        return new DeleteResult(deleted, objects);
+    }
+
+    /**
+     * 替换完成时切换到新版本并释放旧版本对象
+     * @return 是否切换成功，替换期间文档被删除时返回false
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public boolean replaceVersion(DocDO next, String previousKey) throws Exception {
+        if (docMapper.updateVersion(next) == 0) {
+            return false;
+        }
+        if (!previousKey.equals(next.getFileUrl())) {
+            release(previousKey);
+        }
+        return true;
+    }
+
+    /**
+     * 释放引用，失败只记录日志（用于失败回滚路径）
+     */
+    public void releaseQuietly(String objectKey) {
+        try {
+            // 同类调用不经过事务代理，显式开启事务，减引用与判断归零在同一事务中
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    release(objectKey);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("释放对象失败: {}", objectKey, e);
+        }
+    }
+
+    /**
+     * 重试提交后未删除成功的对象
+     */
+    @Scheduled(fixedDelayString = "${rag.ingest.object-purge-interval-ms:300000}", initialDelay = 300_000)
+    public void purgePending() {
+        List<String> pending = docObjectDeleteMapper.selectPending(PURGE_BATCH_SIZE);
+        int purged = 0;
+        for (String objectKey : pending) {
+            if (purgeQuietly(objectKey)) {
+                purged++;
+            }
+        }
+        if (!pending.isEmpty()) {
+            log.info("待删除对象重试: {}/{}", purged, pending.size());
+        }
+    }
+
+    /**
+     * 删除登记的对象：锁定引用记录（不存在时为间隙锁，与并发登记串行），
+     * 内容已被重新登记时只撤销登记；删除成功后撤销登记，失败时保留登记等待重试
+     * @return 登记是否已处理
+     */
+    boolean purgeQuietly(String objectKey) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!isContentAddressed(objectKey)
+                        || docObjectMapper.selectForUpdate(objectKey.substring(CAS_PREFIX.length())) == null) {
+                    remove(objectKey);
+                }
+                docObjectDeleteMapper.deleteByObjectKey(objectKey);
+            });
+            return true;
+        } catch (Exception e) {
+            log.warn("删除对象失败，等待重试: {}", objectKey, e);
+            return false;
+        }
+    }
+
+    /**
+     * 在当前事务中登记删除，提交后立即尝试删除；没有事务时直接删除
+     */
+    private void scheduleRemoval(String objectKey) {
+        docObjectDeleteMapper.insert(objectKey);
+        afterCommit(() -> purgeQuietly(objectKey));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * 删除对象与提取文本并确认对象已不存在
+     */
+    private void remove(String objectKey) {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .object(objectKey)
+                .build());
+            if (exists(objectKey)) {
+                throw new IllegalStateException("原文件未删除: " + objectKey);
+            }
+            extractedTextStore.delete(objectKey);
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("删除对象失败: " + objectKey, e);
+        }
+    }
+
+    private void removeQuietly(String objectKey) {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .object(objectKey)
+                .build());
+        } catch (Exception e) {
+            log.warn("删除临时对象失败: {}", objectKey, e);
+        }
+    }
+
+    private boolean exists(String objectKey) throws Exception {
+        try {
+            minioClient.statObject(StatObjectArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .object(objectKey)
+                .build());
+            return true;
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.tripdog.service.impl;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.tripdog.common.RedisService;
+import com.tripdog.common.utils.FileUploadUtils;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.model.dto.PresignedUploadIntent;
+import com.tripdog.model.vo.DocVO;
+import com.tripdog.model.vo.PresignedUrlVO;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.PostPolicy;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.http.Method;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/20 10:30
+ * @description: 预签名直传。
+ * 后端只负责鉴权并签发短时有效的POST表单/GET地址，文件字节由客户端与MinIO直接传输，不再经过应用节点；
+ * 上传使用POST策略，对象路径与文件大小范围写入签名，MinIO拒绝超过申请大小的请求体。
+ * 上传申请以 doc:presign:{fileId} 暂存在Redis，客户端上传完成后回调登记文档并投递解析；
+ * 申请同时按过期时间记入 doc:presign:pending，过期仍未登记的已上传对象由定时任务删除。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocPresignService {
+    private static final String INTENT_KEY_PREFIX = "doc:presign:";
+    private static final String CLAIM_KEY_PREFIX = "doc:presign:completing:";
+    private static final String PENDING_KEY = "doc:presign:pending";
+    /**
+     * 申请记录比URL多保留的时间，覆盖上传结束到回调之间的间隔
+     */
+    private static final long INTENT_GRACE_SECONDS = 600;
+
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+    private final RedisService redisService;
+    private final DocMapper docMapper;
+    private MinioClient presignClient;
+    private String postUrl;
+
+    @PostConstruct
+    public void init() {
+        String endpoint = StringUtils.hasText(minioConfig.getPresignEndpoint())
+            ? minioConfig.getPresignEndpoint() : minioConfig.getEndpoint();
+        // 签名包含host与region，按对外地址单独构建客户端；固定region，签名时无需访问对外地址
+        presignClient = MinioClient.builder()
+            .endpoint(endpoint)
+            .credentials(minioConfig.getAccessKey(), minioConfig.getSecretKey())
+            .region(minioConfig.getRegion())
+            .build();
+        postUrl = StringUtils.trimTrailingCharacter(endpoint, '/') + "/" + minioConfig.getBucketName();
+    }
+
+    /**
+     * 登记上传申请并签发POST表单，签名限定对象路径与 1~fileSize 字节的请求体
+     */
+    public PresignedUrlVO createUpload(Long userId, Long roleId, String fileName, long fileSize) throws Exception {
+        String fileId = UUID.randomUUID().toString();
+        String objectKey = FileUploadUtils.newObjectKey(userId, "/doc", fileName);
+
+        PresignedUploadIntent intent = new PresignedUploadIntent();
+        intent.setFileId(fileId);
+        intent.setUserId(userId);
+        intent.setRoleId(roleId);
+        intent.setObjectKey(objectKey);
+        intent.setFileName(fileName);
+        intent.setFileSize(fileSize);
+        long intentSeconds = minioConfig.getPresignExpirySeconds() + INTENT_GRACE_SECONDS;
+        redisService.setObject(INTENT_KEY_PREFIX + fileId, intent, intentSeconds, TimeUnit.SECONDS);
+        redisService.zAdd(PENDING_KEY, pendingMember(intent), System.currentTimeMillis() + intentSeconds * 1000);
+
+        PostPolicy policy = new PostPolicy(minioConfig.getBucketName(),
+            ZonedDateTime.now().plusSeconds(minioConfig.getPresignExpirySeconds()));
+        policy.addEqualsCondition("key", objectKey);
+        policy.addContentLengthRangeCondition(1, fileSize);
+        Map<String, String> formData = new LinkedHashMap<>(presignClient.getPresignedPostFormData(policy));
+        formData.put("key", objectKey);
+        log.info("签发直传表单: userId={}, fileId={}, objectKey={}, size={}", userId, fileId, objectKey, fileSize);
+        return new PresignedUrlVO(fileId, Method.POST.name(), postUrl, formData, minioConfig.getPresignExpirySeconds());
+    }
+
+    /**
+     * 签发GET地址，响应头中的文件名与服务端下载一致
+     */
+    public PresignedUrlVO createDownload(DocVO docVO) throws Exception {
+        String disposition = ContentDisposition.formData()
+            .name("attachment")
+            .filename(URLEncoder.encode(docVO.getFileName(), StandardCharsets.UTF_8))
+            .build()
+            .toString();
+        String url = presignClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+            .method(Method.GET)
+            .bucket(minioConfig.getBucketName())
+            .object(docVO.getFileUrl())
+            .expiry(minioConfig.getPresignExpirySeconds(), TimeUnit.SECONDS)
+            .extraQueryParams(Map.of("response-content-disposition", disposition))
+            .build());
+        return new PresignedUrlVO(docVO.getFileId(), Method.GET.name(), url, null, minioConfig.getPresignExpirySeconds());
+    }
+
+    /**
+     * 查询上传申请，过期或已完成返回null
+     */
+    public PresignedUploadIntent getIntent(String fileId) {
+        return redisService.getObject(INTENT_KEY_PREFIX + fileId, PresignedUploadIntent.class);
+    }
+
+    /**
+     * 抢占完成回调：同一申请只有一个请求能进入登记，失败时调用 releaseClaim 允许重试
+     * @return 是否抢占成功，Redis不可用时返回false
+     */
+    public boolean claim(String fileId) {
+        return Boolean.TRUE.equals(redisService.setIfAbsent(CLAIM_KEY_PREFIX + fileId, "1",
+            minioConfig.getPresignExpirySeconds() + INTENT_GRACE_SECONDS, TimeUnit.SECONDS));
+    }
+
+    public void releaseClaim(String fileId) {
+        redisService.delete(CLAIM_KEY_PREFIX + fileId);
+    }
+
+    /**
+     * 申请已登记为文档或已丢弃，不再由定时任务清理
+     */
+    public void removeIntent(PresignedUploadIntent intent) {
+        redisService.delete(INTENT_KEY_PREFIX + intent.getFileId());
+        redisService.zRemove(PENDING_KEY, pendingMember(intent));
+    }
+
+    /**
+     * 删除过期仍未登记文档的直传对象。多实例下以 zRemove 成功与否决定由谁删除
+     */
+    @Scheduled(fixedDelayString = "${minio.presign-cleanup-interval-ms:600000}", initialDelay = 600_000)
+    public void cleanupExpired() {
+        Set<String> expired = redisService.zRangeByScore(PENDING_KEY, 0, System.currentTimeMillis());
+        if (expired == null || expired.isEmpty()) {
+            return;
+        }
+        int removed = 0;
+        for (String member : expired) {
+            Long claimed = redisService.zRemove(PENDING_KEY, member);
+            if (claimed == null || claimed == 0) {
+                continue;
+            }
+            String[] fields = member.split(":", 2);
+            try {
+                if (docMapper.selectByFileId(fields[0]) == null) {
+                    FileUploadUtils.deleteFromMinio(fields[1], minioClient, minioConfig.getBucketName());
+                    removed++;
+                }
+            } catch (Exception e) {
+                // 放回集合，下次重试
+                redisService.zAdd(PENDING_KEY, member, System.currentTimeMillis());
+                log.warn("清理过期直传对象失败: {}", member, e);
+            }
+        }
+        if (removed > 0) {
+            log.info("已清理过期直传对象: {}", removed);
+        }
+    }
+
+    /**
+     * 查询已上传对象，尚未上传返回null
+     */
+    public StatObjectResponse stat(String objectKey) throws Exception {
+        try {
+            return minioClient.statObject(StatObjectArgs.builder()
+                .bucket(minioConfig.getBucketName())
+                .object(objectKey)
+                .build());
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static String pendingMember(PresignedUploadIntent intent) {
+        return intent.getFileId() + ":" + intent.getObjectKey();
+    }
+}
@@ -11,6 +11,8 @@ import java.text.DecimalFormat;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static com.tripdog.common.Constants.DOC_DELETED;
+
 /**
  * 文档服务实现类
  */
@@ -44,18 +46,24 @@ public class DocServiceImpl implements DocService {
     @Override
     public DocVO getDocByFileId(String fileId) {
         DocDO doc = docMapper.selectByFileId(fileId);
+        return doc != null && !DOC_DELETED.equals(doc.getStatus()) ? convertToVO(doc) : null;
+    }
+
+    @Override
+    public DocVO getDocByContentHash(Long userId, Long roleId, String contentHash) {
+        DocDO doc = docMapper.selectByContentHash(userId, roleId, contentHash);
         return doc != null ? convertToVO(doc) : null;
     }
 
     @Override
     public DocVO getDocById(Long id) {
         DocDO doc = docMapper.selectById(id);
-        return doc != null ? convertToVO(doc) : null;
+        return doc != null && !DOC_DELETED.equals(doc.getStatus()) ? convertToVO(doc) : null;
     }
 
     @Override
     public boolean deleteDoc(String fileId) {
-        return docMapper.deleteByFileId(fileId) > 0;
+        return docMapper.markDeleted(fileId) > 0;
     }
 
     /**
@@ -71,6 +79,12 @@ public class DocServiceImpl implements DocService {
         vo.setFileName(doc.getFileName());
         vo.setFileSize(doc.getFileSize());
         vo.setFileSizeFormatted(formatFileSize(doc.getFileSize()));
+        vo.setContentHash(doc.getContentHash());
+        vo.setStatus(doc.getStatus());
+        vo.setProgress(doc.getProgress());
+        vo.setSegmentCount(doc.getSegmentCount());
+        vo.setStageTimings(doc.getStageTimings());
+        vo.setErrorMsg(doc.getErrorMsg());
         vo.setCreateTime(doc.getCreateTime());
         vo.setUpdateTime(doc.getUpdateTime());
         return vo;
@@ -0,0 +1,125 @@
+package com.tripdog.service.impl;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.ingest.DocIngestionService;
+import com.tripdog.ai.ingest.IngestConfig;
+import com.tripdog.common.utils.FileUploadUtils;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.model.dto.FileUploadDTO;
+import com.tripdog.model.entity.DocDO;
+import com.tripdog.model.vo.DocVO;
+import com.tripdog.service.DocService;
+import io.minio.MinioClient;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static com.tripdog.common.Constants.DOC_PENDING;
+import static com.tripdog.common.Constants.GLOBAL_USER_ID;
+
+/**
+ * @author: iohw
+ * @date: 2025/10/22 10:10
+ * @description: 角色公共语料。
+ * 公共文档以 userId=0 登记在 t_doc 中，只解析、向量化一次，该角色下所有用户检索时与各自的私有文档一起召回；
+ * 上传、解析、删除与清理复用普通文档的流程，变更时递增角色语料版本使该角色的检索缓存失效。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GlobalCorpusService {
+    private final DocService docService;
+    private final DocObjectService docObjectService;
+    private final DocIngestionService docIngestionService;
+    private final CorpusVersionService corpusVersionService;
+    private final FileUploadUtils fileUploadUtils;
+    private final MinioClient minioClient;
+    private final MinioConfig minioConfig;
+    private final IngestConfig ingestConfig;
+
+    /**
+     * 上传公共文档并投递后台解析，角色下已有相同内容时返回已有文档
+     */
+    public DocVO upload(Long roleId, MultipartFile file) throws Exception {
+        FileUploadDTO fileUploadDTO = fileUploadUtils.upload2Minio(
+            file,
+            GLOBAL_USER_ID,
+            minioClient,
+            minioConfig.getBucketName(),
+            "/corpus",
+            ingestConfig.getUploadPartSize(),
+            ingestConfig.getInlineParseMaxBytes()
+        );
+        String contentHash = fileUploadDTO.getContentHash();
+        DocVO existing = docService.getDocByContentHash(GLOBAL_USER_ID, roleId, contentHash);
+        if (existing != null) {
+            FileUploadUtils.deleteFromMinio(fileUploadDTO.getObjectKey(), minioClient, minioConfig.getBucketName());
+            log.info("公共语料重复上传，复用已有文档: roleId={}, fileId={}", roleId, existing.getFileId());
+            return existing;
+        }
+        String objectKey = docObjectService.adopt(fileUploadDTO.getObjectKey(), contentHash, file.getSize());
+
+        String fileId = UUID.randomUUID().toString();
+        DocDO docDO = new DocDO();
+        docDO.setFileId(fileId);
+        docDO.setUserId(GLOBAL_USER_ID);
+        docDO.setRoleId(roleId);
+        docDO.setFileUrl(objectKey);
+        docDO.setFileName(file.getOriginalFilename());
+        docDO.setFileSize((double) file.getSize());
+        docDO.setContentHash(contentHash);
+        docDO.setStatus(DOC_PENDING);
+        boolean saved;
+        try {
+            saved = docService.saveDoc(docDO);
+        } catch (DuplicateKeyException e) {
+            // 并发上传相同内容，唯一键拦截了后到的请求
+            docObjectService.releaseQuietly(objectKey);
+            existing = docService.getDocByContentHash(GLOBAL_USER_ID, roleId, contentHash);
+            if (existing != null) {
+                log.info("公共语料并发重复上传，复用已有文档: roleId={}, fileId={}", roleId, existing.getFileId());
+                return existing;
+            }
+            throw e;
+        }
+        if (!saved) {
+            docObjectService.releaseQuietly(objectKey);
+            throw new IllegalStateException("保存公共文档失败");
+        }
+        log.info("公共语料上传: roleId={}, fileId={}, size={}", roleId, fileId, file.getSize());
+        docIngestionService.submit(fileId, fileUploadDTO.getContent());
+        return docService.getDocByFileId(fileId);
+    }
+
+    public List<DocVO> list(Long roleId) {
+        return docService.getDocsByUserIdAndRoleId(GLOBAL_USER_ID, roleId);
+    }
+
+    /**
+     * 查询公共文档，不存在或不是公共文档返回null
+     */
+    public DocVO get(String fileId) {
+        DocVO docVO = docService.getDocByFileId(fileId);
+        return docVO != null && GLOBAL_USER_ID.equals(docVO.getUserId()) ? docVO : null;
+    }
+
+    /**
+     * 删除公共文档：标记墓碑并使该角色的检索缓存失效，向量与文件由后台清理
+     * @return 是否删除，不存在或不是公共文档返回false
+     */
+    public boolean delete(String fileId) {
+        DocVO docVO = get(fileId);
+        if (docVO == null || !docService.deleteDoc(fileId)) {
+            return false;
+        }
+        corpusVersionService.bump(GLOBAL_USER_ID, docVO.getRoleId());
+        log.info("公共语料删除: roleId={}, fileId={}", docVO.getRoleId(), fileId);
+        return true;
+    }
+}
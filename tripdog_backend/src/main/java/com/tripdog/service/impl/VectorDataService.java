@@ -1,5 +1,9 @@
 package com.tripdog.service.impl;
 
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.embedding.PgVectorChunkDao;
+import com.tripdog.ai.embedding.ShadowVectorStore;
+import com.tripdog.config.PurgeConfig;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.filter.Filter;
@@ -12,7 +16,7 @@ import java.util.List;
 
 /**
  * 向量数据管理服务
- * 提供向量数据的删除、查询等功能
+ * 提供向量数据的删除、查询等功能，向量迁移进行中时删除同步作用于影子表
  *
  * @author tripdog
  */
@@ -22,6 +26,10 @@ import java.util.List;
 public class VectorDataService {
 
     private final EmbeddingStore<TextSegment> embeddingStore;
+    private final CorpusVersionService corpusVersionService;
+    private final PgVectorChunkDao chunkDao;
+    private final PurgeConfig purgeConfig;
+    private final ShadowVectorStore shadowVectorStore;
 
     /**
      * 根据用户ID删除所有向量数据
@@ -30,9 +38,9 @@ public class VectorDataService {
      */
     public void deleteByUserId(Long userId) {
         try {
-            Filter userFilter = new IsEqualTo("userId", userId);
-            embeddingStore.removeAll(userFilter);
-            log.info("删除用户 {} 的向量数据", userId);
+            long removed = removeInBatches(userId, null);
+            corpusVersionService.bumpUser(userId);
+            log.info("删除用户 {} 的向量数据，共 {} 条", userId, removed);
         } catch (Exception e) {
             log.error("删除用户 {} 的向量数据失败", userId, e);
             throw new RuntimeException("删除用户向量数据失败", e);
@@ -46,9 +54,9 @@ public class VectorDataService {
      */
     public void deleteByRoleId(Long roleId) {
         try {
-            Filter roleFilter = new IsEqualTo("roleId", roleId);
-            embeddingStore.removeAll(roleFilter);
-            log.info("删除角色 {} 的向量数据", roleId);
+            long removed = removeInBatches(null, roleId);
+            corpusVersionService.bumpRole(roleId);
+            log.info("删除角色 {} 的向量数据，共 {} 条", roleId, removed);
         } catch (Exception e) {
             log.error("删除角色 {} 的向量数据失败", roleId, e);
             throw new RuntimeException("删除角色向量数据失败", e);
@@ -64,13 +72,9 @@ public class VectorDataService {
      */
     public void deleteByUserIdAndRoleId(Long userId, Long roleId) {
         try {
-            // 使用AND条件组合多个过滤器
-            Filter userFilter = new IsEqualTo("userId", userId);
-            Filter roleFilter = new IsEqualTo("roleId", roleId);
-            Filter combinedFilter = Filter.and(userFilter, roleFilter);
-
-            embeddingStore.removeAll(combinedFilter);
-            log.info("删除用户 {} 和角色 {} 的向量数据", userId, roleId);
+            long removed = removeInBatches(userId, roleId);
+            corpusVersionService.bump(userId, roleId);
+            log.info("删除用户 {} 和角色 {} 的向量数据，共 {} 条", userId, roleId, removed);
         } catch (Exception e) {
             log.error("删除用户 {} 和角色 {} 的向量数据失败", userId, roleId, e);
             throw new RuntimeException("删除用户和角色向量数据失败", e);
@@ -87,6 +91,7 @@ public class VectorDataService {
         try {
             Filter docFilter = new IsEqualTo("fileId", fileId);
             embeddingStore.removeAll(docFilter);
+            shadowVectorStore.removeFile(fileId);
             log.info("删除文档 {} 的向量数据", fileId);
         } catch (Exception e) {
             log.error("删除文档 {} 的向量数据失败", fileId, e);
@@ -104,6 +109,8 @@ public class VectorDataService {
         try {
             Filter customFilter = new IsEqualTo(metadataKey, metadataValue);
             embeddingStore.removeAll(customFilter);
+            shadowVectorStore.removeAll(customFilter);
+            corpusVersionService.bumpAll();
             log.info("删除元数据 {}={} 的向量数据", metadataKey, metadataValue);
         } catch (Exception e) {
             log.error("删除元数据 {}={} 的向量数据失败", metadataKey, metadataValue, e);
@@ -119,11 +126,16 @@ public class VectorDataService {
      */
     public int deleteByIds(List<String> embeddingIds) {
         try {
+            // 按批次一次删除多条，避免逐条往返
+            int batchSize = Math.max(1, purgeConfig.getVectorBatchSize());
             int deletedCount = 0;
-            for (String embeddingId : embeddingIds) {
-                embeddingStore.remove(embeddingId);
-                deletedCount++;
+            for (int from = 0; from < embeddingIds.size(); from += batchSize) {
+                List<String> batch = embeddingIds.subList(from, Math.min(from + batchSize, embeddingIds.size()));
+                embeddingStore.removeAll(batch);
+                shadowVectorStore.removeAll(batch);
+                deletedCount += batch.size();
             }
+            corpusVersionService.bumpAll();
             log.info("批量删除向量数据，共删除 {} 条记录", deletedCount);
             return deletedCount;
         } catch (Exception e) {
@@ -141,10 +153,34 @@ public class VectorDataService {
         try {
             // 删除所有数据，不使用任何过滤器
             embeddingStore.removeAll();
+            shadowVectorStore.removeAll();
+            corpusVersionService.bumpAll();
             log.warn("清空所有向量数据，共删除 {} 条记录");
         } catch (Exception e) {
             log.error("清空所有向量数据失败", e);
             throw new RuntimeException("清空向量数据失败", e);
         }
     }
+
+    /**
+     * 按有界ID批次删除范围内的全部向量，批次之间短暂停顿，避免一次大删除长时间锁表影响在线检索
+     * @return 删除的向量总数
+     */
+    public long removeInBatches(Long userId, Long roleId) {
+        long total = 0;
+        int removed;
+        do {
+            removed = chunkDao.removeBatch(userId, roleId, purgeConfig.getVectorBatchSize());
+            total += removed;
+            if (removed > 0 && purgeConfig.getBatchPauseMs() > 0) {
+                try {
+                    Thread.sleep(purgeConfig.getBatchPauseMs());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("向量删除被中断", e);
+                }
+            }
+        } while (removed > 0);
+        return total;
+    }
 }
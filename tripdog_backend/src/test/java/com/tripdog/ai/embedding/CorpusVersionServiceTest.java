@@ -0,0 +1,63 @@
+package com.tripdog.ai.embedding;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.tripdog.common.RedisService;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CorpusVersionServiceTest {
+    private RedisService redisService;
+    private LocalVectorCache localVectorCache;
+    private CorpusVersionService service;
+
+    @BeforeEach
+    void setUp() {
+        redisService = mock(RedisService.class);
+        localVectorCache = mock(LocalVectorCache.class);
+        service = new CorpusVersionService(redisService, localVectorCache);
+        when(redisService.multiGetString(anyList())).thenReturn(Arrays.asList("3", null, "1", null));
+    }
+
+    @Test
+    void versionCombinesCounters() {
+        assertThat(service.current(1L, 2L)).isEqualTo("3.0.1.0");
+    }
+
+    @Test
+    void failedBumpSkipsCacheUntilRetried() {
+        when(redisService.increment(anyString(), anyLong())).thenReturn(null);
+        service.bump(1L, 2L);
+
+        // 递增失败：仍失效本地索引，且该语料版本未知，其他语料不受影响
+        verify(localVectorCache).invalidate(1L, 2L);
+        assertThat(service.current(1L, 2L)).isNull();
+        verify(redisService, never()).multiGetString(List.of("rag:corpus:version:1:2",
+            "rag:corpus:version:user:1", "rag:corpus:version:role:2", "rag:corpus:version:global"));
+        assertThat(service.current(5L, 6L)).isEqualTo("3.0.1.0");
+
+        when(redisService.increment(anyString(), anyLong())).thenReturn(4L);
+        service.retryPending();
+        assertThat(service.current(1L, 2L)).isEqualTo("3.0.1.0");
+    }
+
+    @Test
+    void failedRoleBumpCoversEveryUserOfRole() {
+        when(redisService.increment(anyString(), anyLong())).thenReturn(null);
+        service.bumpRole(2L);
+
+        assertThat(service.current(1L, 2L)).isNull();
+        assertThat(service.current(7L, 2L)).isNull();
+        assertThat(service.current(1L, 3L)).isEqualTo("3.0.1.0");
+    }
+}
@@ -0,0 +1,179 @@
+package com.tripdog.ai.embedding;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.tripdog.ai.embedding.PgVectorChunkDao.StoredChunk;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LocalVectorCacheTest {
+    private static final Embedding QUERY = Embedding.from(new float[]{1f, 0f});
+
+    private PgVectorChunkDao chunkDao;
+    private LocalVectorCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        chunkDao = mock(PgVectorChunkDao.class);
+        LocalIndexConfig config = new LocalIndexConfig();
+        config.setEnabled(true);
+        cache = new LocalVectorCache(chunkDao, config);
+    }
+
+    /**
+     * 公共语料立即返回一条低分片段，私有语料按 ownAnswer 返回
+     */
+    private void stub(Answer<List<StoredChunk>> ownAnswer) {
+        when(chunkDao.scan(anyLong(), anyLong(), anyInt())).thenAnswer(inv -> userOf(inv) == 0L
+            ? List.of(chunk("shared", new float[]{0f, 1f}, "f-shared"))
+            : ownAnswer.answer(inv));
+    }
+
+    @Test
+    void concurrentMissesLoadOnce() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        stub(inv -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return corpus("a");
+        });
+
+        CompletableFuture<List<EmbeddingMatch<TextSegment>>> first = CompletableFuture.supplyAsync(this::search);
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<List<EmbeddingMatch<TextSegment>>> second = CompletableFuture.supplyAsync(this::search);
+        Thread.sleep(100);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).hasSize(2);
+        assertThat(second.get(5, TimeUnit.SECONDS)).hasSize(2);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidationDuringLoadIsNotLost() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        stub(inv -> {
+            if (loads.incrementAndGet() == 1) {
+                loading.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return corpus("stale");
+            }
+            return corpus("fresh");
+        });
+
+        CompletableFuture<List<EmbeddingMatch<TextSegment>>> first = CompletableFuture.supplyAsync(this::search);
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        cache.invalidate(1L, 1L);
+        release.countDown();
+
+        // 被失效的加载结果不返回、不缓存
+        assertThat(first.get(5, TimeUnit.SECONDS)).isNull();
+        List<EmbeddingMatch<TextSegment>> next = search();
+        assertThat(next).extracting(EmbeddingMatch::embeddingId).containsExactly("fresh", "shared");
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void versionChangeReloads() {
+        stub(inv -> corpus("id-" + loads.incrementAndGet()));
+
+        assertThat(cache.search(1L, 1L, "1.0.0.0", "0.0", Set.of(), QUERY, 1, 0.0))
+            .extracting(EmbeddingMatch::embeddingId).containsExactly("id-1");
+        assertThat(cache.search(1L, 1L, "1.0.0.0", "0.0", Set.of(), QUERY, 1, 0.0))
+            .extracting(EmbeddingMatch::embeddingId).containsExactly("id-1");
+        assertThat(cache.search(1L, 1L, "2.0.0.0", "0.0", Set.of(), QUERY, 1, 0.0))
+            .extracting(EmbeddingMatch::embeddingId).containsExactly("id-2");
+    }
+
+    @Test
+    void unknownVersionSkipsCache() {
+        assertThat(cache.search(1L, 1L, null, "0.0", Set.of(), QUERY, 5, 0.0)).isNull();
+        assertThat(cache.search(1L, 1L, "1.0.0.0", null, Set.of(), QUERY, 5, 0.0)).isNull();
+        assertThat(loads.get()).isZero();
+    }
+
+    @Test
+    void sharedCorpusIsLoadedOncePerRoleAndMerged() {
+        AtomicInteger sharedLoads = new AtomicInteger();
+        when(chunkDao.scan(anyLong(), anyLong(), anyInt())).thenAnswer(inv -> {
+            long user = userOf(inv);
+            if (user == 0L) {
+                sharedLoads.incrementAndGet();
+                return List.of(
+                    chunk("shared-hi", new float[]{1f, 0.1f}, "f-shared"),
+                    chunk("shared-deleted", new float[]{1f, 0f}, "f-deleted"));
+            }
+            return List.of(chunk("own-" + user, new float[]{1f, 0.5f}, "f-" + user));
+        });
+
+        List<EmbeddingMatch<TextSegment>> user1 = cache.search(1L, 1L, "1.0.0.0", "0.0", Set.of("f-deleted"),
+            QUERY, 5, 0.0);
+        List<EmbeddingMatch<TextSegment>> user2 = cache.search(2L, 1L, "1.0.0.0", "0.0", Set.of("f-deleted"),
+            QUERY, 5, 0.0);
+
+        // 按分数合并私有与公共片段，墓碑文档被排除
+        assertThat(user1).extracting(EmbeddingMatch::embeddingId).containsExactly("shared-hi", "own-1");
+        assertThat(user2).extracting(EmbeddingMatch::embeddingId).containsExactly("shared-hi", "own-2");
+        assertThat(sharedLoads.get()).isEqualTo(1);
+
+        // 公共语料版本变化时只重新加载公共索引
+        cache.search(1L, 1L, "1.0.0.0", "1.0", Set.of(), QUERY, 5, 0.0);
+        assertThat(sharedLoads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void tombstonedChunksDoNotCrowdOutLiveResults() {
+        // 一篇已删除文档的多个片段都比存活片段更相关
+        when(chunkDao.scan(anyLong(), anyLong(), anyInt())).thenAnswer(inv -> userOf(inv) == 0L
+            ? List.of()
+            : List.of(
+                chunk("deleted-1", new float[]{1f, 0f}, "f-deleted"),
+                chunk("deleted-2", new float[]{1f, 0.01f}, "f-deleted"),
+                chunk("deleted-3", new float[]{1f, 0.02f}, "f-deleted"),
+                chunk("live-1", new float[]{1f, 0.5f}, "f-live"),
+                chunk("live-2", new float[]{1f, 0.8f}, "f-live")));
+
+        assertThat(cache.search(1L, 1L, "1.0.0.0", "0.0", Set.of("f-deleted"), QUERY, 2, 0.0))
+            .extracting(EmbeddingMatch::embeddingId).containsExactly("live-1", "live-2");
+    }
+
+    private List<EmbeddingMatch<TextSegment>> search() {
+        return cache.search(1L, 1L, "1.0.0.0", "0.0", Set.of(), QUERY, 5, 0.0);
+    }
+
+    private static long userOf(InvocationOnMock inv) {
+        return inv.<Long>getArgument(0);
+    }
+
+    private static List<StoredChunk> corpus(String id) {
+        return List.of(chunk(id, new float[]{1f, 0f}, "f-" + id));
+    }
+
+    private static StoredChunk chunk(String id, float[] vector, String fileId) {
+        return new StoredChunk(id, Embedding.from(vector),
+            TextSegment.from("text " + id, Metadata.from(Map.of("fileId", fileId))));
+    }
+}
@@ -0,0 +1,80 @@
+package com.tripdog.ai.embedding;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tripdog.ai.embedding.PgVectorProperties.StorageMode;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import static com.tripdog.common.Constants.ROLE_ID;
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QuantizedPgVectorEmbeddingStoreTest {
+    private static final String EF_SEARCH = "SELECT set_config('hnsw.ef_search', ?, true)";
+
+    private JdbcTemplate jdbcTemplate;
+    private PgVectorJdbc pgVectorJdbc;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        pgVectorJdbc = mock(PgVectorJdbc.class);
+        when(pgVectorJdbc.jdbcTemplate()).thenReturn(jdbcTemplate);
+        when(pgVectorJdbc.transactionTemplate()).thenReturn(transactionTemplate);
+    }
+
+    @Test
+    void efSearchIsClampedToPgvectorLimit() {
+        store(2000).search(request(10));
+
+        verify(jdbcTemplate).query(eq(EF_SEARCH), any(ResultSetExtractor.class), eq("1000"));
+    }
+
+    @Test
+    void efSearchFollowsCandidatesUpToLimit() {
+        store(200).search(request(100));
+
+        verify(jdbcTemplate).query(eq(EF_SEARCH), any(ResultSetExtractor.class), eq("400"));
+    }
+
+    @Test
+    void candidatesBeyondEfSearchLimitUseExactScan() {
+        // 加载整个语料：5001 * 4 个候选超出 ef_search 上限
+        store(200).search(request(5001));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).query(sql.capture(), any(RowMapper.class), any(Object[].class));
+        assertThat(sql.getValue()).doesNotContain("WITH candidates").contains("ORDER BY cosine DESC");
+        verify(jdbcTemplate, never()).query(eq(EF_SEARCH), any(ResultSetExtractor.class), anyString());
+    }
+
+    private QuantizedPgVectorEmbeddingStore store(int efSearch) {
+        return new QuantizedPgVectorEmbeddingStore(pgVectorJdbc, "vectors", 2, StorageMode.HALFVEC, 4, efSearch);
+    }
+
+    private static EmbeddingSearchRequest request(int maxResults) {
+        return EmbeddingSearchRequest.builder()
+            .queryEmbedding(Embedding.from(new float[] {1f, 0f}))
+            .filter(metadataKey(ROLE_ID).isEqualTo(1L))
+            .maxResults(maxResults)
+            .minScore(0.0)
+            .build();
+    }
+}
@@ -0,0 +1,132 @@
+package com.tripdog.ai.embedding;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QueryEmbeddingBatcherTest {
+    private static final Embedding DIRECT = Embedding.from(new float[]{0f, 1f});
+
+    private EmbeddingModel model;
+    private EmbeddingBatchConfig config;
+    private QueryEmbeddingBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        model = mock(EmbeddingModel.class);
+        when(model.embed(any(TextSegment.class))).thenReturn(Response.from(DIRECT));
+        config = new EmbeddingBatchConfig();
+        config.setLingerMs(50);
+        config.setTimeoutMs(1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) {
+            batcher.destroy();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void concurrentQueriesShareOneCall() throws Exception {
+        when(model.embedAll(anyList())).thenAnswer(inv -> Response.from(((List<TextSegment>) inv.getArgument(0))
+            .stream().map(s -> Embedding.from(new float[]{s.text().length(), 0f})).toList()));
+        start();
+
+        CompletableFuture<Embedding> a = CompletableFuture.supplyAsync(() -> batcher.embed("a"));
+        CompletableFuture<Embedding> bb = CompletableFuture.supplyAsync(() -> batcher.embed("bb"));
+
+        assertThat(a.get(5, TimeUnit.SECONDS).vector()[0]).isEqualTo(1f);
+        assertThat(bb.get(5, TimeUnit.SECONDS).vector()[0]).isEqualTo(2f);
+        verify(model, times(1)).embedAll(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void queriesGetQueryPrefixOnPrefixedModel() {
+        EmbeddingModel onnx = mock(EmbeddingModel.class);
+        when(onnx.embedAll(anyList())).thenAnswer(inv -> Response.from(((List<TextSegment>) inv.getArgument(0))
+            .stream().map(s -> Embedding.from(new float[]{s.text().startsWith("query: ") ? 1f : 0f})).toList()));
+        model = new PrefixedEmbeddingModel(onnx, "query: ", "passage: ");
+        start();
+
+        assertThat(batcher.embed("q").vector()[0]).isEqualTo(1f);
+        assertThat(model.embed("片段").content().vector()[0]).isEqualTo(0f);
+    }
+
+    @Test
+    void slowBatchFallsBackToDirectCall() {
+        CountDownLatch release = new CountDownLatch(1);
+        when(model.embedAll(anyList())).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Response.from(List.of(Embedding.from(new float[]{1f, 0f})));
+        });
+        config.setTimeoutMs(100);
+        start();
+
+        assertThat(batcher.embed("q")).isSameAs(DIRECT);
+        release.countDown();
+    }
+
+    @Test
+    void busyBatchesLeaveRequestsInBoundedQueue() throws Exception {
+        CountDownLatch inFlight = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(model.embedAll(anyList())).thenAnswer(inv -> {
+            inFlight.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Response.from(List.of(Embedding.from(new float[]{1f, 0f})));
+        });
+        config.setMaxConcurrentBatches(1);
+        config.setMaxBatchSize(1);
+        config.setMaxQueueSize(1);
+        config.setTimeoutMs(5000);
+        start();
+
+        CompletableFuture<Embedding> a = CompletableFuture.supplyAsync(() -> batcher.embed("a"));
+        assertThat(inFlight.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Embedding> b = CompletableFuture.supplyAsync(() -> batcher.embed("b"));
+        Thread.sleep(100);
+
+        // 唯一的批次许可被占用，b 留在队列中，队列满后 c 立即单独调用而不是排进线程池等待
+        long start = System.currentTimeMillis();
+        assertThat(batcher.embed("c")).isSameAs(DIRECT);
+        assertThat(System.currentTimeMillis() - start).isLessThan(1000);
+
+        release.countDown();
+        assertThat(a.get(5, TimeUnit.SECONDS).vector()[0]).isEqualTo(1f);
+        assertThat(b.get(5, TimeUnit.SECONDS).vector()[0]).isEqualTo(1f);
+    }
+
+    @Test
+    void failedBatchFailsCallers() {
+        when(model.embedAll(anyList())).thenThrow(new IllegalArgumentException("boom"));
+        start();
+
+        assertThatThrownBy(() -> batcher.embed("q")).isInstanceOf(IllegalArgumentException.class).hasMessage("boom");
+    }
+
+    private void start() {
+        batcher = new QueryEmbeddingBatcher(model, config);
+        batcher.start();
+    }
+}
@@ -0,0 +1,126 @@
+package com.tripdog.ai.embedding;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tripdog.ai.ingest.IngestConfig;
+import com.tripdog.common.RedisService;
+import com.tripdog.mapper.EmbeddingMigrationDocMapper;
+import com.tripdog.mapper.EmbeddingMigrationMapper;
+import com.tripdog.model.dto.EmbeddingMigration;
+
+import static com.tripdog.ai.embedding.ShadowVectorStore.BACKFILL;
+import static com.tripdog.ai.embedding.ShadowVectorStore.CUTOVER;
+import static com.tripdog.ai.embedding.ShadowVectorStore.DONE;
+import static com.tripdog.ai.embedding.ShadowVectorStore.READY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShadowVectorStoreTest {
+    private EmbeddingMigrationMapper migrationMapper;
+    private EmbeddingMigrationDocMapper migrationDocMapper;
+    private ShadowVectorStore store;
+
+    @BeforeEach
+    void setUp() {
+        migrationMapper = mock(EmbeddingMigrationMapper.class);
+        migrationDocMapper = mock(EmbeddingMigrationDocMapper.class);
+        PgVectorProperties pgVectorProperties = new PgVectorProperties();
+        pgVectorProperties.setTable("vectors");
+        EmbeddingMigrationConfig config = new EmbeddingMigrationConfig();
+        // 每次调用都重新读取状态
+        config.setStateRefreshMs(-1);
+        store = new ShadowVectorStore(mock(PgVectorJdbc.class), pgVectorProperties, config, new IngestConfig(),
+            new LocalEmbeddingConfig(), migrationMapper, migrationDocMapper, mock(RedisService.class),
+            new ObjectMapper());
+    }
+
+    @Test
+    void dualWritesThroughCutoverAndRollback() {
+        when(migrationMapper.selectLatest()).thenReturn(
+            migration(BACKFILL), migration(BACKFILL),
+            migration(CUTOVER), migration(CUTOVER),
+            migration(READY), migration(READY),
+            migration(DONE), migration(DONE));
+
+        // 回填期间双写，检索原表
+        assertThat(store.isMirroring()).isTrue();
+        assertThat(store.isCutOver()).isFalse();
+        // 切换后检索影子表，原表仍双写
+        assertThat(store.isMirroring()).isTrue();
+        assertThat(store.isCutOver()).isTrue();
+        // 切回后检索原表，继续双写以便再次切换
+        assertThat(store.isMirroring()).isTrue();
+        assertThat(store.isCutOver()).isFalse();
+        // 完成后不再双写
+        assertThat(store.isMirroring()).isFalse();
+        assertThat(store.isCutOver()).isFalse();
+    }
+
+    @Test
+    void redeployedOnTargetTableStopsMirroring() {
+        EmbeddingMigration migration = migration(CUTOVER);
+        migration.setTargetTable("vectors");
+        when(migrationMapper.selectLatest()).thenReturn(migration);
+
+        assertThat(store.isMirroring()).isFalse();
+        assertThat(store.isCutOver()).isFalse();
+    }
+
+    @Test
+    void keepsLastKnownStateWhenReadFails() {
+        when(migrationMapper.selectLatest()).thenReturn(migration(CUTOVER)).thenThrow(new IllegalStateException("down"));
+
+        assertThat(store.isCutOver()).isTrue();
+        assertThat(store.isCutOver()).isTrue();
+        assertThat(store.isMirroring()).isTrue();
+    }
+
+    @Test
+    void unknownStateFailsWritesAndReadsSourceTable() {
+        when(migrationMapper.selectLatest()).thenThrow(new IllegalStateException("down"));
+
+        assertThat(store.isCutOver()).isFalse();
+        assertThatThrownBy(store::isMirroring).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> store.mirrorQuietly("f1", List.of(), List.of()))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void failedMirrorIsRecordedForRedo() {
+        when(migrationMapper.selectLatest()).thenReturn(migration(BACKFILL));
+        ShadowVectorStore spied = spy(store);
+        doThrow(new IllegalStateException("pgvector down")).when(spied).mirror(anyString(), anyList(), anyList());
+
+        spied.mirrorQuietly("f1", List.of(), List.of());
+
+        verify(migrationDocMapper).upsert("m1", "f1", "pgvector down");
+    }
+
+    @Test
+    void failedStateSaveIsNotSwallowed() {
+        doThrow(new IllegalStateException("down")).when(migrationMapper).upsert(any());
+
+        assertThatThrownBy(() -> store.save(migration(READY))).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static EmbeddingMigration migration(String phase) {
+        EmbeddingMigration migration = new EmbeddingMigration();
+        migration.setMigrationId("m1");
+        migration.setSourceTable("vectors");
+        migration.setTargetTable("vectors_v2");
+        migration.setPhase(phase);
+        return migration;
+    }
+}
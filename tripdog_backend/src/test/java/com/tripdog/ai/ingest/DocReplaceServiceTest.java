@@ -0,0 +1,214 @@
+package com.tripdog.ai.ingest;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.embedding.PgVectorChunkDao;
+import com.tripdog.ai.embedding.ShadowVectorStore;
+import com.tripdog.ai.ingest.TokenAwareDocumentSplitter.Chunk;
+import com.tripdog.ai.ingest.parser.DocumentParserRouter.ParserKind;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.model.dto.FileUploadDTO;
+import com.tripdog.model.entity.DocDO;
+import com.tripdog.service.impl.DocObjectService;
+import com.tripdog.service.impl.VectorDataService;
+import io.minio.MinioClient;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import static com.tripdog.common.Constants.DOC_PENDING;
+import static com.tripdog.common.Constants.DOC_PROCESSING;
+import static com.tripdog.common.Constants.DOC_READY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocReplaceServiceTest {
+    private static final String FILE_ID = "f1";
+    private static final String OLD_KEY = "cas/old";
+    private static final String NEW_KEY = "cas/new";
+
+    private DocMapper docMapper;
+    private DocumentParseService parseService;
+    private DocumentIngestionPipeline pipeline;
+    private PgVectorChunkDao chunkDao;
+    private ExtractedTextStore extractedTextStore;
+    private CorpusVersionService corpusVersionService;
+    private VectorDataService vectorDataService;
+    private DocObjectService docObjectService;
+    private ShadowVectorStore shadowVectorStore;
+    private DocReplaceService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        docMapper = mock(DocMapper.class);
+        parseService = mock(DocumentParseService.class);
+        pipeline = mock(DocumentIngestionPipeline.class);
+        chunkDao = mock(PgVectorChunkDao.class);
+        extractedTextStore = mock(ExtractedTextStore.class);
+        corpusVersionService = mock(CorpusVersionService.class);
+        vectorDataService = mock(VectorDataService.class);
+        docObjectService = mock(DocObjectService.class);
+        shadowVectorStore = mock(ShadowVectorStore.class);
+        DocIngestionService docIngestionService = mock(DocIngestionService.class);
+        // 同步执行替换任务
+        when(docIngestionService.execute(anyString(), any())).thenAnswer(inv -> {
+            inv.<Runnable>getArgument(1).run();
+            return true;
+        });
+
+        DocDO current = new DocDO();
+        current.setFileId(FILE_ID);
+        current.setUserId(1L);
+        current.setRoleId(2L);
+        current.setFileUrl(OLD_KEY);
+        current.setStatus(DOC_READY);
+        when(docMapper.selectByFileId(FILE_ID)).thenReturn(current);
+        when(docMapper.compareAndSetStatus(FILE_ID, DOC_READY, DOC_PROCESSING)).thenReturn(1);
+
+        when(parseService.parse(any(), anyString(), any()))
+            .thenReturn(new DocumentParseService.ParsedDocument(Document.from("text"), ParserKind.PLAIN));
+        when(pipeline.split(any(), any())).thenReturn(List.of(
+            new Chunk("new-1", "h1", TextSegment.from("a")), new Chunk("kept", "h2", TextSegment.from("b"))));
+        when(pipeline.embed(anyList(), anyString())).thenReturn(List.of(Embedding.from(new float[]{1f})));
+        when(chunkDao.chunkIds(FILE_ID)).thenReturn(Set.of("kept", "stale"));
+        when(docObjectService.replaceVersion(any(), eq(OLD_KEY))).thenReturn(true);
+
+        service = new DocReplaceService(docMapper, docIngestionService, parseService, pipeline, chunkDao,
+            extractedTextStore, corpusVersionService, vectorDataService, docObjectService, shadowVectorStore,
+            mock(MinioClient.class), mock(MinioConfig.class));
+    }
+
+    @Test
+    void replacesAndCommitsNewVersion() throws Exception {
+        submit();
+
+        verify(chunkDao).swap(eq(List.of("new-1")), anyList(), anyList(), eq(List.of("kept")), anyList(),
+            eq(List.of("stale")));
+        verify(docObjectService).replaceVersion(any(), eq(OLD_KEY));
+        verify(corpusVersionService).bump(1L, 2L);
+        verify(docObjectService, never()).releaseQuietly(anyString());
+        verify(docMapper, never()).updateIngestResult(any());
+    }
+
+    @Test
+    void parseFailureKeepsOldVersion() {
+        when(parseService.parse(any(), anyString(), any())).thenThrow(new IllegalStateException("parse"));
+
+        submit();
+
+        assertRolledBack(DOC_READY);
+        verify(chunkDao, never()).swap(anyList(), anyList(), anyList(), anyList(), anyList(), any());
+    }
+
+    @Test
+    void embedFailureKeepsOldVersion() {
+        when(pipeline.embed(anyList(), anyString())).thenThrow(new IllegalStateException("embed"));
+
+        submit();
+
+        assertRolledBack(DOC_READY);
+        verify(chunkDao, never()).swap(anyList(), anyList(), anyList(), anyList(), anyList(), any());
+    }
+
+    @Test
+    void swapFailureKeepsOldVersion() throws Exception {
+        doThrow(new IllegalStateException("swap"))
+            .when(chunkDao).swap(anyList(), anyList(), anyList(), anyList(), anyList(), any());
+
+        submit();
+
+        assertRolledBack(DOC_READY);
+        verify(vectorDataService, never()).deleteByDocumentId(anyString());
+        verify(docObjectService, never()).replaceVersion(any(), anyString());
+    }
+
+    @Test
+    void versionSwitchFailureAfterSwapReingestsOldVersion() throws Exception {
+        when(docObjectService.replaceVersion(any(), eq(OLD_KEY))).thenThrow(new IllegalStateException("mysql"));
+
+        submit();
+
+        // 向量已是新版本而记录仍指向旧版本：清除向量，旧版本重新入库
+        assertRolledBack(DOC_PENDING);
+        verify(vectorDataService).deleteByDocumentId(FILE_ID);
+        verify(corpusVersionService).bump(1L, 2L);
+    }
+
+    @Test
+    void shadowWriteHappensAfterCommitAndNeverReleasesNewVersion() throws Exception {
+        ShadowVectorStore.Prepared prepared = new ShadowVectorStore.Prepared("shadow", FILE_ID, List.of(), List.of(),
+            List.of());
+        when(shadowVectorStore.prepareQuietly(eq(FILE_ID), anyList(), anyList())).thenReturn(prepared);
+
+        submit();
+
+        InOrder order = inOrder(docObjectService, shadowVectorStore);
+        order.verify(docObjectService).replaceVersion(any(), eq(OLD_KEY));
+        order.verify(shadowVectorStore).writeQuietly(prepared);
+        assertCommitted();
+    }
+
+    @Test
+    void extractedTextFailureAfterCommitDoesNotReleaseNewVersion() throws Exception {
+        doThrow(new IllegalStateException("minio")).when(extractedTextStore).save(any(), any());
+
+        submit();
+
+        assertCommitted();
+    }
+
+    @Test
+    void deletedDuringReplaceRemovesVectors() throws Exception {
+        when(docObjectService.replaceVersion(any(), eq(OLD_KEY))).thenReturn(false);
+
+        submit();
+
+        verify(vectorDataService).deleteByDocumentId(FILE_ID);
+        verify(docObjectService).releaseQuietly(NEW_KEY);
+        verify(docMapper, never()).updateIngestResult(any());
+    }
+
+    private void submit() {
+        FileUploadDTO upload = FileUploadDTO.builder()
+            .objectKey(NEW_KEY)
+            .contentHash("hash")
+            .content("text".getBytes())
+            .build();
+        assertThat(service.submit(FILE_ID, upload, "a.txt", 4)).isTrue();
+    }
+
+    private void assertRolledBack(String status) {
+        verify(docObjectService).releaseQuietly(NEW_KEY);
+        ArgumentCaptor<DocDO> captor = ArgumentCaptor.forClass(DocDO.class);
+        verify(docMapper).updateIngestResult(captor.capture());
+        assertThat(captor.getValue().getFileUrl()).isEqualTo(OLD_KEY);
+        assertThat(captor.getValue().getStatus()).isEqualTo(status);
+        assertThat(captor.getValue().getErrorMsg()).startsWith("替换失败");
+    }
+
+    private void assertCommitted() throws Exception {
+        verify(docObjectService).replaceVersion(any(), eq(OLD_KEY));
+        verify(docObjectService, never()).releaseQuietly(anyString());
+        verify(docMapper, never()).updateIngestResult(any());
+        verify(vectorDataService, never()).deleteByDocumentId(anyString());
+        verify(corpusVersionService).bump(anyLong(), anyLong());
+    }
+}
@@ -0,0 +1,218 @@
+package com.tripdog.ai.ingest;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.embedding.EmbeddingMigrationConfig;
+import com.tripdog.ai.embedding.LocalEmbeddingConfig;
+import com.tripdog.ai.embedding.PgVectorJdbc;
+import com.tripdog.ai.embedding.PgVectorProperties;
+import com.tripdog.ai.embedding.ShadowVectorStore;
+import com.tripdog.ai.ingest.TokenAwareDocumentSplitter.Chunk;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.mapper.EmbeddingMigrationDocMapper;
+import com.tripdog.mapper.EmbeddingMigrationMapper;
+import com.tripdog.model.dto.EmbeddingMigration;
+import com.tripdog.model.entity.DocDO;
+import com.tripdog.model.entity.EmbeddingMigrationDocDO;
+import io.minio.MinioClient;
+
+import dev.langchain4j.data.segment.TextSegment;
+import static com.tripdog.ai.embedding.ShadowVectorStore.BACKFILL;
+import static com.tripdog.ai.embedding.ShadowVectorStore.CUTOVER;
+import static com.tripdog.ai.embedding.ShadowVectorStore.FAILED;
+import static com.tripdog.ai.embedding.ShadowVectorStore.READY;
+import static com.tripdog.common.Constants.DOC_READY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmbeddingMigrationServiceTest {
+    private ShadowVectorStore shadowVectorStore;
+    private EmbeddingMigrationConfig config;
+    private EmbeddingMigrationMapper migrationMapper;
+    private EmbeddingMigrationDocMapper migrationDocMapper;
+    private DocMapper docMapper;
+    private CorpusVersionService corpusVersionService;
+    private JdbcTemplate jdbcTemplate;
+    private EmbeddingMigrationService service;
+    private final List<DocDO> docs = List.of(doc(1L, "f1"), doc(2L, "f2"));
+
+    @BeforeEach
+    void setUp() throws Exception {
+        shadowVectorStore = mock(ShadowVectorStore.class);
+        migrationMapper = mock(EmbeddingMigrationMapper.class);
+        migrationDocMapper = mock(EmbeddingMigrationDocMapper.class);
+        docMapper = mock(DocMapper.class);
+        corpusVersionService = mock(CorpusVersionService.class);
+        config = new EmbeddingMigrationConfig();
+        config.setStateRefreshMs(0);
+        config.setRetryIntervalMs(0);
+        config.setMaxDocAttempts(2);
+        PgVectorProperties pgVectorProperties = new PgVectorProperties();
+        pgVectorProperties.setTable("vectors");
+        PgVectorJdbc pgVectorJdbc = mock(PgVectorJdbc.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(pgVectorJdbc.jdbcTemplate()).thenReturn(jdbcTemplate);
+
+        ExtractedTextStore extractedTextStore = mock(ExtractedTextStore.class);
+        when(extractedTextStore.load(any())).thenReturn("text");
+        DocumentIngestionPipeline pipeline = mock(DocumentIngestionPipeline.class);
+        when(pipeline.split(any(), any())).thenReturn(List.of(new Chunk("c1", "h1", TextSegment.from("a"))));
+        // 按ID游标分页返回有效文档
+        when(docMapper.selectByStatusAfterId(eq(DOC_READY), anyLong(), anyInt())).thenAnswer(inv -> {
+            Long lastId = inv.getArgument(1);
+            return docs.stream().filter(d -> d.getId() > lastId).toList();
+        });
+        docs.forEach(d -> when(docMapper.selectByFileId(d.getFileId())).thenReturn(d));
+
+        service = new EmbeddingMigrationService(shadowVectorStore, config, pgVectorProperties, pgVectorJdbc,
+            new LocalEmbeddingConfig(), migrationMapper, migrationDocMapper, docMapper, extractedTextStore,
+            mock(DocumentParseService.class), pipeline, mock(DocIngestionService.class), corpusVersionService,
+            mock(MinioClient.class), mock(MinioConfig.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.destroy();
+    }
+
+    @Test
+    void cutoverRequiresReadyAndRollbackReturnsToSourceTable() {
+        EmbeddingMigration migration = migration(BACKFILL);
+        when(shadowVectorStore.state()).thenReturn(migration);
+
+        assertThatThrownBy(service::cutover).isInstanceOf(IllegalStateException.class);
+
+        migration.setPhase(READY);
+        assertThat(service.cutover().getPhase()).isEqualTo(CUTOVER);
+        assertThat(migration.getCutoverAt()).isNotNull();
+
+        assertThat(service.rollback().getPhase()).isEqualTo(READY);
+        assertThat(migration.getCutoverAt()).isNull();
+        verify(shadowVectorStore, times(2)).save(migration);
+        // 每次切换都使检索缓存失效
+        verify(corpusVersionService, times(2)).bumpAll();
+    }
+
+    @Test
+    void finishRequiresRedeployOnTargetTable() {
+        when(shadowVectorStore.state()).thenReturn(migration(CUTOVER));
+
+        assertThatThrownBy(service::finish).isInstanceOf(IllegalStateException.class);
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    void badDocIsSkippedWithoutFailingMigration() throws Exception {
+        doThrow(new IllegalStateException("bad doc")).when(shadowVectorStore).mirror(eq("f1"), anyList(), anyList());
+        when(shadowVectorStore.fileIds(any())).thenReturn(Set.of("f2"));
+        when(migrationDocMapper.selectRetryable(eq("m1"), eq(2), anyInt()))
+            .thenReturn(List.of(retry("f1", 0)), List.of(retry("f1", 1)), List.of());
+        when(migrationDocMapper.claim(any(), anyInt())).thenReturn(1);
+        when(migrationDocMapper.countFailed("m1", 2)).thenReturn(1L);
+        EmbeddingMigration migration = migration(BACKFILL);
+
+        service.backfill(migration);
+
+        verify(shadowVectorStore).recordFailure(eq("f1"), any());
+        // 对账发现影子表缺少 f1 并登记重做，重做两次仍失败后跳过
+        verify(migrationDocMapper).upsert(eq("m1"), eq("f1"), anyString());
+        verify(migrationDocMapper, times(2)).updateError(eq(7L), eq("bad doc"));
+        verify(migrationDocMapper, never()).deleteDone(any(), anyInt());
+        assertThat(migration.getPhase()).isEqualTo(READY);
+        assertThat(migration.getDocs()).isEqualTo(2);
+        assertThat(migration.getLastDocId()).isEqualTo(2);
+        assertThat(migration.getSegments()).isEqualTo(1);
+        assertThat(migration.getFailedDocs()).isEqualTo(1);
+    }
+
+    @Test
+    void consecutiveFailuresStopAtCheckpoint() throws Exception {
+        config.setMaxConsecutiveFailures(2);
+        doThrow(new IllegalStateException("model down")).when(shadowVectorStore).mirror(anyString(), anyList(), anyList());
+        EmbeddingMigration migration = migration(BACKFILL);
+
+        service.backfill(migration);
+
+        assertThat(migration.getPhase()).isEqualTo(FAILED);
+        assertThat(migration.getError()).isEqualTo("model down");
+        // 停在第二篇文档，resume 从它继续
+        assertThat(migration.getLastDocId()).isEqualTo(1);
+    }
+
+    @Test
+    void reconcileRemovesLeftoversOfDeletedDocs() {
+        when(shadowVectorStore.fileIds(any())).thenReturn(Set.of("f1", "f2", "gone"));
+        when(migrationDocMapper.selectRetryable(anyString(), anyInt(), anyInt())).thenReturn(List.of());
+        EmbeddingMigration migration = migration(BACKFILL);
+
+        service.backfill(migration);
+
+        verify(shadowVectorStore).removeFile("gone");
+        verify(migrationDocMapper, never()).upsert(anyString(), anyString(), anyString());
+        assertThat(migration.getPhase()).isEqualTo(READY);
+    }
+
+    @Test
+    void failedDualWritesAreRedoneAfterReady() throws Exception {
+        when(shadowVectorStore.state()).thenReturn(migration(CUTOVER));
+        when(shadowVectorStore.isMirroring()).thenReturn(true);
+        when(migrationDocMapper.selectRetryable(eq("m1"), eq(2), anyInt())).thenReturn(List.of(retry("f2", 0)));
+        when(migrationDocMapper.claim(7L, 0)).thenReturn(1);
+
+        service.retryFailed();
+
+        verify(shadowVectorStore).mirror(eq("f2"), anyList(), anyList());
+        verify(migrationDocMapper).deleteDone(7L, 1);
+        verify(migrationMapper).updateFailedDocs(eq("m1"), anyLong());
+    }
+
+    private static EmbeddingMigration migration(String phase) {
+        EmbeddingMigration migration = new EmbeddingMigration();
+        migration.setMigrationId("m1");
+        migration.setSourceTable("vectors");
+        migration.setTargetTable("vectors_v2");
+        migration.setProvider("remote");
+        migration.setModelName("text-embedding-v3");
+        migration.setDimension(512);
+        migration.setPhase(phase);
+        return migration;
+    }
+
+    private static DocDO doc(Long id, String fileId) {
+        DocDO doc = new DocDO();
+        doc.setId(id);
+        doc.setFileId(fileId);
+        doc.setFileUrl("cas/" + fileId);
+        doc.setStatus(DOC_READY);
+        return doc;
+    }
+
+    private static EmbeddingMigrationDocDO retry(String fileId, int attempts) {
+        EmbeddingMigrationDocDO row = new EmbeddingMigrationDocDO();
+        row.setId(7L);
+        row.setMigrationId("m1");
+        row.setFileId(fileId);
+        row.setAttempts(attempts);
+        return row;
+    }
+}
@@ -0,0 +1,135 @@
+package com.tripdog.ai.ingest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.embedding.PgVectorChunkDao;
+import com.tripdog.ai.embedding.ShadowVectorStore;
+import com.tripdog.ai.ingest.TokenAwareDocumentSplitter.Chunk;
+import com.tripdog.common.RedisService;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.model.entity.DocDO;
+import io.minio.MinioClient;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import static com.tripdog.common.Constants.DOC_READY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReindexRunnerTest {
+    private final Map<String, String> redis = new HashMap<>();
+    private DocMapper docMapper;
+    private ExtractedTextStore extractedTextStore;
+    private DocumentIngestionPipeline pipeline;
+    private PgVectorChunkDao chunkDao;
+    private ReindexRunner runner;
+
+    @BeforeEach
+    void setUp() {
+        docMapper = mock(DocMapper.class);
+        extractedTextStore = mock(ExtractedTextStore.class);
+        pipeline = mock(DocumentIngestionPipeline.class);
+        chunkDao = mock(PgVectorChunkDao.class);
+        RedisService redisService = mock(RedisService.class);
+        when(redisService.getString(anyString())).thenAnswer(inv -> redis.get(inv.<String>getArgument(0)));
+        doAnswer(inv -> redis.put(inv.getArgument(0), inv.getArgument(1)))
+            .when(redisService).setString(anyString(), anyString());
+        when(redisService.delete(anyString())).thenAnswer(inv -> redis.remove(inv.<String>getArgument(0)) != null);
+
+        when(pipeline.split(any(), any())).thenAnswer(inv -> List.of(
+            new Chunk("new-1", "h1", TextSegment.from("a")), new Chunk("kept", "h2", TextSegment.from("b"))));
+        when(pipeline.embed(anyList(), anyString())).thenReturn(List.of(
+            Embedding.from(new float[]{1f}), Embedding.from(new float[]{1f})));
+        when(chunkDao.chunkIds(anyString())).thenReturn(Set.of("kept", "stale"));
+
+        IngestConfig config = new IngestConfig();
+        config.setReindexDocsPerMinute(0);
+        runner = new ReindexRunner(docMapper, extractedTextStore, mock(DocumentParseService.class), pipeline,
+            mock(DocIngestionService.class), chunkDao, mock(ShadowVectorStore.class), mock(CorpusVersionService.class),
+            redisService, mock(MinioClient.class), mock(MinioConfig.class), config);
+    }
+
+    @Test
+    void upsertsBeforeDeletingStaleChunks() throws Exception {
+        DocDO doc = doc(1L, "f1");
+        page(List.of(doc));
+        when(extractedTextStore.load(doc)).thenReturn("text");
+
+        runner.run(null);
+
+        // 新片段与过期片段在同一次 swap 中处理，不会先删后写
+        verify(chunkDao).swap(eq(List.of("new-1", "kept")), anyList(), anyList(), eq(List.of()), eq(List.of()),
+            eq(List.of("stale")));
+        assertThat(redis).isEmpty();
+    }
+
+    @Test
+    void failedDocsArePersistedBeforeCheckpointAndRetried() throws Exception {
+        DocDO ok = doc(1L, "ok");
+        DocDO bad = doc(2L, "bad");
+        DocDO later = doc(3L, "later");
+        when(docMapper.selectByStatusAfterId(eq(DOC_READY), eq(0L), anyInt())).thenReturn(List.of(ok, bad));
+        when(docMapper.selectByStatusAfterId(eq(DOC_READY), eq(2L), anyInt())).thenReturn(List.of(later));
+        when(docMapper.selectByStatusAfterId(eq(DOC_READY), eq(3L), anyInt())).thenReturn(List.of());
+        when(extractedTextStore.load(any())).thenReturn("text");
+        when(extractedTextStore.load(bad)).thenThrow(new IllegalStateException("boom"));
+
+        runner.run(null);
+
+        assertThat(redis).containsEntry("rag:reindex:failed", "bad").doesNotContainKey("rag:reindex:checkpoint");
+
+        // 下次执行先重试失败文档，成功后清除失败列表
+        when(docMapper.selectByStatusAfterId(eq(DOC_READY), eq(0L), anyInt())).thenReturn(List.of());
+        when(docMapper.selectByFileId("bad")).thenReturn(bad);
+        doReturn("text").when(extractedTextStore).load(bad);
+
+        runner.run(null);
+
+        assertThat(redis).isEmpty();
+        verify(docMapper).updateSegmentCount("bad", 2);
+    }
+
+    @Test
+    void deletedFailedDocIsDropped() throws Exception {
+        redis.put("rag:reindex:failed", "gone");
+        page(List.of());
+
+        runner.run(null);
+
+        assertThat(redis).isEmpty();
+        verify(extractedTextStore, never()).load(any());
+    }
+
+    private void page(List<DocDO> docs) {
+        when(docMapper.selectByStatusAfterId(eq(DOC_READY), anyLong(), anyInt())).thenReturn(docs, List.of());
+    }
+
+    private static DocDO doc(Long id, String fileId) {
+        DocDO doc = new DocDO();
+        doc.setId(id);
+        doc.setFileId(fileId);
+        doc.setUserId(1L);
+        doc.setRoleId(1L);
+        doc.setStatus(DOC_READY);
+        return doc;
+    }
+}
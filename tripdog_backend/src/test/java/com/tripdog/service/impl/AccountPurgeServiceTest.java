@@ -0,0 +1,85 @@
+package com.tripdog.service.impl;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.embedding.PgVectorChunkDao;
+import com.tripdog.common.RedisService;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.config.PurgeConfig;
+import com.tripdog.mapper.ChatHistoryMapper;
+import com.tripdog.mapper.ConversationMapper;
+import com.tripdog.mapper.ConversationSummaryMapper;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.mapper.IntimacyFactorsMapper;
+import com.tripdog.model.dto.PurgeJob;
+import io.minio.MinioClient;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AccountPurgeServiceTest {
+    private PgVectorChunkDao chunkDao;
+    private DocMapper docMapper;
+    private CorpusVersionService corpusVersionService;
+    private RedisService redisService;
+    private MinioClient minioClient;
+    private AccountPurgeService service;
+
+    @BeforeEach
+    void setUp() {
+        chunkDao = mock(PgVectorChunkDao.class);
+        docMapper = mock(DocMapper.class);
+        corpusVersionService = mock(CorpusVersionService.class);
+        redisService = mock(RedisService.class);
+        minioClient = mock(MinioClient.class);
+        MinioConfig minioConfig = new MinioConfig();
+        minioConfig.setBucketName("bucket");
+        PurgeConfig config = new PurgeConfig();
+        config.setBatchPauseMs(0);
+        service = new AccountPurgeService(chunkDao, docMapper, mock(ConversationMapper.class),
+            mock(ChatHistoryMapper.class), mock(IntimacyFactorsMapper.class), mock(ConversationSummaryMapper.class),
+            mock(DocObjectService.class), corpusVersionService, redisService, minioClient, minioConfig, config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.destroy();
+    }
+
+    @Test
+    void versionIsBumpedOnceVectorsAreGoneEvenIfALaterStageFails() {
+        when(chunkDao.removeBatch(1L, 2L, 500)).thenReturn(3, 0);
+        when(docMapper.selectByScope(anyLong(), anyLong(), anyInt())).thenThrow(new IllegalStateException("mysql down"));
+
+        service.start(1L, 2L);
+
+        verify(redisService, timeout(2000).atLeastOnce()).setObject(any(),
+            argThat((PurgeJob job) -> "FAILED".equals(job.getStatus())), eq(7L), any());
+        // 检索缓存不再返回已删除的片段
+        verify(corpusVersionService, times(1)).bump(1L, 2L);
+    }
+
+    @Test
+    void versionIsBumpedAgainWhenPurgeCompletes() {
+        when(minioClient.listObjects(any())).thenReturn(List.of());
+
+        service.start(1L, null);
+
+        verify(redisService, timeout(2000).atLeastOnce()).setObject(any(),
+            argThat((PurgeJob job) -> "DONE".equals(job.getStatus())), eq(7L), any());
+        verify(corpusVersionService, times(2)).bumpUser(1L);
+    }
+}
@@ -0,0 +1,103 @@
+package com.tripdog.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.tripdog.common.RedisService;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.model.dto.MultipartUploadSession;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocMultipartUploadServiceTest {
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    private MinioClient minioClient;
+    private RedisService redisService;
+    private DocMultipartUploadService service;
+    private MultipartUploadSession session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        minioClient = mock(MinioClient.class);
+        redisService = mock(RedisService.class);
+        MinioConfig config = new MinioConfig();
+        config.setBucketName("bucket");
+        service = new DocMultipartUploadService(minioClient, config, redisService);
+        // 读完上传流，分片摘要在读取时计算
+        doAnswer(inv -> {
+            inv.<PutObjectArgs>getArgument(0).stream().readAllBytes();
+            return null;
+        }).when(minioClient).putObject(any());
+
+        session = new MultipartUploadSession();
+        session.setUploadId("u1");
+        session.setFileSize(3L);
+        session.setPartSize(5L * 1024 * 1024);
+        session.setPartCount(1);
+    }
+
+    @Test
+    void rejectsPartWithoutChecksum() throws Exception {
+        assertThatThrownBy(() -> service.uploadPart(session, 1, null, part()))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.uploadPart(session, 1, "abc", part()))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        verify(minioClient, never()).putObject(any());
+    }
+
+    @Test
+    void acceptsPartWithMatchingChecksum() throws Exception {
+        assertThat(service.uploadPart(session, 1, ABC_SHA256.toUpperCase(), part()).sha256()).isEqualTo(ABC_SHA256);
+
+        verify(redisService).setString(eq("doc:multipart:u1:part:1"), eq("3:" + ABC_SHA256), anyLong(), any());
+    }
+
+    @Test
+    void discardsPartWithMismatchedChecksum() throws Exception {
+        String wrong = "0".repeat(64);
+
+        assertThatThrownBy(() -> service.uploadPart(session, 1, wrong, part()))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        verify(minioClient).removeObject(any());
+        verify(redisService, never()).setString(anyString(), anyString(), anyLong(), any());
+    }
+
+    @Test
+    void rejectsPartsOnceCompletionIsClaimed() throws Exception {
+        when(redisService.hasKey("doc:multipart:u1:completing")).thenReturn(true);
+
+        assertThatThrownBy(() -> service.uploadPart(session, 1, ABC_SHA256, part()))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        verify(minioClient, never()).putObject(any());
+    }
+
+    @Test
+    void onlyOneCompletionClaimsTheSession() {
+        when(redisService.setIfAbsent(eq("doc:multipart:u1:completing"), anyString(), anyLong(), any()))
+            .thenReturn(true, false);
+
+        assertThat(service.claim(session)).isTrue();
+        assertThat(service.claim(session)).isFalse();
+    }
+
+    private static MockMultipartFile part() {
+        return new MockMultipartFile("file", "part", null, "abc".getBytes());
+    }
+}
@@ -0,0 +1,180 @@
+package com.tripdog.service.impl;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tripdog.ai.ingest.ExtractedTextStore;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.mapper.DocObjectDeleteMapper;
+import com.tripdog.mapper.DocObjectMapper;
+import com.tripdog.model.entity.DocDO;
+import com.tripdog.model.entity.DocObjectDO;
+import io.minio.MinioClient;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.ErrorResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocObjectServiceTest {
+    private static final String HASH = "a".repeat(64);
+    private static final String KEY = "cas/" + HASH;
+
+    private DocObjectMapper docObjectMapper;
+    private DocObjectDeleteMapper deleteMapper;
+    private DocMapper docMapper;
+    private ExtractedTextStore extractedTextStore;
+    private MinioClient minioClient;
+    private DocObjectService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        docObjectMapper = mock(DocObjectMapper.class);
+        deleteMapper = mock(DocObjectDeleteMapper.class);
+        docMapper = mock(DocMapper.class);
+        extractedTextStore = mock(ExtractedTextStore.class);
+        minioClient = mock(MinioClient.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(inv -> {
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        // 删除后确认对象已不存在
+        when(minioClient.statObject(any())).thenThrow(new ErrorResponseException(
+            new ErrorResponse("NoSuchKey", "missing", "bucket", KEY, null, null, null), null, null));
+
+        MinioConfig config = new MinioConfig();
+        config.setBucketName("bucket");
+        service = new DocObjectService(docObjectMapper, deleteMapper, docMapper, extractedTextStore,
+            minioClient, config, transactionTemplate);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void lastReleaseDeletesObjectOnlyAfterCommit() throws Exception {
+        when(docObjectMapper.selectForUpdate(HASH)).thenReturn(object(0), (DocObjectDO) null);
+
+        assertThat(service.release(KEY)).isTrue();
+
+        // 提交前只登记，不碰MinIO
+        verify(deleteMapper).insert(KEY);
+        verify(minioClient, never()).removeObject(any());
+
+        commit();
+
+        verify(minioClient).removeObject(any());
+        verify(extractedTextStore).delete(KEY);
+        verify(deleteMapper).deleteByObjectKey(KEY);
+    }
+
+    @Test
+    void rollbackKeepsObject() throws Exception {
+        when(docObjectMapper.selectForUpdate(HASH)).thenReturn(object(0));
+
+        service.release(KEY);
+        rollback();
+
+        verify(minioClient, never()).removeObject(any());
+    }
+
+    @Test
+    void referencedObjectIsNotScheduled() throws Exception {
+        when(docObjectMapper.selectForUpdate(HASH)).thenReturn(object(2));
+
+        assertThat(service.release(KEY)).isFalse();
+        commit();
+
+        verify(deleteMapper, never()).insert(any());
+        verify(docObjectMapper, never()).deleteUnreferenced(any());
+        verify(minioClient, never()).removeObject(any());
+    }
+
+    @Test
+    void contentAdoptedAgainBeforePurgeIsKept() throws Exception {
+        when(docObjectMapper.selectForUpdate(HASH)).thenReturn(object(0), object(1));
+
+        service.release(KEY);
+        commit();
+
+        verify(minioClient, never()).removeObject(any());
+        verify(deleteMapper).deleteByObjectKey(KEY);
+    }
+
+    @Test
+    void failedRemovalStaysPendingForSweeper() throws Exception {
+        when(docObjectMapper.selectForUpdate(HASH)).thenReturn(object(0), null, null);
+        doThrow(new IllegalStateException("minio down")).doNothing().when(minioClient).removeObject(any());
+
+        service.release(KEY);
+        commit();
+        verify(deleteMapper, never()).deleteByObjectKey(KEY);
+
+        when(deleteMapper.selectPending(anyInt())).thenReturn(List.of(KEY));
+        service.purgePending();
+
+        verify(deleteMapper).deleteByObjectKey(KEY);
+    }
+
+    @Test
+    void deleteDocsCountsOnlyFreedObjects() throws Exception {
+        DocDO shared = doc(1L, KEY);
+        DocDO legacy = doc(2L, "1/doc/legacy.pdf");
+        when(docMapper.deleteByIds(anyList())).thenReturn(1);
+        when(docObjectMapper.selectForUpdate(HASH)).thenReturn(object(1));
+
+        DocObjectService.DeleteResult result = service.deleteDocs(List.of(shared, legacy));
+
+        assertThat(result.docs()).isEqualTo(2);
+        assertThat(result.objects()).isEqualTo(1);
+        verify(deleteMapper).insert("1/doc/legacy.pdf");
+    }
+
+    private static void commit() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+    }
+
+    private static void rollback() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+    }
+
+    private static DocObjectDO object(int refCount) {
+        DocObjectDO docObject = new DocObjectDO();
+        docObject.setContentHash(HASH);
+        docObject.setObjectKey(KEY);
+        docObject.setRefCount(refCount);
+        return docObject;
+    }
+
+    private static DocDO doc(Long id, String fileUrl) {
+        DocDO doc = new DocDO();
+        doc.setId(id);
+        doc.setFileUrl(fileUrl);
+        return doc;
+    }
+}
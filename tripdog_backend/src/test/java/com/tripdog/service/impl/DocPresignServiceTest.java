@@ -0,0 +1,91 @@
+package com.tripdog.service.impl;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.tripdog.common.RedisService;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.mapper.DocMapper;
+import com.tripdog.model.entity.DocDO;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectArgs;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocPresignServiceTest {
+    private static final String PENDING_KEY = "doc:presign:pending";
+
+    private MinioClient minioClient;
+    private RedisService redisService;
+    private DocMapper docMapper;
+    private DocPresignService service;
+
+    @BeforeEach
+    void setUp() {
+        minioClient = mock(MinioClient.class);
+        redisService = mock(RedisService.class);
+        docMapper = mock(DocMapper.class);
+        MinioConfig config = new MinioConfig();
+        config.setBucketName("bucket");
+        service = new DocPresignService(minioClient, config, redisService, docMapper);
+    }
+
+    @Test
+    void removesExpiredObjectsThatWereNeverRegistered() throws Exception {
+        when(redisService.zRangeByScore(eq(PENDING_KEY), anyDouble(), anyDouble()))
+            .thenReturn(Set.of("orphan:1/doc/a.pdf", "done:1/doc/b.pdf"));
+        when(redisService.zRemove(eq(PENDING_KEY), anyString())).thenReturn(1L);
+        when(docMapper.selectByFileId("done")).thenReturn(new DocDO());
+
+        service.cleanupExpired();
+
+        verify(minioClient).removeObject(argThat((RemoveObjectArgs args) -> args.object().equals("1/doc/a.pdf")));
+        verify(minioClient, times(1)).removeObject(any());
+    }
+
+    @Test
+    void skipsMembersClaimedByAnotherInstance() throws Exception {
+        when(redisService.zRangeByScore(eq(PENDING_KEY), anyDouble(), anyDouble()))
+            .thenReturn(Set.of("orphan:1/doc/a.pdf"));
+        when(redisService.zRemove(PENDING_KEY, "orphan:1/doc/a.pdf")).thenReturn(0L);
+
+        service.cleanupExpired();
+
+        verify(minioClient, never()).removeObject(any());
+    }
+
+    @Test
+    void requeuesWhenDeleteFails() throws Exception {
+        when(redisService.zRangeByScore(eq(PENDING_KEY), anyDouble(), anyDouble()))
+            .thenReturn(Set.of("orphan:1/doc/a.pdf"));
+        when(redisService.zRemove(PENDING_KEY, "orphan:1/doc/a.pdf")).thenReturn(1L);
+        doThrow(new IllegalStateException("minio")).when(minioClient).removeObject(any());
+
+        service.cleanupExpired();
+
+        verify(redisService).zAdd(eq(PENDING_KEY), eq("orphan:1/doc/a.pdf"), anyDouble());
+    }
+
+    @Test
+    void onlyOneCompletionClaimsTheIntent() {
+        when(redisService.setIfAbsent(eq("doc:presign:completing:f1"), anyString(), anyLong(), any()))
+            .thenReturn(true, false);
+
+        assertThat(service.claim("f1")).isTrue();
+        assertThat(service.claim("f1")).isFalse();
+    }
+}
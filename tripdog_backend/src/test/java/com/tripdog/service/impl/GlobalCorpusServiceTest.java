@@ -0,0 +1,56 @@
+package com.tripdog.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.mock.web.MockMultipartFile;
+
+import com.tripdog.ai.embedding.CorpusVersionService;
+import com.tripdog.ai.ingest.DocIngestionService;
+import com.tripdog.ai.ingest.IngestConfig;
+import com.tripdog.common.utils.FileUploadUtils;
+import com.tripdog.config.MinioConfig;
+import com.tripdog.model.dto.FileUploadDTO;
+import com.tripdog.model.vo.DocVO;
+import com.tripdog.service.DocService;
+import io.minio.MinioClient;
+
+import static com.tripdog.common.Constants.GLOBAL_USER_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GlobalCorpusServiceTest {
+
+    @Test
+    void concurrentDuplicateUploadReleasesReferenceAndReturnsExisting() throws Exception {
+        DocService docService = mock(DocService.class);
+        DocObjectService docObjectService = mock(DocObjectService.class);
+        DocIngestionService docIngestionService = mock(DocIngestionService.class);
+        FileUploadUtils fileUploadUtils = mock(FileUploadUtils.class);
+        FileUploadDTO uploaded = FileUploadDTO.builder().objectKey("0/corpus/tmp").contentHash("hash").build();
+        when(fileUploadUtils.upload2Minio(any(), eq(GLOBAL_USER_ID), any(), any(), anyString(), anyLong(), anyInt()))
+            .thenReturn(uploaded);
+        when(docObjectService.adopt("0/corpus/tmp", "hash", 3L)).thenReturn("cas/hash");
+        DocVO existing = new DocVO();
+        existing.setFileId("first");
+        // 查重时另一个请求尚未提交，保存时被唯一键拦截
+        when(docService.getDocByContentHash(GLOBAL_USER_ID, 1L, "hash")).thenReturn(null, existing);
+        when(docService.saveDoc(any())).thenThrow(new DuplicateKeyException("uk_user_role_dedup_hash"));
+        GlobalCorpusService service = new GlobalCorpusService(docService, docObjectService, docIngestionService,
+            mock(CorpusVersionService.class), fileUploadUtils, mock(MinioClient.class), new MinioConfig(),
+            new IngestConfig());
+
+        DocVO result = service.upload(1L, new MockMultipartFile("file", "a.txt", "text/plain", "abc".getBytes()));
+
+        assertThat(result).isSameAs(existing);
+        verify(docObjectService).releaseQuietly("cas/hash");
+        verify(docIngestionService, never()).submit(anyString(), any(byte[].class));
+    }
+}